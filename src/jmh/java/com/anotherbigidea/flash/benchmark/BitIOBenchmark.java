@@ -0,0 +1,151 @@
+package com.anotherbigidea.flash.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.anotherbigidea.flash.interfaces.SWFShape;
+import com.anotherbigidea.flash.readers.SWFReader;
+import com.anotherbigidea.flash.readers.TagParser;
+import com.anotherbigidea.flash.structs.AlphaColor;
+import com.anotherbigidea.flash.structs.Rect;
+import com.anotherbigidea.flash.writers.DummySWFWriter;
+import com.anotherbigidea.flash.writers.SWFWriter;
+import com.anotherbigidea.flash.writers.TagWriter;
+import com.anotherbigidea.io.InStream;
+import com.anotherbigidea.io.OutStream;
+
+
+/**
+ * Bit field I/O - InStream.readUBits() and OutStream.writeUBits() on their
+ * own, and through TagParser and TagWriter on a shape-heavy movie.
+ *
+ * Run the same benchmark on two revisions to compare them:
+ * mvn -P jmh package && java -jar target/benchmarks.jar BitIOBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BitIOBenchmark {
+    @Param({ "100" })
+    public int shapes;
+
+    @Param({ "500" })
+    public int edges;
+
+    protected int[] widths;
+    protected long[] values;
+    protected byte[] packed;
+    protected byte[] movie;
+    protected ByteArrayOutputStream bout;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+
+        //field widths like those of shape records - flags, counts and deltas
+        int count = shapes * edges;
+        widths = new int[count];
+        values = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(4);
+            widths[i] = (kind == 0) ? 1 : (kind == 1) ? 4 : 2 + random.nextInt(16);
+            values[i] = random.nextLong() & ((1L << widths[i]) - 1);
+        }
+
+        bout = new ByteArrayOutputStream(count * 2);
+        writeUBits();
+        packed = bout.toByteArray();
+
+        movie = createShapeMovie(random, shapes, edges);
+    }
+
+    /**
+     * A movie of shapes made of random lines and curves
+     */
+    protected static byte[] createShapeMovie(Random random, int shapes, int edges) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TagWriter tags = new TagWriter(new SWFWriter(bytes));
+
+        tags.header(6, -1, 11000, 8000, 12, -1);
+
+        for (int id = 1; id <= shapes; id++) {
+            SWFShape shape = tags.tagDefineShape3(id, new Rect(-4000, -4000, 4000, 4000));
+
+            shape.defineFillStyle(new AlphaColor(random.nextInt(256), random.nextInt(256), random.nextInt(256), 255));
+            shape.defineLineStyle(20, new AlphaColor(0, 0, 0, 255));
+            shape.setFillStyle1(1);
+            shape.setLineStyle(1);
+            shape.move(random.nextInt(2000), random.nextInt(2000));
+
+            for (int i = 0; i < edges; i++) {
+                if (random.nextBoolean()) {
+                    shape.line(random.nextInt(4000) - 2000, random.nextInt(4000) - 2000);
+                } else {
+                    shape.curve(random.nextInt(400) - 200, random.nextInt(400) - 200, random.nextInt(4000) - 2000, random.nextInt(4000) - 2000);
+                }
+            }
+
+            shape.done();
+        }
+
+        tags.tagShowFrame();
+        tags.tagEnd();
+
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public long readUBits() throws IOException {
+        InStream in = new InStream(new ByteArrayInputStream(packed));
+        long sum = 0;
+
+        for (int i = 0; i < widths.length; i++) {
+            sum += in.readUBits(widths[i]);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int writeUBits() throws IOException {
+        bout.reset();
+        OutStream out = new OutStream(bout);
+
+        for (int i = 0; i < widths.length; i++) {
+            out.writeUBits(widths[i], values[i]);
+        }
+
+        out.flush();
+        return bout.size();
+    }
+
+    @Benchmark
+    public void parseShapes() throws IOException {
+        new SWFReader(new TagParser(new NullTagTypes()), ByteBuffer.wrap(movie)).readFile();
+    }
+
+    @Benchmark
+    public void rewriteShapes() throws IOException {
+        new SWFReader(new TagParser(new TagWriter(new DummySWFWriter())), ByteBuffer.wrap(movie)).readFile();
+    }
+}
@@ -0,0 +1,110 @@
+package com.anotherbigidea.flash.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.anotherbigidea.io.Compression;
+import com.anotherbigidea.io.DeflateCompression;
+import com.anotherbigidea.io.OptimalCompression;
+import com.anotherbigidea.io.SliceOutputStream;
+import com.anotherbigidea.io.ZlibPool;
+
+
+/**
+ * Compression of the body of each kind of movie in the Corpus - the time
+ * to compress and decompress at each Deflater level, and with the optimal
+ * mode that tries several strategies.
+ *
+ * The compressed size for each combination is printed at setup, as
+ * "size: <kind> <level> <original> -> <compressed>", so that size can be
+ * set against time.
+ *
+ * mvn -P jmh package && java -jar target/benchmarks.jar CompressionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CompressionBenchmark {
+    @Param({ Corpus.SMALL, Corpus.SHAPES, Corpus.FONTS, Corpus.BITMAPS, Corpus.ACTIONS })
+    public String kind;
+
+    /** A Deflater level, or "optimal" */
+    @Param({ "1", "6", "9", "optimal" })
+    public String level;
+
+    protected byte[] body; //the movie after the first 8 bytes
+    protected byte[] compressed;
+    protected byte[] buffer = new byte[0x10000];
+    protected Compression compression;
+    protected SliceOutputStream output;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] swf = Corpus.create(kind);
+        body = new byte[swf.length - 8];
+        System.arraycopy(swf, 8, body, 0, body.length);
+
+        if (level.equals("optimal")) {
+            compression = new OptimalCompression();
+        } else {
+            compression = new DeflateCompression(Integer.parseInt(level), Deflater.DEFAULT_STRATEGY);
+        }
+
+        output = new SliceOutputStream(body.length + 64);
+        compressed = compress().toByteArray();
+
+        System.out.println("size: " + kind + " " + level + " " + body.length + " -> " + compressed.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println(ZlibPool.getShared());
+        ZlibPool.getShared().end();
+    }
+
+    @Benchmark
+    public SliceOutputStream compress() throws IOException {
+        output.reset();
+
+        OutputStream out = compression.compress(output);
+        out.write(body);
+        out.close();
+
+        return output;
+    }
+
+    @Benchmark
+    public int decompress() throws IOException {
+        InputStream in = compression.decompress(new ByteArrayInputStream(compressed));
+        int total = 0;
+        int count;
+
+        while ((count = in.read(buffer)) > 0) {
+            total += count;
+        }
+
+        in.close();
+
+        return total;
+    }
+}
@@ -0,0 +1,71 @@
+package com.anotherbigidea.flash.benchmark;
+
+import java.io.IOException;
+
+
+/**
+ * The movies the benchmarks run over.  Each kind of movie stresses a
+ * different part of the parsers and writers.  The movies come from the
+ * CorpusGenerator with a fixed seed so that every run sees the same bytes.
+ */
+public class Corpus {
+    /** A single frame with a couple of shapes */
+    public static final String SMALL = "small";
+
+    /** Many shapes with long edge lists */
+    public static final String SHAPES = "shapes";
+
+    /** Fonts with full glyph sets and text that uses them */
+    public static final String FONTS = "fonts";
+
+    /** Lossless bitmaps in 8 and 32 bit formats */
+    public static final String BITMAPS = "bitmaps";
+
+    /** Frame actions with branches, functions and lookups */
+    public static final String ACTIONS = "actions";
+
+    public static final String[] KINDS = { SMALL, SHAPES, FONTS, BITMAPS, ACTIONS };
+
+    /**
+     * Create a movie of the given kind as an uncompressed SWF
+     */
+    public static byte[] create(String kind) throws IOException {
+        return generator(kind).toByteArray();
+    }
+
+    /**
+     * @return a generator set up for the given kind of movie
+     */
+    public static CorpusGenerator generator(String kind) {
+        CorpusGenerator generator = new CorpusGenerator();
+
+        if (SMALL.equals(kind)) {
+            generator.setFrames(1);
+            generator.setShapes(2, 10);
+        } else if (SHAPES.equals(kind)) {
+            generator.setFrames(20);
+            generator.setPlacements(20);
+            generator.setShapes(100, 400);
+            generator.setClips(1, 20);
+        } else if (FONTS.equals(kind)) {
+            generator.setFrames(10);
+            generator.setPlacements(8);
+            generator.setShapes(0, 0);
+            generator.setFonts(4, 95, 20);
+            generator.setTexts(10, 60);
+        } else if (BITMAPS.equals(kind)) {
+            generator.setFrames(10);
+            generator.setShapes(0, 0);
+            generator.setBitmaps(20, 128);
+        } else if (ACTIONS.equals(kind)) {
+            generator.setFrames(200);
+            generator.setPlacements(1);
+            generator.setShapes(1, 10);
+            generator.setActionBytes(1000);
+        } else {
+            throw new IllegalArgumentException("unknown kind of movie: " + kind);
+        }
+
+        return generator;
+    }
+}
@@ -0,0 +1,642 @@
+package com.anotherbigidea.flash.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.movie.Actions;
+import com.anotherbigidea.flash.movie.Font;
+import com.anotherbigidea.flash.movie.FontDefinition;
+import com.anotherbigidea.flash.movie.Frame;
+import com.anotherbigidea.flash.movie.Image;
+import com.anotherbigidea.flash.movie.Instance;
+import com.anotherbigidea.flash.movie.Movie;
+import com.anotherbigidea.flash.movie.MovieClip;
+import com.anotherbigidea.flash.movie.Shape;
+import com.anotherbigidea.flash.movie.Symbol;
+import com.anotherbigidea.flash.movie.Text;
+import com.anotherbigidea.flash.movie.Transform;
+import com.anotherbigidea.flash.sound.SoundStreamHead;
+import com.anotherbigidea.flash.structs.AlphaColor;
+import com.anotherbigidea.flash.structs.Color;
+
+
+/**
+ * Generates synthetic movies for load tests and benchmarks.
+ *
+ * The movie is built with the movie package - shapes, fonts and text,
+ * lossless bitmaps, movie clips, frame actions and streaming sound - in
+ * amounts given by the setters.  The same settings and seed always give
+ * the same bytes.
+ *
+ * Bitmap pixels, sound blocks and frame actions are drawn from pools of
+ * POOL_SIZE distinct values so that large movies do not need the whole
+ * movie in memory as objects.  Movies written to a file are streamed, but
+ * those written to a stream or byte array are buffered by SWFWriter.
+ *
+ * This class is part of the benchmarks, not the library - it is only
+ * compiled with the jmh profile (src/jmh/java) and is only on the class path
+ * through target/benchmarks.jar.  The unit tests build their own small
+ * movies instead.
+ *
+ * java -cp target/benchmarks.jar com.anotherbigidea.flash.benchmark.CorpusGenerator
+ *      [-size 10M] [-frames n] ... [-compressed] out.swf
+ */
+public class CorpusGenerator {
+    public static final int POOL_SIZE = 16;
+
+    /** The frame count in the header is 16 bits */
+    public static final int MAX_FRAMES = 0xffff;
+
+    protected long seed = 42;
+    protected int version = 6;
+    protected int frames = 10;
+    protected int placements = 4;
+    protected int shapes = 4;
+    protected int edges = 20;
+    protected int clips = 0;
+    protected int clipFrames = 10;
+    protected int fonts = 0;
+    protected int glyphs = 95;
+    protected int glyphEdges = 10;
+    protected int texts = 0;
+    protected int textLength = 40;
+    protected int bitmaps = 0;
+    protected int bitmapSize = 64;
+    protected int soundBlocks = 0;
+    protected int soundBlockSize = 2048;
+    protected int actionBytes = 0;
+    protected boolean compressed = false;
+
+    protected Random random;
+
+    /** The random seed */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /** The Flash version in the header - 6 or more for compression */
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    /** The number of frames in the main timeline */
+    public void setFrames(int frames) {
+        this.frames = frames;
+    }
+
+    /** The number of symbols placed in each frame */
+    public void setPlacements(int placements) {
+        this.placements = placements;
+    }
+
+    /** The number of shapes and the number of edges in each */
+    public void setShapes(int shapes, int edges) {
+        this.shapes = shapes;
+        this.edges = edges;
+    }
+
+    /** The number of movie clips and the number of frames in each */
+    public void setClips(int clips, int clipFrames) {
+        this.clips = clips;
+        this.clipFrames = clipFrames;
+    }
+
+    /**
+     * The number of fonts, the number of glyphs in each and the number of
+     * edges in each glyph
+     */
+    public void setFonts(int fonts, int glyphs, int glyphEdges) {
+        this.fonts = fonts;
+        this.glyphs = glyphs;
+        this.glyphEdges = glyphEdges;
+    }
+
+    /** The number of text blocks for each font and the chars in each */
+    public void setTexts(int texts, int textLength) {
+        this.texts = texts;
+        this.textLength = textLength;
+    }
+
+    /** The number of lossless bitmaps and their width and height */
+    public void setBitmaps(int bitmaps, int bitmapSize) {
+        this.bitmaps = bitmaps;
+        this.bitmapSize = bitmapSize;
+    }
+
+    /**
+     * The number of frames (from the first) with a sound stream block and
+     * the size of each block
+     */
+    public void setSoundBlocks(int soundBlocks, int soundBlockSize) {
+        this.soundBlocks = soundBlocks;
+        this.soundBlockSize = soundBlockSize;
+    }
+
+    /** The approximate size of the actions in each frame - 0 for none */
+    public void setActionBytes(int actionBytes) {
+        this.actionBytes = actionBytes;
+    }
+
+    /** Whether to write a compressed (CWS) movie */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Set the number of frames so that the uncompressed movie is about the
+     * given size.  The size of the definitions and of a frame are measured
+     * by writing two small movies without sound, and the sound blocks are
+     * added on.  The frames are capped at MAX_FRAMES, so very large movies
+     * need more content in each frame.
+     *
+     * @param size the uncompressed size in bytes
+     */
+    public void fitToSize(long size) throws IOException {
+        int targetFrames = frames;
+        int targetBlocks = soundBlocks;
+        int[] probes = { 8, 16 };
+        long[] sizes = new long[probes.length];
+
+        try {
+            soundBlocks = 0;
+            for (int i = 0; i < probes.length; i++) {
+                frames = probes[i];
+                sizes[i] = measure();
+            }
+        } finally {
+            frames = targetFrames;
+            soundBlocks = targetBlocks;
+        }
+
+        long frameSize = Math.max((sizes[1] - sizes[0]) / (probes[1] - probes[0]), 1);
+        long fixedSize = sizes[0] - frameSize * probes[0];
+        long blockSize = (soundBlocks > 0) ? soundBlockSize + 6 : 0; //long tag header
+
+        long count;
+        if (fixedSize + soundBlocks * (frameSize + blockSize) >= size) {
+            count = (size - fixedSize) / (frameSize + blockSize);
+        } else {
+            count = (size - fixedSize - soundBlocks * blockSize) / frameSize;
+        }
+
+        frames = (int) Math.max(1, Math.min(MAX_FRAMES, count));
+    }
+
+    /**
+     * @return the size of the uncompressed movie
+     */
+    protected long measure() throws IOException {
+        SizeCounter counter = new SizeCounter();
+        createMovie().write(counter, false);
+
+        return counter.size;
+    }
+
+    /**
+     * Build the movie
+     */
+    public Movie createMovie() throws IOException {
+        random = new Random(seed);
+
+        Movie movie = new Movie(550, 400, 12, version, null);
+        List<Symbol> symbols = new ArrayList<>();
+
+        for (int i = 0; i < shapes; i++) {
+            symbols.add(createShape(edges));
+        }
+
+        for (int i = 0; i < clips; i++) {
+            Symbol symbol = symbols.isEmpty() ? createShape(edges) : symbols.get(random.nextInt(symbols.size()));
+            symbols.add(createClip(symbol, clipFrames));
+        }
+
+        for (int i = 0; i < fonts; i++) {
+            Font font = createFont("Synthetic" + i, glyphs, glyphEdges);
+
+            for (int j = 0; j < texts; j++) {
+                symbols.add(createText(font, textLength));
+            }
+        }
+
+        if (bitmaps > 0) {
+            byte[][] pixels32 = new byte[Math.min(bitmaps, POOL_SIZE)][];
+            byte[][] pixels8 = new byte[Math.min(bitmaps, POOL_SIZE)][];
+
+            for (int i = 0; i < bitmaps; i++) {
+                int format = (i % 2 == 0) ? SWFConstants.BITMAP_FORMAT_32_BIT : SWFConstants.BITMAP_FORMAT_8_BIT;
+                byte[][] pool = (format == SWFConstants.BITMAP_FORMAT_32_BIT) ? pixels32 : pixels8;
+
+                int index = (i / 2) % pool.length;
+                if (pool[index] == null) {
+                    pool[index] = createPixels(bitmapSize, bitmapSize, format);
+                }
+
+                symbols.add(createBitmapShape(createBitmap(bitmapSize, bitmapSize, format, pool[index])));
+            }
+        }
+
+        if (symbols.isEmpty()) {
+            symbols.add(createShape(edges));
+        }
+
+        Actions[] actions = new Actions[(actionBytes > 0) ? Math.min(frames, POOL_SIZE) : 0];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = createActions(i + 1, actionBytes);
+        }
+
+        byte[][] sound = new byte[Math.min(soundBlocks, POOL_SIZE)][];
+        for (int i = 0; i < sound.length; i++) {
+            sound[i] = new byte[soundBlockSize];
+            random.nextBytes(sound[i]);
+        }
+
+        for (int i = 0; i < frames; i++) {
+            Frame frame = movie.appendFrame();
+
+            if (i % 10 == 0) {
+                frame.setLabel("frame" + i);
+            }
+
+            //place every symbol in the first frame so that the definitions
+            //come first and the later frames are all alike
+            if (i == 0) {
+                for (int j = 0; j < symbols.size(); j++) {
+                    frame.placeSymbol(symbols.get(j), random.nextInt(550), random.nextInt(400));
+                }
+            }
+
+            for (int j = 0; j < placements; j++) {
+                frame.placeSymbol(symbols.get(random.nextInt(symbols.size())), random.nextInt(550), random.nextInt(400));
+            }
+
+            if (actions.length > 0) {
+                frame.setActions(actions[i % actions.length]);
+            }
+
+            if (i < soundBlocks) {
+                if (i == 0) {
+                    //16 bit mono samples
+                    frame.setSoundHeader(new SoundStreamHead(SWFConstants.SOUND_FREQ_22KHZ, true, false, SWFConstants.SOUND_FORMAT_RAW, soundBlockSize / 2));
+                }
+
+                frame.setSoundData(sound[i % sound.length]);
+            }
+        }
+
+        return movie;
+    }
+
+    /**
+     * Build the movie and write it
+     */
+    public void write(OutputStream out) throws IOException {
+        createMovie().write(out, compressed);
+    }
+
+    /**
+     * Build the movie and write it to a file
+     */
+    public void write(String filename) throws IOException {
+        createMovie().write(filename, compressed);
+    }
+
+    /**
+     * Build the movie and write it to a byte array
+     */
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(bytes);
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A shape of random lines and curves with solid fills and a line style
+     */
+    protected Shape createShape(int edges) {
+        Shape shape = new Shape();
+
+        shape.defineFillStyle(createColor());
+        shape.defineFillStyle(new AlphaColor(createColor(), random.nextInt(256)));
+        shape.defineLineStyle(1 + random.nextInt(5), createColor());
+        shape.setRightFillStyle(1 + random.nextInt(2));
+        shape.setLineStyle(1);
+        shape.move(random.nextInt(200) - 100, random.nextInt(200) - 100);
+
+        for (int i = 0; i < edges; i++) {
+            if (random.nextBoolean()) {
+                shape.line(random.nextInt(2000) - 1000, random.nextInt(2000) - 1000);
+            } else {
+                shape.curve(random.nextInt(2000) - 1000, random.nextInt(2000) - 1000,
+                            random.nextInt(2000) - 1000, random.nextInt(2000) - 1000);
+            }
+        }
+
+        return shape;
+    }
+
+    /**
+     * A font with glyphs for consecutive chars from the space char
+     */
+    protected Font createFont(String name, int glyphs, int edges) {
+        FontDefinition definition = new FontDefinition(name, 800, 200, 0, false, false, true, false, false, true);
+
+        for (int code = 32; code < 32 + glyphs; code++) {
+            Shape glyph = new Shape();
+            glyph.move(random.nextInt(100), 0);
+
+            for (int i = 0; i < edges; i++) {
+                if (random.nextBoolean()) {
+                    glyph.line(random.nextInt(600), -random.nextInt(800));
+                } else {
+                    glyph.curve(random.nextInt(600), -random.nextInt(800), random.nextInt(600), -random.nextInt(800));
+                }
+            }
+
+            definition.getGlyphList().add(new FontDefinition.Glyph(glyph, 500 + random.nextInt(200), code));
+        }
+
+        Font font = new Font(definition);
+        font.loadAllGlyphs();
+
+        return font;
+    }
+
+    /**
+     * A text block of random chars from the font
+     */
+    protected Text createText(Font font, int length) throws IOException {
+        int glyphs = font.getGlyphList().size();
+
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            chars.append((char) (32 + random.nextInt(glyphs)));
+        }
+
+        Text text = new Text(null);
+
+        try {
+            text.row(font.chars(chars.toString(), 12 + random.nextInt(24)), createColor(), 0, 0, true, true);
+        } catch (Font.NoGlyphException e) {
+            throw new IOException("no glyph for char " + e.code);
+        }
+
+        return text;
+    }
+
+    /**
+     * Pixels of smooth gradients with some noise.  Rows of 8 bit pixels are
+     * padded to 32 bits.
+     */
+    protected byte[] createPixels(int width, int height, int format) {
+        if (format == SWFConstants.BITMAP_FORMAT_8_BIT) {
+            int row = (width + 3) & ~3;
+            byte[] pixels = new byte[row * height];
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    pixels[y * row + x] = (byte) (x + y + random.nextInt(4));
+                }
+            }
+
+            return pixels;
+        }
+
+        byte[] pixels = new byte[width * height * 4];
+
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[i++] = (byte) 0xff;
+                pixels[i++] = (byte) (x + random.nextInt(8));
+                pixels[i++] = (byte) (y + random.nextInt(8));
+                pixels[i++] = (byte) (x ^ y);
+            }
+        }
+
+        return pixels;
+    }
+
+    /**
+     * A lossless bitmap - 8 bit bitmaps get a random color table
+     */
+    protected Image.Lossless createBitmap(int width, int height, int format, byte[] pixels) {
+        if (format == SWFConstants.BITMAP_FORMAT_8_BIT) {
+            Color[] colors = new Color[256];
+            for (int i = 0; i < colors.length; i++) {
+                colors[i] = createColor();
+            }
+
+            return new Image.Lossless(colors, pixels, width, height, false, format);
+        }
+
+        return new Image.Lossless(null, pixels, width, height, true, format);
+    }
+
+    /**
+     * A rectangle filled with a bitmap
+     */
+    protected Shape createBitmapShape(Image image) {
+        double width = ((Image.Lossless) image).getWidth();
+        double height = ((Image.Lossless) image).getHeight();
+
+        Shape shape = new Shape();
+        shape.defineFillStyle(image, new Transform(SWFConstants.TWIPS, SWFConstants.TWIPS, 0, 0), false);
+        shape.setRightFillStyle(1);
+        shape.move(0, 0);
+        shape.line(width, 0);
+        shape.line(width, height);
+        shape.line(0, height);
+        shape.line(0, 0);
+
+        return shape;
+    }
+
+    /**
+     * A movie clip that moves a symbol around
+     */
+    protected MovieClip createClip(Symbol symbol, int frames) {
+        MovieClip clip = new MovieClip();
+        Instance instance = clip.appendFrame().placeSymbol(symbol, 0, 0);
+
+        for (int i = 1; i < frames; i++) {
+            clip.appendFrame().alter(instance, new Transform(i * 0.1, 1.0 + i / 10.0, 1.0, i * 20, i * 10), null);
+        }
+
+        return clip;
+    }
+
+    /**
+     * Frame actions of at least the given size - blocks of pushes,
+     * lookups, calls and jumps
+     */
+    protected Actions createActions(int frame, int size) throws IOException {
+        SizedActions actions = new SizedActions(version);
+        actions.lookupTable(new String[] { "_root", "gotoAndPlay", "count", "frame" + frame });
+
+        for (int i = 0; actions.getSize() < size; i++) {
+            String skip = "skip" + i;
+            String wait = "wait" + i;
+
+            actions.push("_root");
+            actions.getVariable();
+            actions.lookup(2);
+            actions.getMember();
+            actions.push(random.nextInt(1000));
+            actions.add();
+            actions.push(random.nextDouble());
+            actions.lessThan();
+            actions.ifJump(skip);
+            actions.startFunction("fn" + i, new String[] { "a", "b" });
+            actions.push("a");
+            actions.getVariable();
+            actions.push("b");
+            actions.getVariable();
+            actions.multiply();
+            actions.returnValue();
+            actions.endBlock();
+            actions.jumpLabel(skip);
+            actions.waitForFrame(frame, wait);
+            actions.play();
+            actions.jumpLabel(wait);
+            actions.push(1);
+            actions.push(true);
+            actions.lookup(1);
+            actions.callFunction();
+            actions.pop();
+        }
+
+        actions.getURL("http://localhost/" + frame, "_blank");
+        actions.stop();
+        actions.end();
+
+        return actions;
+    }
+
+    protected Color createColor() {
+        return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+    }
+
+    /**
+     * Actions that know how many bytes have been written
+     */
+    protected static class SizedActions extends Actions {
+        public SizedActions(int flashVersion) {
+            super(flashVersion);
+        }
+
+        public int getSize() {
+            return bout.size();
+        }
+    }
+
+    /**
+     * An OutputStream that only counts the bytes
+     */
+    protected static class SizeCounter extends OutputStream {
+        long size;
+
+        public void write(int b) {
+            size++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            size += len;
+        }
+    }
+
+    /**
+     * Parse a size with an optional K, M or G suffix
+     */
+    protected static long parseSize(String size) {
+        long unit = 1;
+        char suffix = Character.toUpperCase(size.charAt(size.length() - 1));
+
+        switch (suffix) {
+        case 'K':
+            unit = 1024L;
+            break;
+        case 'M':
+            unit = 1024L * 1024;
+            break;
+        case 'G':
+            unit = 1024L * 1024 * 1024;
+            break;
+        default:
+            return Long.parseLong(size);
+        }
+
+        return Long.parseLong(size.substring(0, size.length() - 1)) * unit;
+    }
+
+    /**
+     * Generate a movie.  A kind of movie from the Corpus may be given as a
+     * starting point for the other options.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: CorpusGenerator [-kind small|shapes|fonts|bitmaps|actions] [-seed n]");
+            System.err.println("         [-size n[K|M|G]] [-frames n] [-placements n] [-shapes n edges]");
+            System.err.println("         [-clips n frames] [-fonts n glyphs edges] [-texts n length]");
+            System.err.println("         [-bitmaps n size] [-sound n blocksize] [-actions bytes]");
+            System.err.println("         [-compressed] out.swf");
+            System.exit(1);
+        }
+
+        CorpusGenerator generator = new CorpusGenerator();
+        long size = 0;
+        int i = 0;
+
+        for (; i < args.length - 1; i++) {
+            String arg = args[i];
+
+            if (arg.equals("-kind")) {
+                generator = Corpus.generator(args[++i]);
+            } else if (arg.equals("-seed")) {
+                generator.setSeed(Long.parseLong(args[++i]));
+            } else if (arg.equals("-size")) {
+                size = parseSize(args[++i]);
+            } else if (arg.equals("-frames")) {
+                generator.setFrames(Integer.parseInt(args[++i]));
+            } else if (arg.equals("-placements")) {
+                generator.setPlacements(Integer.parseInt(args[++i]));
+            } else if (arg.equals("-shapes")) {
+                generator.setShapes(Integer.parseInt(args[++i]), Integer.parseInt(args[++i]));
+            } else if (arg.equals("-clips")) {
+                generator.setClips(Integer.parseInt(args[++i]), Integer.parseInt(args[++i]));
+            } else if (arg.equals("-fonts")) {
+                generator.setFonts(Integer.parseInt(args[++i]), Integer.parseInt(args[++i]), Integer.parseInt(args[++i]));
+            } else if (arg.equals("-texts")) {
+                generator.setTexts(Integer.parseInt(args[++i]), Integer.parseInt(args[++i]));
+            } else if (arg.equals("-bitmaps")) {
+                generator.setBitmaps(Integer.parseInt(args[++i]), Integer.parseInt(args[++i]));
+            } else if (arg.equals("-sound")) {
+                generator.setSoundBlocks(Integer.parseInt(args[++i]), Integer.parseInt(args[++i]));
+            } else if (arg.equals("-actions")) {
+                generator.setActionBytes(Integer.parseInt(args[++i]));
+            } else if (arg.equals("-compressed")) {
+                generator.setCompressed(true);
+            } else {
+                throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+
+        if (size > 0) {
+            generator.fitToSize(size);
+        }
+
+        generator.write(args[i]);
+    }
+}
@@ -0,0 +1,135 @@
+package com.anotherbigidea.flash.benchmark;
+
+import java.io.IOException;
+
+import com.anotherbigidea.flash.interfaces.SWFActions;
+import com.anotherbigidea.flash.interfaces.SWFShape;
+import com.anotherbigidea.flash.interfaces.SWFTagTypes;
+import com.anotherbigidea.flash.interfaces.SWFText;
+import com.anotherbigidea.flash.interfaces.SWFVectors;
+import com.anotherbigidea.flash.structs.AlphaTransform;
+import com.anotherbigidea.flash.structs.Color;
+import com.anotherbigidea.flash.structs.Matrix;
+import com.anotherbigidea.flash.structs.Rect;
+import com.anotherbigidea.flash.writers.SWFActionsImpl;
+import com.anotherbigidea.flash.writers.SWFTagTypesImpl;
+
+
+/**
+ * A sink that still asks for the contents of shapes, fonts, text, actions
+ * and sprites, so that TagParser parses them rather than skipping them.
+ */
+public class NullTagTypes extends SWFTagTypesImpl {
+    public NullTagTypes() {
+        super(null);
+    }
+
+    public SWFShape tagDefineShape(int id, Rect outline) throws IOException {
+        return NullShape.INSTANCE;
+    }
+
+    public SWFShape tagDefineShape2(int id, Rect outline) throws IOException {
+        return NullShape.INSTANCE;
+    }
+
+    public SWFShape tagDefineShape3(int id, Rect outline) throws IOException {
+        return NullShape.INSTANCE;
+    }
+
+    public SWFVectors tagDefineFont(int id, int numGlyphs) throws IOException {
+        return NullShape.INSTANCE;
+    }
+
+    public SWFVectors tagDefineFont2(int id, int flags, String name, int numGlyphs, int ascent, int descent, int leading, int[] codes, int[] advances, Rect[] bounds, int[] kernCodes1, int[] kernCodes2, int[] kernAdjustments) throws IOException {
+        return NullShape.INSTANCE;
+    }
+
+    public SWFText tagDefineText(int id, Rect bounds, Matrix matrix) throws IOException {
+        return NullText.INSTANCE;
+    }
+
+    public SWFText tagDefineText2(int id, Rect bounds, Matrix matrix) throws IOException {
+        return NullText.INSTANCE;
+    }
+
+    public SWFActions tagDoAction() throws IOException {
+        return new SWFActionsImpl();
+    }
+
+    public SWFActions tagDoInitAction(int spriteId) throws IOException {
+        return new SWFActionsImpl();
+    }
+
+    public SWFActions tagPlaceObject2(boolean isMove, int clipDepth, int depth, int charId, Matrix matrix, AlphaTransform cxform, int ratio, String name, int clipActionFlags) throws IOException {
+        return new SWFActionsImpl();
+    }
+
+    public SWFTagTypes tagDefineSprite(int id) throws IOException {
+        return this;
+    }
+
+    /**
+     * A shape that ignores everything
+     */
+    public static class NullShape implements SWFShape {
+        public static final NullShape INSTANCE = new NullShape();
+
+        public void done() {
+        }
+
+        public void line(int dx, int dy) {
+        }
+
+        public void curve(int cx, int cy, int dx, int dy) {
+        }
+
+        public void move(int x, int y) {
+        }
+
+        public void setFillStyle0(int styleIndex) {
+        }
+
+        public void setFillStyle1(int styleIndex) {
+        }
+
+        public void setLineStyle(int styleIndex) {
+        }
+
+        public void defineFillStyle(Color color) {
+        }
+
+        public void defineFillStyle(Matrix matrix, int[] ratios, Color[] colors, boolean radial) {
+        }
+
+        public void defineFillStyle(int bitmapId, Matrix matrix, boolean clipped) {
+        }
+
+        public void defineLineStyle(int width, Color color) {
+        }
+    }
+
+    /**
+     * Text that ignores everything
+     */
+    public static class NullText implements SWFText {
+        public static final NullText INSTANCE = new NullText();
+
+        public void font(int fontId, int textHeight) {
+        }
+
+        public void color(Color color) {
+        }
+
+        public void setX(int x) {
+        }
+
+        public void setY(int y) {
+        }
+
+        public void text(int[] glyphIndices, int[] glyphAdvances) {
+        }
+
+        public void done() {
+        }
+    }
+}
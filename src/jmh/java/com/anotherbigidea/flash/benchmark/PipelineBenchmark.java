@@ -0,0 +1,147 @@
+package com.anotherbigidea.flash.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.anotherbigidea.flash.movie.Movie;
+import com.anotherbigidea.flash.readers.MovieBuilder;
+import com.anotherbigidea.flash.readers.ParallelTagParser;
+import com.anotherbigidea.flash.readers.SWFReader;
+import com.anotherbigidea.flash.readers.SWFRecorder;
+import com.anotherbigidea.flash.readers.SWFSaxParser;
+import com.anotherbigidea.flash.readers.TagParser;
+import com.anotherbigidea.flash.writers.SWFSaxWriter;
+import com.anotherbigidea.flash.writers.SWFWriter;
+import com.anotherbigidea.flash.writers.TagWriter;
+import com.anotherbigidea.util.xml.XMLWriter;
+
+
+/**
+ * The main paths through the library, over each kind of movie in the
+ * Corpus:
+ *
+ * parse    - SWFReader to TagParser to a sink that ignores everything
+ * build    - SWFReader to TagParser to MovieBuilder
+ * buildParallel - SWFReader to ParallelTagParser to MovieBuilder
+ * replay   - SWFRecorder (recorded by TagParser) to a sink that ignores everything
+ * write    - Movie to TagWriter to SWFWriter
+ * toXML    - SWFSaxParser to XMLWriter
+ * fromXML  - SAX parser to SWFSaxWriter to TagWriter to SWFWriter
+ *
+ * SWFSaxWriter matches elements by local name, so the SAX parser must be
+ * namespace aware.
+ *
+ * mvn -P jmh package && java -jar target/benchmarks.jar PipelineBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PipelineBenchmark {
+    @Param({ Corpus.SMALL, Corpus.SHAPES, Corpus.FONTS, Corpus.BITMAPS, Corpus.ACTIONS })
+    public String kind;
+
+    protected byte[] swf;
+    protected byte[] xml;
+    protected Movie movie;
+    protected SWFRecorder recorder;
+    protected ByteArrayOutputStream bout;
+    protected SAXParser saxParser;
+
+    @Setup
+    public void setup() throws IOException, SAXException, ParserConfigurationException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        saxParser = factory.newSAXParser();
+
+        swf = Corpus.create(kind);
+        bout = new ByteArrayOutputStream(swf.length * 4);
+
+        movie = build();
+
+        recorder = new SWFRecorder();
+        new SWFReader(new TagParser(recorder), ByteBuffer.wrap(swf)).readFile();
+
+        toXML();
+        xml = bout.toByteArray();
+    }
+
+    @Benchmark
+    public void parse() throws IOException {
+        SWFReader reader = new SWFReader(new TagParser(new NullTagTypes()), ByteBuffer.wrap(swf));
+        reader.readFile();
+    }
+
+    @Benchmark
+    public Movie build() throws IOException {
+        MovieBuilder builder = new MovieBuilder();
+        SWFReader reader = new SWFReader(new TagParser(builder), ByteBuffer.wrap(swf));
+        reader.readFile();
+
+        return builder.getMovie();
+    }
+
+    @Benchmark
+    public Movie buildParallel() throws IOException {
+        MovieBuilder builder = new MovieBuilder();
+        SWFReader reader = new SWFReader(new ParallelTagParser(builder), ByteBuffer.wrap(swf));
+        reader.readFile();
+
+        return builder.getMovie();
+    }
+
+    @Benchmark
+    public void replay() throws IOException {
+        recorder.replay(new NullTagTypes());
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        bout.reset();
+        movie.write(bout, false);
+
+        return bout.size();
+    }
+
+    @Benchmark
+    public int toXML() throws IOException, SAXException {
+        bout.reset();
+        SWFSaxParser parser = new SWFSaxParser();
+        parser.setContentHandler(new XMLWriter(bout));
+        parser.parse(new InputSource(new ByteArrayInputStream(swf)));
+
+        return bout.size();
+    }
+
+    @Benchmark
+    public int fromXML() throws IOException, SAXException {
+        bout.reset();
+        SWFSaxWriter saxwriter = new SWFSaxWriter(new TagWriter(new SWFWriter(bout)));
+        saxParser.parse(new ByteArrayInputStream(xml), saxwriter);
+
+        return bout.size();
+    }
+}
@@ -0,0 +1,125 @@
+package com.anotherbigidea.flash.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.readers.SWFReader;
+import com.anotherbigidea.flash.readers.TagParser;
+import com.anotherbigidea.io.BufferInStream;
+import com.anotherbigidea.io.InStream;
+
+
+/**
+ * Null terminated string reading - InStream.readString() and
+ * readStringBytes() over a run of identifiers, and TagParser over the
+ * action-heavy movie of the Corpus, where most of the strings are read.
+ *
+ * nonAscii is the percentage of strings with characters outside ASCII.
+ *
+ * mvn -P jmh package && java -jar target/benchmarks.jar StringBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StringBenchmark {
+    @Param({ SWFConstants.STRING_ENCODING_MX, "Windows-31J" })
+    public String encoding;
+
+    @Param({ "0", "10" })
+    public int nonAscii;
+
+    @Param({ "10000" })
+    public int strings;
+
+    protected byte[] packed;
+    protected byte[] movie;
+
+    protected static final String[] WORDS = {
+        "_root", "_parent", "this", "gotoAndPlay", "onEnterFrame", "length", "push", "counter", "myClip_mc", "http://www.example.com/"
+    };
+
+    protected static final String[] NON_ASCII = {
+        "メニュー", "次へ", "café", "スコア"
+    };
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+
+        for (int i = 0; i < strings; i++) {
+            String string = WORDS[random.nextInt(WORDS.length)] + i;
+
+            if (random.nextInt(100) < nonAscii) {
+                string = NON_ASCII[random.nextInt(NON_ASCII.length)] + string;
+            }
+
+            bout.write(string.getBytes(encoding));
+            bout.write(0);
+        }
+
+        packed = bout.toByteArray();
+        movie = Corpus.create(Corpus.ACTIONS);
+    }
+
+    @Benchmark
+    public int readStringStream() throws IOException {
+        InStream in = new InStream(new ByteArrayInputStream(packed));
+        int sum = 0;
+
+        for (int i = 0; i < strings; i++) {
+            sum += in.readString(encoding).length();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int readStringBuffer() throws IOException {
+        InStream in = new BufferInStream(packed);
+        int sum = 0;
+
+        for (int i = 0; i < strings; i++) {
+            sum += in.readString(encoding).length();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int readStringBytesStream() throws IOException {
+        InStream in = new InStream(new ByteArrayInputStream(packed));
+        int sum = 0;
+
+        for (int i = 0; i < strings; i++) {
+            sum += in.readStringBytes().length;
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public void parseActions() throws IOException {
+        new SWFReader(new TagParser(new NullTagTypes()), ByteBuffer.wrap(movie)).readFile();
+    }
+}
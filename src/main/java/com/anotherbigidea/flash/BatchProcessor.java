@@ -0,0 +1,574 @@
+package com.anotherbigidea.flash;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.anotherbigidea.flash.interfaces.SWFFileSignature;
+import com.anotherbigidea.flash.interfaces.SWFTagSlices;
+import com.anotherbigidea.flash.interfaces.SWFTags;
+import com.anotherbigidea.flash.readers.SWFReader;
+import com.anotherbigidea.flash.readers.SWFSaxParser;
+import com.anotherbigidea.flash.readers.TagParser;
+import com.anotherbigidea.flash.writers.SWFTagDumper;
+import com.anotherbigidea.flash.writers.SWFWriter;
+import com.anotherbigidea.flash.writers.TagWriter;
+import com.anotherbigidea.util.xml.XMLWriter;
+
+
+/**
+ * Runs a pipeline of steps over many SWF files in one JVM.
+ *
+ * Files are read into memory and passed through the steps in order.  A step
+ * may replace the movie (decompress, compress, unprotect, rewrite) or write
+ * a report next to it (dump, xml).  If any step replaced the movie then the
+ * result is written to the output directory under the original name.
+ * Files found under a directory keep their path relative to that directory,
+ * so files of the same name in different directories do not overwrite each
+ * other.  Two inputs that would still write to the same output - the same
+ * name given twice, say - are reported as failures.
+ *
+ * The files are processed by a pool of worker threads - or by virtual
+ * threads where the JVM has them.  Only a bounded number of files are
+ * queued ahead of the workers, so a long file list is read no faster than
+ * it is processed.  Each file has a time limit, which is checked before
+ * every top-level tag.  A tag that has started is not interrupted - a large
+ * sprite, whose tags are parsed as part of its DefineSprite tag, or a large
+ * bitmap can take a file past its limit by as long as that tag takes.  A
+ * failure in one file, including a stack overflow or running out of memory,
+ * is reported and the batch carries on.
+ *
+ * java com.anotherbigidea.flash.BatchProcessor [options] steps (dir|file|@list|-)...
+ *
+ *   steps       comma separated - decompress, compress, unprotect, rewrite, dump, xml
+ *   -out dir    where results are written (default is the current directory)
+ *   -threads n  number of workers (default is the number of processors)
+ *   -queue n    number of files waiting for a worker (default is 4 per worker)
+ *   -timeout s  seconds allowed for each file, checked between top-level
+ *               tags (default is no limit)
+ *   -virtual    use a virtual thread per file, if the JVM supports them
+ *
+ * A directory is searched for .swf files, @list reads file names from a
+ * file and - reads file names from standard input.
+ */
+public class BatchProcessor {
+    /**
+     * One stage of the pipeline
+     */
+    public static interface Step {
+        /**
+         * @param file the file that the movie was read from
+         * @return the new movie - or the same array if it is unchanged
+         */
+        public byte[] process(File file, byte[] swf) throws IOException;
+    }
+
+    protected List<Step> mSteps = new ArrayList<Step>();
+    protected File mOutputDir = new File(".");
+    protected int mThreads = Runtime.getRuntime().availableProcessors();
+    protected int mQueueSize = -1;
+    protected long mTimeoutMillis = 0;
+    protected boolean mVirtualThreads;
+    protected PrintStream mLog = System.err;
+
+    // totals for the report
+    protected AtomicInteger mFiles = new AtomicInteger();
+    protected AtomicInteger mFailures = new AtomicInteger();
+    protected AtomicInteger mTimeouts = new AtomicInteger();
+    protected AtomicLong mBytesIn = new AtomicLong();
+    protected AtomicLong mBytesOut = new AtomicLong();
+
+    // output files in use - output to input
+    protected ConcurrentHashMap<File, File> mOutputs = new ConcurrentHashMap<File, File>();
+
+    // path of the output for the current thread's file, relative to the
+    // output directory
+    protected static final ThreadLocal<String> sOutputPath = new ThreadLocal<String>();
+
+    protected ExecutorService mExecutor;
+    protected Semaphore mSlots;
+    protected long mStartTime;
+
+    public void addStep(Step step) {
+        mSteps.add(step);
+    }
+
+    /**
+     * Add a step by name - decompress, compress, unprotect, rewrite, dump or
+     * xml
+     */
+    public void addStep(String name) {
+        addStep(createStep(name));
+    }
+
+    public void setOutputDir(File dir) {
+        mOutputDir = dir;
+    }
+
+    public void setThreads(int threads) {
+        mThreads = Math.max(threads, 1);
+    }
+
+    /**
+     * @param size the number of files that may wait for a worker
+     */
+    public void setQueueSize(int size) {
+        mQueueSize = size;
+    }
+
+    /**
+     * @param millis the time allowed for each file - 0 for no limit.  This is
+     *        checked between top-level tags, so a single large tag may run
+     *        past it.
+     */
+    public void setTimeout(long millis) {
+        mTimeoutMillis = millis;
+    }
+
+    /**
+     * Use a virtual thread per file instead of a pool.  This falls back to
+     * the pool if the JVM does not have virtual threads.
+     */
+    public void setVirtualThreads(boolean virtual) {
+        mVirtualThreads = virtual;
+    }
+
+    public void setLog(PrintStream log) {
+        mLog = log;
+    }
+
+    /**
+     * Start the workers
+     */
+    public void start() {
+        int queueSize = (mQueueSize >= 0) ? mQueueSize : mThreads * 4;
+
+        mExecutor = mVirtualThreads ? newVirtualThreadExecutor() : null;
+
+        if (mExecutor != null) {
+            //nothing waits for a virtual thread - so only let as many files
+            //run at once as there would be workers
+            mSlots = new Semaphore(mThreads);
+        } else {
+            mExecutor = Executors.newFixedThreadPool(mThreads);
+            mSlots = new Semaphore(mThreads + queueSize);
+        }
+
+        mStartTime = System.nanoTime();
+    }
+
+    /**
+     * @return null if the JVM does not support virtual threads
+     */
+    protected ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            mLog.println("virtual threads are not available - using " + mThreads + " threads");
+            return null;
+        }
+    }
+
+    /**
+     * Queue a file, with output under its own name - blocks while the queue
+     * is full
+     */
+    public void submit(File file) throws InterruptedException {
+        submit(file, file.getName());
+    }
+
+    /**
+     * Queue a file - blocks while the queue is full
+     *
+     * @param path the path of the output, relative to the output directory,
+     *        with the .swf suffix that the output suffix replaces
+     */
+    public void submit(final File file, final String path) throws InterruptedException {
+        mSlots.acquire();
+
+        mExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    process(file, path);
+                } finally {
+                    mSlots.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Queue a file, or all the .swf files under a directory
+     */
+    public void submitAll(File file) throws IOException, InterruptedException {
+        if (!file.isDirectory()) {
+            submit(file);
+            return;
+        }
+
+        Path root = file.toPath();
+
+        try (Stream<Path> paths = Files.walk(root)) {
+            Iterator<Path> swfs = paths.filter(path -> path.toString().toLowerCase().endsWith(".swf")).sorted().iterator();
+
+            while (swfs.hasNext()) {
+                Path swf = swfs.next();
+                submit(swf.toFile(), root.relativize(swf).toString());
+            }
+        }
+    }
+
+    /**
+     * Queue the files named in a list, one per line
+     */
+    public void submitList(BufferedReader list) throws IOException, InterruptedException {
+        String line;
+
+        while ((line = list.readLine()) != null) {
+            line = line.trim();
+
+            if (line.length() > 0) {
+                submitAll(new File(line));
+            }
+        }
+    }
+
+    /**
+     * Wait for the queued files to finish and print the report
+     */
+    public void finish() throws InterruptedException {
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        report();
+    }
+
+    /**
+     * Run the steps over one file
+     *
+     * @param path the path of the output - see submit(File, String)
+     */
+    protected void process(File file, String path) {
+        long start = System.nanoTime();
+        sOutputPath.set(path);
+
+        try {
+            byte[] swf = Files.readAllBytes(file.toPath());
+            mBytesIn.addAndGet(swf.length);
+
+            byte[] original = swf;
+            Deadline.set((mTimeoutMillis > 0) ? start + TimeUnit.MILLISECONDS.toNanos(mTimeoutMillis) : 0);
+
+            for (Step step : mSteps) {
+                swf = step.process(file, swf);
+            }
+
+            if (swf != original) {
+                write(outputFile(file, ".swf"), swf);
+            }
+
+            mFiles.incrementAndGet();
+        } catch (InterruptedIOException e) {
+            mTimeouts.incrementAndGet();
+            mLog.println("TIMEOUT " + file + ": " + e.getMessage());
+        } catch (Exception | StackOverflowError | OutOfMemoryError e) {
+            //deeply nested or huge movies fail on their own - the stack and
+            //the file's buffers are unwound by now, so the batch carries on
+            mFailures.incrementAndGet();
+            mLog.println("FAILED " + file + ": " + e);
+        } finally {
+            Deadline.set(0);
+            sOutputPath.remove();
+        }
+    }
+
+    /**
+     * Print the totals and the throughput
+     */
+    public void report() {
+        double seconds = Math.max(System.nanoTime() - mStartTime, 1) / 1e9;
+        int files = mFiles.get();
+        long bytes = mBytesIn.get();
+
+        mLog.println(files + " files processed, " + mFailures.get() + " failed, " + mTimeouts.get() + " timed out");
+        mLog.println(bytes + " bytes read, " + mBytesOut.get() + " bytes written in " + String.format("%.2f", seconds) + "s");
+        mLog.println(String.format("%.1f files/s, %.2f MB/s", files / seconds, bytes / seconds / (1024 * 1024)));
+    }
+
+    /**
+     * The output for the file that the current thread is processing - at
+     * the path it was submitted with, under the output directory.  Missing
+     * directories are created.
+     *
+     * @param suffix replaces the .swf suffix of the input
+     * @throws IOException if the output would overwrite the input or the
+     *         output of another input
+     */
+    protected File outputFile(File input, String suffix) throws IOException {
+        String name = sOutputPath.get();
+
+        if (name == null) {
+            name = input.getName();
+        }
+
+        if (name.toLowerCase().endsWith(".swf")) {
+            name = name.substring(0, name.length() - 4);
+        }
+
+        File output = new File(mOutputDir, name + suffix).getCanonicalFile();
+        File canonicalInput = input.getCanonicalFile();
+
+        if (output.equals(canonicalInput)) {
+            throw new IOException("output would overwrite the input - use -out");
+        }
+
+        File other = mOutputs.putIfAbsent(output, canonicalInput);
+        if (other != null && !other.equals(canonicalInput)) {
+            throw new IOException("output " + output + " is already written for " + other);
+        }
+
+        File dir = output.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("cannot create " + dir);
+        }
+
+        return output;
+    }
+
+    protected void write(File file, byte[] data) throws IOException {
+        Files.write(file.toPath(), data);
+        mBytesOut.addAndGet(data.length);
+    }
+
+    /**
+     * Read a movie through a TagParser
+     */
+    protected static void parse(byte[] swf, TagParser parser) throws IOException {
+        new SWFReader(new Deadline(parser), ByteBuffer.wrap(swf)).readFile();
+    }
+
+    /**
+     * Copy a movie, tag by tag, through an optional filter
+     *
+     * @param compressed null to keep the compression of the input
+     */
+    protected static byte[] copy(byte[] swf, Boolean compressed, boolean unprotect) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(swf.length * 2);
+        SWFWriter writer = new SWFWriter(bout);
+
+        if (compressed != null) {
+            writer.setCompression(compressed.booleanValue());
+        }
+
+        SWFTags tags = unprotect ? new Unprotector(writer) : writer;
+
+        new SWFReader(new Deadline(tags), ByteBuffer.wrap(swf)).readFile();
+        return bout.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no step with the name
+     */
+    public Step createStep(String name) {
+        if (name.equals("decompress")) {
+            return new Step() {
+                public byte[] process(File file, byte[] swf) throws IOException {
+                    return copy(swf, Boolean.FALSE, false);
+                }
+            };
+        }
+
+        if (name.equals("compress")) {
+            return new Step() {
+                public byte[] process(File file, byte[] swf) throws IOException {
+                    return copy(swf, Boolean.TRUE, false);
+                }
+            };
+        }
+
+        if (name.equals("unprotect")) {
+            return new Step() {
+                public byte[] process(File file, byte[] swf) throws IOException {
+                    return copy(swf, null, true);
+                }
+            };
+        }
+
+        if (name.equals("rewrite")) {
+            return new Step() {
+                public byte[] process(File file, byte[] swf) throws IOException {
+                    ByteArrayOutputStream bout = new ByteArrayOutputStream(swf.length * 2);
+                    parse(swf, new TagParser(new TagWriter(new SWFWriter(bout))));
+                    return bout.toByteArray();
+                }
+            };
+        }
+
+        if (name.equals("dump")) {
+            return new Step() {
+                public byte[] process(File file, byte[] swf) throws IOException {
+                    ByteArrayOutputStream bout = new ByteArrayOutputStream(swf.length * 4);
+                    SWFTagDumper dumper = new SWFTagDumper(bout, false, true);
+                    parse(swf, new TagParser(dumper));
+                    dumper.flush();
+
+                    write(outputFile(file, ".txt"), bout.toByteArray());
+                    return swf;
+                }
+            };
+        }
+
+        if (name.equals("xml")) {
+            return new Step() {
+                public byte[] process(File file, byte[] swf) throws IOException {
+                    File output = outputFile(file, ".xml");
+
+                    try (OutputStream out = new FileOutputStream(output)) {
+                        SWFSaxParser saxParser = new SWFSaxParser();
+                        saxParser.setContentHandler(new XMLWriter(out));
+                        parse(swf, new TagParser(saxParser));
+                    }
+
+                    mBytesOut.addAndGet(output.length());
+                    return swf;
+                }
+            };
+        }
+
+        throw new IllegalArgumentException("unknown step: " + name);
+    }
+
+    /**
+     * Passes tags through, failing once the time for the current file has
+     * run out
+     */
+    protected static class Deadline implements SWFTagSlices, SWFFileSignature {
+        protected static final ThreadLocal<long[]> sDeadline = new ThreadLocal<long[]>() {
+            protected long[] initialValue() {
+                return new long[1];
+            }
+        };
+
+        protected SWFTags mTags;
+        protected long mDeadline;
+
+        public Deadline(SWFTags tags) {
+            mTags = tags;
+            mDeadline = sDeadline.get()[0];
+        }
+
+        /**
+         * @param deadline System.nanoTime() at which the current thread's
+         *        file times out - 0 for no limit
+         */
+        public static void set(long deadline) {
+            sDeadline.get()[0] = deadline;
+        }
+
+        protected void check() throws IOException {
+            if (mDeadline != 0 && System.nanoTime() - mDeadline > 0) {
+                throw new InterruptedIOException("time limit reached");
+            }
+        }
+
+        public void signature(String sig) {
+            if (mTags instanceof SWFFileSignature) {
+                ((SWFFileSignature) mTags).signature(sig);
+            }
+        }
+
+        public void header(int version, long length, int twipsWidth, int twipsHeight, int frameRate, int frameCount) throws IOException {
+            check();
+            mTags.header(version, length, twipsWidth, twipsHeight, frameRate, frameCount);
+        }
+
+        public void tag(int tagType, boolean longTag, byte[] contents) throws IOException {
+            check();
+            mTags.tag(tagType, longTag, contents);
+        }
+
+        public void tag(int tagType, boolean longTag, byte[] buffer, int offset, int length) throws IOException {
+            check();
+
+            if (mTags instanceof SWFTagSlices) {
+                ((SWFTagSlices) mTags).tag(tagType, longTag, buffer, offset, length);
+            } else {
+                mTags.tag(tagType, longTag, Arrays.copyOfRange(buffer, offset, offset + length));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BatchProcessor processor = new BatchProcessor();
+        int i = 0;
+
+        for (; i < args.length && args[i].startsWith("-") && args[i].length() > 1; i++) {
+            String option = args[i];
+
+            if (option.equals("-out")) {
+                processor.setOutputDir(new File(args[++i]));
+            } else if (option.equals("-threads")) {
+                processor.setThreads(Integer.parseInt(args[++i]));
+            } else if (option.equals("-queue")) {
+                processor.setQueueSize(Integer.parseInt(args[++i]));
+            } else if (option.equals("-timeout")) {
+                processor.setTimeout((long) (Double.parseDouble(args[++i]) * 1000));
+            } else if (option.equals("-virtual")) {
+                processor.setVirtualThreads(true);
+            } else {
+                throw new IllegalArgumentException("unknown option: " + option);
+            }
+        }
+
+        if (i >= args.length) {
+            System.err.println("usage: BatchProcessor [-out dir] [-threads n] [-queue n] [-timeout s] [-virtual] steps (dir|file|@list|-)...");
+            System.err.println("steps: decompress, compress, unprotect, rewrite, dump, xml - comma separated");
+            return;
+        }
+
+        for (String step : args[i++].split(",")) {
+            processor.addStep(step.trim());
+        }
+
+        processor.mOutputDir.mkdirs();
+        processor.start();
+
+        for (; i < args.length; i++) {
+            String arg = args[i];
+
+            if (arg.equals("-")) {
+                processor.submitList(new BufferedReader(new InputStreamReader(System.in)));
+            } else if (arg.startsWith("@")) {
+                try (BufferedReader list = Files.newBufferedReader(Paths.get(arg.substring(1)))) {
+                    processor.submitList(list);
+                }
+            } else {
+                processor.submitAll(new File(arg));
+            }
+        }
+
+        processor.finish();
+    }
+}
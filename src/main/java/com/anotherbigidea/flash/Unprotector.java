@@ -37,7 +37,9 @@ package com.anotherbigidea.flash;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
+import com.anotherbigidea.flash.interfaces.SWFTagSlices;
 import com.anotherbigidea.flash.interfaces.SWFTags;
 import com.anotherbigidea.flash.readers.SWFReader;
 import com.anotherbigidea.flash.writers.SWFWriter;
@@ -48,7 +50,7 @@ import com.anotherbigidea.flash.writers.SWFWriter;
  * First arg is input filename.
  * Second arg is output filename.
  */
-public class Unprotector implements SWFTags {
+public class Unprotector implements SWFTagSlices {
     protected SWFTags writer;
 
     public Unprotector(SWFTags writer) {
@@ -73,6 +75,21 @@ public class Unprotector implements SWFTags {
         writer.tag(tagType, longTag, contents);
     }
 
+    /**
+     * Interface SWFTagSlices
+     */
+    public void tag(int tagType, boolean longTag, byte[] buffer, int offset, int length) throws IOException {
+        if (tagType == SWFConstants.TAG_PROTECT) {
+            return; //skip protect tag
+        }
+
+        if (writer instanceof SWFTagSlices) {
+            ((SWFTagSlices) writer).tag(tagType, longTag, buffer, offset, length);
+        } else {
+            writer.tag(tagType, longTag, Arrays.copyOfRange(buffer, offset, offset + length));
+        }
+    }
+
     public static void main(String[] args) throws IOException {
         FileInputStream in = new FileInputStream(args[0]);
         FileOutputStream out = new FileOutputStream(args[1]);
@@ -0,0 +1,32 @@
+package com.anotherbigidea.flash.interfaces;
+
+import java.io.IOException;
+
+
+/**
+ * Optional companion to the SWFTagTypes interface for receiving lossless
+ * bitmaps as packed int ARGB pixels rather than a Color[] color table and
+ * the raw pixel data.
+ *
+ * TagParser checks for this interface and passes DefineBitsLossless and
+ * DefineBitsLossless2 tags through it when it is implemented.  The pixels
+ * are decoded straight from the tag data - see LosslessRaster for the
+ * layout.  TagWriter.writeBitsLossless(..) writes them back.  TagWriter does
+ * not implement this interface, so copying a movie keeps the color tables
+ * and pixel data of its bitmaps as they are.
+ *
+ * @see com.anotherbigidea.flash.structs.LosslessRaster
+ */
+public interface SWFLosslessRasters extends SWFTagTypes {
+    /**
+     * As SWFTagTypes.tagDefineBitsLossless(..) and tagDefineBitsLossless2(..)
+     *
+     * @param format the format of the tag data - one of
+     *        SWFConstants.BITMAP_FORMAT_8_BIT, BITMAP_FORMAT_16_BIT and
+     *        BITMAP_FORMAT_32_BIT
+     * @param hasAlpha true for DefineBitsLossless2
+     * @param argb width * height pixels, row by row - premultiplied by the
+     *        alpha, which is 0xff if hasAlpha is false.  Owned by the callee.
+     */
+    public void tagDefineBitsLosslessRaster(int id, int format, int width, int height, boolean hasAlpha, int[] argb) throws IOException;
+}
@@ -0,0 +1,36 @@
+package com.anotherbigidea.flash.interfaces;
+
+import java.io.IOException;
+
+import com.anotherbigidea.flash.structs.AlphaTransform;
+import com.anotherbigidea.flash.structs.Matrix;
+
+
+/**
+ * Optional companion to the SWFSpriteTagTypes interface for receiving
+ * placements without a new Matrix and AlphaTransform for each one.
+ *
+ * TagParser checks for this interface and passes PlaceObject and
+ * PlaceObject2 tags through it when it is implemented.  The matrix and
+ * transform are owned by the caller and are overwritten by the next
+ * placement - they are only valid for the duration of the call and must
+ * not be modified or retained.  Copy them (new Matrix(matrix),
+ * new AlphaTransform(cxform)) if they are needed afterwards.
+ */
+public interface SWFRawPlacements extends SWFSpriteTagTypes {
+    /**
+     * As SWFSpriteTagTypes.tagPlaceObject(..)
+     *
+     * @param matrix reused by the caller
+     * @param cxform reused by the caller - may be null
+     */
+    public void tagPlaceObjectRaw(int charId, int depth, Matrix matrix, AlphaTransform cxform) throws IOException;
+
+    /**
+     * As SWFSpriteTagTypes.tagPlaceObject2(..)
+     *
+     * @param matrix reused by the caller - null if not relevant
+     * @param cxform reused by the caller - null if not relevant
+     */
+    public SWFActions tagPlaceObject2Raw(boolean isMove, int clipDepth, int depth, int charId, Matrix matrix, AlphaTransform cxform, int ratio, String name, int clipActionFlags) throws IOException;
+}
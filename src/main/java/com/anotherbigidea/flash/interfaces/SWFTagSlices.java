@@ -0,0 +1,27 @@
+package com.anotherbigidea.flash.interfaces;
+
+import java.io.IOException;
+
+
+/**
+ * Optional companion to the SWFTags interface for receiving tag bodies as
+ * a region of a shared array rather than as a fresh copy.
+ *
+ * SWFReader, TagParser, SWFWriter and Unprotector check for this interface
+ * and pass tag bodies through it when it is implemented, so that a
+ * pass-through pipeline does not copy each tag.  The array is only valid
+ * for the duration of the call - it must not be modified or retained.
+ * Copy the region if the bytes are needed afterwards.
+ */
+public interface SWFTagSlices extends SWFTags {
+    /**
+     * A SWF tag.
+     *
+     * @param tagType a type of zero (TAG_END) denotes the end of the tags
+     * @param longTag true if the tag header is forced into the long form
+     * @param buffer holds the tag body - may be null if length is zero
+     * @param offset the index of the tag body in the buffer
+     * @param length the length of the tag body
+     */
+    public void tag(int tagType, boolean longTag, byte[] buffer, int offset, int length) throws IOException;
+}
@@ -34,14 +34,15 @@
 
 package com.anotherbigidea.flash.movie;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.anotherbigidea.flash.interfaces.SWFActions;
 import com.anotherbigidea.flash.readers.ActionParser;
 import com.anotherbigidea.flash.writers.ActionWriter;
 import com.anotherbigidea.io.OutStream;
+import com.anotherbigidea.io.SliceOutputStream;
 
 
 /**
@@ -56,7 +57,7 @@ public class Actions extends ActionWriter {
 
         this.conditions = conditions;
         count = 0;
-        bout = new ByteArrayOutputStream();
+        bout = new SliceOutputStream();
         out = new OutStream(bout);
         pushValues = new ArrayList<Object>();
         labels = null;
@@ -98,8 +99,8 @@ public class Actions extends ActionWriter {
         //do nothing
     }
 
-    protected void writeBytes(byte[] bytes) throws IOException {
-        this.bytes = bytes;
+    protected void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        this.bytes = Arrays.copyOfRange(bytes, offset, offset + length);
     }
 
     /**
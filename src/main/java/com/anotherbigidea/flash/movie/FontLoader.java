@@ -42,6 +42,7 @@ import com.anotherbigidea.flash.SWFConstants;
 import com.anotherbigidea.flash.interfaces.SWFTags;
 import com.anotherbigidea.flash.interfaces.SWFVectors;
 import com.anotherbigidea.flash.readers.SWFReader;
+import com.anotherbigidea.flash.readers.TagFilter;
 import com.anotherbigidea.flash.readers.TagParser;
 import com.anotherbigidea.flash.structs.Rect;
 import com.anotherbigidea.flash.writers.SWFTagTypesImpl;
@@ -82,6 +83,8 @@ public class FontLoader extends SWFTagTypesImpl {
         SWFTags swfparser = new TagParser(fontloader);
         SWFReader swfreader = new SWFReader(swfparser, flashMovie);
 
+        //fonts are not defined inside sprites
+        swfreader.setTagFilter(new TagFilter(SWFConstants.TAG_DEFINEFONT2));
         swfreader.readFile();
 
         return fontloader.fontDef;
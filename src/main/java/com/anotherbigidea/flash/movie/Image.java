@@ -37,8 +37,10 @@ package com.anotherbigidea.flash.movie;
 import java.io.IOException;
 import java.io.InputStream;
 
+import com.anotherbigidea.flash.SWFConstants;
 import com.anotherbigidea.flash.interfaces.SWFTagTypes;
 import com.anotherbigidea.flash.structs.Color;
+import com.anotherbigidea.flash.structs.LosslessRaster;
 
 
 /**
@@ -89,6 +91,40 @@ public abstract class Image extends Symbol {
             this.format = format;
         }
 
+        /**
+         * @param argb width * height packed ARGB pixels, row by row -
+         *        premultiplied by the alpha if hasAlpha
+         * @param width in pixels
+         * @param height in pixels
+         * @param hasAlpha whether the image contains alpha values - not for
+         *                 BITMAP_FORMAT_16_BIT
+         * @param format one of: SWFConstants.BITMAP_FORMAT_8_BIT,
+         *                       SWFConstants.BITMAP_FORMAT_16_BIT,
+         *                       SWFConstants.BITMAP_FORMAT_32_BIT
+         * @throws IllegalArgumentException if there are more than 256 colors
+         *         for BITMAP_FORMAT_8_BIT
+         * @see LosslessRaster
+         */
+        public Lossless(int[] argb, int width, int height, boolean hasAlpha, int format) {
+            int[] colorCount = new int[1];
+            byte[] data = LosslessRaster.encode(argb, width, height, format, hasAlpha, colorCount);
+
+            if (format != SWFConstants.BITMAP_FORMAT_32_BIT) {
+                int colorBytes = colorCount[0] * (hasAlpha ? 4 : 3);
+
+                this.colorTable = LosslessRaster.readColorTable(data, colorCount[0], hasAlpha);
+                this.imageData = new byte[data.length - colorBytes];
+                System.arraycopy(data, colorBytes, this.imageData, 0, this.imageData.length);
+            } else {
+                this.imageData = data;
+            }
+
+            this.width = width;
+            this.height = height;
+            this.hasAlpha = hasAlpha;
+            this.format = format;
+        }
+
         public byte[] getImageData() {
             return imageData;
         }
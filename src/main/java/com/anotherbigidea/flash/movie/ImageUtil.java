@@ -39,11 +39,10 @@ import java.awt.image.PixelGrabber;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
 import javax.imageio.ImageIO;
 
 import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.structs.LosslessRaster;
 
 
 /**
@@ -133,6 +132,9 @@ public class ImageUtil {
      * @param format one of: SWFConstants.BITMAP_FORMAT_8_BIT,
      *                       SWFConstants.BITMAP_FORMAT_16_BIT,
      *                       SWFConstants.BITMAP_FORMAT_32_BIT
+     * @param hasAlpha ignored for BITMAP_FORMAT_16_BIT
+     * @throws IllegalArgumentException if there are more than 256 colors
+     *         for BITMAP_FORMAT_8_BIT
      */
     public static Image.Lossless createLosslessImage(java.awt.Image image, int format, boolean hasAlpha) {
         int width = image.getWidth(null);
@@ -148,79 +150,14 @@ public class ImageUtil {
 
         int[] pixelData = (int[]) grabber.getPixels();
 
-        int size = 0;
-        switch (format) {
-        case SWFConstants.BITMAP_FORMAT_8_BIT:
-            size = 1;
-            break;
-        case SWFConstants.BITMAP_FORMAT_16_BIT:
-            size = 2;
-            break;
-        case SWFConstants.BITMAP_FORMAT_32_BIT:default:
-            size = 4;
-            break;
+        if (format == SWFConstants.BITMAP_FORMAT_16_BIT) {
+            hasAlpha = false;
         }
 
-        int rowBytes = width * size;
-        int modulo = rowBytes % 4;
-        if (modulo > 0) {
-            rowBytes += (4 - modulo); //pad up to next 32 bits
+        if (hasAlpha) {
+            LosslessRaster.premultiply(pixelData); //the grabber gives plain ARGB
         }
 
-        //>>>Padding bug spotted by Joachim Sauer        
-        byte[] imageData = new byte[height * rowBytes];
-
-        // color lookup table
-        Map<Integer, Integer> table = (format == SWFConstants.BITMAP_FORMAT_32_BIT) ? null : new HashMap<Integer, Integer>();
-
-        for (int y = 0; y < height; y++) {
-            int rowStart = y * width;
-            int rowByte = y * rowBytes;
-
-            for (int x = 0; x < width; x++) {
-                int pix = pixelData[rowStart + x];
-                int bite = rowByte + (x * size);
-
-                if (format == SWFConstants.BITMAP_FORMAT_32_BIT) {
-                    imageData[bite] = hasAlpha ? (byte) (pix >> 24) : (-1);
-                    imageData[bite + 1] = (byte) ((pix >> 16) & 0xff);
-                    imageData[bite + 2] = (byte) ((pix >> 8) & 0xff);
-                    imageData[bite + 3] = (byte) (pix & 0xff);
-                } else {
-                    // find the pixel color in the lookup table
-                    int idx = table.get(pix);
-
-                    if (format == SWFConstants.BITMAP_FORMAT_8_BIT) {
-                        imageData[bite] = (byte) idx;
-                    } else {
-                        imageData[bite] = (byte) ((idx >> 8) & 0xff);
-                        imageData[bite + 1] = (byte) (idx & 0xff);
-                    }
-                }
-            }
-        }
-
-        com.anotherbigidea.flash.structs.Color[] colors = (format == SWFConstants.BITMAP_FORMAT_32_BIT) ? null : new com.anotherbigidea.flash.structs.Color[table.size()];
-
-        if (colors != null) {
-            for (Integer key : table.keySet()) {
-                int argb = key;
-
-                int index = table.get(key);
-
-                int alpha = (argb >> 24) & 0xff;
-                int red = (argb >> 16) & 0xff;
-                int green = (argb >> 8) & 0xff;
-                int blue = argb & 0xff;
-
-                com.anotherbigidea.flash.structs.Color color = hasAlpha ? new com.anotherbigidea.flash.structs.AlphaColor(red, green, blue, alpha) : new com.anotherbigidea.flash.structs.Color(red, green, blue);
-
-                colors[index] = color;
-
-                System.err.println("Color " + index + " = " + color);
-            }
-        }
-
-        return new Image.Lossless(colors, imageData, width, height, hasAlpha, format);
+        return new Image.Lossless(pixelData, width, height, hasAlpha, format);
     }
 }
@@ -36,6 +36,7 @@ package com.anotherbigidea.flash.movie;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -416,7 +417,12 @@ public class Movie implements TimeLine {
         SWFWriter swfwriter = new SWFWriter(filename);
         TagWriter tagwriter = new TagWriter(swfwriter);
         swfwriter.setCompression(compressed);
-        write(tagwriter);
+        try {
+            write(tagwriter);
+        } catch (IOException | RuntimeException e) {
+            swfwriter.abort();
+            throw e;
+        }
     }
 
     /**
@@ -430,4 +436,22 @@ public class Movie implements TimeLine {
         swfwriter.setCompression(compressed);
         write(tagwriter);
     }
+
+    /**
+     * Write the movie in SWF format to the given channel.  The header is
+     * patched in place rather than holding the movie in memory.
+     *
+     * @param compressed true for Flash MX+ compression.
+     */
+    public void write(SeekableByteChannel channel, boolean compressed) throws IOException {
+        SWFWriter swfwriter = new SWFWriter(channel);
+        TagWriter tagwriter = new TagWriter(swfwriter);
+        swfwriter.setCompression(compressed);
+        try {
+            write(tagwriter);
+        } catch (IOException | RuntimeException e) {
+            swfwriter.abort();
+            throw e;
+        }
+    }
 }
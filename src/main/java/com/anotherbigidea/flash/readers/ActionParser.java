@@ -34,369 +34,548 @@
 
 package com.anotherbigidea.flash.readers;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Stack;
+import java.util.Arrays;
 
 import com.anotherbigidea.flash.SWFActionCodes;
 import com.anotherbigidea.flash.SWFConstants;
 import com.anotherbigidea.flash.interfaces.SWFActions;
+import com.anotherbigidea.io.BufferInStream;
 import com.anotherbigidea.io.InStream;
+import com.anotherbigidea.io.StringCache;
 
 
 /**
- * Parse action bytes and drive a SWFActions interface
+ * Parse action bytes and drive a SWFActions interface.
+ *
+ * A parser may be reused for any number of action arrays, and re-targeted
+ * with reset(..), but it is not thread safe - use one parser per thread
+ * (see ParserPool).
  */
 public class ActionParser implements SWFActionCodes {
+    /** Regions at least this long are parsed in streaming mode */
+    public static final int DEFAULT_STREAMING_LENGTH = 0x10000;
+
     protected SWFActions actions;
     protected int blockDepth = 0;
     protected String mStringEncoding = SWFConstants.STRING_ENCODING_MX;
+    protected StringCache mStringCache;
+
+    // the action array being parsed - a region of the source buffer, or of
+    // mCopy if the source does not expose its array
+    protected byte[] mBytes;
+    protected byte[] mCopy;
+
+    // first pass records, one index per action.  Data is located in mBytes
+    // rather than copied.  The arrays are kept between parses.
+    protected int mCount;
+    protected int[] mOffsets = new int[64]; //byte offset from start of the action array
+    protected int[] mCodes = new int[64];
+    protected int[] mDataStarts = new int[64];
+    protected int[] mDataLengths = new int[64];
+    protected int[] mBlockDepths = new int[64];
+    protected String[] mLabels = new String[64];
+    protected String[] mJumpLabels = new String[64];
+
+    // indices of the jumps and frame waits, and the open blocks
+    protected int[] mJumpers = new int[16];
+    protected int mJumperCount;
+    protected int[] mSkippers = new int[16];
+    protected int mSkipperCount;
+    protected int[] mBlockSizes = new int[16];
+    protected int mBlockCount;
+
+    // streaming mode - state per jump and frame wait rather than per action
+    protected int mStreamingLength = DEFAULT_STREAMING_LENGTH;
+    protected int[] mJumpTargets = new int[16]; //target offsets in jump order
+    protected int[] mTargets = new int[16]; //the targets that are action boundaries
+    protected long[] mSkipKeys = new long[16]; //target index << 32 | frame wait number
+    protected int[] mSkipTargets = new int[16]; //target offsets or -1, by frame wait number
+    protected String[] mLabelNames = new String[16];
+
+    // open addressing map from offset + 1 (0 = empty slot) to the record
+    // index, or to the label number when streaming
+    protected int[] mOffsetKeys = new int[128];
+    protected int[] mOffsetValues = new int[128];
+
+    /** reused for the data of each action */
+    protected BufferInStream mData;
+
+    /**
+     * An unattached parser - call reset(..) before parsing
+     */
+    public ActionParser() {
+    }
 
     public ActionParser(SWFActions actions, int flashVersion) {
+        reset(actions, flashVersion);
+    }
+
+    /**
+     * Re-target the parser at another SWFActions and Flash version.
+     * This also drops any string cache.
+     */
+    public void reset(SWFActions actions, int flashVersion) {
         this.actions = actions;
-        if (flashVersion < SWFConstants.FLASH_MX_VERSION) {
-            mStringEncoding = "Windows-31J"; // SWFConstants.STRING_ENCODING_PRE_MX;
+        blockDepth = 0;
+        mStringCache = null;
+        mStringEncoding = (flashVersion < SWFConstants.FLASH_MX_VERSION) ? "Windows-31J" // SWFConstants.STRING_ENCODING_PRE_MX;
+                                                                         : SWFConstants.STRING_ENCODING_MX;
+    }
+
+    /**
+     * Decode strings through a cache - usually one that is shared with the
+     * rest of the pipeline
+     *
+     * @param cache null for none
+     */
+    public void setStringCache(StringCache cache) {
+        mStringCache = cache;
+    }
+
+    /**
+     * Set the length of input at or above which actions are parsed in
+     * streaming mode.  Streaming holds state per jump rather than per action
+     * but reads the action headers three times instead of once.
+     * Use 0 to always stream or Integer.MAX_VALUE to never stream.
+     */
+    public void setStreamingLength(int length) {
+        mStreamingLength = length;
+    }
+
+    public void parse(byte[] bytes) throws IOException {
+        parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parse the action array at the start of a region of an array
+     *
+     * @return the length of the action array, including the end action
+     */
+    public int parse(byte[] bytes, int offset, int length) throws IOException {
+        blockDepth = 0;
+
+        try {
+            if (length >= mStreamingLength) {
+                return parseStreaming(bytes, offset, offset + length);
+            }
+
+            int size = createRecords(bytes, offset, offset + length);
+            processRecords();
+            return size;
+        } finally {
+            clearRecords();
         }
     }
 
-    public synchronized void parse(byte[] bytes) throws IOException {
-        List<ActionRecord> records = createRecords(bytes);
-        processRecords(records);
+    public void parse(InStream in) throws IOException {
+        if (in instanceof BufferInStream && ((BufferInStream) in).hasArray()) {
+            BufferInStream bin = (BufferInStream) in;
+            int offset = bin.arrayPosition();
+
+            // parse in place and then move past the actions
+            in.skipBytes(parse(bin.array(), offset, bin.available()));
+            return;
+        }
+
+        int size = copyActions(in);
+        parse(mCopy, 0, size);
     }
 
-    public synchronized void parse(InStream in) throws IOException {
-        List<ActionRecord> records = createRecords(in);
-        processRecords(records);
+    /**
+     * Read an action array, up to and including the end action, into mCopy
+     *
+     * @return the size of the action array
+     */
+    protected int copyActions(InStream in) throws IOException {
+        if (mCopy == null) {
+            mCopy = new byte[1024];
+        }
+
+        int size = 0;
+
+        while (true) {
+            int code = in.readUI8();
+            int dataLength = (code >= 0x80) ? in.readUI16() : 0;
+            int needed = size + 3 + dataLength;
+
+            if (needed > mCopy.length) {
+                mCopy = Arrays.copyOf(mCopy, Math.max(needed, mCopy.length * 2));
+            }
+
+            mCopy[size++] = (byte) code;
+
+            if (code >= 0x80) {
+                mCopy[size++] = (byte) dataLength;
+                mCopy[size++] = (byte) (dataLength >> 8);
+                in.readFully(mCopy, size, dataLength);
+                size += dataLength;
+            }
+
+            if (code == 0) {
+                return size;
+            }
+        }
+    }
+
+    /**
+     * Drop the references held by the first pass state
+     */
+    protected void clearRecords() {
+        Arrays.fill(mLabels, 0, mCount, null);
+        Arrays.fill(mJumpLabels, 0, mCount, null);
+        mBytes = null;
+        mCount = 0;
+        mJumperCount = 0;
+        mSkipperCount = 0;
+        mBlockCount = 0;
     }
 
-    protected void processRecords(List<ActionRecord> records) throws IOException {
+    protected void processRecords() throws IOException {
+        if (mData == null) {
+            mData = new BufferInStream(mBytes, 0, 0);
+        }
+
         // process action records
-        for (ActionRecord rec : records) {
+        for (int i = 0; i < mCount; i++) {
 
-            //actions.comment( "depth=" + rec.blockDepth );
-            //detect end of block
-            if (rec.blockDepth < blockDepth) {
+            //actions.comment( "depth=" + mBlockDepths[i] );
+            //detect end of block - nested blocks may end together
+            while (mBlockDepths[i] < blockDepth) {
                 blockDepth--;
                 actions.endBlock();
             }
 
-            if (rec.label != null) {
-                actions.jumpLabel(rec.label);
+            if (mLabels[i] != null) {
+                actions.jumpLabel(mLabels[i]);
             }
 
-            int code = rec.code;
-            byte[] data = rec.data;
+            processAction(mCodes[i], mDataStarts[i], mDataLengths[i], mJumpLabels[i]);
+        }
+    }
 
-            InStream in = ((data != null) && (data.length > 0)) ? new InStream(data) : null;
+    /**
+     * Drive the SWFActions with one action
+     *
+     * @param dataStart the index of the action data in mBytes
+     */
+    protected void processAction(int code, int dataStart, int dataLength, String jumpLabel) throws IOException {
+        InStream in = null;
 
-            switch (code) {
-            case 0:
-                actions.end();
-                break;
+        if (dataLength > 0) {
+            mData.setBuffer(mBytes, dataStart, dataLength);
+            in = mData;
+        }
 
-            // Flash 3
-            case GOTO_FRAME:
-                actions.gotoFrame(in.readUI16());
-                break;
-            case GET_URL:
-                actions.getURL(in.readString(mStringEncoding), in.readString(mStringEncoding));
-                break;
-            case NEXT_FRAME:
-                actions.nextFrame();
-                break;
-            case PREVIOUS_FRAME:
-                actions.prevFrame();
-                break;
-            case PLAY:
-                actions.play();
-                break;
-            case STOP:
-                actions.stop();
-                break;
-            case TOGGLE_QUALITY:
-                actions.toggleQuality();
-                break;
-            case STOP_SOUNDS:
-                actions.stopSounds();
-                break;
-            case WAIT_FOR_FRAME:
-                actions.waitForFrame(in.readUI16(), rec.jumpLabel);
-                break;
-            case SET_TARGET:
-                actions.setTarget(in.readString(mStringEncoding));
-                break;
-            case GOTO_LABEL:
-                actions.gotoFrame(in.readString(mStringEncoding));
-                break;
+        switch (code) {
+        case 0:
+            actions.end();
+            break;
 
-            // Flash 4
-            case IF:
-                actions.ifJump(rec.jumpLabel);
-                break;
-            case JUMP:
-                actions.jump(rec.jumpLabel);
-                break;
-            case WAIT_FOR_FRAME_2:
-                actions.waitForFrame(rec.jumpLabel);
-                break;
-            case POP:
-                actions.pop();
-                break;
-            case PUSH:
-                parsePush(data.length, in);
-                break;
-            case ADD:
-                actions.add();
-                break;
-            case SUBTRACT:
-                actions.substract();
-                break;
-            case MULTIPLY:
-                actions.multiply();
-                break;
-            case DIVIDE:
-                actions.divide();
-                break;
-            case EQUALS:
-                actions.equals();
-                break;
-            case LESS:
-                actions.lessThan();
-                break;
-            case AND:
-                actions.and();
-                break;
-            case OR:
-                actions.or();
-                break;
-            case NOT:
-                actions.not();
-                break;
-            case STRING_EQUALS:
-                actions.stringEquals();
-                break;
-            case STRING_LENGTH:
-                actions.stringLength();
-                break;
-            case STRING_ADD:
-                actions.concat();
-                break;
-            case STRING_EXTRACT:
-                actions.substring();
-                break;
-            case STRING_LESS:
-                actions.stringLessThan();
-                break;
-            case MB_STRING_EXTRACT:
-                actions.substringMB();
-                break;
-            case MB_STRING_LENGTH:
-                actions.stringLengthMB();
-                break;
-            case TO_INTEGER:
-                actions.toInteger();
-                break;
-            case CHAR_TO_ASCII:
-                actions.charToAscii();
-                break;
-            case ASCII_TO_CHAR:
-                actions.asciiToChar();
-                break;
-            case MB_CHAR_TO_ASCII:
-                actions.charMBToAscii();
-                break;
-            case MB_ASCII_TO_CHAR:
-                actions.asciiToCharMB();
-                break;
-            case CALL:
-                actions.call();
-                break;
-            case GET_VARIABLE:
-                actions.getVariable();
-                break;
-            case SET_VARIABLE:
-                actions.setVariable();
-                break;
-            case GET_URL_2:
-                parseGetURL2(in.readUI8());
-                break;
-            case GOTO_FRAME_2:
-                actions.gotoFrame(in.readUI8() != 0);
-                break;
-            case SET_TARGET_2:
-                actions.setTarget();
-                break;
-            case GET_PROPERTY:
-                actions.getProperty();
-                break;
-            case SET_PROPERTY:
-                actions.setProperty();
-                break;
-            case CLONE_SPRITE:
-                actions.cloneSprite();
-                break;
-            case REMOVE_SPRITE:
-                actions.removeSprite();
-                break;
-            case START_DRAG:
-                actions.startDrag();
-                break;
-            case END_DRAG:
-                actions.endDrag();
-                break;
-            case TRACE:
-                actions.trace();
-                break;
-            case GET_TIME:
-                actions.getTime();
-                break;
-            case RANDOM_NUMBER:
-                actions.randomNumber();
-                break;
+        // Flash 3
+        case GOTO_FRAME:
+            actions.gotoFrame(in.readUI16());
+            break;
+        case GET_URL:
+            actions.getURL(readString(in), readString(in));
+            break;
+        case NEXT_FRAME:
+            actions.nextFrame();
+            break;
+        case PREVIOUS_FRAME:
+            actions.prevFrame();
+            break;
+        case PLAY:
+            actions.play();
+            break;
+        case STOP:
+            actions.stop();
+            break;
+        case TOGGLE_QUALITY:
+            actions.toggleQuality();
+            break;
+        case STOP_SOUNDS:
+            actions.stopSounds();
+            break;
+        case WAIT_FOR_FRAME:
+            actions.waitForFrame(in.readUI16(), jumpLabel);
+            break;
+        case SET_TARGET:
+            actions.setTarget(readString(in));
+            break;
+        case GOTO_LABEL:
+            actions.gotoFrame(readString(in));
+            break;
 
-            // Flash 5                         
-            case INIT_ARRAY:
-                actions.initArray();
-                break;
-            case LOOKUP_TABLE:
-                parseLookupTable(in);
-                break;
-            case CALL_FUNCTION:
-                actions.callFunction();
-                break;
-            case CALL_METHOD:
-                actions.callMethod();
-                break;
-            case DEFINE_FUNCTION:
-                parseDefineFunction(in);
-                break;
-            case DEFINE_LOCAL_VAL:
-                actions.defineLocalValue();
-                break;
-            case DEFINE_LOCAL:
-                actions.defineLocal();
-                break;
-            case DEL_VAR:
-                actions.deleteProperty();
-                break;
-            case DEL_THREAD_VARS:
-                actions.deleteThreadVars();
-                break;
-            case ENUMERATE:
-                actions.enumerate();
-                break;
-            case TYPED_EQUALS:
-                actions.typedEquals();
-                break;
-            case GET_MEMBER:
-                actions.getMember();
-                break;
-            case INIT_OBJECT:
-                actions.initObject();
-                break;
-            case CALL_NEW_METHOD:
-                actions.newMethod();
-                break;
-            case NEW_OBJECT:
-                actions.newObject();
-                break;
-            case SET_MEMBER:
-                actions.setMember();
-                break;
-            case GET_TARGET_PATH:
-                actions.getTargetPath();
-                break;
-            case WITH:
-                parseWith(in);
-                break;
-            case DUPLICATE:
-                actions.duplicate();
-                break;
-            case RETURN:
-                actions.returnValue();
-                break;
-            case SWAP:
-                actions.swap();
-                break;
-            case REGISTER:
-                actions.storeInRegister(in.readUI8());
-                break;
-            case MODULO:
-                actions.modulo();
-                break;
-            case TYPEOF:
-                actions.typeOf();
-                break;
-            case TYPED_ADD:
-                actions.typedAdd();
-                break;
-            case TYPED_LESS_THAN:
-                actions.typedLessThan();
-                break;
-            case CONVERT_TO_NUMBER:
-                actions.convertToNumber();
-                break;
-            case CONVERT_TO_STRING:
-                actions.convertToString();
-                break;
-            case INCREMENT:
-                actions.increment();
-                break;
-            case DECREMENT:
-                actions.decrement();
-                break;
-            case BIT_AND:
-                actions.bitAnd();
-                break;
-            case BIT_OR:
-                actions.bitOr();
-                break;
-            case BIT_XOR:
-                actions.bitXor();
-                break;
-            case SHIFT_LEFT:
-                actions.shiftLeft();
-                break;
-            case SHIFT_RIGHT:
-                actions.shiftRight();
-                break;
-            case SHIFT_UNSIGNED:
-                actions.shiftRightUnsigned();
-                break;
+        // Flash 4
+        case IF:
+            actions.ifJump(jumpLabel);
+            break;
+        case JUMP:
+            actions.jump(jumpLabel);
+            break;
+        case WAIT_FOR_FRAME_2:
+            actions.waitForFrame(jumpLabel);
+            break;
+        case POP:
+            actions.pop();
+            break;
+        case PUSH:
+            parsePush(dataLength, in);
+            break;
+        case ADD:
+            actions.add();
+            break;
+        case SUBTRACT:
+            actions.substract();
+            break;
+        case MULTIPLY:
+            actions.multiply();
+            break;
+        case DIVIDE:
+            actions.divide();
+            break;
+        case EQUALS:
+            actions.equals();
+            break;
+        case LESS:
+            actions.lessThan();
+            break;
+        case AND:
+            actions.and();
+            break;
+        case OR:
+            actions.or();
+            break;
+        case NOT:
+            actions.not();
+            break;
+        case STRING_EQUALS:
+            actions.stringEquals();
+            break;
+        case STRING_LENGTH:
+            actions.stringLength();
+            break;
+        case STRING_ADD:
+            actions.concat();
+            break;
+        case STRING_EXTRACT:
+            actions.substring();
+            break;
+        case STRING_LESS:
+            actions.stringLessThan();
+            break;
+        case MB_STRING_EXTRACT:
+            actions.substringMB();
+            break;
+        case MB_STRING_LENGTH:
+            actions.stringLengthMB();
+            break;
+        case TO_INTEGER:
+            actions.toInteger();
+            break;
+        case CHAR_TO_ASCII:
+            actions.charToAscii();
+            break;
+        case ASCII_TO_CHAR:
+            actions.asciiToChar();
+            break;
+        case MB_CHAR_TO_ASCII:
+            actions.charMBToAscii();
+            break;
+        case MB_ASCII_TO_CHAR:
+            actions.asciiToCharMB();
+            break;
+        case CALL:
+            actions.call();
+            break;
+        case GET_VARIABLE:
+            actions.getVariable();
+            break;
+        case SET_VARIABLE:
+            actions.setVariable();
+            break;
+        case GET_URL_2:
+            parseGetURL2(in.readUI8());
+            break;
+        case GOTO_FRAME_2:
+            actions.gotoFrame(in.readUI8() != 0);
+            break;
+        case SET_TARGET_2:
+            actions.setTarget();
+            break;
+        case GET_PROPERTY:
+            actions.getProperty();
+            break;
+        case SET_PROPERTY:
+            actions.setProperty();
+            break;
+        case CLONE_SPRITE:
+            actions.cloneSprite();
+            break;
+        case REMOVE_SPRITE:
+            actions.removeSprite();
+            break;
+        case START_DRAG:
+            actions.startDrag();
+            break;
+        case END_DRAG:
+            actions.endDrag();
+            break;
+        case TRACE:
+            actions.trace();
+            break;
+        case GET_TIME:
+            actions.getTime();
+            break;
+        case RANDOM_NUMBER:
+            actions.randomNumber();
+            break;
 
-            // Flash 6
-            case INSTANCE_OF:
-                actions.instanceOf();
-                break;
-            case ENUMERATE_OBJECT:
-                actions.enumerateObject();
-                break;
-            case GREATER:
-                actions.greaterThan();
-                break;
-            case STRICT_EQUALS:
-                actions.strictEquals();
-                break;
-            case STRING_GREATER:
-                actions.stringGreaterThan();
-                break;
-            default:
-                actions.unknown(code, data);
-                break;
-            }
+        // Flash 5                         
+        case INIT_ARRAY:
+            actions.initArray();
+            break;
+        case LOOKUP_TABLE:
+            parseLookupTable(in);
+            break;
+        case CALL_FUNCTION:
+            actions.callFunction();
+            break;
+        case CALL_METHOD:
+            actions.callMethod();
+            break;
+        case DEFINE_FUNCTION:
+            parseDefineFunction(in);
+            break;
+        case DEFINE_LOCAL_VAL:
+            actions.defineLocalValue();
+            break;
+        case DEFINE_LOCAL:
+            actions.defineLocal();
+            break;
+        case DEL_VAR:
+            actions.deleteProperty();
+            break;
+        case DEL_THREAD_VARS:
+            actions.deleteThreadVars();
+            break;
+        case ENUMERATE:
+            actions.enumerate();
+            break;
+        case TYPED_EQUALS:
+            actions.typedEquals();
+            break;
+        case GET_MEMBER:
+            actions.getMember();
+            break;
+        case INIT_OBJECT:
+            actions.initObject();
+            break;
+        case CALL_NEW_METHOD:
+            actions.newMethod();
+            break;
+        case NEW_OBJECT:
+            actions.newObject();
+            break;
+        case SET_MEMBER:
+            actions.setMember();
+            break;
+        case GET_TARGET_PATH:
+            actions.getTargetPath();
+            break;
+        case WITH:
+            parseWith(in);
+            break;
+        case DUPLICATE:
+            actions.duplicate();
+            break;
+        case RETURN:
+            actions.returnValue();
+            break;
+        case SWAP:
+            actions.swap();
+            break;
+        case REGISTER:
+            actions.storeInRegister(in.readUI8());
+            break;
+        case MODULO:
+            actions.modulo();
+            break;
+        case TYPEOF:
+            actions.typeOf();
+            break;
+        case TYPED_ADD:
+            actions.typedAdd();
+            break;
+        case TYPED_LESS_THAN:
+            actions.typedLessThan();
+            break;
+        case CONVERT_TO_NUMBER:
+            actions.convertToNumber();
+            break;
+        case CONVERT_TO_STRING:
+            actions.convertToString();
+            break;
+        case INCREMENT:
+            actions.increment();
+            break;
+        case DECREMENT:
+            actions.decrement();
+            break;
+        case BIT_AND:
+            actions.bitAnd();
+            break;
+        case BIT_OR:
+            actions.bitOr();
+            break;
+        case BIT_XOR:
+            actions.bitXor();
+            break;
+        case SHIFT_LEFT:
+            actions.shiftLeft();
+            break;
+        case SHIFT_RIGHT:
+            actions.shiftRight();
+            break;
+        case SHIFT_UNSIGNED:
+            actions.shiftRightUnsigned();
+            break;
+
+        // Flash 6
+        case INSTANCE_OF:
+            actions.instanceOf();
+            break;
+        case ENUMERATE_OBJECT:
+            actions.enumerateObject();
+            break;
+        case GREATER:
+            actions.greaterThan();
+            break;
+        case STRICT_EQUALS:
+            actions.strictEquals();
+            break;
+        case STRING_GREATER:
+            actions.stringGreaterThan();
+            break;
+        default:
+            actions.unknown(code, (dataLength > 0) ? Arrays.copyOfRange(mBytes, dataStart, dataStart + dataLength) : null);
+            break;
         }
     }
 
+    protected String readString(InStream in) throws IOException {
+        return in.readString(mStringEncoding, mStringCache);
+    }
+
     protected void parseDefineFunction(InStream in) throws IOException {
-        String name = in.readString(mStringEncoding);
+        String name = readString(in);
         int paramCount = in.readUI16();
 
         String[] params = new String[paramCount];
         for (int i = 0; i < params.length; i++) {
-            params[i] = in.readString(mStringEncoding);
+            params[i] = readString(in);
         }
 
         int codesize = in.readUI16();
@@ -431,7 +610,7 @@ public class ActionParser implements SWFActionCodes {
         String[] strings = new String[in.readUI16()];
 
         for (int i = 0; i < strings.length; i++) {
-            strings[i] = in.readString(mStringEncoding);
+            strings[i] = readString(in);
         }
 
         actions.lookupTable(strings);
@@ -465,7 +644,7 @@ public class ActionParser implements SWFActionCodes {
 
             switch (pushType) {
             case PUSHTYPE_STRING:
-                actions.push(in.readString(mStringEncoding));
+                actions.push(readString(in));
                 break;
             case PUSHTYPE_FLOAT:
                 actions.push(in.readFloat());
@@ -494,143 +673,518 @@ public class ActionParser implements SWFActionCodes {
         }
     }
 
-    protected static class ActionRecord {
-        public int offset; //byte offset from start of the action array
-        public int code;
-        public String label;
-        public String jumpLabel;
-        public byte[] data;
-        public int blockDepth = 0;
+    /**
+     * First pass to determine action offsets, block depths and jumps
+     *
+     * @param start the index of the first action in the array
+     * @param end the index after the last byte that may be read
+     * @return the size of the action array, including the end action
+     */
+    protected int createRecords(byte[] bytes, int start, int end) throws IOException {
+        clearRecords();
+
+        mBytes = bytes;
+
+        int pos = start;
+
+        while (true) {
+            int dataLength = actionDataLength(bytes, pos, end);
+            int code = bytes[pos] & 0xff;
+            int dataStart = pos + ((code >= 0x80) ? 3 : 1);
+
+            int index = addRecord(pos - start, code, dataStart, dataLength);
+            pos = dataStart + dataLength;
+
+            mBlockDepths[index] = updateBlocks(dataLength);
+
+            if (code == 0) {
+                break; //end of actions
+            }
+
+            openBlock(code, bytes, dataStart, dataLength);
+
+            if ((code == WAIT_FOR_FRAME) || (code == WAIT_FOR_FRAME_2)) {
+                mSkippers = append(mSkippers, mSkipperCount++, index);
+            } else if ((code == IF) || (code == JUMP)) {
+                mJumpers = append(mJumpers, mJumperCount++, index);
+            }
+        }
+
+        int labelIndex = 0;
+
+        // Tie up the jumpers with the offsets
+        if (mJumperCount > 0) {
+            resetOffsets(mCount);
+
+            for (int i = 0; i < mCount; i++) {
+                putOffset(mOffsets[i], i);
+            }
+        }
+
+        for (int j = 0; j < mJumperCount; j++) {
+            int index = mJumpers[j];
+            int target = findOffset(jumpTarget(bytes, mOffsets[index], mDataStarts[index], mDataLengths[index]));
+
+            if (target >= 0) {
+                if (mLabels[target] == null) {
+                    mLabels[target] = mJumpLabels[index] = "label" + (labelIndex++);
+                } else {
+                    mJumpLabels[index] = mLabels[target];
+                }
+            }
+        }
+
+        // Tie up the skippers with labels
+        for (int j = 0; j < mSkipperCount; j++) {
+            int index = mSkippers[j];
+            int skipIndex = index + skipCount(bytes, mCodes[index], mDataStarts[index], mDataLengths[index]) + 1;
 
-        protected ActionRecord(int offset, int code, byte[] data) {
-            this.offset = offset;
-            this.code = code;
-            this.data = data;
+            if (skipIndex < mCount) {
+                if (mLabels[skipIndex] == null) {
+                    mLabels[skipIndex] = mJumpLabels[index] = "label" + (labelIndex++);
+                } else {
+                    mJumpLabels[index] = mLabels[skipIndex];
+                }
+            }
         }
+
+        return pos - start;
     }
 
     /**
-     * First Pass to determine action offsets and jumps
+     * Append a record, growing the arrays if necessary
+     *
+     * @return the record index
      */
-    protected List<ActionRecord> createRecords(byte[] bytes) throws IOException {
-        return createRecords(new InStream(bytes));
+    protected int addRecord(int offset, int code, int dataStart, int dataLength) {
+        int index = mCount++;
+
+        if (index == mOffsets.length) {
+            int capacity = index * 2;
+            mOffsets = Arrays.copyOf(mOffsets, capacity);
+            mCodes = Arrays.copyOf(mCodes, capacity);
+            mDataStarts = Arrays.copyOf(mDataStarts, capacity);
+            mDataLengths = Arrays.copyOf(mDataLengths, capacity);
+            mBlockDepths = Arrays.copyOf(mBlockDepths, capacity);
+            mLabels = Arrays.copyOf(mLabels, capacity);
+            mJumpLabels = Arrays.copyOf(mJumpLabels, capacity);
+        }
+
+        mOffsets[index] = offset;
+        mCodes[index] = code;
+        mDataStarts[index] = dataStart;
+        mDataLengths[index] = dataLength;
+        mBlockDepths[index] = 0;
+
+        return index;
     }
 
     /**
-     * First Pass to determine action offsets and jumps
+     * Parse without building a record per action.  The first pass collects
+     * the jump and frame wait targets, the second finds which of them are
+     * action boundaries and labels them, and the third drives the SWFActions
+     * straight from the bytes.  Only the jumps, frame waits and open blocks
+     * are held in memory.
+     *
+     * @see #createRecords(byte[], int, int)
      */
-    protected List<ActionRecord> createRecords(InStream in) throws IOException {
-        List<ActionRecord> records = new ArrayList<ActionRecord>();
-        List<ActionRecord> jumpers = new ArrayList<ActionRecord>();
-        List<Integer> skippers = new ArrayList<Integer>();
-        Map<Integer, ActionRecord> offsetTable = new HashMap<Integer, ActionRecord>();
+    protected int parseStreaming(byte[] bytes, int start, int end) throws IOException {
+        clearRecords();
 
-        Stack<int[]> blockSizes = new Stack<int[]>();
+        mBytes = bytes;
 
-        int labelIndex = 0;
+        int size = scanTargets(bytes, start, end);
+        labelTargets(bytes, start, start + size);
+        streamActions(bytes, start);
+
+        return size;
+    }
+
+    /**
+     * Streaming first pass - collect the jump target offsets and the frame
+     * wait target indices, and check the action headers
+     *
+     * @return the size of the action array, including the end action
+     */
+    protected int scanTargets(byte[] bytes, int start, int end) throws IOException {
+        int pos = start;
+        int index = 0;
 
         while (true) {
-            int offset = (int) in.getBytesRead();
+            int dataLength = actionDataLength(bytes, pos, end);
+            int code = bytes[pos] & 0xff;
+            int dataStart = pos + ((code >= 0x80) ? 3 : 1);
 
-            //System.err.println( "read=" + offset ); System.err.flush();
-            int code = in.readUI8();
-            int dataLength = (code >= 0x80) ? in.readUI16() : 0;
-            byte[] data = (dataLength > 0) ? in.read(dataLength) : null;
-
-            //System.err.println( "size=" + dataLength ); System.err.flush();          
-            ActionRecord rec = new ActionRecord(offset, code, data);
-            records.add(rec);
-            offsetTable.put(new Integer(offset), rec);
-
-            if (!blockSizes.isEmpty()) {
-                int depth = blockSizes.size();
-                rec.blockDepth = depth;
-                int blockDecrement = (dataLength > 0) ? (dataLength + 3) : 1;
-
-                // subtract the size of this action from all the block sizes
-                //  in the block stack
-                for (int i = depth - 1; i >= 0; i--) {
-                    int[] blockSize = blockSizes.elementAt(i);
-                    int size = blockSize[0];
-
-                    size -= blockDecrement;
-
-                    // reached end of block ?
-                    if (size <= 0) {
-                        blockSizes.pop();
-                    } else {
-                        blockSize[0] = size;
-                    }
+            if ((code == IF) || (code == JUMP)) {
+                mJumpTargets = append(mJumpTargets, mJumperCount++, jumpTarget(bytes, pos - start, dataStart, dataLength));
+            } else if ((code == WAIT_FOR_FRAME) || (code == WAIT_FOR_FRAME_2)) {
+                int skipIndex = index + skipCount(bytes, code, dataStart, dataLength) + 1;
+
+                if (mSkipperCount == mSkipKeys.length) {
+                    mSkipKeys = Arrays.copyOf(mSkipKeys, mSkipperCount * 2);
+                    mSkipTargets = Arrays.copyOf(mSkipTargets, mSkipperCount * 2);
                 }
+
+                mSkipKeys[mSkipperCount] = ((long) skipIndex << 32) | mSkipperCount;
+                mSkipperCount++;
             }
 
+            pos = dataStart + dataLength;
+            index++;
+
             if (code == 0) {
-                break; //end of actions
+                return pos - start;
+            }
+        }
+    }
+
+    /**
+     * Streaming second pass - keep the jump targets that are action
+     * boundaries, find the offsets of the frame wait targets and number the
+     * labels in the same order as createRecords(..)
+     */
+    protected void labelTargets(byte[] bytes, int start, int end) {
+        if (mTargets.length < mJumperCount) {
+            mTargets = new int[mJumpTargets.length];
+        }
+
+        System.arraycopy(mJumpTargets, 0, mTargets, 0, mJumperCount);
+        Arrays.sort(mTargets, 0, mJumperCount);
+        Arrays.sort(mSkipKeys, 0, mSkipperCount);
+
+        int targetCount = 0;
+        int nextTarget = 0;
+        int nextSkip = 0;
+        int index = 0;
+
+        for (int pos = start; pos < end; index++) {
+            int offset = pos - start;
+
+            while ((nextTarget < mJumperCount) && (mTargets[nextTarget] < offset)) {
+                nextTarget++;
             }
-            else if (code == DEFINE_FUNCTION) {
-                InStream in2 = new InStream(rec.data);
-                in2.readString(mStringEncoding);
-                int params = in2.readUI16();
-                for (int i = 0; i < params; i++) {
-                    in2.readString(mStringEncoding);
+
+            if ((nextTarget < mJumperCount) && (mTargets[nextTarget] == offset)) {
+                mTargets[targetCount++] = offset;
+
+                while ((nextTarget < mJumperCount) && (mTargets[nextTarget] == offset)) {
+                    nextTarget++;
                 }
-                int blockSize = in2.readUI16();
-                blockSizes.push(new int[] { blockSize });
-            } else if (code == WITH) {
-                InStream in2 = new InStream(rec.data);
-                int blockSize = in2.readUI16();
-                blockSizes.push(new int[] { blockSize });
+            }
+
+            while ((nextSkip < mSkipperCount) && ((int) (mSkipKeys[nextSkip] >>> 32) == index)) {
+                mSkipTargets[(int) mSkipKeys[nextSkip++]] = offset;
+            }
+
+            int code = bytes[pos] & 0xff;
+            pos += (code >= 0x80) ? (readUI16(bytes, pos + 1) + 3) : 1;
+        }
+
+        // skips past the end of the actions have no label
+        while (nextSkip < mSkipperCount) {
+            mSkipTargets[(int) mSkipKeys[nextSkip++]] = -1;
+        }
+
+        // map the target offsets to label numbers
+        resetOffsets(mJumperCount + mSkipperCount);
+        int labelIndex = 0;
+
+        for (int j = 0; j < mJumperCount; j++) {
+            int target = mJumpTargets[j];
+
+            if ((Arrays.binarySearch(mTargets, 0, targetCount, target) >= 0) && (findOffset(target) < 0)) {
+                putOffset(target, labelIndex++);
+            }
+        }
+
+        for (int j = 0; j < mSkipperCount; j++) {
+            int target = mSkipTargets[j];
+
+            if ((target >= 0) && (findOffset(target) < 0)) {
+                putOffset(target, labelIndex++);
+            }
+        }
+    }
+
+    /**
+     * Streaming third pass - drive the SWFActions
+     */
+    protected void streamActions(byte[] bytes, int start) throws IOException {
+        if (mData == null) {
+            mData = new BufferInStream(bytes, 0, 0);
+        }
+
+        int pos = start;
+        int skipper = 0;
+
+        while (true) {
+            int offset = pos - start;
+            int code = bytes[pos] & 0xff;
+            int dataLength = (code >= 0x80) ? readUI16(bytes, pos + 1) : 0;
+            int dataStart = pos + ((code >= 0x80) ? 3 : 1);
+
+            pos = dataStart + dataLength;
+
+            int depth = updateBlocks(dataLength);
+
+            if (code != 0) {
+                openBlock(code, bytes, dataStart, dataLength);
+            }
+
+            //detect end of block - nested blocks may end together
+            while (depth < blockDepth) {
+                blockDepth--;
+                actions.endBlock();
+            }
+
+            int label = findOffset(offset);
+
+            if (label >= 0) {
+                actions.jumpLabel(labelName(label));
+            }
+
+            String jumpLabel = null;
+
+            if ((code == IF) || (code == JUMP)) {
+                label = findOffset(jumpTarget(bytes, offset, dataStart, dataLength));
+                jumpLabel = (label >= 0) ? labelName(label) : null;
             } else if ((code == WAIT_FOR_FRAME) || (code == WAIT_FOR_FRAME_2)) {
-                skippers.add(new Integer(records.size() - 1));
-            } else if ((code == IF) || (code == JUMP)) {
-                jumpers.add(rec);
+                int target = mSkipTargets[skipper++];
+                jumpLabel = (target >= 0) ? labelName(findOffset(target)) : null;
             }
+
+            processAction(code, dataStart, dataLength, jumpLabel);
+
+            if (code == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the name of a numbered label
+     */
+    protected String labelName(int label) {
+        if (label >= mLabelNames.length) {
+            mLabelNames = Arrays.copyOf(mLabelNames, Math.max(label + 1, mLabelNames.length * 2));
         }
 
-        // Tie up the jumpers with the offsets
-        for (ActionRecord rec : jumpers) {
+        String name = mLabelNames[label];
+
+        if (name == null) {
+            name = mLabelNames[label] = "label" + label;
+        }
 
-            InStream in2 = new InStream(rec.data);
-            int jumpOffset = in2.readSI16();
-            int offset = rec.offset + 5;
-            int absoluteOffset = offset + jumpOffset;
+        return name;
+    }
+
+    /**
+     * Subtract the size of an action from all the block sizes in the block
+     * stack, closing the blocks that it reaches the end of
+     *
+     * @return the block depth of the action
+     */
+    protected int updateBlocks(int dataLength) {
+        int depth = mBlockCount;
 
-            ActionRecord target = offsetTable.get(new Integer(absoluteOffset));
+        if (depth > 0) {
+            int blockDecrement = (dataLength > 0) ? (dataLength + 3) : 1;
 
-            if (target != null) {
-                if (target.label == null) {
-                    target.label = rec.jumpLabel = "label" + (labelIndex++);
+            for (int i = depth - 1; i >= 0; i--) {
+                int size = mBlockSizes[i] - blockDecrement;
+
+                // reached end of block ?
+                if (size <= 0) {
+                    mBlockCount--;
                 } else {
-                    rec.jumpLabel = target.label;
+                    mBlockSizes[i] = size;
                 }
             }
         }
 
-        // Tie up the skippers with labels
-        for (Integer i : skippers) {
-            int idx = i.intValue();
+        return depth;
+    }
 
-            ActionRecord rec = records.get(idx);
+    /**
+     * Push the size of the block that a function or with action opens.
+     * Empty blocks are not pushed - they are ended as soon as they start.
+     */
+    protected void openBlock(int code, byte[] bytes, int dataStart, int dataLength) throws IOException {
+        int dataEnd = dataStart + dataLength;
+        int size;
 
-            InStream in2 = new InStream(rec.data);
+        if (code == DEFINE_FUNCTION) {
+            int p = skipString(bytes, dataStart, dataEnd);
+            int params = readUI16(bytes, p, dataEnd);
+            p += 2;
+            for (int i = 0; i < params; i++) {
+                p = skipString(bytes, p, dataEnd);
+            }
+            size = readUI16(bytes, p, dataEnd);
+        } else if (code == WITH) {
+            size = readUI16(bytes, dataStart, dataEnd);
+        } else {
+            return;
+        }
+
+        if (size > 0) {
+            mBlockSizes = append(mBlockSizes, mBlockCount++, size);
+        }
+    }
+
+    /**
+     * @return the offset that a jump or if action at the given offset jumps to
+     */
+    protected static int jumpTarget(byte[] bytes, int offset, int dataStart, int dataLength) throws IOException {
+        short jumpOffset = (short) readUI16(bytes, dataStart, dataStart + dataLength);
+
+        return offset + 5 + jumpOffset;
+    }
+
+    /**
+     * @return the number of actions skipped by a frame wait action
+     */
+    protected static int skipCount(byte[] bytes, int code, int dataStart, int dataLength) throws IOException {
+        int dataEnd = dataStart + dataLength;
+
+        if (code == WAIT_FOR_FRAME) {
+            dataStart += 2; //skip frame number
+        }
+
+        if (dataStart >= dataEnd) {
+            throw new EOFException("Unexpected end of input");
+        }
+
+        return bytes[dataStart] & 0xff;
+    }
 
-            if (rec.code == WAIT_FOR_FRAME) {
-                in2.readUI16(); //skip frame number
+    /**
+     * Check that the action at pos lies before end
+     *
+     * @return the length of the action data
+     */
+    protected static int actionDataLength(byte[] bytes, int pos, int end) throws IOException {
+        if (pos >= end) {
+            throw new EOFException("Unexpected end of input");
+        }
+
+        if ((bytes[pos] & 0xff) < 0x80) {
+            return 0;
+        }
+
+        if (pos + 3 > end) {
+            throw new EOFException("Unexpected end of input");
+        }
+
+        int dataLength = readUI16(bytes, pos + 1);
+
+        if (dataLength > end - pos - 3) {
+            throw new EOFException("Unexpected end of input while reading a specified number of bytes");
+        }
+
+        return dataLength;
+    }
+
+    protected static int[] append(int[] array, int count, int value) {
+        if (count == array.length) {
+            array = Arrays.copyOf(array, count * 2);
+        }
+
+        array[count] = value;
+        return array;
+    }
+
+    /**
+     * Empty the offset map and size it for the given number of entries
+     */
+    protected void resetOffsets(int entries) {
+        int capacity = mOffsetKeys.length;
+
+        while (capacity < entries * 2) {
+            capacity *= 2;
+        }
+
+        if (capacity != mOffsetKeys.length) {
+            mOffsetKeys = new int[capacity];
+            mOffsetValues = new int[capacity];
+        } else {
+            Arrays.fill(mOffsetKeys, 0);
+        }
+    }
+
+    /**
+     * Map an offset to a value - the offset must not be mapped already
+     */
+    protected void putOffset(int offset, int value) {
+        int key = offset + 1;
+        int mask = mOffsetKeys.length - 1;
+        int slot = hash(key) & mask;
+
+        while (mOffsetKeys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        mOffsetKeys[slot] = key;
+        mOffsetValues[slot] = value;
+    }
+
+    /**
+     * @return the value mapped to the given offset, or -1
+     */
+    protected int findOffset(int offset) {
+        if (offset < 0) {
+            return -1; //jumps may point before the start
+        }
+
+        int key = offset + 1;
+        int mask = mOffsetKeys.length - 1;
+        int slot = hash(key) & mask;
+
+        while (true) {
+            int k = mOffsetKeys[slot];
+
+            if (k == key) {
+                return mOffsetValues[slot];
             }
-            int skip = in2.readUI8();
-            int skipIndex = idx + skip + 1;
 
-            if (skipIndex < records.size()) {
-                ActionRecord target = records.get(skipIndex);
+            if (k == 0) {
+                return -1;
+            }
 
-                if (target.label == null) {
-                    target.label = rec.jumpLabel = "label" + (labelIndex++);
-                } else {
-                    rec.jumpLabel = target.label;
-                }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    protected static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    protected static int readUI16(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xff) | ((bytes[pos + 1] & 0xff) << 8);
+    }
+
+    /**
+     * Read a UI16 that must lie before end
+     */
+    protected static int readUI16(byte[] bytes, int pos, int end) throws IOException {
+        if (pos + 2 > end) {
+            throw new EOFException("Unexpected end of input");
+        }
+
+        return readUI16(bytes, pos);
+    }
+
+    /**
+     * @return the index after the null terminator of the string at pos
+     */
+    protected static int skipString(byte[] bytes, int pos, int end) throws IOException {
+        for (int i = pos; i < end; i++) {
+            if (bytes[i] == 0) {
+                return i + 1;
             }
         }
 
-        return records;
+        throw new IOException("Unterminated string - reached end of input before null char");
     }
 }
@@ -0,0 +1,232 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.interfaces.SWFFileSignature;
+import com.anotherbigidea.flash.interfaces.SWFTagSlices;
+import com.anotherbigidea.flash.interfaces.SWFTagTypes;
+
+
+/**
+ * A TagParser that decodes tags on a ForkJoinPool.
+ *
+ * The SWFReader that drives this parser frames the tags on its own thread.
+ * Each tag body is copied and decoded by a TagParser on the pool into an
+ * SWFRecorder.  The recordings are
+ * replayed into the downstream SWFTagTypes on the reader's thread, in the
+ * original tag order - so the downstream object does not need to be thread
+ * safe and sees exactly the calls that a plain TagParser would make.
+ *
+ * Small tags are not worth a task and are decoded on the reader's thread -
+ * straight into the downstream object when nothing is waiting ahead of them.
+ * The number of tags in flight is bounded, so the reader blocks rather than
+ * copying the whole movie into memory when the decoders fall behind.
+ *
+ * new SWFReader(new ParallelTagParser(tagtypes), filename).readFile();
+ */
+public class ParallelTagParser implements SWFTagSlices, SWFConstants, SWFFileSignature {
+    /** Tags with shorter bodies are decoded on the reader's thread */
+    public static final int DEFAULT_MIN_LENGTH = 1024;
+
+    protected SWFTagTypes mTagtypes;
+    protected ForkJoinPool mPool;
+    protected int mMaxPending;
+    protected int mMinLength = DEFAULT_MIN_LENGTH;
+    protected int mFlashVersion = SWFConstants.FLASH_MX_VERSION;
+    protected TagFilter mFilter;
+
+    // for tags that are decoded on the reader's thread
+    protected TagParser mParser;
+    protected TagParser mRecordingParser;
+
+    // decoded or decoding tags, in tag order
+    protected ArrayDeque<DecodeTask> mPending = new ArrayDeque<DecodeTask>();
+
+    /**
+     * Decode on the common pool
+     */
+    public ParallelTagParser(SWFTagTypes tagtypes) {
+        this(tagtypes, ForkJoinPool.commonPool());
+    }
+
+    public ParallelTagParser(SWFTagTypes tagtypes, ForkJoinPool pool) {
+        this(tagtypes, pool, pool.getParallelism() * 4);
+    }
+
+    /**
+     * @param maxPending the number of tags that may be waiting to be
+     *        delivered before the reader blocks
+     */
+    public ParallelTagParser(SWFTagTypes tagtypes, ForkJoinPool pool, int maxPending) {
+        mTagtypes = tagtypes;
+        mPool = pool;
+        mMaxPending = Math.max(maxPending, 1);
+        mParser = new TagParser(tagtypes);
+    }
+
+    /**
+     * Set the length below which tag bodies are decoded on the reader's
+     * thread
+     */
+    public void setMinimumLength(int length) {
+        mMinLength = length;
+    }
+
+    /**
+     * @see TagParser#setTagFilter(TagFilter)
+     */
+    public void setTagFilter(TagFilter filter) {
+        mFilter = filter;
+        mParser.setTagFilter(filter);
+    }
+
+    /**
+     * @see SWFFileSignature#signature(String)
+     */
+    public void signature(String sig) {
+        mParser.signature(sig);
+    }
+
+    /**
+     * Interface SWFTags
+     */
+    public void header(int version, long length, int twipsWidth, int twipsHeight, int frameRate, int frameCount) throws IOException {
+        flush();
+        mParser.header(version, length, twipsWidth, twipsHeight, frameRate, frameCount);
+        mFlashVersion = version;
+    }
+
+    /**
+     * Interface SWFTags
+     */
+    public void tag(int tagType, boolean longTag, byte[] contents) throws IOException {
+        tag(tagType, longTag, contents, 0, (contents != null) ? contents.length : 0);
+    }
+
+    /**
+     * Interface SWFTagSlices
+     */
+    public void tag(int tagType, boolean longTag, byte[] buffer, int offset, int length) throws IOException {
+        deliver(false);
+
+        if (length < mMinLength) {
+            if (mPending.isEmpty()) {
+                mParser.tag(tagType, longTag, buffer, offset, length);
+            } else {
+                if (mRecordingParser == null) {
+                    mRecordingParser = new TagParser(null);
+                }
+
+                DecodeTask task = new DecodeTask(tagType, longTag, buffer, offset, length);
+                task.complete(task.decode(mRecordingParser));
+                mPending.add(task);
+            }
+        } else {
+            byte[] body = Arrays.copyOfRange(buffer, offset, offset + length);
+
+            while (mPending.size() >= mMaxPending) {
+                deliverNext();
+            }
+
+            DecodeTask task = new DecodeTask(tagType, longTag, body, 0, length);
+            mPending.add(task);
+            mPool.execute(task);
+        }
+
+        if (tagType == TAG_END) {
+            flush();
+        }
+    }
+
+    /**
+     * Wait for all the outstanding tags and deliver them.  This is done
+     * automatically at the end tag.
+     */
+    public void flush() throws IOException {
+        deliver(true);
+    }
+
+    /**
+     * Deliver the tags at the head of the queue that have been decoded
+     *
+     * @param wait true to wait for all of them
+     */
+    protected void deliver(boolean wait) throws IOException {
+        while (!mPending.isEmpty() && (wait || mPending.peek().isDone())) {
+            deliverNext();
+        }
+    }
+
+    protected void deliverNext() throws IOException {
+        DecodeTask task = mPending.poll();
+
+        SWFRecorder recording = task.join();
+
+        if (task.mError != null) {
+            mPending.clear();
+            throw task.mError;
+        }
+
+        recording.replay(mTagtypes);
+    }
+
+    /**
+     * Decodes one tag into a recording
+     */
+    protected class DecodeTask extends RecursiveTask<SWFRecorder> {
+        private static final long serialVersionUID = 1L;
+
+        protected int mTagType;
+        protected boolean mLongTag;
+        protected byte[] mBuffer;
+        protected int mOffset;
+        protected int mLength;
+        protected IOException mError;
+
+        protected DecodeTask(int tagType, boolean longTag, byte[] buffer, int offset, int length) {
+            mTagType = tagType;
+            mLongTag = longTag;
+            mBuffer = buffer;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        protected SWFRecorder compute() {
+            ParserPool pool = ParserPool.getDefault();
+            TagParser parser = pool.borrowTagParser(null);
+
+            try {
+                return decode(parser);
+            } finally {
+                pool.release(parser);
+            }
+        }
+
+        /**
+         * Decode with the given parser - on the current thread
+         */
+        protected SWFRecorder decode(TagParser parser) {
+            SWFRecorder recording = new SWFRecorder();
+
+            parser.mTagtypes = recording;
+            parser.setFlashVersion(mFlashVersion);
+            parser.setTagFilter(mFilter);
+
+            try {
+                parser.tag(mTagType, mLongTag, mBuffer, mOffset, mLength);
+            } catch (IOException e) {
+                mError = e;
+            } finally {
+                parser.mTagtypes = null;
+                mBuffer = null;
+            }
+
+            return recording;
+        }
+    }
+}
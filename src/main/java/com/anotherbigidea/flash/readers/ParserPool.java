@@ -0,0 +1,161 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.interfaces.SWFActions;
+import com.anotherbigidea.flash.interfaces.SWFTagTypes;
+import com.anotherbigidea.io.InStream;
+
+
+/**
+ * A pool of reusable parsers that may be used from any number of threads at
+ * once.
+ *
+ * The parsers themselves are not thread safe.  Each call borrows parsers
+ * that no other thread is using, resets them for the caller and returns them
+ * to the pool when it is done - so the buffers and tables that the parsers
+ * build up are reused instead of being reallocated for every movie.  The
+ * pool holds at most as many parsers as have been in use at the same time.
+ *
+ * ParserPool.getDefault().parse(ByteBuffer.wrap(swf), tagtypes);
+ */
+public class ParserPool {
+    protected static final ParserPool DEFAULT = new ParserPool();
+
+    protected ConcurrentLinkedQueue<TagParser> mTagParsers = new ConcurrentLinkedQueue<TagParser>();
+    protected ConcurrentLinkedQueue<ActionParser> mActionParsers = new ConcurrentLinkedQueue<ActionParser>();
+    protected ConcurrentLinkedQueue<SWFReader> mReaders = new ConcurrentLinkedQueue<SWFReader>();
+
+    /**
+     * @return the pool shared by the whole VM
+     */
+    public static ParserPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Parse a whole movie from a buffer, starting at the buffer position
+     */
+    public void parse(ByteBuffer swf, SWFTagTypes tagtypes) throws IOException {
+        TagParser parser = borrowTagParser(tagtypes);
+        SWFReader reader = borrowReader();
+
+        try {
+            reader.reset(parser, swf);
+            reader.readFile();
+        } finally {
+            release(reader);
+            release(parser);
+        }
+    }
+
+    /**
+     * Parse a whole movie from a stream.  The stream is not closed.
+     */
+    public void parse(InputStream in, SWFTagTypes tagtypes) throws IOException {
+        TagParser parser = borrowTagParser(tagtypes);
+        SWFReader reader = borrowReader();
+
+        try {
+            reader.reset(parser, in);
+            reader.readFile();
+        } finally {
+            release(reader);
+            release(parser);
+        }
+    }
+
+    /**
+     * Parse a single tag body
+     */
+    public void parseTag(int tagType, boolean longTag, byte[] buffer, int offset, int length, int flashVersion, SWFTagTypes tagtypes) throws IOException {
+        TagParser parser = borrowTagParser(tagtypes);
+
+        try {
+            parser.setFlashVersion(flashVersion);
+            parser.tag(tagType, longTag, buffer, offset, length);
+        } finally {
+            release(parser);
+        }
+    }
+
+    /**
+     * Parse an action array, including the terminating end action.
+     * The caller is responsible for start(..) and done() on the actions.
+     */
+    public void parseActions(byte[] bytes, SWFActions actions, int flashVersion) throws IOException {
+        ActionParser parser = borrowActionParser(actions, flashVersion);
+
+        try {
+            parser.parse(bytes);
+        } finally {
+            release(parser);
+        }
+    }
+
+    /**
+     * Get an unused tag parser - it must be returned with release(..)
+     */
+    public TagParser borrowTagParser(SWFTagTypes tagtypes) {
+        TagParser parser = mTagParsers.poll();
+
+        if (parser == null) {
+            return new TagParser(tagtypes);
+        }
+
+        parser.reset(tagtypes);
+        return parser;
+    }
+
+    /**
+     * Get an unused action parser - it must be returned with release(..)
+     */
+    public ActionParser borrowActionParser(SWFActions actions, int flashVersion) {
+        ActionParser parser = mActionParsers.poll();
+
+        if (parser == null) {
+            return new ActionParser(actions, flashVersion);
+        }
+
+        parser.reset(actions, flashVersion);
+        return parser;
+    }
+
+    /**
+     * Get an unused reader - reset(..) it before use and return it with
+     * release(..)
+     */
+    public SWFReader borrowReader() {
+        SWFReader reader = mReaders.poll();
+
+        return (reader != null) ? reader : new SWFReader(null, (InStream) null);
+    }
+
+    /**
+     * Return a parser to the pool.  It must not be used by the caller again.
+     */
+    public void release(TagParser parser) {
+        parser.reset(null);
+        mTagParsers.offer(parser);
+    }
+
+    /**
+     * Return a parser to the pool.  It must not be used by the caller again.
+     */
+    public void release(ActionParser parser) {
+        parser.reset(null, SWFConstants.FLASH_MX_VERSION);
+        mActionParsers.offer(parser);
+    }
+
+    /**
+     * Return a reader to the pool.  It must not be used by the caller again.
+     */
+    public void release(SWFReader reader) {
+        reader.reset(null, (InStream) null);
+        mReaders.offer(reader);
+    }
+}
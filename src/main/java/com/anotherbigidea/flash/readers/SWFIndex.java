@@ -0,0 +1,746 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.interfaces.SWFFileSignature;
+import com.anotherbigidea.flash.interfaces.SWFTagSlices;
+import com.anotherbigidea.flash.interfaces.SWFTagTypes;
+import com.anotherbigidea.flash.interfaces.SWFTags;
+import com.anotherbigidea.flash.structs.Rect;
+import com.anotherbigidea.io.BufferInStream;
+import com.anotherbigidea.io.InflateIndex;
+
+
+/**
+ * An index of the top-level tags in a SWF, for random access to them.
+ *
+ * Only the tag headers are read to build the index - the tag bodies are
+ * skipped.  A compressed (CWS) movie is inflated once, into memory, and
+ * inflate checkpoints are taken (see InflateIndex).
+ * Individual tags can then be fetched, or parsed through a TagParser, by
+ * position, type, character id or frame number.
+ *
+ * Offsets are positions in the uncompressed movie, counted from the start
+ * of the file (so they include the 8 byte file header).
+ *
+ * The index of a file can be saved in a sidecar file next to it (see
+ * open(File)).  A sidecar is only used if the size, modification time and
+ * a checksum of the head and tail of the file still match.  An index that
+ * is loaded from a sidecar reads the SWF on demand - an uncompressed file
+ * is memory mapped and a compressed file is inflated from the nearest
+ * checkpoint before each tag that is accessed.
+ */
+public class SWFIndex implements SWFConstants {
+    public static final String SIDECAR_SUFFIX = ".idx";
+
+    protected static final int SIDECAR_MAGIC = 0x53574658; //"SWFX"
+    protected static final int SIDECAR_VERSION = 2;
+
+    // bytes at each end of the file that are covered by the checksum
+    protected static final int CHECKSUM_SPAN = 0x10000;
+
+    protected boolean mCompressed;
+    protected int mVersion;
+    protected long mLength;
+    protected int mTwipsWidth;
+    protected int mTwipsHeight;
+    protected int mFrameRate;
+    protected int mFrameCount;
+
+    // the uncompressed movie - offset o is at index (o + mBase) in mData
+    protected ByteBuffer mData;
+    protected int mBase;
+
+    // the indexed file, if any
+    protected File mFile;
+
+    // checkpoints in the compressed movie, which starts at offset 8
+    protected InflateIndex mCheckpoints;
+    protected ByteBuffer mInput;
+
+    // one entry per tag
+    protected int mTagCount;
+    protected int[] mTypes = new int[256];
+    protected long[] mOffsets = new long[256]; //offset of the tag body
+    protected int[] mLengths = new int[256];
+    protected int[] mFrames = new int[256];
+    protected long[] mLongTags = new long[4]; //bitset
+
+    // index of the first tag in each frame
+    protected int mFrameStartCount;
+    protected int[] mFrameStarts = new int[64];
+
+    // character id --> tag index
+    protected Map<Integer, Integer> mCharacters = new HashMap<>();
+
+    /**
+     * Index a file - the file is memory mapped.
+     */
+    public SWFIndex(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    /**
+     * Index a file - the file is memory mapped.
+     */
+    public SWFIndex(File file) throws IOException {
+        this(map(file));
+        mFile = file;
+    }
+
+    /**
+     * Index a SWF read from an input stream.  The whole stream is read into
+     * memory but is not closed.
+     */
+    public SWFIndex(InputStream in) throws IOException {
+        this(ByteBuffer.wrap(readFully(in)));
+    }
+
+    /**
+     * Index an in-memory or memory mapped SWF, starting at the buffer
+     * position.  The buffer is referenced, not copied.
+     */
+    public SWFIndex(ByteBuffer buffer) throws IOException {
+        BufferInStream in = new BufferInStream(buffer);
+
+        readHeader(in, buffer);
+        scan(in);
+    }
+
+    /**
+     * For loading from a sidecar
+     */
+    protected SWFIndex() {
+    }
+
+    /**
+     * Load the index of a file from its sidecar, or index the file and save
+     * the sidecar if there is no valid sidecar.  Failure to save the sidecar
+     * is ignored.
+     */
+    public static SWFIndex open(File file) throws IOException {
+        File sidecar = getSidecar(file);
+
+        SWFIndex index = load(file, sidecar);
+
+        if (index == null) {
+            index = new SWFIndex(file);
+
+            try {
+                index.save(sidecar);
+            } catch (IOException e) {
+                //the index is usable without the sidecar
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * @return the sidecar file for a SWF file
+     */
+    public static File getSidecar(File file) {
+        return new File(file.getPath() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Load the index of a file from a sidecar.
+     *
+     * @return null if the sidecar does not exist, is unreadable or does not
+     *         match the file
+     */
+    public static SWFIndex load(File file, File sidecar) throws IOException {
+        if (!sidecar.isFile() || !file.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)));
+
+        try {
+            if (in.readInt() != SIDECAR_MAGIC || in.readInt() != SIDECAR_VERSION) {
+                return null;
+            }
+
+            if (in.readLong() != file.length() || in.readLong() != file.lastModified() || in.readLong() != checksum(file)) {
+                return null; //stale
+            }
+
+            SWFIndex index = new SWFIndex();
+            index.mFile = file;
+            index.read(in);
+            return index;
+        } catch (EOFException e) {
+            return null; //truncated
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Save the index to a sidecar.  The index must have been made from a
+     * file.
+     */
+    public void save(File sidecar) throws IOException {
+        if (mFile == null) {
+            throw new IOException("The index was not made from a file");
+        }
+
+        File temp = new File(sidecar.getPath() + ".tmp");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+        try {
+            out.writeInt(SIDECAR_MAGIC);
+            out.writeInt(SIDECAR_VERSION);
+            out.writeLong(mFile.length());
+            out.writeLong(mFile.lastModified());
+            out.writeLong(checksum(mFile));
+
+            write(out);
+        } finally {
+            out.close();
+        }
+
+        Files.move(temp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Write the header values and tables
+     */
+    protected void write(DataOutputStream out) throws IOException {
+        out.writeBoolean(mCompressed);
+        out.writeInt(mVersion);
+        out.writeLong(mLength);
+        out.writeInt(mTwipsWidth);
+        out.writeInt(mTwipsHeight);
+        out.writeInt(mFrameRate);
+        out.writeInt(mFrameCount);
+
+        out.writeInt(mTagCount);
+        for (int i = 0; i < mTagCount; i++) {
+            out.writeShort(mTypes[i]);
+            out.writeBoolean(isLongTag(i));
+            out.writeLong(mOffsets[i]);
+            out.writeInt(mLengths[i]);
+            out.writeInt(mFrames[i]);
+        }
+
+        out.writeInt(mFrameStartCount);
+        for (int i = 0; i < mFrameStartCount; i++) {
+            out.writeInt(mFrameStarts[i]);
+        }
+
+        out.writeInt(mCharacters.size());
+        for (Map.Entry<Integer, Integer> entry : mCharacters.entrySet()) {
+            out.writeShort(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+
+        if (mCompressed) {
+            mCheckpoints.save(out);
+        }
+    }
+
+    /**
+     * Read the header values and tables
+     */
+    protected void read(DataInputStream in) throws IOException {
+        mCompressed = in.readBoolean();
+        mVersion = in.readInt();
+        mLength = in.readLong();
+        mTwipsWidth = in.readInt();
+        mTwipsHeight = in.readInt();
+        mFrameRate = in.readInt();
+        mFrameCount = in.readInt();
+
+        int tagCount = in.readInt();
+        for (int i = 0; i < tagCount; i++) {
+            int type = in.readUnsignedShort();
+            boolean longTag = in.readBoolean();
+            addTag(type, in.readLong(), in.readInt(), longTag, in.readInt());
+        }
+
+        int frameCount = in.readInt();
+        for (int i = 0; i < frameCount; i++) {
+            addFrameStart(in.readInt());
+        }
+
+        int characterCount = in.readInt();
+        for (int i = 0; i < characterCount; i++) {
+            int id = in.readUnsignedShort();
+            mCharacters.put(id, in.readInt());
+        }
+
+        if (mCompressed) {
+            mCheckpoints = InflateIndex.load(in);
+        }
+    }
+
+    /**
+     * A checksum of the size and the bytes at the start and end of a file.
+     * Only the ends are read so that validation does not touch the whole
+     * file.
+     */
+    protected static long checksum(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+
+        try {
+            long size = in.length();
+            byte[] bytes = new byte[(int) Math.min(size, CHECKSUM_SPAN)];
+
+            CRC32 crc = new CRC32();
+
+            in.readFully(bytes);
+            crc.update(bytes);
+
+            in.seek(size - bytes.length);
+            in.readFully(bytes);
+            crc.update(bytes);
+
+            return (size << 32) ^ crc.getValue();
+        } finally {
+            in.close();
+        }
+    }
+
+    protected static ByteBuffer map(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close(); //the mapping remains valid
+        }
+    }
+
+    protected static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(0x10000);
+        byte[] chunk = new byte[0x10000];
+        int count;
+
+        while ((count = in.read(chunk)) >= 0) {
+            bout.write(chunk, 0, count);
+        }
+
+        return bout.toByteArray();
+    }
+
+    /**
+     * Read the file header and set up access to the uncompressed movie
+     */
+    protected void readHeader(BufferInStream in, ByteBuffer buffer) throws IOException {
+        ByteBuffer data = buffer.duplicate();
+        int base = buffer.position();
+
+        int[] sig = { in.readUI8(), in.readUI8(), in.readUI8() };
+
+        if (((sig[0] != 0x46) && (sig[0] != 0x43)) || // "F" or "C"
+            (sig[1] != 0x57) || // "W"
+            (sig[2] != 0x53)) // "S"
+        {
+            throw new IOException("Invalid SWF File Signature");
+        }
+
+        mCompressed = sig[0] == 0x43;
+        mVersion = in.readUI8();
+        mLength = in.readUI32();
+
+        if (mCompressed) {
+            //compressed data follows the version and length
+            ByteBuffer input = buffer.duplicate();
+            input.position(base + 8);
+
+            mCheckpoints = new InflateIndex(InflateIndex.DEFAULT_SPAN);
+            data = mCheckpoints.inflate(input, (int) Math.min(mLength - 8, Integer.MAX_VALUE));
+            base = -8;
+
+            in.setBuffer(data);
+            in.setBytesRead(8);
+        }
+
+        mData = data;
+        mBase = base;
+
+        Rect frameSize = new Rect(in);
+        mTwipsWidth = frameSize.getMaxX();
+        mTwipsHeight = frameSize.getMaxY();
+        mFrameRate = in.readUI16() >> 8;
+        mFrameCount = in.readUI16();
+    }
+
+    /**
+     * Read the tag headers
+     */
+    protected void scan(BufferInStream in) throws IOException {
+        int frame = 0;
+        addFrameStart(0);
+
+        while (in.available() >= 2) {
+            int header = in.readUI16();
+
+            int type = header >> 6;
+            int length = header & 0x3F;
+            boolean longTag = (length == 0x3F);
+
+            if (longTag) {
+                length = (int) in.readUI32();
+            }
+
+            long offset = in.getBytesRead();
+            int index = addTag(type, offset, length, longTag, frame);
+
+            if (type == TAG_END) {
+                break;
+            }
+
+            in.skipBytes(length);
+
+            if (isDefinition(type) && length >= 2) {
+                mCharacters.put(readUI16(offset), index);
+            }
+
+            if (type == TAG_SHOWFRAME) {
+                addFrameStart(index + 1);
+                frame++;
+            }
+        }
+    }
+
+    protected int addTag(int type, long offset, int length, boolean longTag, int frame) {
+        if (mTagCount == mTypes.length) {
+            int size = mTagCount * 2;
+
+            int[] types = new int[size];
+            long[] offsets = new long[size];
+            int[] lengths = new int[size];
+            int[] frames = new int[size];
+            long[] longTags = new long[(size + 63) >> 6];
+
+            System.arraycopy(mTypes, 0, types, 0, mTagCount);
+            System.arraycopy(mOffsets, 0, offsets, 0, mTagCount);
+            System.arraycopy(mLengths, 0, lengths, 0, mTagCount);
+            System.arraycopy(mFrames, 0, frames, 0, mTagCount);
+            System.arraycopy(mLongTags, 0, longTags, 0, mLongTags.length);
+
+            mTypes = types;
+            mOffsets = offsets;
+            mLengths = lengths;
+            mFrames = frames;
+            mLongTags = longTags;
+        }
+
+        int index = mTagCount++;
+
+        mTypes[index] = type;
+        mOffsets[index] = offset;
+        mLengths[index] = length;
+        mFrames[index] = frame;
+
+        if (longTag) {
+            mLongTags[index >> 6] |= 1L << index;
+        }
+
+        return index;
+    }
+
+    protected void addFrameStart(int index) {
+        if (mFrameStartCount == mFrameStarts.length) {
+            int[] starts = new int[mFrameStartCount * 2];
+            System.arraycopy(mFrameStarts, 0, starts, 0, mFrameStartCount);
+            mFrameStarts = starts;
+        }
+
+        mFrameStarts[mFrameStartCount++] = index;
+    }
+
+    /**
+     * @return true if the tag type defines a character, with the character
+     *         id as the first field
+     */
+    public static boolean isDefinition(int tagType) {
+        switch (tagType) {
+        case TAG_DEFINESHAPE:
+        case TAG_DEFINESHAPE2:
+        case TAG_DEFINESHAPE3:
+        case TAG_DEFINEBITS:
+        case TAG_DEFINEBITSJPEG2:
+        case TAG_DEFINEBITSJPEG3:
+        case TAG_DEFINEBITSLOSSLESS:
+        case TAG_DEFINEBITSLOSSLESS2:
+        case TAG_DEFINEBUTTON:
+        case TAG_DEFINEBUTTON2:
+        case TAG_DEFINEFONT:
+        case TAG_DEFINEFONT2:
+        case TAG_DEFINETEXT:
+        case TAG_DEFINETEXT2:
+        case TAG_DEFINETEXTFIELD:
+        case TAG_DEFINESOUND:
+        case TAG_DEFINESPRITE:
+        case TAG_DEFINEMORPHSHAPE:
+        case TAG_DEFINEQUICKTIMEMOVIE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    protected int readUI16(long offset) {
+        int i = (int) (offset + mBase);
+        return (mData.get(i) & 0xff) | ((mData.get(i + 1) & 0xff) << 8);
+    }
+
+    public boolean isCompressed() {
+        return mCompressed;
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return the uncompressed length from the file header
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    public int getTwipsWidth() {
+        return mTwipsWidth;
+    }
+
+    public int getTwipsHeight() {
+        return mTwipsHeight;
+    }
+
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    /**
+     * @return the frame count from the file header
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Pass the header values to a consumer
+     */
+    public void header(SWFTags consumer) throws IOException {
+        if (consumer instanceof SWFFileSignature) {
+            ((SWFFileSignature) consumer).signature(mCompressed ? SWFFileSignature.SIGNATURE_COMPRESSED : SWFFileSignature.SIGNATURE_NORMAL);
+        }
+
+        consumer.header(mVersion, mLength, mTwipsWidth, mTwipsHeight, mFrameRate, mFrameCount);
+    }
+
+    /**
+     * @return the number of indexed tags - including the END tag, if any
+     */
+    public int getTagCount() {
+        return mTagCount;
+    }
+
+    public int getTagType(int index) {
+        return mTypes[index];
+    }
+
+    /**
+     * @return the offset of the tag body
+     */
+    public long getTagOffset(int index) {
+        return mOffsets[index];
+    }
+
+    /**
+     * @return the length of the tag body
+     */
+    public int getTagLength(int index) {
+        return mLengths[index];
+    }
+
+    /**
+     * @return true if the tag has a long header
+     */
+    public boolean isLongTag(int index) {
+        return (mLongTags[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return the zero-based number of the frame that the tag belongs to
+     */
+    public int getTagFrame(int index) {
+        return mFrames[index];
+    }
+
+    /**
+     * @return the number of frames with at least one tag - which may differ
+     *         from the header frame count
+     */
+    public int getFrameTagCount() {
+        return mFrameStartCount;
+    }
+
+    /**
+     * @return the index of the first tag in the given frame, or -1 if there is
+     *         no such frame
+     */
+    public int getFirstTag(int frame) {
+        return (frame >= 0 && frame < mFrameStartCount) ? mFrameStarts[frame] : -1;
+    }
+
+    /**
+     * @return the index of the tag that defines the given character, or -1 if
+     *         it is not defined
+     */
+    public int indexOfCharacter(int id) {
+        Integer index = mCharacters.get(id);
+        return (index != null) ? index : -1;
+    }
+
+    /**
+     * @return the index of the next tag of the given type, starting at
+     *         fromIndex, or -1 if there is none
+     */
+    public int indexOfType(int tagType, int fromIndex) {
+        for (int i = Math.max(fromIndex, 0); i < mTagCount; i++) {
+            if (mTypes[i] == tagType) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return a buffer holding the tag body from its position to its limit
+     */
+    protected ByteBuffer body(int index) throws IOException {
+        int length = mLengths[index];
+
+        if (mData == null) {
+            if (mCompressed) {
+                if (mInput == null) {
+                    mInput = map(mFile);
+                    mInput.position(8);
+                }
+
+                byte[] contents = new byte[length];
+                mCheckpoints.read(mInput, mOffsets[index] - 8, contents, 0, length);
+                return ByteBuffer.wrap(contents);
+            }
+
+            mData = map(mFile);
+            mBase = 0;
+        }
+
+        int position = (int) (mOffsets[index] + mBase);
+
+        ByteBuffer data = mData.duplicate();
+        data.limit(position + length);
+        data.position(position);
+        return data;
+    }
+
+    /**
+     * @return a copy of the tag body
+     */
+    public byte[] getTagContents(int index) throws IOException {
+        ByteBuffer body = body(index);
+
+        if (mData == null) {
+            return body.array(); //inflated from a checkpoint - not shared
+        }
+
+        byte[] contents = new byte[body.remaining()];
+        body.get(contents);
+        return contents;
+    }
+
+    /**
+     * Pass a tag to a consumer - as a slice of the movie if the consumer
+     * implements SWFTagSlices and the movie is held in an array.
+     */
+    public void tag(int index, SWFTags consumer) throws IOException {
+        ByteBuffer body = body(index);
+
+        if (consumer instanceof SWFTagSlices && body.hasArray()) {
+            int offset = body.arrayOffset() + body.position();
+            ((SWFTagSlices) consumer).tag(mTypes[index], isLongTag(index), body.array(), offset, body.remaining());
+            return;
+        }
+
+        byte[] contents = new byte[body.remaining()];
+        body.get(contents);
+        consumer.tag(mTypes[index], isLongTag(index), contents);
+    }
+
+    /**
+     * Parse a tag and drive the given interface
+     */
+    public void parseTag(int index, SWFTagTypes tagtypes) throws IOException {
+        tag(index, createParser(tagtypes));
+    }
+
+    /**
+     * Parse the tag that defines a character
+     *
+     * @return false if the character is not defined
+     */
+    public boolean parseCharacter(int id, SWFTagTypes tagtypes) throws IOException {
+        int index = indexOfCharacter(id);
+        if (index < 0) {
+            return false;
+        }
+
+        parseTag(index, tagtypes);
+        return true;
+    }
+
+    /**
+     * Parse all the tags in a frame - including the terminating SHOWFRAME
+     *
+     * @return false if there is no such frame
+     */
+    public boolean parseFrame(int frame, SWFTagTypes tagtypes) throws IOException {
+        int start = getFirstTag(frame);
+        if (start < 0) {
+            return false;
+        }
+
+        int end = (frame + 1 < mFrameStartCount) ? mFrameStarts[frame + 1] : mTagCount;
+
+        TagParser parser = createParser(tagtypes);
+
+        for (int i = start; i < end; i++) {
+            tag(i, parser);
+        }
+
+        return true;
+    }
+
+    protected TagParser createParser(SWFTagTypes tagtypes) {
+        TagParser parser = new TagParser(tagtypes);
+        parser.setFlashVersion(mVersion);
+        return parser;
+    }
+}
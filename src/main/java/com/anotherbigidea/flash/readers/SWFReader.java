@@ -37,13 +37,20 @@ package com.anotherbigidea.flash.readers;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 import com.anotherbigidea.flash.SWFConstants;
 import com.anotherbigidea.flash.interfaces.SWFFileSignature;
+import com.anotherbigidea.flash.interfaces.SWFTagSlices;
 import com.anotherbigidea.flash.interfaces.SWFTags;
 import com.anotherbigidea.flash.structs.Rect;
 import com.anotherbigidea.flash.writers.SWFWriter;
+import com.anotherbigidea.io.BackgroundInflaterInputStream;
+import com.anotherbigidea.io.BufferInStream;
+import com.anotherbigidea.io.Compression;
 import com.anotherbigidea.io.InStream;
+import com.anotherbigidea.io.ReadAheadInputStream;
 
 
 /**
@@ -57,20 +64,48 @@ public class SWFReader {
     protected InputStream mInputstream;
     protected boolean mCompressed;
     protected String mFilename;
+    protected boolean mCloseInput; //at the end of readFile()
+
+    /** reused for tag bodies passed to a SWFTagSlices consumer */
+    protected byte[] mBuffer;
+
+    /** null to pass on all tags */
+    protected TagFilter mFilter;
+
+    protected boolean mReadAhead;
+    protected Compression mCompression; //null for the built-in Inflater
+    protected InputStream mDecompressor; //to be closed at the end
 
     /**
      * Read from a file.
      * Must call readFile() in order to properly close the file.
      *
-     * @param consumer may also implement the SWFFileSignature interface.
+     * @param consumer may also implement the SWFFileSignature and
+     *        SWFTagSlices interfaces.
      */
     public SWFReader(SWFTags consumer, String filename) throws IOException {
         this(consumer, new FileInputStream(filename));
         mFilename = filename;
+        mCloseInput = true;
+    }
+
+    /**
+     * Read from a channel, with a background thread reading ahead into a
+     * ring of direct buffers.
+     * Must call readFile() in order to close the channel.
+     *
+     * @param consumer may also implement the SWFFileSignature and
+     *        SWFTagSlices interfaces.
+     * @see ReadAheadInputStream
+     */
+    public SWFReader(SWFTags consumer, ReadableByteChannel channel) {
+        this(consumer, new ReadAheadInputStream(channel));
+        mCloseInput = true;
     }
 
     /**
-     * @param consumer may also implement the SWFFileSignature interface.
+     * @param consumer may also implement the SWFFileSignature and
+     *        SWFTagSlices interfaces.
      */
     public SWFReader(SWFTags consumer, InputStream inputstream) {
         mConsumer = consumer;
@@ -79,21 +114,110 @@ public class SWFReader {
     }
 
     /**
-     * @param consumer may also implement the SWFFileSignature interface.
+     * Read from an in-memory or memory-mapped buffer, starting at the
+     * buffer position.
+     *
+     * @param consumer may also implement the SWFFileSignature and
+     *        SWFTagSlices interfaces.
+     * @see BufferInStream#map(String)
+     */
+    public SWFReader(SWFTags consumer, ByteBuffer buffer) {
+        this(consumer, new BufferInStream(buffer));
+    }
+
+    /**
+     * @param consumer may also implement the SWFFileSignature and
+     *        SWFTagSlices interfaces.
      */
     public SWFReader(SWFTags consumer, InStream instream) {
         mConsumer = consumer;
         mIn = instream;
     }
 
+    /**
+     * Reuse the reader for another consumer and input.  The buffer for tag
+     * bodies is kept and any tag filter is dropped.  The previous input is
+     * not closed.
+     */
+    public void reset(SWFTags consumer, InStream instream) {
+        mConsumer = consumer;
+        mIn = instream;
+        mInputstream = null;
+        mCompressed = false;
+        mFilename = null;
+        mCloseInput = false;
+        mFilter = null;
+        mDecompressor = null;
+    }
+
+    /**
+     * Reuse the reader for another consumer, reading from an input stream
+     */
+    public void reset(SWFTags consumer, InputStream inputstream) {
+        reset(consumer, new InStream(inputstream));
+        mInputstream = inputstream;
+    }
+
+    /**
+     * Reuse the reader for another consumer, reading from a buffer
+     */
+    public void reset(SWFTags consumer, ByteBuffer buffer) {
+        reset(consumer, new BufferInStream(buffer));
+    }
+
+    /**
+     * Only pass on the tags that the filter accepts - the bodies of the
+     * others are skipped without being read.  If the consumer is a TagParser
+     * (or a ParallelTagParser) it is given the filter as well, for the tags
+     * inside sprites.
+     *
+     * @param filter null to pass on all tags
+     */
+    public void setTagFilter(TagFilter filter) {
+        mFilter = filter;
+
+        if (mConsumer instanceof TagParser) {
+            ((TagParser) mConsumer).setTagFilter(filter);
+        } else if (mConsumer instanceof ParallelTagParser) {
+            ((ParallelTagParser) mConsumer).setTagFilter(filter);
+        }
+    }
+
+    /**
+     * Inflate compressed movies on a background thread, ahead of the tags
+     * being parsed.  A buffer is then read as a stream rather than being
+     * inflated into memory as a whole.
+     */
+    public void setReadAhead(boolean readAhead) {
+        mReadAhead = readAhead;
+    }
+
+    /**
+     * Decompress compressed movies with the given Compression - this takes
+     * precedence over setReadAhead(..)
+     *
+     * @param compression null for the built-in Inflater
+     */
+    public void setCompressionMethod(Compression compression) {
+        mCompression = compression;
+    }
+
     /**
      * Drive the consumer by reading a SWF File - including the header and all tags
      */
     public void readFile() throws IOException {
-        readHeader();
-        readTags();
-        if (mFilename != null) {
-            mInputstream.close();
+        try {
+            readHeader();
+            readTags();
+        } finally {
+            if (mDecompressor != null) {
+                mDecompressor.close();
+                mDecompressor = null;
+            }
+
+            if (mCloseInput) {
+                mInputstream.close();
+            }
         }
     }
 
@@ -121,14 +245,43 @@ public class SWFReader {
         if (longTag) {
             length = (int) mIn.readUI32();
         }
-System.err.println("type: " + type + ", length: " + length + ", rest: " + mIn.available());
-        byte[] contents = mIn.read(length);
+//System.err.println("type: " + type + ", length: " + length + ", rest: " + mIn.available());
+        if ((mFilter != null) && !mFilter.accepts(type)) {
+            mIn.skipBytes(length);
+        } else if (mConsumer instanceof SWFTagSlices) {
+            readTagSlice((SWFTagSlices) mConsumer, type, longTag, length);
+        } else {
+            byte[] contents = mIn.read(length);
 
-        mConsumer.tag(type, longTag, contents);
+            mConsumer.tag(type, longTag, contents);
+        }
 
         return type;
     }
 
+    /**
+     * Pass a tag body to the consumer without copying it into a new array.
+     * The body is a region of the input buffer if it has an accessible array,
+     * otherwise it is read into a buffer that is reused for each tag.
+     */
+    protected void readTagSlice(SWFTagSlices consumer, int type, boolean longTag, int length) throws IOException {
+        if (mIn instanceof BufferInStream && ((BufferInStream) mIn).hasArray()) {
+            BufferInStream in = (BufferInStream) mIn;
+            int offset = in.arrayPosition();
+
+            in.skipBytes(length);
+            consumer.tag(type, longTag, in.array(), offset, length);
+            return;
+        }
+
+        if (mBuffer == null || mBuffer.length < length) {
+            mBuffer = new byte[Math.max(length, 1024)];
+        }
+
+        mIn.readFully(mBuffer, 0, length);
+        consumer.tag(type, longTag, mBuffer, 0, length);
+    }
+
     /**
      * Read and verify just the file signature.
      */
@@ -168,7 +321,24 @@ System.err.println("type: " + type + ", length: " + length + ", rest: " + mIn.av
 
         //may be compressed from this point onwards
         if (mCompressed) {
-            mIn.readCompressed();
+            if (mCompression != null || mReadAhead) {
+                long read = mIn.getBytesRead();
+
+                if (mCompression != null) {
+                    mDecompressor = mCompression.decompress(mIn.getInputStream());
+                } else {
+                    mDecompressor = new BackgroundInflaterInputStream(mIn.getInputStream());
+                }
+
+                mIn = new InStream(mDecompressor);
+                mIn.setBytesRead(read);
+            } else {
+                mIn.readCompressed();
+
+                if (!(mIn instanceof BufferInStream)) {
+                    mDecompressor = mIn.getInputStream(); //closed to release the Inflater
+                }
+            }
         }
 
         Rect frameSize = new Rect(mIn);
@@ -196,7 +366,12 @@ System.err.println("type: " + type + ", length: " + length + ", rest: " + mIn.av
             }
         }
 
-        SWFReader reader = new SWFReader(writer, args[0]);
-        reader.readFile();
+        try {
+            SWFReader reader = new SWFReader(writer, args[0]);
+            reader.readFile();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
     }
 }
@@ -0,0 +1,2477 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import com.anotherbigidea.flash.SWFActionCodes;
+import com.anotherbigidea.flash.interfaces.SWFActions;
+import com.anotherbigidea.flash.interfaces.SWFFileSignature;
+import com.anotherbigidea.flash.interfaces.SWFShape;
+import com.anotherbigidea.flash.interfaces.SWFTagTypes;
+import com.anotherbigidea.flash.interfaces.SWFText;
+import com.anotherbigidea.flash.interfaces.SWFVectors;
+import com.anotherbigidea.flash.structs.AlphaColor;
+import com.anotherbigidea.flash.structs.AlphaTransform;
+import com.anotherbigidea.flash.structs.ButtonRecord;
+import com.anotherbigidea.flash.structs.Color;
+import com.anotherbigidea.flash.structs.ColorTransform;
+import com.anotherbigidea.flash.structs.Matrix;
+import com.anotherbigidea.flash.structs.Rect;
+import com.anotherbigidea.flash.structs.SoundInfo;
+
+
+/**
+ * Records the calls made on an SWFTagTypes - and on the shapes, text,
+ * actions and sprites that it returns - so that they can be replayed into
+ * any number of other SWFTagTypes.
+ *
+ * The calls are stored as a stream of ints - an op code, the object the
+ * call was made on and the primitive arguments - plus a pool that holds
+ * the object arguments in call order.  Replaying is a loop over the int
+ * stream, with no parsing and no reflection.
+ *
+ * Objects and arrays passed in are kept, not copied, so they must not be
+ * changed after they are recorded.  Calls on a shape, text, action or
+ * sprite object that the replay target returns as null are skipped, as are
+ * style calls on font glyphs that are replayed into plain SWFVectors.
+ *
+ * SWFRecorder recorder = new SWFRecorder();
+ * new SWFReader(new TagParser(recorder), filename).readFile();
+ * recorder.replay(new SWFTagDumper());
+ * recorder.replay(new TagWriter(new SWFWriter(outfile)));
+ */
+public class SWFRecorder implements SWFTagTypes, SWFActionCodes, SWFFileSignature {
+    //first op code made on each kind of object
+    protected static final int OP_VECTORS = 100;
+    protected static final int OP_SHAPE = 110;
+    protected static final int OP_TEXT = 130;
+    protected static final int OP_ACTIONS = 150;
+
+    //SWFTagTypes op codes
+    protected static final int T_SIGNATURE = 1;
+    protected static final int T_HEADER = 2;
+    protected static final int T_TAG = 3;
+    protected static final int T_START_SOUND = 4;
+    protected static final int T_SOUND_STREAM_HEAD = 5;
+    protected static final int T_SOUND_STREAM_HEAD2 = 6;
+    protected static final int T_SOUND_STREAM_BLOCK = 7;
+    protected static final int T_END = 8;
+    protected static final int T_SHOW_FRAME = 9;
+    protected static final int T_DO_ACTION = 10;
+    protected static final int T_DO_INIT_ACTION = 11;
+    protected static final int T_FREE_CHARACTER = 12;
+    protected static final int T_PLACE_OBJECT = 13;
+    protected static final int T_REMOVE_OBJECT = 14;
+    protected static final int T_PLACE_OBJECT2 = 15;
+    protected static final int T_REMOVE_OBJECT2 = 16;
+    protected static final int T_FRAME_LABEL = 17;
+    protected static final int T_FRAME_LABEL_ANCHOR = 18;
+    protected static final int T_DEFINE_SOUND = 19;
+    protected static final int T_DEFINE_BUTTON_SOUND = 20;
+    protected static final int T_DEFINE_SHAPE = 21;
+    protected static final int T_DEFINE_SHAPE2 = 22;
+    protected static final int T_DEFINE_SHAPE3 = 23;
+    protected static final int T_DEFINE_BUTTON = 24;
+    protected static final int T_BUTTON_CXFORM = 25;
+    protected static final int T_DEFINE_BUTTON2 = 26;
+    protected static final int T_SET_BACKGROUND_COLOR = 27;
+    protected static final int T_DEFINE_FONT = 28;
+    protected static final int T_DEFINE_TEXT = 29;
+    protected static final int T_DEFINE_TEXT2 = 30;
+    protected static final int T_DEFINE_FONT_INFO = 31;
+    protected static final int T_DEFINE_FONT_INFO2 = 32;
+    protected static final int T_DEFINE_BITS_JPEG2 = 33;
+    protected static final int T_DEFINE_BITS_JPEG2_STREAM = 34;
+    protected static final int T_DEFINE_BITS = 35;
+    protected static final int T_JPEGTABLES = 36;
+    protected static final int T_DEFINE_BITS_JPEG3 = 37;
+    protected static final int T_DEFINE_BITS_LOSSLESS = 38;
+    protected static final int T_DEFINE_BITS_LOSSLESS2 = 39;
+    protected static final int T_PROTECT = 40;
+    protected static final int T_DEFINE_TEXT_FIELD = 41;
+    protected static final int T_DEFINE_QUICK_TIME_MOVIE = 42;
+    protected static final int T_DEFINE_SPRITE = 43;
+    protected static final int T_DEFINE_MORPH_SHAPE = 44;
+    protected static final int T_DEFINE_FONT2 = 45;
+    protected static final int T_EXPORT = 46;
+    protected static final int T_IMPORT = 47;
+    protected static final int T_ENABLE_DEBUG = 48;
+    protected static final int T_ENABLE_DEBUG2 = 49;
+    protected static final int T_SERIAL_NUMBER = 50;
+    protected static final int T_GENERATOR = 51;
+    protected static final int T_GENERATOR_TEXT = 52;
+    protected static final int T_GENERATOR_COMMAND = 53;
+    protected static final int T_NAME_CHARACTER = 54;
+    protected static final int T_GENERATOR_FONT = 55;
+
+    //SWFVectors op codes
+    protected static final int V_DONE = 100;
+    protected static final int V_LINE = 101;
+    protected static final int V_CURVE = 102;
+    protected static final int V_MOVE = 103;
+
+    //SWFShape op codes
+    protected static final int S_SET_FILL_STYLE0 = 110;
+    protected static final int S_SET_FILL_STYLE1 = 111;
+    protected static final int S_SET_LINE_STYLE = 112;
+    protected static final int S_DEFINE_SOLID_FILL = 113;
+    protected static final int S_DEFINE_GRADIENT_FILL = 114;
+    protected static final int S_DEFINE_BITMAP_FILL = 115;
+    protected static final int S_DEFINE_LINE_STYLE = 116;
+
+    //SWFText op codes
+    protected static final int X_FONT = 130;
+    protected static final int X_COLOR = 131;
+    protected static final int X_SET_X = 132;
+    protected static final int X_SET_Y = 133;
+    protected static final int X_TEXT = 134;
+    protected static final int X_DONE = 135;
+
+    //SWFActions op codes - actions without arguments are recorded as
+    //A_ACTION followed by the action code
+    protected static final int A_ACTION = OP_ACTIONS;
+    protected static final int A_START = 151;
+    protected static final int A_DONE = 152;
+    protected static final int A_END = 153;
+    protected static final int A_BLOB = 154;
+    protected static final int A_UNKNOWN = 155;
+    protected static final int A_JUMP_LABEL = 156;
+    protected static final int A_COMMENT = 157;
+    protected static final int A_GOTO_FRAME = 158;
+    protected static final int A_GOTO_LABEL = 159;
+    protected static final int A_GET_URL = 160;
+    protected static final int A_WAIT_FOR_FRAME = 161;
+    protected static final int A_SET_TARGET = 162;
+    protected static final int A_PUSH_STRING = 163;
+    protected static final int A_PUSH_FLOAT = 164;
+    protected static final int A_JUMP = 165;
+    protected static final int A_IF_JUMP = 166;
+    protected static final int A_GET_URL_2 = 167;
+    protected static final int A_GOTO_FRAME_2 = 168;
+    protected static final int A_WAIT_FOR_FRAME_2 = 169;
+    protected static final int A_LOOKUP_TABLE = 170;
+    protected static final int A_START_FUNCTION = 171;
+    protected static final int A_END_BLOCK = 172;
+    protected static final int A_STORE_IN_REGISTER = 173;
+    protected static final int A_PUSH_DOUBLE = 174;
+    protected static final int A_PUSH_NULL = 175;
+    protected static final int A_PUSH_REGISTER = 176;
+    protected static final int A_PUSH_BOOLEAN = 177;
+    protected static final int A_PUSH_INT = 178;
+    protected static final int A_LOOKUP = 179;
+
+    protected SWFRecorder mRoot;
+    protected int mTarget;
+
+    //the recording - only used in the root recorder
+    protected int[] mCodes;
+    protected int mCodeCount;
+    protected Object[] mPool;
+    protected int mPoolCount;
+    protected int mTargetCount;
+
+    public SWFRecorder() {
+        mRoot = this;
+        mCodes = new int[256];
+        mPool = new Object[32];
+        mTargetCount = 1;
+    }
+
+    /**
+     * A recorder for a sprite
+     */
+    protected SWFRecorder(SWFRecorder root, int target) {
+        mRoot = root;
+        mTarget = target;
+    }
+
+    /**
+     * Discard the recording
+     */
+    public void clear() {
+        Arrays.fill(mPool, 0, mPoolCount, null);
+        mCodeCount = 0;
+        mPoolCount = 0;
+        mTargetCount = 1;
+    }
+
+    /**
+     * @return true if no calls have been recorded
+     */
+    public boolean isEmpty() {
+        return mCodeCount == 0;
+    }
+
+    /**
+     * @return the number of ints in the recording
+     */
+    public int getCodeCount() {
+        return mCodeCount;
+    }
+
+    /**
+     * @return the number of objects in the recording
+     */
+    public int getPoolCount() {
+        return mPoolCount;
+    }
+
+    /**
+     * @return the id for a new shape, text, action or sprite object
+     */
+    protected int newTarget() {
+        return mTargetCount++;
+    }
+
+    /**
+     * Start a call record and make room for its arguments
+     *
+     * @param ints the number of int arguments that follow
+     * @param objects the number of object arguments that follow
+     */
+    protected void record(int op, int target, int ints, int objects) {
+        if (mCodeCount + ints + 2 > mCodes.length) {
+            mCodes = Arrays.copyOf(mCodes, Math.max(mCodeCount + ints + 2, mCodes.length * 2));
+        }
+
+        if (mPoolCount + objects > mPool.length) {
+            mPool = Arrays.copyOf(mPool, Math.max(mPoolCount + objects, mPool.length * 2));
+        }
+
+        mCodes[mCodeCount++] = op | (ints << 8) | (objects << 16);
+        mCodes[mCodeCount++] = target;
+    }
+
+    protected void add(int value) {
+        mCodes[mCodeCount++] = value;
+    }
+
+    protected void add(Object value) {
+        mPool[mPoolCount++] = value;
+    }
+
+    protected static long toLong(int[] codes, int index) {
+        return ((long) codes[index] << 32) | (codes[index + 1] & 0xffffffffL);
+    }
+
+    protected static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+
+        while ((read = in.read(buffer)) >= 0) {
+            bout.write(buffer, 0, read);
+        }
+
+        return bout.toByteArray();
+    }
+
+    /**
+     * Make the recorded calls on the given SWFTagTypes
+     */
+    public void replay(SWFTagTypes tagtypes) throws IOException {
+        Object[] targets = new Object[mTargetCount];
+        targets[0] = tagtypes;
+
+        int[] codes = mCodes;
+        Object[] pool = mPool;
+        int o = 0;
+
+        for (int i = 0; i < mCodeCount;) {
+            int header = codes[i];
+            int op = header & 0xff;
+            Object target = targets[codes[i + 1]];
+            int args = i + 2;
+
+            if (target == null) {
+                //skipped
+            } else if (op < OP_VECTORS) {
+                replayTag(op, (SWFTagTypes) target, codes, args, pool, o, targets);
+            } else if (op < OP_SHAPE) {
+                replayVectors(op, (SWFVectors) target, codes, args, pool, o);
+            } else if (op < OP_TEXT) {
+                if (target instanceof SWFShape) {
+                    replayShape(op, (SWFShape) target, codes, args, pool, o);
+                }
+            } else if (op < OP_ACTIONS) {
+                replayText(op, (SWFText) target, codes, args, pool, o);
+            } else {
+                replayActions(op, (SWFActions) target, codes, args, pool, o);
+            }
+
+            i = args + ((header >> 8) & 0xff);
+            o += header >>> 16;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void replayTag(int op, SWFTagTypes tagtypes, int[] codes, int i, Object[] pool, int o, Object[] targets) throws IOException {
+        switch (op) {
+        case T_SIGNATURE:
+            if (tagtypes instanceof SWFFileSignature) {
+                ((SWFFileSignature) tagtypes).signature((String) pool[o]);
+            }
+            break;
+        case T_HEADER:
+            tagtypes.header(codes[i], toLong(codes, i + 1), codes[i + 3], codes[i + 4], codes[i + 5], codes[i + 6]);
+            break;
+        case T_TAG:
+            tagtypes.tag(codes[i], codes[i + 1] != 0, (byte[]) pool[o]);
+            break;
+        case T_START_SOUND:
+            tagtypes.tagStartSound(codes[i], (SoundInfo) pool[o]);
+            break;
+        case T_SOUND_STREAM_HEAD:
+            tagtypes.tagSoundStreamHead(codes[i], codes[i + 1] != 0, codes[i + 2] != 0, codes[i + 3], codes[i + 4], codes[i + 5] != 0, codes[i + 6] != 0, codes[i + 7]);
+            break;
+        case T_SOUND_STREAM_HEAD2:
+            tagtypes.tagSoundStreamHead2(codes[i], codes[i + 1] != 0, codes[i + 2] != 0, codes[i + 3], codes[i + 4], codes[i + 5] != 0, codes[i + 6] != 0, codes[i + 7]);
+            break;
+        case T_SOUND_STREAM_BLOCK:
+            tagtypes.tagSoundStreamBlock((byte[]) pool[o]);
+            break;
+        case T_END:
+            tagtypes.tagEnd();
+            break;
+        case T_SHOW_FRAME:
+            tagtypes.tagShowFrame();
+            break;
+        case T_DO_ACTION:
+            targets[codes[i]] = tagtypes.tagDoAction();
+            break;
+        case T_DO_INIT_ACTION:
+            targets[codes[i + 1]] = tagtypes.tagDoInitAction(codes[i]);
+            break;
+        case T_FREE_CHARACTER:
+            tagtypes.tagFreeCharacter(codes[i]);
+            break;
+        case T_PLACE_OBJECT:
+            tagtypes.tagPlaceObject(codes[i], codes[i + 1], (Matrix) pool[o], (AlphaTransform) pool[o + 1]);
+            break;
+        case T_REMOVE_OBJECT:
+            tagtypes.tagRemoveObject(codes[i], codes[i + 1]);
+            break;
+        case T_PLACE_OBJECT2:
+            targets[codes[i + 6]] = tagtypes.tagPlaceObject2(codes[i] != 0, codes[i + 1], codes[i + 2], codes[i + 3], (Matrix) pool[o], (AlphaTransform) pool[o + 1], codes[i + 4], (String) pool[o + 2], codes[i + 5]);
+            break;
+        case T_REMOVE_OBJECT2:
+            tagtypes.tagRemoveObject2(codes[i]);
+            break;
+        case T_FRAME_LABEL:
+            tagtypes.tagFrameLabel((String) pool[o]);
+            break;
+        case T_FRAME_LABEL_ANCHOR:
+            tagtypes.tagFrameLabel((String) pool[o], codes[i] != 0);
+            break;
+        case T_DEFINE_SOUND:
+            tagtypes.tagDefineSound(codes[i], codes[i + 1], codes[i + 2], codes[i + 3] != 0, codes[i + 4] != 0, codes[i + 5], (byte[]) pool[o]);
+            break;
+        case T_DEFINE_BUTTON_SOUND:
+            tagtypes.tagDefineButtonSound(codes[i], codes[i + 1], (SoundInfo) pool[o], codes[i + 2], (SoundInfo) pool[o + 1], codes[i + 3], (SoundInfo) pool[o + 2], codes[i + 4], (SoundInfo) pool[o + 3]);
+            break;
+        case T_DEFINE_SHAPE:
+            targets[codes[i + 1]] = tagtypes.tagDefineShape(codes[i], (Rect) pool[o]);
+            break;
+        case T_DEFINE_SHAPE2:
+            targets[codes[i + 1]] = tagtypes.tagDefineShape2(codes[i], (Rect) pool[o]);
+            break;
+        case T_DEFINE_SHAPE3:
+            targets[codes[i + 1]] = tagtypes.tagDefineShape3(codes[i], (Rect) pool[o]);
+            break;
+        case T_DEFINE_BUTTON:
+            targets[codes[i + 1]] = tagtypes.tagDefineButton(codes[i], (List<? extends ButtonRecord>) pool[o]);
+            break;
+        case T_BUTTON_CXFORM:
+            tagtypes.tagButtonCXForm(codes[i], (ColorTransform) pool[o]);
+            break;
+        case T_DEFINE_BUTTON2:
+            targets[codes[i + 2]] = tagtypes.tagDefineButton2(codes[i], codes[i + 1] != 0, (List<? extends ButtonRecord>) pool[o]);
+            break;
+        case T_SET_BACKGROUND_COLOR:
+            tagtypes.tagSetBackgroundColor((Color) pool[o]);
+            break;
+        case T_DEFINE_FONT:
+            targets[codes[i + 2]] = tagtypes.tagDefineFont(codes[i], codes[i + 1]);
+            break;
+        case T_DEFINE_TEXT:
+            targets[codes[i + 1]] = tagtypes.tagDefineText(codes[i], (Rect) pool[o], (Matrix) pool[o + 1]);
+            break;
+        case T_DEFINE_TEXT2:
+            targets[codes[i + 1]] = tagtypes.tagDefineText2(codes[i], (Rect) pool[o], (Matrix) pool[o + 1]);
+            break;
+        case T_DEFINE_FONT_INFO:
+            tagtypes.tagDefineFontInfo(codes[i], (String) pool[o], codes[i + 1], (int[]) pool[o + 1]);
+            break;
+        case T_DEFINE_FONT_INFO2:
+            tagtypes.tagDefineFontInfo2(codes[i], (String) pool[o], codes[i + 1], (int[]) pool[o + 1], codes[i + 2]);
+            break;
+        case T_DEFINE_BITS_JPEG2:
+            tagtypes.tagDefineBitsJPEG2(codes[i], (byte[]) pool[o]);
+            break;
+        case T_DEFINE_BITS_JPEG2_STREAM:
+            tagtypes.tagDefineBitsJPEG2(codes[i], new ByteArrayInputStream((byte[]) pool[o]));
+            break;
+        case T_DEFINE_BITS:
+            tagtypes.tagDefineBits(codes[i], (byte[]) pool[o]);
+            break;
+        case T_JPEGTABLES:
+            tagtypes.tagJPEGTables((byte[]) pool[o]);
+            break;
+        case T_DEFINE_BITS_JPEG3:
+            tagtypes.tagDefineBitsJPEG3(codes[i], (byte[]) pool[o], (byte[]) pool[o + 1]);
+            break;
+        case T_DEFINE_BITS_LOSSLESS:
+            tagtypes.tagDefineBitsLossless(codes[i], codes[i + 1], codes[i + 2], codes[i + 3], (Color[]) pool[o], (byte[]) pool[o + 1]);
+            break;
+        case T_DEFINE_BITS_LOSSLESS2:
+            tagtypes.tagDefineBitsLossless2(codes[i], codes[i + 1], codes[i + 2], codes[i + 3], (Color[]) pool[o], (byte[]) pool[o + 1]);
+            break;
+        case T_PROTECT:
+            tagtypes.tagProtect((byte[]) pool[o]);
+            break;
+        case T_DEFINE_TEXT_FIELD:
+            tagtypes.tagDefineTextField(codes[i], (String) pool[o], (String) pool[o + 1], (Rect) pool[o + 2], codes[i + 1], (AlphaColor) pool[o + 3], codes[i + 2], codes[i + 3], codes[i + 4], codes[i + 5], codes[i + 6], codes[i + 7], codes[i + 8], codes[i + 9]);
+            break;
+        case T_DEFINE_QUICK_TIME_MOVIE:
+            tagtypes.tagDefineQuickTimeMovie(codes[i], (String) pool[o]);
+            break;
+        case T_DEFINE_SPRITE:
+            targets[codes[i + 1]] = tagtypes.tagDefineSprite(codes[i]);
+            break;
+        case T_DEFINE_MORPH_SHAPE:
+            targets[codes[i + 1]] = tagtypes.tagDefineMorphShape(codes[i], (Rect) pool[o], (Rect) pool[o + 1]);
+            break;
+        case T_DEFINE_FONT2:
+            targets[codes[i + 6]] = tagtypes.tagDefineFont2(codes[i], codes[i + 1], (String) pool[o], codes[i + 2], codes[i + 3], codes[i + 4], codes[i + 5], (int[]) pool[o + 1], (int[]) pool[o + 2], (Rect[]) pool[o + 3], (int[]) pool[o + 4], (int[]) pool[o + 5], (int[]) pool[o + 6]);
+            break;
+        case T_EXPORT:
+            tagtypes.tagExport((String[]) pool[o], (int[]) pool[o + 1]);
+            break;
+        case T_IMPORT:
+            tagtypes.tagImport((String) pool[o], (String[]) pool[o + 1], (int[]) pool[o + 2]);
+            break;
+        case T_ENABLE_DEBUG:
+            tagtypes.tagEnableDebug((byte[]) pool[o]);
+            break;
+        case T_ENABLE_DEBUG2:
+            tagtypes.tagEnableDebug2((byte[]) pool[o]);
+            break;
+        case T_SERIAL_NUMBER:
+            tagtypes.tagSerialNumber((String) pool[o]);
+            break;
+        case T_GENERATOR:
+            tagtypes.tagGenerator((byte[]) pool[o]);
+            break;
+        case T_GENERATOR_TEXT:
+            tagtypes.tagGeneratorText((byte[]) pool[o]);
+            break;
+        case T_GENERATOR_COMMAND:
+            tagtypes.tagGeneratorCommand((byte[]) pool[o]);
+            break;
+        case T_NAME_CHARACTER:
+            tagtypes.tagNameCharacter((byte[]) pool[o]);
+            break;
+        case T_GENERATOR_FONT:
+            tagtypes.tagGeneratorFont((byte[]) pool[o]);
+            break;
+        default:
+            throw new IllegalStateException("bad op code: " + op);
+        }
+    }
+
+    protected void replayVectors(int op, SWFVectors vectors, int[] codes, int i, Object[] pool, int o) throws IOException {
+        switch (op) {
+        case V_DONE:
+            vectors.done();
+            break;
+        case V_LINE:
+            vectors.line(codes[i], codes[i + 1]);
+            break;
+        case V_CURVE:
+            vectors.curve(codes[i], codes[i + 1], codes[i + 2], codes[i + 3]);
+            break;
+        case V_MOVE:
+            vectors.move(codes[i], codes[i + 1]);
+            break;
+        default:
+            throw new IllegalStateException("bad op code: " + op);
+        }
+    }
+
+    protected void replayShape(int op, SWFShape shape, int[] codes, int i, Object[] pool, int o) throws IOException {
+        switch (op) {
+        case S_SET_FILL_STYLE0:
+            shape.setFillStyle0(codes[i]);
+            break;
+        case S_SET_FILL_STYLE1:
+            shape.setFillStyle1(codes[i]);
+            break;
+        case S_SET_LINE_STYLE:
+            shape.setLineStyle(codes[i]);
+            break;
+        case S_DEFINE_SOLID_FILL:
+            shape.defineFillStyle((Color) pool[o]);
+            break;
+        case S_DEFINE_GRADIENT_FILL:
+            shape.defineFillStyle((Matrix) pool[o], (int[]) pool[o + 1], (Color[]) pool[o + 2], codes[i] != 0);
+            break;
+        case S_DEFINE_BITMAP_FILL:
+            shape.defineFillStyle(codes[i], (Matrix) pool[o], codes[i + 1] != 0);
+            break;
+        case S_DEFINE_LINE_STYLE:
+            shape.defineLineStyle(codes[i], (Color) pool[o]);
+            break;
+        default:
+            throw new IllegalStateException("bad op code: " + op);
+        }
+    }
+
+    protected void replayText(int op, SWFText text, int[] codes, int i, Object[] pool, int o) throws IOException {
+        switch (op) {
+        case X_FONT:
+            text.font(codes[i], codes[i + 1]);
+            break;
+        case X_COLOR:
+            text.color((Color) pool[o]);
+            break;
+        case X_SET_X:
+            text.setX(codes[i]);
+            break;
+        case X_SET_Y:
+            text.setY(codes[i]);
+            break;
+        case X_TEXT:
+            text.text((int[]) pool[o], (int[]) pool[o + 1]);
+            break;
+        case X_DONE:
+            text.done();
+            break;
+        default:
+            throw new IllegalStateException("bad op code: " + op);
+        }
+    }
+
+    protected void replayActions(int op, SWFActions actions, int[] codes, int i, Object[] pool, int o) throws IOException {
+        switch (op) {
+        case A_ACTION:
+            replayAction(codes[i], actions);
+            break;
+        case A_START:
+            actions.start(codes[i]);
+            break;
+        case A_DONE:
+            actions.done();
+            break;
+        case A_END:
+            actions.end();
+            break;
+        case A_BLOB:
+            actions.blob((byte[]) pool[o]);
+            break;
+        case A_UNKNOWN:
+            actions.unknown(codes[i], (byte[]) pool[o]);
+            break;
+        case A_JUMP_LABEL:
+            actions.jumpLabel((String) pool[o]);
+            break;
+        case A_COMMENT:
+            actions.comment((String) pool[o]);
+            break;
+        case A_GOTO_FRAME:
+            actions.gotoFrame(codes[i]);
+            break;
+        case A_GOTO_LABEL:
+            actions.gotoFrame((String) pool[o]);
+            break;
+        case A_GET_URL:
+            actions.getURL((String) pool[o], (String) pool[o + 1]);
+            break;
+        case A_WAIT_FOR_FRAME:
+            actions.waitForFrame(codes[i], (String) pool[o]);
+            break;
+        case A_SET_TARGET:
+            actions.setTarget((String) pool[o]);
+            break;
+        case A_PUSH_STRING:
+            actions.push((String) pool[o]);
+            break;
+        case A_PUSH_FLOAT:
+            actions.push(Float.intBitsToFloat(codes[i]));
+            break;
+        case A_JUMP:
+            actions.jump((String) pool[o]);
+            break;
+        case A_IF_JUMP:
+            actions.ifJump((String) pool[o]);
+            break;
+        case A_GET_URL_2:
+            actions.getURL(codes[i], codes[i + 1]);
+            break;
+        case A_GOTO_FRAME_2:
+            actions.gotoFrame(codes[i] != 0);
+            break;
+        case A_WAIT_FOR_FRAME_2:
+            actions.waitForFrame((String) pool[o]);
+            break;
+        case A_LOOKUP_TABLE:
+            actions.lookupTable((String[]) pool[o]);
+            break;
+        case A_START_FUNCTION:
+            actions.startFunction((String) pool[o], (String[]) pool[o + 1]);
+            break;
+        case A_END_BLOCK:
+            actions.endBlock();
+            break;
+        case A_STORE_IN_REGISTER:
+            actions.storeInRegister(codes[i]);
+            break;
+        case A_PUSH_DOUBLE:
+            actions.push(Double.longBitsToDouble(toLong(codes, i + 0)));
+            break;
+        case A_PUSH_NULL:
+            actions.pushNull();
+            break;
+        case A_PUSH_REGISTER:
+            actions.pushRegister(codes[i]);
+            break;
+        case A_PUSH_BOOLEAN:
+            actions.push(codes[i] != 0);
+            break;
+        case A_PUSH_INT:
+            actions.push(codes[i]);
+            break;
+        case A_LOOKUP:
+            actions.lookup(codes[i]);
+            break;
+        default:
+            throw new IllegalStateException("bad op code: " + op);
+        }
+    }
+
+    /**
+     * Replay an action that has no arguments
+     */
+    protected void replayAction(int code, SWFActions actions) throws IOException {
+        switch (code) {
+        case NEXT_FRAME:
+            actions.nextFrame();
+            break;
+        case PREVIOUS_FRAME:
+            actions.prevFrame();
+            break;
+        case PLAY:
+            actions.play();
+            break;
+        case STOP:
+            actions.stop();
+            break;
+        case TOGGLE_QUALITY:
+            actions.toggleQuality();
+            break;
+        case STOP_SOUNDS:
+            actions.stopSounds();
+            break;
+        case POP:
+            actions.pop();
+            break;
+        case ADD:
+            actions.add();
+            break;
+        case SUBTRACT:
+            actions.substract();
+            break;
+        case MULTIPLY:
+            actions.multiply();
+            break;
+        case DIVIDE:
+            actions.divide();
+            break;
+        case EQUALS:
+            actions.equals();
+            break;
+        case LESS:
+            actions.lessThan();
+            break;
+        case AND:
+            actions.and();
+            break;
+        case OR:
+            actions.or();
+            break;
+        case NOT:
+            actions.not();
+            break;
+        case STRING_EQUALS:
+            actions.stringEquals();
+            break;
+        case STRING_LENGTH:
+            actions.stringLength();
+            break;
+        case STRING_ADD:
+            actions.concat();
+            break;
+        case STRING_EXTRACT:
+            actions.substring();
+            break;
+        case STRING_LESS:
+            actions.stringLessThan();
+            break;
+        case MB_STRING_LENGTH:
+            actions.stringLengthMB();
+            break;
+        case MB_STRING_EXTRACT:
+            actions.substringMB();
+            break;
+        case TO_INTEGER:
+            actions.toInteger();
+            break;
+        case CHAR_TO_ASCII:
+            actions.charToAscii();
+            break;
+        case ASCII_TO_CHAR:
+            actions.asciiToChar();
+            break;
+        case MB_CHAR_TO_ASCII:
+            actions.charMBToAscii();
+            break;
+        case MB_ASCII_TO_CHAR:
+            actions.asciiToCharMB();
+            break;
+        case CALL:
+            actions.call();
+            break;
+        case GET_VARIABLE:
+            actions.getVariable();
+            break;
+        case SET_VARIABLE:
+            actions.setVariable();
+            break;
+        case SET_TARGET_2:
+            actions.setTarget();
+            break;
+        case GET_PROPERTY:
+            actions.getProperty();
+            break;
+        case SET_PROPERTY:
+            actions.setProperty();
+            break;
+        case CLONE_SPRITE:
+            actions.cloneSprite();
+            break;
+        case REMOVE_SPRITE:
+            actions.removeSprite();
+            break;
+        case START_DRAG:
+            actions.startDrag();
+            break;
+        case END_DRAG:
+            actions.endDrag();
+            break;
+        case TRACE:
+            actions.trace();
+            break;
+        case GET_TIME:
+            actions.getTime();
+            break;
+        case RANDOM_NUMBER:
+            actions.randomNumber();
+            break;
+        case CALL_FUNCTION:
+            actions.callFunction();
+            break;
+        case CALL_METHOD:
+            actions.callMethod();
+            break;
+        case DEFINE_LOCAL_VAL:
+            actions.defineLocalValue();
+            break;
+        case DEFINE_LOCAL:
+            actions.defineLocal();
+            break;
+        case DEL_VAR:
+            actions.deleteProperty();
+            break;
+        case DEL_THREAD_VARS:
+            actions.deleteThreadVars();
+            break;
+        case ENUMERATE:
+            actions.enumerate();
+            break;
+        case TYPED_EQUALS:
+            actions.typedEquals();
+            break;
+        case GET_MEMBER:
+            actions.getMember();
+            break;
+        case INIT_ARRAY:
+            actions.initArray();
+            break;
+        case INIT_OBJECT:
+            actions.initObject();
+            break;
+        case CALL_NEW_METHOD:
+            actions.newMethod();
+            break;
+        case NEW_OBJECT:
+            actions.newObject();
+            break;
+        case SET_MEMBER:
+            actions.setMember();
+            break;
+        case GET_TARGET_PATH:
+            actions.getTargetPath();
+            break;
+        case WITH:
+            actions.startWith();
+            break;
+        case CONVERT_TO_NUMBER:
+            actions.convertToNumber();
+            break;
+        case CONVERT_TO_STRING:
+            actions.convertToString();
+            break;
+        case TYPEOF:
+            actions.typeOf();
+            break;
+        case TYPED_ADD:
+            actions.typedAdd();
+            break;
+        case TYPED_LESS_THAN:
+            actions.typedLessThan();
+            break;
+        case MODULO:
+            actions.modulo();
+            break;
+        case BIT_AND:
+            actions.bitAnd();
+            break;
+        case BIT_OR:
+            actions.bitOr();
+            break;
+        case BIT_XOR:
+            actions.bitXor();
+            break;
+        case SHIFT_LEFT:
+            actions.shiftLeft();
+            break;
+        case SHIFT_RIGHT:
+            actions.shiftRight();
+            break;
+        case SHIFT_UNSIGNED:
+            actions.shiftRightUnsigned();
+            break;
+        case DECREMENT:
+            actions.decrement();
+            break;
+        case INCREMENT:
+            actions.increment();
+            break;
+        case DUPLICATE:
+            actions.duplicate();
+            break;
+        case RETURN:
+            actions.returnValue();
+            break;
+        case SWAP:
+            actions.swap();
+            break;
+        case INSTANCE_OF:
+            actions.instanceOf();
+            break;
+        case ENUMERATE_OBJECT:
+            actions.enumerateObject();
+            break;
+        case STRICT_EQUALS:
+            actions.strictEquals();
+            break;
+        case GREATER:
+            actions.greaterThan();
+            break;
+        case STRING_GREATER:
+            actions.stringGreaterThan();
+            break;
+        default:
+            throw new IllegalStateException("bad action code: " + code);
+        }
+    }
+
+    /**
+     * @see SWFFileSignature#signature(String)
+     */
+    public void signature(String sig) {
+        mRoot.record(T_SIGNATURE, mTarget, 0, 1);
+        mRoot.add(sig);
+    }
+
+    /**
+     * SWFHeader interface
+     */
+    public void header(int version, long length, int twipsWidth, int twipsHeight, int frameRate, int frameCount) throws IOException {
+        mRoot.record(T_HEADER, mTarget, 7, 0);
+        mRoot.add(version);
+        mRoot.add((int) (length >>> 32));
+        mRoot.add((int) length);
+        mRoot.add(twipsWidth);
+        mRoot.add(twipsHeight);
+        mRoot.add(frameRate);
+        mRoot.add(frameCount);
+    }
+
+    /**
+     * SWFTags interface
+     */
+    public void tag(int tagType, boolean longTag, byte[] contents) throws IOException {
+        mRoot.record(T_TAG, mTarget, 2, 1);
+        mRoot.add(tagType);
+        mRoot.add(longTag ? 1 : 0);
+        mRoot.add(contents);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagStartSound(int soundId, SoundInfo info) throws IOException {
+        mRoot.record(T_START_SOUND, mTarget, 1, 1);
+        mRoot.add(soundId);
+        mRoot.add(info);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagSoundStreamHead(int playbackFrequency, boolean playback16bit, boolean playbackStereo, int streamFormat, int streamFrequency, boolean stream16bit, boolean streamStereo, int averageSampleCount) throws IOException {
+        mRoot.record(T_SOUND_STREAM_HEAD, mTarget, 8, 0);
+        mRoot.add(playbackFrequency);
+        mRoot.add(playback16bit ? 1 : 0);
+        mRoot.add(playbackStereo ? 1 : 0);
+        mRoot.add(streamFormat);
+        mRoot.add(streamFrequency);
+        mRoot.add(stream16bit ? 1 : 0);
+        mRoot.add(streamStereo ? 1 : 0);
+        mRoot.add(averageSampleCount);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagSoundStreamHead2(int playbackFrequency, boolean playback16bit, boolean playbackStereo, int streamFormat, int streamFrequency, boolean stream16bit, boolean streamStereo, int averageSampleCount) throws IOException {
+        mRoot.record(T_SOUND_STREAM_HEAD2, mTarget, 8, 0);
+        mRoot.add(playbackFrequency);
+        mRoot.add(playback16bit ? 1 : 0);
+        mRoot.add(playbackStereo ? 1 : 0);
+        mRoot.add(streamFormat);
+        mRoot.add(streamFrequency);
+        mRoot.add(stream16bit ? 1 : 0);
+        mRoot.add(streamStereo ? 1 : 0);
+        mRoot.add(averageSampleCount);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagSoundStreamBlock(byte[] soundData) throws IOException {
+        mRoot.record(T_SOUND_STREAM_BLOCK, mTarget, 0, 1);
+        mRoot.add(soundData);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagEnd() throws IOException {
+        mRoot.record(T_END, mTarget, 0, 0);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagShowFrame() throws IOException {
+        mRoot.record(T_SHOW_FRAME, mTarget, 0, 0);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFActions tagDoAction() throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DO_ACTION, mTarget, 1, 0);
+        mRoot.add(result);
+        return new ActionRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFActions tagDoInitAction(int spriteId) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DO_INIT_ACTION, mTarget, 2, 0);
+        mRoot.add(spriteId);
+        mRoot.add(result);
+        return new ActionRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagFreeCharacter(int charId) throws IOException {
+        mRoot.record(T_FREE_CHARACTER, mTarget, 1, 0);
+        mRoot.add(charId);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagPlaceObject(int charId, int depth, Matrix matrix, AlphaTransform cxform) throws IOException {
+        mRoot.record(T_PLACE_OBJECT, mTarget, 2, 2);
+        mRoot.add(charId);
+        mRoot.add(depth);
+        mRoot.add(matrix);
+        mRoot.add(cxform);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagRemoveObject(int charId, int depth) throws IOException {
+        mRoot.record(T_REMOVE_OBJECT, mTarget, 2, 0);
+        mRoot.add(charId);
+        mRoot.add(depth);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFActions tagPlaceObject2(boolean isMove, int clipDepth, int depth, int charId, Matrix matrix, AlphaTransform cxform, int ratio, String name, int clipActionFlags) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_PLACE_OBJECT2, mTarget, 7, 3);
+        mRoot.add(isMove ? 1 : 0);
+        mRoot.add(clipDepth);
+        mRoot.add(depth);
+        mRoot.add(charId);
+        mRoot.add(ratio);
+        mRoot.add(clipActionFlags);
+        mRoot.add(result);
+        mRoot.add(matrix);
+        mRoot.add(cxform);
+        mRoot.add(name);
+        return new ActionRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagRemoveObject2(int depth) throws IOException {
+        mRoot.record(T_REMOVE_OBJECT2, mTarget, 1, 0);
+        mRoot.add(depth);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagFrameLabel(String label) throws IOException {
+        mRoot.record(T_FRAME_LABEL, mTarget, 0, 1);
+        mRoot.add(label);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagFrameLabel(String label, boolean isAnchor) throws IOException {
+        mRoot.record(T_FRAME_LABEL_ANCHOR, mTarget, 1, 1);
+        mRoot.add(isAnchor ? 1 : 0);
+        mRoot.add(label);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineSound(int id, int format, int frequency, boolean bits16, boolean stereo, int sampleCount, byte[] soundData) throws IOException {
+        mRoot.record(T_DEFINE_SOUND, mTarget, 6, 1);
+        mRoot.add(id);
+        mRoot.add(format);
+        mRoot.add(frequency);
+        mRoot.add(bits16 ? 1 : 0);
+        mRoot.add(stereo ? 1 : 0);
+        mRoot.add(sampleCount);
+        mRoot.add(soundData);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineButtonSound(int buttonId, int rollOverSoundId, SoundInfo rollOverSoundInfo, int rollOutSoundId, SoundInfo rollOutSoundInfo, int pressSoundId, SoundInfo pressSoundInfo, int releaseSoundId, SoundInfo releaseSoundInfo) throws IOException {
+        mRoot.record(T_DEFINE_BUTTON_SOUND, mTarget, 5, 4);
+        mRoot.add(buttonId);
+        mRoot.add(rollOverSoundId);
+        mRoot.add(rollOutSoundId);
+        mRoot.add(pressSoundId);
+        mRoot.add(releaseSoundId);
+        mRoot.add(rollOverSoundInfo);
+        mRoot.add(rollOutSoundInfo);
+        mRoot.add(pressSoundInfo);
+        mRoot.add(releaseSoundInfo);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFShape tagDefineShape(int id, Rect outline) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_SHAPE, mTarget, 2, 1);
+        mRoot.add(id);
+        mRoot.add(result);
+        mRoot.add(outline);
+        return new ShapeRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFShape tagDefineShape2(int id, Rect outline) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_SHAPE2, mTarget, 2, 1);
+        mRoot.add(id);
+        mRoot.add(result);
+        mRoot.add(outline);
+        return new ShapeRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFShape tagDefineShape3(int id, Rect outline) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_SHAPE3, mTarget, 2, 1);
+        mRoot.add(id);
+        mRoot.add(result);
+        mRoot.add(outline);
+        return new ShapeRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFActions tagDefineButton(int id, List<? extends ButtonRecord> buttonRecords) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_BUTTON, mTarget, 2, 1);
+        mRoot.add(id);
+        mRoot.add(result);
+        mRoot.add(buttonRecords);
+        return new ActionRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagButtonCXForm(int buttonId, ColorTransform transform) throws IOException {
+        mRoot.record(T_BUTTON_CXFORM, mTarget, 1, 1);
+        mRoot.add(buttonId);
+        mRoot.add(transform);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFActions tagDefineButton2(int id, boolean trackAsMenu, List<? extends ButtonRecord> buttonRecords) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_BUTTON2, mTarget, 3, 1);
+        mRoot.add(id);
+        mRoot.add(trackAsMenu ? 1 : 0);
+        mRoot.add(result);
+        mRoot.add(buttonRecords);
+        return new ActionRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagSetBackgroundColor(Color color) throws IOException {
+        mRoot.record(T_SET_BACKGROUND_COLOR, mTarget, 0, 1);
+        mRoot.add(color);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFVectors tagDefineFont(int id, int numGlyphs) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_FONT, mTarget, 3, 0);
+        mRoot.add(id);
+        mRoot.add(numGlyphs);
+        mRoot.add(result);
+        return new ShapeRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFText tagDefineText(int id, Rect bounds, Matrix matrix) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_TEXT, mTarget, 2, 2);
+        mRoot.add(id);
+        mRoot.add(result);
+        mRoot.add(bounds);
+        mRoot.add(matrix);
+        return new TextRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFText tagDefineText2(int id, Rect bounds, Matrix matrix) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_TEXT2, mTarget, 2, 2);
+        mRoot.add(id);
+        mRoot.add(result);
+        mRoot.add(bounds);
+        mRoot.add(matrix);
+        return new TextRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineFontInfo(int fontId, String fontName, int flags, int[] codes) throws IOException {
+        mRoot.record(T_DEFINE_FONT_INFO, mTarget, 2, 2);
+        mRoot.add(fontId);
+        mRoot.add(flags);
+        mRoot.add(fontName);
+        mRoot.add(codes);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineFontInfo2(int fontId, String fontName, int flags, int[] codes, int languageCode) throws IOException {
+        mRoot.record(T_DEFINE_FONT_INFO2, mTarget, 3, 2);
+        mRoot.add(fontId);
+        mRoot.add(flags);
+        mRoot.add(languageCode);
+        mRoot.add(fontName);
+        mRoot.add(codes);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineBitsJPEG2(int id, byte[] data) throws IOException {
+        mRoot.record(T_DEFINE_BITS_JPEG2, mTarget, 1, 1);
+        mRoot.add(id);
+        mRoot.add(data);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineBitsJPEG2(int id, InputStream jpegImage) throws IOException {
+        mRoot.record(T_DEFINE_BITS_JPEG2_STREAM, mTarget, 1, 1);
+        mRoot.add(id);
+        mRoot.add(readAll(jpegImage));
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineBits(int id, byte[] imageData) throws IOException {
+        mRoot.record(T_DEFINE_BITS, mTarget, 1, 1);
+        mRoot.add(id);
+        mRoot.add(imageData);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagJPEGTables(byte[] jpegEncodingData) throws IOException {
+        mRoot.record(T_JPEGTABLES, mTarget, 0, 1);
+        mRoot.add(jpegEncodingData);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineBitsJPEG3(int id, byte[] imageData, byte[] alphaData) throws IOException {
+        mRoot.record(T_DEFINE_BITS_JPEG3, mTarget, 1, 2);
+        mRoot.add(id);
+        mRoot.add(imageData);
+        mRoot.add(alphaData);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineBitsLossless(int id, int format, int width, int height, Color[] colors, byte[] imageData) throws IOException {
+        mRoot.record(T_DEFINE_BITS_LOSSLESS, mTarget, 4, 2);
+        mRoot.add(id);
+        mRoot.add(format);
+        mRoot.add(width);
+        mRoot.add(height);
+        mRoot.add(colors);
+        mRoot.add(imageData);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineBitsLossless2(int id, int format, int width, int height, Color[] colors, byte[] imageData) throws IOException {
+        mRoot.record(T_DEFINE_BITS_LOSSLESS2, mTarget, 4, 2);
+        mRoot.add(id);
+        mRoot.add(format);
+        mRoot.add(width);
+        mRoot.add(height);
+        mRoot.add(colors);
+        mRoot.add(imageData);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagProtect(byte[] password) throws IOException {
+        mRoot.record(T_PROTECT, mTarget, 0, 1);
+        mRoot.add(password);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineTextField(int fieldId, String fieldName, String initialText, Rect boundary, int flags, AlphaColor textColor, int alignment, int fontId, int fontSize, int charLimit, int leftMargin, int rightMargin, int indentation, int lineSpacing) throws IOException {
+        mRoot.record(T_DEFINE_TEXT_FIELD, mTarget, 10, 4);
+        mRoot.add(fieldId);
+        mRoot.add(flags);
+        mRoot.add(alignment);
+        mRoot.add(fontId);
+        mRoot.add(fontSize);
+        mRoot.add(charLimit);
+        mRoot.add(leftMargin);
+        mRoot.add(rightMargin);
+        mRoot.add(indentation);
+        mRoot.add(lineSpacing);
+        mRoot.add(fieldName);
+        mRoot.add(initialText);
+        mRoot.add(boundary);
+        mRoot.add(textColor);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagDefineQuickTimeMovie(int id, String filename) throws IOException {
+        mRoot.record(T_DEFINE_QUICK_TIME_MOVIE, mTarget, 1, 1);
+        mRoot.add(id);
+        mRoot.add(filename);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFTagTypes tagDefineSprite(int id) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_SPRITE, mTarget, 2, 0);
+        mRoot.add(id);
+        mRoot.add(result);
+        return new SWFRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFShape tagDefineMorphShape(int id, Rect startBounds, Rect endBounds) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_MORPH_SHAPE, mTarget, 2, 2);
+        mRoot.add(id);
+        mRoot.add(result);
+        mRoot.add(startBounds);
+        mRoot.add(endBounds);
+        return new ShapeRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public SWFVectors tagDefineFont2(int id, int flags, String name, int numGlyphs, int ascent, int descent, int leading, int[] codes, int[] advances, Rect[] bounds, int[] kernCodes1, int[] kernCodes2, int[] kernAdjustments) throws IOException {
+        int result = mRoot.newTarget();
+        mRoot.record(T_DEFINE_FONT2, mTarget, 7, 7);
+        mRoot.add(id);
+        mRoot.add(flags);
+        mRoot.add(numGlyphs);
+        mRoot.add(ascent);
+        mRoot.add(descent);
+        mRoot.add(leading);
+        mRoot.add(result);
+        mRoot.add(name);
+        mRoot.add(codes);
+        mRoot.add(advances);
+        mRoot.add(bounds);
+        mRoot.add(kernCodes1);
+        mRoot.add(kernCodes2);
+        mRoot.add(kernAdjustments);
+        return new ShapeRecorder(mRoot, result);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagExport(String[] names, int[] ids) throws IOException {
+        mRoot.record(T_EXPORT, mTarget, 0, 2);
+        mRoot.add(names);
+        mRoot.add(ids);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagImport(String movieName, String[] names, int[] ids) throws IOException {
+        mRoot.record(T_IMPORT, mTarget, 0, 3);
+        mRoot.add(movieName);
+        mRoot.add(names);
+        mRoot.add(ids);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagEnableDebug(byte[] password) throws IOException {
+        mRoot.record(T_ENABLE_DEBUG, mTarget, 0, 1);
+        mRoot.add(password);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagEnableDebug2(byte[] password) throws IOException {
+        mRoot.record(T_ENABLE_DEBUG2, mTarget, 0, 1);
+        mRoot.add(password);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagSerialNumber(String serialNumber) throws IOException {
+        mRoot.record(T_SERIAL_NUMBER, mTarget, 0, 1);
+        mRoot.add(serialNumber);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagGenerator(byte[] data) throws IOException {
+        mRoot.record(T_GENERATOR, mTarget, 0, 1);
+        mRoot.add(data);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagGeneratorText(byte[] data) throws IOException {
+        mRoot.record(T_GENERATOR_TEXT, mTarget, 0, 1);
+        mRoot.add(data);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagGeneratorCommand(byte[] data) throws IOException {
+        mRoot.record(T_GENERATOR_COMMAND, mTarget, 0, 1);
+        mRoot.add(data);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagNameCharacter(byte[] data) throws IOException {
+        mRoot.record(T_NAME_CHARACTER, mTarget, 0, 1);
+        mRoot.add(data);
+    }
+
+    /**
+     * SWFTagTypes interface
+     */
+    public void tagGeneratorFont(byte[] data) throws IOException {
+        mRoot.record(T_GENERATOR_FONT, mTarget, 0, 1);
+        mRoot.add(data);
+    }
+
+    /**
+     * Records the calls on a shape or on font glyphs
+     */
+    protected static class ShapeRecorder implements SWFShape {
+        protected SWFRecorder mRoot;
+        protected int mTarget;
+
+        protected ShapeRecorder(SWFRecorder root, int target) {
+            mRoot = root;
+            mTarget = target;
+        }
+
+        /**
+         * SWFVectors interface
+         */
+        public void done() throws IOException {
+            mRoot.record(V_DONE, mTarget, 0, 0);
+        }
+
+        /**
+         * SWFVectors interface
+         */
+        public void line(int dx, int dy) throws IOException {
+            mRoot.record(V_LINE, mTarget, 2, 0);
+            mRoot.add(dx);
+            mRoot.add(dy);
+        }
+
+        /**
+         * SWFVectors interface
+         */
+        public void curve(int cx, int cy, int dx, int dy) throws IOException {
+            mRoot.record(V_CURVE, mTarget, 4, 0);
+            mRoot.add(cx);
+            mRoot.add(cy);
+            mRoot.add(dx);
+            mRoot.add(dy);
+        }
+
+        /**
+         * SWFVectors interface
+         */
+        public void move(int x, int y) throws IOException {
+            mRoot.record(V_MOVE, mTarget, 2, 0);
+            mRoot.add(x);
+            mRoot.add(y);
+        }
+
+        /**
+         * SWFShape interface
+         */
+        public void setFillStyle0(int styleIndex) throws IOException {
+            mRoot.record(S_SET_FILL_STYLE0, mTarget, 1, 0);
+            mRoot.add(styleIndex);
+        }
+
+        /**
+         * SWFShape interface
+         */
+        public void setFillStyle1(int styleIndex) throws IOException {
+            mRoot.record(S_SET_FILL_STYLE1, mTarget, 1, 0);
+            mRoot.add(styleIndex);
+        }
+
+        /**
+         * SWFShape interface
+         */
+        public void setLineStyle(int styleIndex) throws IOException {
+            mRoot.record(S_SET_LINE_STYLE, mTarget, 1, 0);
+            mRoot.add(styleIndex);
+        }
+
+        /**
+         * SWFShape interface
+         */
+        public void defineFillStyle(Color color) throws IOException {
+            mRoot.record(S_DEFINE_SOLID_FILL, mTarget, 0, 1);
+            mRoot.add(color);
+        }
+
+        /**
+         * SWFShape interface
+         */
+        public void defineFillStyle(Matrix matrix, int[] ratios, Color[] colors, boolean radial) throws IOException {
+            mRoot.record(S_DEFINE_GRADIENT_FILL, mTarget, 1, 3);
+            mRoot.add(radial ? 1 : 0);
+            mRoot.add(matrix);
+            mRoot.add(ratios);
+            mRoot.add(colors);
+        }
+
+        /**
+         * SWFShape interface
+         */
+        public void defineFillStyle(int bitmapId, Matrix matrix, boolean clipped) throws IOException {
+            mRoot.record(S_DEFINE_BITMAP_FILL, mTarget, 2, 1);
+            mRoot.add(bitmapId);
+            mRoot.add(clipped ? 1 : 0);
+            mRoot.add(matrix);
+        }
+
+        /**
+         * SWFShape interface
+         */
+        public void defineLineStyle(int width, Color color) throws IOException {
+            mRoot.record(S_DEFINE_LINE_STYLE, mTarget, 1, 1);
+            mRoot.add(width);
+            mRoot.add(color);
+        }
+    }
+
+    /**
+     * Records the calls on a text object
+     */
+    protected static class TextRecorder implements SWFText {
+        protected SWFRecorder mRoot;
+        protected int mTarget;
+
+        protected TextRecorder(SWFRecorder root, int target) {
+            mRoot = root;
+            mTarget = target;
+        }
+
+        /**
+         * SWFText interface
+         */
+        public void font(int fontId, int textHeight) throws IOException {
+            mRoot.record(X_FONT, mTarget, 2, 0);
+            mRoot.add(fontId);
+            mRoot.add(textHeight);
+        }
+
+        /**
+         * SWFText interface
+         */
+        public void color(Color color) throws IOException {
+            mRoot.record(X_COLOR, mTarget, 0, 1);
+            mRoot.add(color);
+        }
+
+        /**
+         * SWFText interface
+         */
+        public void setX(int x) throws IOException {
+            mRoot.record(X_SET_X, mTarget, 1, 0);
+            mRoot.add(x);
+        }
+
+        /**
+         * SWFText interface
+         */
+        public void setY(int y) throws IOException {
+            mRoot.record(X_SET_Y, mTarget, 1, 0);
+            mRoot.add(y);
+        }
+
+        /**
+         * SWFText interface
+         */
+        public void text(int[] glyphIndices, int[] glyphAdvances) throws IOException {
+            mRoot.record(X_TEXT, mTarget, 0, 2);
+            mRoot.add(glyphIndices);
+            mRoot.add(glyphAdvances);
+        }
+
+        /**
+         * SWFText interface
+         */
+        public void done() throws IOException {
+            mRoot.record(X_DONE, mTarget, 0, 0);
+        }
+    }
+
+    /**
+     * Records the calls on an actions object
+     */
+    protected static class ActionRecorder implements SWFActions {
+        protected SWFRecorder mRoot;
+        protected int mTarget;
+
+        protected ActionRecorder(SWFRecorder root, int target) {
+            mRoot = root;
+            mTarget = target;
+        }
+
+        /**
+         * Record an action that has no arguments
+         */
+        protected void action(int code) {
+            mRoot.record(A_ACTION, mTarget, 1, 0);
+            mRoot.add(code);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void start(int flags) throws IOException {
+            mRoot.record(A_START, mTarget, 1, 0);
+            mRoot.add(flags);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void done() throws IOException {
+            mRoot.record(A_DONE, mTarget, 0, 0);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void end() throws IOException {
+            mRoot.record(A_END, mTarget, 0, 0);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void blob(byte[] blob) throws IOException {
+            mRoot.record(A_BLOB, mTarget, 0, 1);
+            mRoot.add(blob);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void unknown(int code, byte[] data) throws IOException {
+            mRoot.record(A_UNKNOWN, mTarget, 1, 1);
+            mRoot.add(code);
+            mRoot.add(data);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void jumpLabel(String label) throws IOException {
+            mRoot.record(A_JUMP_LABEL, mTarget, 0, 1);
+            mRoot.add(label);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void comment(String comment) throws IOException {
+            mRoot.record(A_COMMENT, mTarget, 0, 1);
+            mRoot.add(comment);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void gotoFrame(int frameNumber) throws IOException {
+            mRoot.record(A_GOTO_FRAME, mTarget, 1, 0);
+            mRoot.add(frameNumber);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void gotoFrame(String label) throws IOException {
+            mRoot.record(A_GOTO_LABEL, mTarget, 0, 1);
+            mRoot.add(label);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void getURL(String url, String target) throws IOException {
+            mRoot.record(A_GET_URL, mTarget, 0, 2);
+            mRoot.add(url);
+            mRoot.add(target);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void nextFrame() throws IOException {
+            action(NEXT_FRAME);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void prevFrame() throws IOException {
+            action(PREVIOUS_FRAME);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void play() throws IOException {
+            action(PLAY);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void stop() throws IOException {
+            action(STOP);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void toggleQuality() throws IOException {
+            action(TOGGLE_QUALITY);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void stopSounds() throws IOException {
+            action(STOP_SOUNDS);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void waitForFrame(int frameNumber, String jumpLabel) throws IOException {
+            mRoot.record(A_WAIT_FOR_FRAME, mTarget, 1, 1);
+            mRoot.add(frameNumber);
+            mRoot.add(jumpLabel);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void setTarget(String target) throws IOException {
+            mRoot.record(A_SET_TARGET, mTarget, 0, 1);
+            mRoot.add(target);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void push(String value) throws IOException {
+            mRoot.record(A_PUSH_STRING, mTarget, 0, 1);
+            mRoot.add(value);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void push(float value) throws IOException {
+            mRoot.record(A_PUSH_FLOAT, mTarget, 1, 0);
+            mRoot.add(Float.floatToIntBits(value));
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void pop() throws IOException {
+            action(POP);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void add() throws IOException {
+            action(ADD);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void substract() throws IOException {
+            action(SUBTRACT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void multiply() throws IOException {
+            action(MULTIPLY);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void divide() throws IOException {
+            action(DIVIDE);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void equals() throws IOException {
+            action(EQUALS);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void lessThan() throws IOException {
+            action(LESS);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void and() throws IOException {
+            action(AND);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void or() throws IOException {
+            action(OR);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void not() throws IOException {
+            action(NOT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void stringEquals() throws IOException {
+            action(STRING_EQUALS);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void stringLength() throws IOException {
+            action(STRING_LENGTH);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void concat() throws IOException {
+            action(STRING_ADD);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void substring() throws IOException {
+            action(STRING_EXTRACT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void stringLessThan() throws IOException {
+            action(STRING_LESS);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void stringLengthMB() throws IOException {
+            action(MB_STRING_LENGTH);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void substringMB() throws IOException {
+            action(MB_STRING_EXTRACT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void toInteger() throws IOException {
+            action(TO_INTEGER);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void charToAscii() throws IOException {
+            action(CHAR_TO_ASCII);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void asciiToChar() throws IOException {
+            action(ASCII_TO_CHAR);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void charMBToAscii() throws IOException {
+            action(MB_CHAR_TO_ASCII);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void asciiToCharMB() throws IOException {
+            action(MB_ASCII_TO_CHAR);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void jump(String jumpLabel) throws IOException {
+            mRoot.record(A_JUMP, mTarget, 0, 1);
+            mRoot.add(jumpLabel);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void ifJump(String jumpLabel) throws IOException {
+            mRoot.record(A_IF_JUMP, mTarget, 0, 1);
+            mRoot.add(jumpLabel);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void call() throws IOException {
+            action(CALL);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void getVariable() throws IOException {
+            action(GET_VARIABLE);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void setVariable() throws IOException {
+            action(SET_VARIABLE);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void getURL(int sendVars, int loadMode) throws IOException {
+            mRoot.record(A_GET_URL_2, mTarget, 2, 0);
+            mRoot.add(sendVars);
+            mRoot.add(loadMode);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void gotoFrame(boolean play) throws IOException {
+            mRoot.record(A_GOTO_FRAME_2, mTarget, 1, 0);
+            mRoot.add(play ? 1 : 0);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void setTarget() throws IOException {
+            action(SET_TARGET_2);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void getProperty() throws IOException {
+            action(GET_PROPERTY);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void setProperty() throws IOException {
+            action(SET_PROPERTY);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void cloneSprite() throws IOException {
+            action(CLONE_SPRITE);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void removeSprite() throws IOException {
+            action(REMOVE_SPRITE);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void startDrag() throws IOException {
+            action(START_DRAG);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void endDrag() throws IOException {
+            action(END_DRAG);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void waitForFrame(String jumpLabel) throws IOException {
+            mRoot.record(A_WAIT_FOR_FRAME_2, mTarget, 0, 1);
+            mRoot.add(jumpLabel);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void trace() throws IOException {
+            action(TRACE);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void getTime() throws IOException {
+            action(GET_TIME);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void randomNumber() throws IOException {
+            action(RANDOM_NUMBER);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void callFunction() throws IOException {
+            action(CALL_FUNCTION);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void callMethod() throws IOException {
+            action(CALL_METHOD);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void lookupTable(String[] values) throws IOException {
+            mRoot.record(A_LOOKUP_TABLE, mTarget, 0, 1);
+            mRoot.add(values);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void startFunction(String name, String[] paramNames) throws IOException {
+            mRoot.record(A_START_FUNCTION, mTarget, 0, 2);
+            mRoot.add(name);
+            mRoot.add(paramNames);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void endBlock() throws IOException {
+            mRoot.record(A_END_BLOCK, mTarget, 0, 0);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void defineLocalValue() throws IOException {
+            action(DEFINE_LOCAL_VAL);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void defineLocal() throws IOException {
+            action(DEFINE_LOCAL);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void deleteProperty() throws IOException {
+            action(DEL_VAR);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void deleteThreadVars() throws IOException {
+            action(DEL_THREAD_VARS);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void enumerate() throws IOException {
+            action(ENUMERATE);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void typedEquals() throws IOException {
+            action(TYPED_EQUALS);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void getMember() throws IOException {
+            action(GET_MEMBER);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void initArray() throws IOException {
+            action(INIT_ARRAY);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void initObject() throws IOException {
+            action(INIT_OBJECT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void newMethod() throws IOException {
+            action(CALL_NEW_METHOD);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void newObject() throws IOException {
+            action(NEW_OBJECT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void setMember() throws IOException {
+            action(SET_MEMBER);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void getTargetPath() throws IOException {
+            action(GET_TARGET_PATH);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void startWith() throws IOException {
+            action(WITH);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void convertToNumber() throws IOException {
+            action(CONVERT_TO_NUMBER);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void convertToString() throws IOException {
+            action(CONVERT_TO_STRING);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void typeOf() throws IOException {
+            action(TYPEOF);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void typedAdd() throws IOException {
+            action(TYPED_ADD);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void typedLessThan() throws IOException {
+            action(TYPED_LESS_THAN);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void modulo() throws IOException {
+            action(MODULO);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void bitAnd() throws IOException {
+            action(BIT_AND);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void bitOr() throws IOException {
+            action(BIT_OR);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void bitXor() throws IOException {
+            action(BIT_XOR);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void shiftLeft() throws IOException {
+            action(SHIFT_LEFT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void shiftRight() throws IOException {
+            action(SHIFT_RIGHT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void shiftRightUnsigned() throws IOException {
+            action(SHIFT_UNSIGNED);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void decrement() throws IOException {
+            action(DECREMENT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void increment() throws IOException {
+            action(INCREMENT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void duplicate() throws IOException {
+            action(DUPLICATE);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void returnValue() throws IOException {
+            action(RETURN);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void swap() throws IOException {
+            action(SWAP);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void storeInRegister(int registerNumber) throws IOException {
+            mRoot.record(A_STORE_IN_REGISTER, mTarget, 1, 0);
+            mRoot.add(registerNumber);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void push(double value) throws IOException {
+            long bits = Double.doubleToLongBits(value);
+            mRoot.record(A_PUSH_DOUBLE, mTarget, 2, 0);
+            mRoot.add((int) (bits >>> 32));
+            mRoot.add((int) bits);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void pushNull() throws IOException {
+            mRoot.record(A_PUSH_NULL, mTarget, 0, 0);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void pushRegister(int registerNumber) throws IOException {
+            mRoot.record(A_PUSH_REGISTER, mTarget, 1, 0);
+            mRoot.add(registerNumber);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void push(boolean value) throws IOException {
+            mRoot.record(A_PUSH_BOOLEAN, mTarget, 1, 0);
+            mRoot.add(value ? 1 : 0);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void push(int value) throws IOException {
+            mRoot.record(A_PUSH_INT, mTarget, 1, 0);
+            mRoot.add(value);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void lookup(int dictionaryIndex) throws IOException {
+            mRoot.record(A_LOOKUP, mTarget, 1, 0);
+            mRoot.add(dictionaryIndex);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void instanceOf() throws IOException {
+            action(INSTANCE_OF);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void enumerateObject() throws IOException {
+            action(ENUMERATE_OBJECT);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void strictEquals() throws IOException {
+            action(STRICT_EQUALS);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void greaterThan() throws IOException {
+            action(GREATER);
+        }
+
+        /**
+         * SWFActions interface
+         */
+        public void stringGreaterThan() throws IOException {
+            action(STRING_GREATER);
+        }
+    }
+}
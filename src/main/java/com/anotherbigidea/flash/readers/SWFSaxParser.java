@@ -1291,10 +1291,10 @@ public class SWFSaxParser extends SaxParserBase implements SWFTagTypes,
             } else {
                 if (glyphRects == null || glyphRects.length == 0) { // TODO vavi len 0
                     start("glyph", null);
-if (glyphRects.length == 0) {
+if (glyphRects != null && glyphRects.length == 0) {
  Debug.println("done: glyphRects.length: " + glyphRects.length);
-}
                     end();
+}
                 } else {
                     int idx = glyphRects.length - glyphCount + 1;
                     Rect bound = glyphRects[idx];
@@ -0,0 +1,85 @@
+package com.anotherbigidea.flash.readers;
+
+import com.anotherbigidea.flash.SWFConstants;
+
+
+/**
+ * The set of tag types that a consumer wants to see.
+ *
+ * SWFReader consults the filter before it reads each tag body and skips the
+ * bodies of other tags without reading them.  The end tag is always passed
+ * on.  A DefineSprite tag is skipped as a whole unless TAG_DEFINESPRITE is
+ * in the set - the tags inside the sprites that are passed on are filtered
+ * by the sprite filter, which is this filter unless another is set.
+ *
+ * TagFilter filter = new TagFilter(TAG_DEFINEFONT2);
+ * SWFReader reader = new SWFReader(new TagParser(fontloader), in);
+ * reader.setTagFilter(filter);
+ * reader.readFile();
+ */
+public class TagFilter implements SWFConstants {
+    /** Tag types are 10 bits */
+    public static final int MAX_TAG_TYPE = 0x3ff;
+
+    protected long[] mTypes = new long[(MAX_TAG_TYPE + 1) / 64];
+    protected TagFilter mSpriteFilter = this;
+
+    /**
+     * @param types the tag types to pass on
+     */
+    public TagFilter(int... types) {
+        for (int type : types) {
+            add(type);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the type is not a 10 bit tag type
+     */
+    public void add(int type) {
+        mTypes[index(type)] |= 1L << type;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the type is not a 10 bit tag type
+     */
+    public void remove(int type) {
+        mTypes[index(type)] &= ~(1L << type);
+    }
+
+    /**
+     * @return true if tags of the type should be passed on
+     * @throws IllegalArgumentException if the type is not a 10 bit tag type
+     */
+    public boolean accepts(int type) {
+        return (mTypes[index(type)] & (1L << type)) != 0 || (type == TAG_END);
+    }
+
+    /**
+     * @return the index of the word that holds the bit for the type
+     */
+    protected static int index(int type) {
+        if (type < 0 || type > MAX_TAG_TYPE) {
+            throw new IllegalArgumentException("Tag type out of range: " + type);
+        }
+
+        return type >> 6;
+    }
+
+    /**
+     * @return the filter for the tags inside sprites - null to pass them all
+     */
+    public TagFilter getSpriteFilter() {
+        return mSpriteFilter;
+    }
+
+    /**
+     * Set the filter for the tags inside the sprites that are passed on.
+     * By default it is this filter.
+     *
+     * @param filter null to pass on all the tags inside sprites
+     */
+    public void setSpriteFilter(TagFilter filter) {
+        mSpriteFilter = filter;
+    }
+}
@@ -39,13 +39,17 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.zip.InflaterInputStream;
 
 import com.anotherbigidea.flash.SWFConstants;
 import com.anotherbigidea.flash.interfaces.SWFActions;
 import com.anotherbigidea.flash.interfaces.SWFFileSignature;
+import com.anotherbigidea.flash.interfaces.SWFLosslessRasters;
+import com.anotherbigidea.flash.interfaces.SWFRawPlacements;
 import com.anotherbigidea.flash.interfaces.SWFShape;
+import com.anotherbigidea.flash.interfaces.SWFTagSlices;
 import com.anotherbigidea.flash.interfaces.SWFTagTypes;
 import com.anotherbigidea.flash.interfaces.SWFTags;
 import com.anotherbigidea.flash.interfaces.SWFText;
@@ -56,12 +60,16 @@ import com.anotherbigidea.flash.structs.ButtonRecord;
 import com.anotherbigidea.flash.structs.ButtonRecord2;
 import com.anotherbigidea.flash.structs.Color;
 import com.anotherbigidea.flash.structs.ColorTransform;
+import com.anotherbigidea.flash.structs.LosslessRaster;
 import com.anotherbigidea.flash.structs.Matrix;
 import com.anotherbigidea.flash.structs.Rect;
 import com.anotherbigidea.flash.structs.SoundInfo;
 import com.anotherbigidea.flash.writers.SWFWriter;
 import com.anotherbigidea.flash.writers.TagWriter;
+import com.anotherbigidea.io.BufferInStream;
 import com.anotherbigidea.io.InStream;
+import com.anotherbigidea.io.StringCache;
+import com.anotherbigidea.io.ZlibPool;
 
 import vavi.util.Debug;
 
@@ -69,11 +77,27 @@ import vavi.util.Debug;
 /**
  * Parse Tags and drive a SWFTagTypes interface.
  */
-public class TagParser implements SWFTags, SWFConstants, SWFFileSignature {
+public class TagParser implements SWFTagSlices, SWFConstants, SWFFileSignature {
     protected String mStringEncoding = SWFConstants.STRING_ENCODING_MX;
     protected int mFlashVersion = SWFConstants.FLASH_MX_VERSION;
     protected SWFTagTypes mTagtypes;
 
+    /** reused for each tag body */
+    protected BufferInStream mIn;
+
+    protected StringCache mStringCache;
+
+    /** null to parse all tags */
+    protected TagFilter mFilter;
+
+    /** reused for SWFRawPlacements */
+    protected Matrix mMatrix;
+    protected AlphaTransform mTransform;
+
+    /** reused for each action array and sprite */
+    protected ActionParser mActionParser;
+    protected TagParser mSpriteParser;
+
     /** for debugging */
     // protected byte[] contents;
 
@@ -81,6 +105,65 @@ public class TagParser implements SWFTags, SWFConstants, SWFFileSignature {
         mTagtypes = tagtypes;
     }
 
+    /**
+     * Reuse the parser for another SWFTagTypes.  The Flash version reverts
+     * to the default until the next header(..) and any string cache is
+     * dropped.
+     *
+     * A parser may be reused any number of times but it is not thread safe -
+     * use one parser per thread (see ParserPool).
+     */
+    public void reset(SWFTagTypes tagtypes) {
+        mTagtypes = tagtypes;
+        mStringCache = null;
+        mFilter = null;
+        mFlashVersion = SWFConstants.FLASH_MX_VERSION;
+        mStringEncoding = SWFConstants.STRING_ENCODING_MX;
+        mIn = null; //do not hold on to the last input
+
+        if (mActionParser != null) {
+            mActionParser.reset(null, mFlashVersion);
+        }
+
+        if (mSpriteParser != null) {
+            mSpriteParser.reset(null);
+        }
+    }
+
+    /**
+     * Decode action strings through a cache - usually one that is shared
+     * with the writer at the other end of the pipeline
+     *
+     * @param cache null for none
+     */
+    public void setStringCache(StringCache cache) {
+        mStringCache = cache;
+    }
+
+    /**
+     * Only parse the tags that the filter accepts - others are ignored.
+     * The sprite filter applies to the tags inside sprites.
+     *
+     * @param filter null to parse all tags
+     * @see SWFReader#setTagFilter(TagFilter)
+     */
+    public void setTagFilter(TagFilter filter) {
+        mFilter = filter;
+    }
+
+    /**
+     * Get the reusable action parser, targeted at the given actions
+     */
+    protected ActionParser getActionParser(SWFActions actions) {
+        if (mActionParser == null) {
+            mActionParser = new ActionParser();
+        }
+
+        mActionParser.reset(actions, mFlashVersion);
+        mActionParser.setStringCache(mStringCache);
+        return mActionParser;
+    }
+
     /**
      * @see SWFFileSignature#signature(String)
      */
@@ -96,10 +179,17 @@ public class TagParser implements SWFTags, SWFConstants, SWFFileSignature {
     public void header(int version, long length, int twipsWidth, int twipsHeight, int frameRate, int frameCount) throws IOException {
         mTagtypes.header(version, length, twipsWidth, twipsHeight, frameRate, frameCount);
 
+        setFlashVersion(version);
+    }
+
+    /**
+     * Set the Flash version that tags are parsed for.  This is done by
+     * header(..) and is only needed when tags are parsed without a header.
+     */
+    public void setFlashVersion(int version) {
         //revert to old encoding for pre-MX
-        if (version < SWFConstants.FLASH_MX_VERSION) {
-            mStringEncoding = "Windows-31J" /* SWFConstants.STRING_ENCODING_PRE_MX */;
-        }
+        mStringEncoding = (version < SWFConstants.FLASH_MX_VERSION) ? "Windows-31J" /* SWFConstants.STRING_ENCODING_PRE_MX */
+                                                                    : SWFConstants.STRING_ENCODING_MX;
 
         mFlashVersion = version;
     }
@@ -189,10 +279,37 @@ public class TagParser implements SWFTags, SWFConstants, SWFFileSignature {
      * Interface SWFTags
      */
     public void tag(int tagType, boolean longTag, byte[] contents) throws IOException {
+        parseTag(tagType, longTag, contents, 0, (contents != null) ? contents.length : 0, true);
+    }
+
+    /**
+     * Interface SWFTagSlices
+     */
+    public void tag(int tagType, boolean longTag, byte[] buffer, int offset, int length) throws IOException {
+        parseTag(tagType, longTag, buffer, offset, length, false);
+    }
+
+    /**
+     * @param owned true if the buffer holds only the tag body and may be
+     *        passed on as is - otherwise raw bytes are copied out of it
+     */
+    protected void parseTag(int tagType, boolean longTag, byte[] buffer, int offset, int length, boolean owned) throws IOException {
 //      this.contents = contents; // for debugging
-        int length = (contents != null) ? contents.length : 0;
+        if ((mFilter != null) && !mFilter.accepts(tagType)) {
+            return;
+        }
 
-        InStream in = (length > 0) ? new InStream(contents) : null;
+        InStream in = null;
+
+        if (length > 0) {
+            if (mIn == null) {
+                mIn = new BufferInStream(buffer, offset, length);
+            } else {
+                mIn.setBuffer(buffer, offset, length);
+            }
+
+            in = mIn;
+        }
 
 //System.err.println("IN  Tag " + tagType + " " + longTag + " " + length );
         switch (tagType) {
@@ -232,7 +349,7 @@ public class TagParser implements SWFTags, SWFConstants, SWFFileSignature {
             mTagtypes.tagSetBackgroundColor(new Color(in));
             break;
         case TAG_FRAMELABEL:
-            parseFrameLabel(in, contents);
+            parseFrameLabel(in, buffer, offset, length);
             break;
         case TAG_DEFINESPRITE:
             parseDefineSprite(in);
@@ -293,19 +410,19 @@ public class TagParser implements SWFTags, SWFConstants, SWFFileSignature {
             parseMorphShape(in);
             break;
         case TAG_NAMECHARACTER:
-            mTagtypes.tagNameCharacter(contents);
+            mTagtypes.tagNameCharacter(owned ? buffer : copy(buffer, offset, length));
             break;
         case TAG_GENERATOR_TEXT:
-            mTagtypes.tagGeneratorText(contents);
+            mTagtypes.tagGeneratorText(owned ? buffer : copy(buffer, offset, length));
             break;
         case TAG_TEMPLATECOMMAND:
-            mTagtypes.tagGeneratorCommand(contents);
+            mTagtypes.tagGeneratorCommand(owned ? buffer : copy(buffer, offset, length));
             break;
         case TAG_FLASHGENERATOR:
-            mTagtypes.tagGenerator(contents);
+            mTagtypes.tagGenerator(owned ? buffer : copy(buffer, offset, length));
             break;
         case TAG_GEN_EXTERNAL_FONT:
-            mTagtypes.tagGeneratorFont(contents);
+            mTagtypes.tagGeneratorFont(owned ? buffer : copy(buffer, offset, length));
             break;
         case TAG_SERIALNUMBER:
             mTagtypes.tagSerialNumber(in.readString(mStringEncoding));
@@ -341,20 +458,31 @@ public class TagParser implements SWFTags, SWFConstants, SWFFileSignature {
             parseEnableDebugger2(in, length);
             break;
         default: // Unknown Tag Type
-            mTagtypes.tag(tagType, longTag, contents);
+            if (!owned && (mTagtypes instanceof SWFTagSlices)) {
+                ((SWFTagSlices) mTagtypes).tag(tagType, longTag, buffer, offset, length);
+            } else {
+                mTagtypes.tag(tagType, longTag, owned ? buffer : copy(buffer, offset, length));
+            }
             break;
         }
     } //*/
 
+    /**
+     * Copy a tag body out of a shared buffer
+     */
+    protected static byte[] copy(byte[] buffer, int offset, int length) {
+        return (length > 0) ? Arrays.copyOfRange(buffer, offset, offset + length) : new byte[0];
+    }
+
     protected void parseEnableDebugger2(InStream in, int length) throws IOException {
         int reserved = in.readUI16();
         mTagtypes.tagEnableDebug2((length > 2) ? in.read(length - 2) : null);
     }
 
-    protected void parseFrameLabel(InStream in, byte[] contents) throws IOException {
-        if ((contents != null) && (contents.length >= 2)) {
-            int len = contents.length;
-            if ((contents[len - 1] == 1) && (contents[len - 2] == 0)) {
+    protected void parseFrameLabel(InStream in, byte[] buffer, int offset, int length) throws IOException {
+        if ((buffer != null) && (length >= 2)) {
+            int end = offset + length;
+            if ((buffer[end - 1] == 1) && (buffer[end - 2] == 0)) {
                 //is an anchor label
                 mTagtypes.tagFrameLabel(in.readString(mStringEncoding), true);
                 return;
@@ -583,18 +711,31 @@ System.err.println("mTagtypes: " + mTagtypes + ", in: " + in);
 
         byte[] data = in.read(length - (int) in.getBytesRead());
 
+        //decode straight to pixels - no Color objects
+        if (mTagtypes instanceof SWFLosslessRasters) {
+            int[] argb = LosslessRaster.inflate(format, width, height, hasAlpha, data, 0, data.length, size);
+
+            ((SWFLosslessRasters) mTagtypes).tagDefineBitsLosslessRaster(id, format, width, height, hasAlpha, argb);
+            return;
+        }
+
         // unzip the data
         ByteArrayInputStream bin = new ByteArrayInputStream(data);
-        InflaterInputStream inflater = new InflaterInputStream(bin);
+        InflaterInputStream inflater = ZlibPool.getShared().inflate(bin);
         InStream dataIn = new InStream(inflater);
 
         Color[] colors = hasAlpha ? new AlphaColor[size] : new Color[size];
+        byte[] imageData;
 
-        for (int i = 0; i < size; i++) {
-            colors[i] = hasAlpha ? new AlphaColor(dataIn) : new Color(dataIn);
-        }
+        try {
+            for (int i = 0; i < size; i++) {
+                colors[i] = hasAlpha ? new AlphaColor(dataIn) : new Color(dataIn);
+            }
 
-        byte[] imageData = dataIn.read();
+            imageData = dataIn.read();
+        } finally {
+            inflater.close(); //releases the Inflater
+        }
 
         if (hasAlpha) {
             mTagtypes.tagDefineBitsLossless2(id, format, width, height, colors, imageData);
@@ -660,7 +801,7 @@ System.err.println("mTagtypes: " + mTagtypes + ", in: " + in);
 
             actions.start(actionConditions);
 
-            ActionParser parser = new ActionParser(actions, mFlashVersion);
+            ActionParser parser = getActionParser(actions);
             parser.parse(in);
         }
 
@@ -685,7 +826,7 @@ System.err.println("mTagtypes: " + mTagtypes + ", in: " + in);
         }
 
         actions.start(0); //no conditions
-        ActionParser parser = new ActionParser(actions, mFlashVersion);
+        ActionParser parser = getActionParser(actions);
         parser.parse(in);
         actions.done();
     }
@@ -940,8 +1081,16 @@ System.err.println("bounds: " + bounds.length);
             return;
         }
 
-        TagParser parser = new TagParser(sstt);
-        SWFReader reader = new SWFReader(parser, in);
+        if (mSpriteParser == null) {
+            mSpriteParser = new TagParser(sstt);
+        } else {
+            mSpriteParser.reset(sstt);
+        }
+
+        mSpriteParser.setStringCache(mStringCache);
+
+        SWFReader reader = new SWFReader(mSpriteParser, in);
+        reader.setTagFilter((mFilter != null) ? mFilter.getSpriteFilter() : null);
         reader.readTags();
     }
 
@@ -957,9 +1106,11 @@ System.err.println("bounds: " + bounds.length);
 
         int depth = in.readUI16();
 
+        boolean raw = mTagtypes instanceof SWFRawPlacements;
+
         int charId = hasCharacter ? in.readUI16() : 0;
-        Matrix matrix = hasMatrix ? new Matrix(in) : null;
-        AlphaTransform cxform = hasColorTransform ? new AlphaTransform(in) : null;
+        Matrix matrix = hasMatrix ? readMatrix(in, raw) : null;
+        AlphaTransform cxform = hasColorTransform ? readTransform(in, raw) : null;
         int ratio = hasRatio ? in.readUI16() : (-1);
         int clipDepth = isClipBracket ? in.readUI16() : 0;
         String name = hasName ? in.readString(mStringEncoding) : null;
@@ -971,7 +1122,8 @@ System.err.println("bounds: " + bounds.length);
             clipActionFlags = in.readUI16(); //compound flags
         }
 
-        SWFActions actions = mTagtypes.tagPlaceObject2(isMove, clipDepth, depth, charId, matrix, cxform, ratio, name, clipActionFlags);
+        SWFActions actions = raw ? ((SWFRawPlacements) mTagtypes).tagPlaceObject2Raw(isMove, clipDepth, depth, charId, matrix, cxform, ratio, name, clipActionFlags)
+                                 : mTagtypes.tagPlaceObject2(isMove, clipDepth, depth, charId, matrix, cxform, ratio, name, clipActionFlags);
 
         if (hasClipActions && (actions != null)) {
             int flags = 0;
@@ -980,7 +1132,7 @@ System.err.println("bounds: " + bounds.length);
                 int length = (int) in.readUI32();
 
                 actions.start(flags);
-                ActionParser parser = new ActionParser(actions, mFlashVersion);
+                ActionParser parser = getActionParser(actions);
 
                 parser.parse(in);
             }
@@ -990,11 +1142,53 @@ System.err.println("bounds: " + bounds.length);
     }
 
     protected void parsePlaceObject(InStream in, int length) throws IOException {
+        if (mTagtypes instanceof SWFRawPlacements) {
+            int charId = in.readUI16();
+            int depth = in.readUI16();
+            Matrix matrix = readMatrix(in, true);
+            AlphaTransform cxform = (in.getBytesRead() < length) ? readTransform(in, true) : null;
+
+            ((SWFRawPlacements) mTagtypes).tagPlaceObjectRaw(charId, depth, matrix, cxform);
+            return;
+        }
+
         mTagtypes.tagPlaceObject(in.readUI16(), //char id
                                  in.readUI16(), //depth
                                  new Matrix(in), (in.getBytesRead() < length) ? new AlphaTransform(in) : null);
     }
 
+    /**
+     * @param reuse true to read into the shared matrix
+     */
+    protected Matrix readMatrix(InStream in, boolean reuse) throws IOException {
+        if (!reuse) {
+            return new Matrix(in);
+        }
+
+        if (mMatrix == null) {
+            mMatrix = new Matrix();
+        }
+
+        mMatrix.read(in);
+        return mMatrix;
+    }
+
+    /**
+     * @param reuse true to read into the shared transform
+     */
+    protected AlphaTransform readTransform(InStream in, boolean reuse) throws IOException {
+        if (!reuse) {
+            return new AlphaTransform(in);
+        }
+
+        if (mTransform == null) {
+            mTransform = new AlphaTransform();
+        }
+
+        mTransform.read(in);
+        return mTransform;
+    }
+
     protected void parseDoAction(InStream in) throws IOException {
         SWFActions actions = mTagtypes.tagDoAction();
 
@@ -1003,7 +1197,7 @@ System.err.println("bounds: " + bounds.length);
         }
 
         actions.start(0); //no conditions
-        ActionParser parser = new ActionParser(actions, mFlashVersion);
+        ActionParser parser = getActionParser(actions);
         parser.parse(in);
         actions.done();
     }
@@ -1017,7 +1211,7 @@ System.err.println("bounds: " + bounds.length);
         }
 
         actions.start(0); //no conditions
-        ActionParser parser = new ActionParser(actions, mFlashVersion);
+        ActionParser parser = getActionParser(actions);
         parser.parse(in);
         actions.done();
     }
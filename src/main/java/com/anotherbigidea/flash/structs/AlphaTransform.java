@@ -98,6 +98,15 @@ public class AlphaTransform extends ColorTransform {
     }
 
     public AlphaTransform(InStream in) throws IOException {
+        read(in);
+    }
+
+    /**
+     * Replace the values with those read from the stream, including alpha
+     */
+    public void read(InStream in) throws IOException {
+        reset();
+
         in.synchBits();
 
         // Add and mult are reversed
@@ -126,6 +126,16 @@ public class ColorTransform {
     }
 
     public ColorTransform(InStream in) throws IOException {
+        read(in);
+    }
+
+    /**
+     * Replace the values with those read from the stream - so that one
+     * transform can be reused for many reads
+     */
+    public void read(InStream in) throws IOException {
+        reset();
+
         in.synchBits();
 
         // Add and mult are reversed
@@ -147,6 +157,20 @@ public class ColorTransform {
         }
     }
 
+    /**
+     * Make this an identity transform
+     */
+    protected void reset() {
+        multRed = 1.0;
+        multGreen = 1.0;
+        multBlue = 1.0;
+        multAlpha = 1.0;
+        addRed = 0;
+        addGreen = 0;
+        addBlue = 0;
+        addAlpha = 0;
+    }
+
     public void write(OutStream out) throws IOException {
         out.flushBits();
 
@@ -0,0 +1,406 @@
+package com.anotherbigidea.flash.structs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.io.ZlibPool;
+
+
+/**
+ * Conversion between the pixel data of DefineBitsLossless(2) tags and
+ * packed int ARGB pixels - one int per pixel, row by row, without the row
+ * padding of the tag data.
+ *
+ * The data of a tag, once inflated, is the color table, for
+ * BITMAP_FORMAT_8_BIT and BITMAP_FORMAT_16_BIT, followed by the rows of
+ * pixels - each padded to 32 bits, though the padding of the last row is
+ * sometimes left out.  Colors are RGB in DefineBitsLossless and RGBA in
+ * DefineBitsLossless2, where they are premultiplied by the alpha, as are the
+ * 32 bit pixels.  The pixels here are premultiplied in the same way - as in
+ * BufferedImage.TYPE_INT_ARGB_PRE - so that converting a movie does not lose
+ * anything.  premultiply(..) and unpremultiply(..) convert from and to plain
+ * ARGB.  Pixels without alpha are given an alpha of 0xff.
+ *
+ * BITMAP_FORMAT_16_BIT is RGB with 5 bits a component, which is widened to 8
+ * bits on decoding and narrowed on encoding.  Decoded pixels encode back to
+ * the same data, but encoding any other pixels in this format is lossy - the
+ * low 3 bits of each component are dropped.  Its color table is not used,
+ * but as the size of the table is written as one less than the number of
+ * colors, encode(..) gives it a single black entry.
+ */
+public class LosslessRaster implements SWFConstants {
+    /** The most colors in a color table */
+    public static final int MAX_COLORS = 256;
+
+    /**
+     * @return the bytes in a row of pixels, including the padding
+     */
+    public static int rowBytes(int format, int width) {
+        int rowBytes = width * pixelBytes(format);
+
+        return (rowBytes + 3) & ~3;
+    }
+
+    /**
+     * @return the size of the inflated data of a tag
+     */
+    public static int dataSize(int format, int width, int height, int colorCount, boolean hasAlpha) {
+        int colorBytes = (format != BITMAP_FORMAT_32_BIT) ? colorCount * (hasAlpha ? 4 : 3) : 0;
+
+        return colorBytes + rowBytes(format, width) * height;
+    }
+
+    /**
+     * @return the least inflated data that can be decoded - some writers
+     *         leave out the padding of the last row
+     */
+    public static int minimumDataSize(int format, int width, int height, int colorCount, boolean hasAlpha) {
+        int size = dataSize(format, width, height, colorCount, hasAlpha);
+
+        if (height > 0) {
+            size -= rowBytes(format, width) - width * pixelBytes(format);
+        }
+
+        return size;
+    }
+
+    /**
+     * Inflate the zlib data of a tag and decode it
+     *
+     * @param colorCount the size of the color table - 0 if there is none
+     */
+    public static int[] inflate(int format, int width, int height, boolean hasAlpha, byte[] zlib, int offset, int length, int colorCount) throws IOException {
+        byte[] data = new byte[dataSize(format, width, height, colorCount, hasAlpha)];
+        int minimum = minimumDataSize(format, width, height, colorCount, hasAlpha);
+        Inflater inflater = ZlibPool.getShared().getInflater();
+
+        try {
+            inflater.setInput(zlib, offset, length);
+
+            int size = 0;
+
+            while (size < data.length) {
+                int count = inflater.inflate(data, size, data.length - size);
+
+                if (count == 0 && inflater.finished() && size >= minimum) {
+                    break; //the last row is not padded - the padding is left as zeros
+                }
+
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Unexpected end of bitmap data");
+                }
+
+                size += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            ZlibPool.getShared().release(inflater);
+        }
+
+        return decode(format, width, height, hasAlpha, data, 0, colorCount);
+    }
+
+    /**
+     * Decode the inflated data of a tag
+     *
+     * @param colorCount the size of the color table - 0 if there is none
+     */
+    public static int[] decode(int format, int width, int height, boolean hasAlpha, byte[] data, int offset, int colorCount) throws IOException {
+        if (data.length - offset < minimumDataSize(format, width, height, colorCount, hasAlpha)) {
+            throw new EOFException("Unexpected end of bitmap data");
+        }
+
+        int[] colors = null;
+
+        if (format == BITMAP_FORMAT_8_BIT) {
+            colors = new int[MAX_COLORS]; //unused entries are transparent
+
+            for (int i = 0; i < colorCount; i++) {
+                int r = data[offset++] & 0xff;
+                int g = data[offset++] & 0xff;
+                int b = data[offset++] & 0xff;
+                int a = hasAlpha ? (data[offset++] & 0xff) : 0xff;
+
+                colors[i] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        } else if (format == BITMAP_FORMAT_16_BIT) {
+            offset += colorCount * (hasAlpha ? 4 : 3); //unused
+        }
+
+        return decodeRows(format, width, height, hasAlpha, data, offset, colors);
+    }
+
+    /**
+     * Decode the arguments of SWFTagTypes.tagDefineBitsLossless(..) or
+     * tagDefineBitsLossless2(..)
+     *
+     * @param colors the color table - null if there is none
+     */
+    public static int[] decode(int format, int width, int height, boolean hasAlpha, Color[] colors, byte[] imageData) throws IOException {
+        if (imageData.length < minimumDataSize(format, width, height, 0, hasAlpha)) {
+            throw new EOFException("Unexpected end of bitmap data");
+        }
+
+        int[] table = null;
+
+        if (format == BITMAP_FORMAT_8_BIT) {
+            table = new int[MAX_COLORS];
+
+            for (int i = 0; i < colors.length && i < MAX_COLORS; i++) {
+                Color color = colors[i];
+                int a = (hasAlpha && color instanceof AlphaColor) ? ((AlphaColor) color).getAlpha() : 0xff;
+
+                table[i] = (a << 24) | (color.getRed() << 16) | (color.getGreen() << 8) | color.getBlue();
+            }
+        }
+
+        return decodeRows(format, width, height, hasAlpha, imageData, 0, table);
+    }
+
+    /**
+     * Encode pixels as the inflated data of a tag
+     *
+     * @param argb premultiplied if hasAlpha
+     * @param format BITMAP_FORMAT_16_BIT does not have alpha
+     * @param colorCount receives the size of the color table, which is at
+     *        the start of the data - 0 if there is none
+     * @throws IllegalArgumentException if there are more than 256 colors for
+     *         BITMAP_FORMAT_8_BIT
+     */
+    public static byte[] encode(int[] argb, int width, int height, int format, boolean hasAlpha, int[] colorCount) {
+        if (format == BITMAP_FORMAT_16_BIT && hasAlpha) {
+            throw new IllegalArgumentException("16 bit bitmaps do not have alpha");
+        }
+
+        int rowBytes = rowBytes(format, width);
+
+        if (format != BITMAP_FORMAT_8_BIT) {
+            byte[] data = new byte[rowBytes * height];
+
+            for (int y = 0; y < height; y++) {
+                int pixel = y * width;
+                int pos = y * rowBytes;
+
+                for (int x = 0; x < width; x++) {
+                    int c = argb[pixel++];
+
+                    if (format == BITMAP_FORMAT_16_BIT) {
+                        int rgb = ((c >> 9) & 0x7c00) | ((c >> 6) & 0x03e0) | ((c >> 3) & 0x001f);
+                        data[pos++] = (byte) (rgb >> 8);
+                        data[pos++] = (byte) rgb;
+                    } else {
+                        data[pos++] = hasAlpha ? (byte) (c >>> 24) : (byte) 0xff;
+                        data[pos++] = (byte) (c >> 16);
+                        data[pos++] = (byte) (c >> 8);
+                        data[pos++] = (byte) c;
+                    }
+                }
+            }
+
+            if (format == BITMAP_FORMAT_32_BIT) {
+                colorCount[0] = 0;
+                return data;
+            }
+
+            byte[] table = new byte[3 + data.length]; //one black color
+            System.arraycopy(data, 0, table, 3, data.length);
+
+            colorCount[0] = 1;
+            return table;
+        }
+
+        //build the color table - open addressing from color to index + 1
+        int[] keys = new int[MAX_COLORS * 4];
+        int[] indices = new int[keys.length];
+        int[] colors = new int[MAX_COLORS];
+        int count = 0;
+
+        byte[] rows = new byte[rowBytes * height];
+
+        for (int y = 0; y < height; y++) {
+            int pixel = y * width;
+            int pos = y * rowBytes;
+
+            for (int x = 0; x < width; x++) {
+                int c = argb[pixel++];
+
+                if (!hasAlpha) {
+                    c |= 0xff000000;
+                }
+
+                int slot = (c * 0x9e3779b1) >>> 22; //10 bits
+
+                while (indices[slot] != 0 && keys[slot] != c) {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+
+                if (indices[slot] == 0) {
+                    if (count == MAX_COLORS) {
+                        throw new IllegalArgumentException("more than " + MAX_COLORS + " colors");
+                    }
+
+                    keys[slot] = c;
+                    colors[count] = c;
+                    indices[slot] = ++count;
+                }
+
+                rows[pos++] = (byte) (indices[slot] - 1);
+            }
+        }
+
+        //the table size is written as one less than the number of colors
+        if (count == 0) {
+            colors[count++] = hasAlpha ? 0 : 0xff000000;
+        }
+
+        int colorBytes = hasAlpha ? 4 : 3;
+        byte[] data = new byte[count * colorBytes + rows.length];
+        int pos = 0;
+
+        for (int i = 0; i < count; i++) {
+            int c = colors[i];
+
+            data[pos++] = (byte) (c >> 16);
+            data[pos++] = (byte) (c >> 8);
+            data[pos++] = (byte) c;
+
+            if (hasAlpha) {
+                data[pos++] = (byte) (c >>> 24);
+            }
+        }
+
+        System.arraycopy(rows, 0, data, pos, rows.length);
+
+        colorCount[0] = count;
+        return data;
+    }
+
+    /**
+     * Split the color table from the inflated data of a tag, as it is passed
+     * to SWFTagTypes.tagDefineBitsLossless(..)
+     *
+     * @return AlphaColors if hasAlpha
+     */
+    public static Color[] readColorTable(byte[] data, int colorCount, boolean hasAlpha) {
+        Color[] colors = hasAlpha ? new AlphaColor[colorCount] : new Color[colorCount];
+        int pos = 0;
+
+        for (int i = 0; i < colorCount; i++) {
+            int r = data[pos++] & 0xff;
+            int g = data[pos++] & 0xff;
+            int b = data[pos++] & 0xff;
+
+            colors[i] = hasAlpha ? new AlphaColor(r, g, b, data[pos++] & 0xff) : new Color(r, g, b);
+        }
+
+        return colors;
+    }
+
+    /**
+     * Convert plain ARGB pixels to premultiplied, in place
+     */
+    public static void premultiply(int[] argb) {
+        for (int i = 0; i < argb.length; i++) {
+            int c = argb[i];
+            int a = c >>> 24;
+
+            if (a == 0xff) {
+                continue;
+            }
+
+            int r = (((c >> 16) & 0xff) * a + 127) / 255;
+            int g = (((c >> 8) & 0xff) * a + 127) / 255;
+            int b = ((c & 0xff) * a + 127) / 255;
+
+            argb[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * Convert premultiplied ARGB pixels to plain, in place
+     */
+    public static void unpremultiply(int[] argb) {
+        for (int i = 0; i < argb.length; i++) {
+            int c = argb[i];
+            int a = c >>> 24;
+
+            if (a == 0xff) {
+                continue;
+            }
+
+            if (a == 0) {
+                argb[i] = 0;
+                continue;
+            }
+
+            int half = a >> 1;
+            int r = Math.min(255, (((c >> 16) & 0xff) * 255 + half) / a);
+            int g = Math.min(255, (((c >> 8) & 0xff) * 255 + half) / a);
+            int b = Math.min(255, ((c & 0xff) * 255 + half) / a);
+
+            argb[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    protected static int pixelBytes(int format) {
+        switch (format) {
+        case BITMAP_FORMAT_8_BIT:
+            return 1;
+        case BITMAP_FORMAT_16_BIT:
+            return 2;
+        case BITMAP_FORMAT_32_BIT:
+            return 4;
+        default:
+            throw new IllegalArgumentException("unknown bitmap format: " + format);
+        }
+    }
+
+    /**
+     * @param colors 256 entries for BITMAP_FORMAT_8_BIT
+     */
+    protected static int[] decodeRows(int format, int width, int height, boolean hasAlpha, byte[] data, int offset, int[] colors) {
+        int[] argb = new int[width * height];
+        int rowBytes = rowBytes(format, width);
+        int pixel = 0;
+
+        for (int y = 0; y < height; y++) {
+            int pos = offset + y * rowBytes;
+
+            switch (format) {
+            case BITMAP_FORMAT_8_BIT:
+                for (int x = 0; x < width; x++) {
+                    argb[pixel++] = colors[data[pos++] & 0xff];
+                }
+                break;
+
+            case BITMAP_FORMAT_16_BIT:
+                for (int x = 0; x < width; x++) {
+                    int rgb = ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+                    pos += 2;
+
+                    int r = (rgb >> 10) & 0x1f;
+                    int g = (rgb >> 5) & 0x1f;
+                    int b = rgb & 0x1f;
+
+                    argb[pixel++] = 0xff000000 | (((r << 3) | (r >> 2)) << 16) | (((g << 3) | (g >> 2)) << 8) | ((b << 3) | (b >> 2));
+                }
+                break;
+
+            default:
+                for (int x = 0; x < width; x++) {
+                    int a = hasAlpha ? (data[pos] & 0xff) : 0xff;
+
+                    argb[pixel++] = (a << 24) | ((data[pos + 1] & 0xff) << 16) | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+                    pos += 4;
+                }
+                break;
+            }
+        }
+
+        return argb;
+    }
+}
@@ -134,6 +134,19 @@ public class Matrix {
     }
 
     public Matrix(InStream in) throws IOException {
+        read(in);
+    }
+
+    /**
+     * Replace the values with those read from the stream - so that one
+     * matrix can be reused for many reads
+     */
+    public void read(InStream in) throws IOException {
+        scaleX = 1.0;
+        scaleY = 1.0;
+        skew0 = 0.0;
+        skew1 = 0.0;
+
         in.synchBits();
 
         if (in.readUBits(1) == 1) //has scale values
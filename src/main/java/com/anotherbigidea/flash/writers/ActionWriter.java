@@ -34,10 +34,13 @@
 
 package com.anotherbigidea.flash.writers;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
@@ -45,7 +48,10 @@ import java.util.Stack;
 import com.anotherbigidea.flash.SWFActionCodes;
 import com.anotherbigidea.flash.SWFConstants;
 import com.anotherbigidea.flash.interfaces.SWFActions;
+import com.anotherbigidea.flash.readers.ActionParser;
 import com.anotherbigidea.io.OutStream;
+import com.anotherbigidea.io.SliceOutputStream;
+import com.anotherbigidea.io.StringCache;
 
 
 /**
@@ -55,7 +61,7 @@ import com.anotherbigidea.io.OutStream;
 public class ActionWriter implements SWFActions, SWFActionCodes {
     protected TagWriter tagWriter;
     protected OutStream out;
-    protected ByteArrayOutputStream bout;
+    protected SliceOutputStream bout;
     protected int count;
     protected int flashVersion;
     protected String mStringEncoding;
@@ -68,11 +74,65 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
     protected List<int[]> blocks;
     protected Stack<int[]> blockStack;
 
+    protected StringCache mStringCache;
+    protected boolean mAutoLookupTable;
+
+    /** pushed strings and their counts - null unless building a lookup table */
+    protected Map<String, int[]> mPushCounts;
+
+    /** whether a subclass overrides writeBytes(byte[]) */
+    private static final ClassValue<Boolean> OLD_HOOK = new ClassValue<Boolean>() {
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> c = type; c != ActionWriter.class; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("writeBytes", byte[].class);
+                    return Boolean.TRUE;
+                } catch (NoSuchMethodException e) {
+                    //not in this class
+                }
+            }
+            return Boolean.FALSE;
+        }
+    };
+
+    /**
+     * The string cache and lookup table settings are taken from the
+     * tag writer
+     */
     public ActionWriter(TagWriter tagWriter, int flashVersion) {
         this.flashVersion = flashVersion;
         this.tagWriter = tagWriter;
 
         mStringEncoding = (flashVersion >= SWFConstants.FLASH_MX_VERSION) ? SWFConstants.STRING_ENCODING_MX : "Windows-31J" /*SWFConstants.STRING_ENCODING_PRE_MX*/;
+
+        if (tagWriter != null) {
+            mStringCache = tagWriter.mStringCache;
+            mAutoLookupTable = tagWriter.mAutoLookupTable;
+        }
+    }
+
+    /**
+     * Encode strings through a cache - usually one that is shared with the
+     * rest of the pipeline
+     *
+     * @param cache null for none
+     */
+    public void setStringCache(StringCache cache) {
+        mStringCache = cache;
+    }
+
+    /**
+     * Start each action array (for Flash 5 and later) with a lookup table of
+     * the strings that it pushes often enough for the table to save space,
+     * and push those strings by index.  Arrays that have their own lookup
+     * table are left alone.
+     */
+    public void setAutoLookupTable(boolean auto) {
+        mAutoLookupTable = auto;
+    }
+
+    protected void writeString(String string) throws IOException {
+        out.writeString(string, mStringEncoding, mStringCache);
     }
 
     /**
@@ -94,7 +154,7 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
     public void start(int conditions) throws IOException {
         //ignore conditions
         count = 0;
-        bout = new ByteArrayOutputStream();
+        bout = (tagWriter != null) ? tagWriter.borrowBuffer() : new SliceOutputStream();
         out = new OutStream(bout);
         pushValues = new ArrayList<Object>();
         labels = null;
@@ -102,6 +162,16 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
         skips = null;
         blocks = null;
         blockStack = null;
+
+        if (mAutoLookupTable && (flashVersion >= 5)) {
+            if (mPushCounts == null) {
+                mPushCounts = new LinkedHashMap<String, int[]>();
+            } else {
+                mPushCounts.clear();
+            }
+        } else {
+            mPushCounts = null;
+        }
     }
 
     /**
@@ -110,7 +180,7 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
     public void end() throws IOException {
         writeCode(0);
         out.flush();
-        byte[] bytes = bout.toByteArray();
+        byte[] bytes = bout.getBuffer(); //fixed up in place
 
         // Fix up jumps and skips
         if (labels != null) {
@@ -126,7 +196,125 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
             fixupBlocks(bytes);
         }
 
-        writeBytes(bytes);
+        String[] lookupTable = (mPushCounts != null) ? chooseLookupTable() : null;
+
+        if (lookupTable != null) {
+            writeWithLookupTable(bytes, bout.size(), lookupTable);
+        } else {
+            writeBytes(bytes, 0, bout.size());
+        }
+
+        if (tagWriter != null) {
+            tagWriter.releaseBuffer(bout);
+            bout = null;
+            out = null;
+        }
+    }
+
+    /**
+     * Choose the pushed strings that are worth putting in a lookup table.
+     * A string of n bytes pushed c times saves (c - 1) * n - 1 bytes when
+     * pushed by index.
+     *
+     * @return null if the table would not save space
+     */
+    protected String[] chooseLookupTable() throws IOException {
+        List<Object[]> candidates = new ArrayList<Object[]>();
+
+        for (Map.Entry<String, int[]> entry : mPushCounts.entrySet()) {
+            int count = entry.getValue()[0];
+
+            if (count > 1) {
+                int length = encodedLength(entry.getKey());
+                int saving = ((count - 1) * length) - 1;
+
+                if (saving > 0) {
+                    candidates.add(new Object[] { entry.getKey(), new int[] { saving, length } });
+                }
+            }
+        }
+
+        //biggest savings first - stable, so ties stay in order of first use
+        Collections.sort(candidates, new Comparator<Object[]>() {
+            public int compare(Object[] a, Object[] b) {
+                return ((int[]) b[1])[0] - ((int[]) a[1])[0];
+            }
+        });
+
+        List<String> table = new ArrayList<String>();
+        int cost = 5; //the lookup table action and count
+        int size = 2;
+
+        for (Object[] candidate : candidates) {
+            int[] info = (int[]) candidate[1];
+
+            //indices are a single byte and the table length is a UI16
+            if ((table.size() == 256) || (size + info[1] + 1 > 0xffff)) {
+                break;
+            }
+
+            table.add((String) candidate[0]);
+            cost -= info[0];
+            size += info[1] + 1;
+        }
+
+        return (cost < 0) ? table.toArray(new String[table.size()]) : null;
+    }
+
+    protected int encodedLength(String string) throws IOException {
+        if (string == null) {
+            return 0;
+        }
+
+        return (mStringCache != null) ? mStringCache.encode(string, mStringEncoding).length : string.getBytes(mStringEncoding).length;
+    }
+
+    /**
+     * Write a finished action array again with a lookup table at the start.
+     * The array is parsed back so that the jumps and blocks are recalculated
+     * for the shorter pushes.
+     */
+    protected void writeWithLookupTable(byte[] bytes, int length, String[] lookupTable) throws IOException {
+        LookupTableWriter writer = new LookupTableWriter(flashVersion, lookupTable);
+        writer.mStringCache = mStringCache;
+        writer.start(0);
+        writer.lookupTable(lookupTable);
+
+        ActionParser parser = new ActionParser(writer, flashVersion);
+        parser.setStringCache(mStringCache);
+        parser.parse(bytes, 0, length);
+
+        writeBytes(writer.mResult.getBuffer(), 0, writer.mResult.size());
+    }
+
+    /**
+     * Pushes the strings in a lookup table by index and collects the bytes
+     */
+    protected static class LookupTableWriter extends ActionWriter {
+        protected Map<String, Integer> mIndices = new HashMap<String, Integer>();
+        protected SliceOutputStream mResult = new SliceOutputStream();
+
+        protected LookupTableWriter(int flashVersion, String[] lookupTable) {
+            super(null, flashVersion);
+
+            for (int i = 0; i < lookupTable.length; i++) {
+                mIndices.put(lookupTable[i], Integer.valueOf(i));
+            }
+        }
+
+        public void push(String value) throws IOException {
+            Integer index = mIndices.get(value);
+
+            if (index != null) {
+                lookup(index.intValue());
+            } else {
+                super.push(value);
+            }
+        }
+
+        protected void writeBytes(byte[] bytes, int offset, int length) {
+            mResult.write(bytes, offset, length);
+        }
     }
 
     /**
@@ -136,8 +324,55 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
         writeBytes(blob);
     }
 
+    /**
+     * Write a blob, or the finished action bytes for a subclass that
+     * overrides this rather than writeBytes(byte[], int, int) - the array
+     * then belongs to the subclass.
+     *
+     * @deprecated override writeBytes(byte[], int, int) instead, which does
+     *             not need a copy of the bytes
+     */
+    @Deprecated
     protected void writeBytes(byte[] bytes) throws IOException {
-        tagWriter.getOutStream().write(bytes);
+        if (OLD_HOOK.get(getClass())) {
+            tagWriter.getOutStream().write(bytes);
+        } else {
+            writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Write the finished action bytes - the array is only valid during
+     * the call.  A subclass that overrides writeBytes(byte[]) is passed a
+     * copy of them there.
+     */
+    protected void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (OLD_HOOK.get(getClass())) {
+            writeBytes(Arrays.copyOfRange(bytes, offset, offset + length));
+        } else {
+            tagWriter.getOutStream().write(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Write a placeholder UI16 length
+     *
+     * @return the offset of the data that follows it
+     */
+    protected int startLength() throws IOException {
+        out.writeUI16(0);
+        out.flush();
+        return bout.size();
+    }
+
+    /**
+     * Fix up the UI16 length written by startLength()
+     */
+    protected void endLength(int start) throws IOException {
+        out.flush();
+        byte[] length = OutStream.uintTo2Bytes(bout.size() - start);
+        bout.getBuffer()[start - 2] = length[0];
+        bout.getBuffer()[start - 1] = length[1];
     }
 
     /**
@@ -265,7 +500,7 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
     public void gotoFrame(String label) throws IOException {
         writeCode(GOTO_LABEL);
         out.writeUI16(OutStream.getStringLength(label));
-        out.writeString(label, mStringEncoding);
+        writeString(label);
     }
 
     /**
@@ -274,8 +509,8 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
     public void getURL(String url, String target) throws IOException {
         writeCode(GET_URL);
         out.writeUI16(OutStream.getStringLength(url) + OutStream.getStringLength(target));
-        out.writeString(url, mStringEncoding);
-        out.writeString(target, mStringEncoding);
+        writeString(url);
+        writeString(target);
     }
 
     /**
@@ -326,7 +561,7 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
     public void setTarget(String target) throws IOException {
         writeCode(SET_TARGET);
         out.writeUI16(OutStream.getStringLength(target));
-        out.writeString(target, mStringEncoding);
+        writeString(target);
     }
 
     protected void writeJump(String label, int code) throws IOException {
@@ -692,21 +927,18 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
      * SWFActions interface
      */
     public void lookupTable(String[] values) throws IOException {
+        mPushCounts = null; //has its own lookup table
         writeCode(LOOKUP_TABLE);
 
-        ByteArrayOutputStream baout = new ByteArrayOutputStream();
-        OutStream bout = new OutStream(baout);
+        int start = startLength();
 
-        bout.writeUI16(values.length);
+        out.writeUI16(values.length);
 
         for (int i = 0; i < values.length; i++) {
-            bout.writeString(values[i], mStringEncoding);
+            writeString(values[i]);
         }
 
-        bout.flush();
-        byte[] data = baout.toByteArray();
-        out.writeUI16(data.length);
-        out.write(data);
+        endLength(start);
     }
 
     /**
@@ -733,22 +965,18 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
 
         writeCode(DEFINE_FUNCTION);
 
-        ByteArrayOutputStream baout = new ByteArrayOutputStream();
-        OutStream bout = new OutStream(baout);
+        int start = startLength();
 
-        bout.writeString(name, mStringEncoding);
-        bout.writeUI16(paramNames.length);
+        writeString(name);
+        out.writeUI16(paramNames.length);
 
         for (int i = 0; i < paramNames.length; i++) {
-            bout.writeString(paramNames[i], mStringEncoding);
+            writeString(paramNames[i]);
         }
 
-        bout.writeUI16(0); //code size - will be fixed up later
+        out.writeUI16(0); //code size - will be fixed up later
 
-        bout.flush();
-        byte[] data = baout.toByteArray();
-        out.writeUI16(data.length);
-        out.write(data);
+        endLength(start);
 
         blockStack.push(new int[] { out.getCount(), 0 });
     }
@@ -760,6 +988,11 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
         if ((blockStack == null) || blockStack.isEmpty()) {
             return; //nothing to do
         }
+        //pushes at the end of the block belong in it
+        if (pushValues.size() > 0) {
+            flushPushValues();
+        }
+
         int[] blockInfo = blockStack.pop();
 
         if (blocks == null) {
@@ -1006,49 +1239,55 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
         out.writeUI8(PUSH);
         count++;
 
-        ByteArrayOutputStream baout = new ByteArrayOutputStream();
-        OutStream bout = new OutStream(baout);
+        int start = startLength();
 
         for (Object value : pushValues) {
 
             if (value instanceof String) {
-                bout.writeUI8(PUSHTYPE_STRING);
-                bout.writeString(value.toString(), mStringEncoding);
+                out.writeUI8(PUSHTYPE_STRING);
+                writeString(value.toString());
             } else if (value instanceof Boolean) {
-                bout.writeUI8(PUSHTYPE_BOOLEAN);
-                bout.writeUI8(((Boolean) value).booleanValue() ? 1 : 0);
+                out.writeUI8(PUSHTYPE_BOOLEAN);
+                out.writeUI8(((Boolean) value).booleanValue() ? 1 : 0);
             } else if (value instanceof Integer) {
-                bout.writeUI8(PUSHTYPE_INTEGER);
-                bout.writeSI32(((Integer) value).intValue());
+                out.writeUI8(PUSHTYPE_INTEGER);
+                out.writeSI32(((Integer) value).intValue());
             } else if (value instanceof Short) {
-                bout.writeUI8(PUSHTYPE_LOOKUP);
-                bout.writeUI8(((Short) value).intValue());
+                out.writeUI8(PUSHTYPE_LOOKUP);
+                out.writeUI8(((Short) value).intValue());
             } else if (value instanceof Byte) {
-                bout.writeUI8(PUSHTYPE_REGISTER);
-                bout.writeUI8(((Byte) value).intValue());
+                out.writeUI8(PUSHTYPE_REGISTER);
+                out.writeUI8(((Byte) value).intValue());
             } else if (value instanceof Float) {
-                bout.writeUI8(PUSHTYPE_FLOAT);
-                bout.writeFloat(((Float) value).floatValue());
+                out.writeUI8(PUSHTYPE_FLOAT);
+                out.writeFloat(((Float) value).floatValue());
             } else if (value instanceof Double) {
-                bout.writeUI8(PUSHTYPE_DOUBLE);
-                bout.writeDouble(((Double) value).doubleValue());
+                out.writeUI8(PUSHTYPE_DOUBLE);
+                out.writeDouble(((Double) value).doubleValue());
             } else {
-                bout.writeUI8(PUSHTYPE_NULL);
+                out.writeUI8(PUSHTYPE_NULL);
             }
         }
 
         pushValues.clear();
 
-        bout.flush();
-        byte[] data = baout.toByteArray();
-        out.writeUI16(data.length);
-        out.write(data);
+        endLength(start);
     }
 
     /**
      * SWFActions interface
      */
     public void push(String value) throws IOException {
+        if (mPushCounts != null) {
+            int[] count = mPushCounts.get(value);
+
+            if (count == null) {
+                mPushCounts.put(value, new int[] { 1 });
+            } else {
+                count[0]++;
+            }
+        }
+
         pushValues.add(value);
         if (flashVersion < 5) {
             flushPushValues();
@@ -1119,6 +1358,7 @@ public class ActionWriter implements SWFActions, SWFActionCodes {
      * SWFActions interface
      */
     public void lookup(int dictionaryIndex) throws IOException {
+        mPushCounts = null; //has its own lookup table
         pushValues.add(new Short((short) dictionaryIndex));
         if (flashVersion < 5) {
             flushPushValues();
@@ -36,13 +36,13 @@ package com.anotherbigidea.flash.writers;
 import java.io.IOException;
 
 import com.anotherbigidea.flash.interfaces.SWFFileSignature;
-import com.anotherbigidea.flash.interfaces.SWFTags;
+import com.anotherbigidea.flash.interfaces.SWFTagSlices;
 
 /**
  * Implements the SWFTags interface and does nothing
  * Use as a sink when output is not required
  */
-public class DummySWFWriter implements SWFTags, SWFFileSignature
+public class DummySWFWriter implements SWFTagSlices, SWFFileSignature
 {
     /**
      * Interface SWFTags
@@ -63,6 +63,15 @@ public class DummySWFWriter implements SWFTags, SWFFileSignature
         //do nothing
     }    
     
+    /**
+     * Interface SWFTagSlices
+     */
+    public void tag( int tagType, boolean longTag, 
+                     byte[] buffer, int offset, int length ) throws IOException
+    {
+        //do nothing
+    }    
+    
 	/**
 	 * @see SWFFileSignature#signature(String)
 	 */
@@ -124,11 +124,48 @@ public class SWFSaxWriter extends SaxHandlerBase {
         initElements();
     }
 
+    /**
+     * Set the SWFTagTypes for the next document - this also does a reset()
+     */
     public void setTagTypes(SWFTagTypes tags) {
+        reset();
         this.tags = tags;
         this.movieTags = tags;
     }
 
+    /**
+     * Discard the state left by the last document, which may have been
+     * abandoned part way through.  The element table is kept.
+     */
+    public void reset() {
+        super.reset();
+
+        shape = null;
+        vectors = null;
+        actions = null;
+        text = null;
+        actionMode = 0;
+        flashVersion = 5;
+        idAllocate = false;
+        newId = 1;
+        matrix = null;
+        color = null;
+        cxform = null;
+        hasAlpha = false;
+        ids.clear();
+        buttonRecords.clear();
+        bitmapColors = null;
+        pixelData = null;
+        jpegAlpha = null;
+        colors = null;
+        ratios = null;
+        symbols = null;
+        chars = null;
+        codes = null;
+        lookupValues.clear();
+        soundInfos = null;
+    }
+
     /**
      * Resolve a symbolic id to a numeric id
      */
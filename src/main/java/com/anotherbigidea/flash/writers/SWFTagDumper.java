@@ -44,6 +44,7 @@ import java.util.List;
 import com.anotherbigidea.flash.SWFConstants;
 import com.anotherbigidea.flash.interfaces.SWFActions;
 import com.anotherbigidea.flash.interfaces.SWFFileSignature;
+import com.anotherbigidea.flash.interfaces.SWFRawPlacements;
 import com.anotherbigidea.flash.interfaces.SWFShape;
 import com.anotherbigidea.flash.interfaces.SWFTagTypes;
 import com.anotherbigidea.flash.interfaces.SWFTags;
@@ -66,7 +67,7 @@ import com.anotherbigidea.util.Hex;
  * An implementation of the SWFTagTypes interface that produces a debug dump
  */
 public class SWFTagDumper implements SWFTagTypes, SWFShape, SWFText,
-                                     SWFFileSignature {
+                                     SWFFileSignature, SWFRawPlacements {
     protected PrintWriter writer;
     protected String dashes = "---------------";
     protected boolean dumpHex;
@@ -470,6 +471,26 @@ println("Tag " + tagType + " length=" + contents.length);
                 matrix + "  " + cxform);
     }
 
+    /**
+     * SWFRawPlacements interface
+     */
+    public void tagPlaceObjectRaw(int charId, int depth, Matrix matrix,
+                                  AlphaTransform cxform) throws IOException {
+        tagPlaceObject(charId, depth, matrix, cxform);
+    }
+
+    /**
+     * SWFRawPlacements interface
+     */
+    public SWFActions tagPlaceObject2Raw(boolean isMove, int clipDepth,
+                                         int depth, int charId, Matrix matrix,
+                                         AlphaTransform cxform, int ratio,
+                                         String name, int clipActionFlags)
+        throws IOException {
+        return tagPlaceObject2(isMove, clipDepth, depth, charId, matrix,
+                               cxform, ratio, name, clipActionFlags);
+    }
+
     /**
      * SWFTagTypes interface
      */
@@ -34,6 +34,13 @@
 package com.anotherbigidea.flash.writers;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
 import com.anotherbigidea.io.*;
 import com.anotherbigidea.flash.*;
 import com.anotherbigidea.flash.structs.Rect;
@@ -41,14 +48,32 @@ import com.anotherbigidea.flash.interfaces.*;
 
 /**
  * Implements the SWFTags interface and writes a SWF file to the output stream
+ * 
+ * If the header length or frame count are unknown then the header has to be
+ * written after the tags.  When writing to a SeekableByteChannel (or a file)
+ * the tags are written straight through and the header is patched at the end
+ * - or, for a compressed movie, the tags are spilled to a temp file.  For
+ * other output streams the tags are held in memory.
  */
-public class SWFWriter implements SWFTags, SWFFileSignature
+public class SWFWriter implements SWFTagSlices, SWFFileSignature
 {
     protected OutStream    mOut;
     protected OutputStream mOutputstream;
     protected ByteArrayOutputStream mByteout;
     protected String mSignature = null;
     
+    // zip-compression settings
+    protected int mCompressionLevel   = Deflater.BEST_COMPRESSION;
+    protected int mCompressionThreads = 1;
+    protected Compression mCompression;
+    
+    // random access output - header values are patched in place
+    protected SeekableByteChannel mChannel;
+    protected long mHeaderPosition = -1L;
+    
+    // spilled tags of a compressed movie
+    protected File mSpillFile;
+    
     // deferred header values
     protected int  frameCount;
     protected int  version;
@@ -60,7 +85,33 @@ public class SWFWriter implements SWFTags, SWFFileSignature
      * Write to a file.
      */
     public SWFWriter( String filename ) throws IOException {
-    	this( new FileOutputStream( filename ) );
+    	this( FileChannel.open( Paths.get( filename ), 
+    	                        StandardOpenOption.CREATE, 
+    	                        StandardOpenOption.WRITE,
+    	                        StandardOpenOption.TRUNCATE_EXISTING ) );
+    }
+    
+    /**
+     * Write to a channel, starting at its current position - closing it at the end.
+     */
+    public SWFWriter( SeekableByteChannel channel )
+    {
+        this( channel, false );
+    }
+    
+    /**
+     * Write to a channel, starting at its current position - closing it at the end.
+     * 
+     * @param writeBehind true to write to the channel on a background thread,
+     *        behind the encoding of the tags
+     * @see WriteBehindOutputStream
+     */
+    public SWFWriter( SeekableByteChannel channel, boolean writeBehind )
+    {
+        this( writeBehind ?
+                  new WriteBehindOutputStream( channel ) :
+                  new BufferedOutputStream( Channels.newOutputStream( channel ), 0x10000 ) );
+        mChannel = channel;
     }
     
     /**
@@ -107,6 +158,37 @@ public class SWFWriter implements SWFTags, SWFFileSignature
 						SWFFileSignature.SIGNATURE_NORMAL );
     }
     
+    /**
+     * Set the Deflater level for a compressed movie - the default is
+     * Deflater.BEST_COMPRESSION.
+     */
+    public void setCompressionLevel( int level ) {
+    	mCompressionLevel = level;
+    }
+    
+    /**
+     * Set the number of threads that compress a compressed movie.  With more
+     * than one the movie is deflated in blocks in parallel, which is a little
+     * larger - the default is 1.
+     * 
+     * @see ParallelDeflaterOutputStream
+     */
+    public void setCompressionThreads( int threads ) {
+    	mCompressionThreads = threads;
+    }
+    
+    /**
+     * Compress a compressed movie with the given Compression - this takes
+     * precedence over the level and threads.
+     * 
+     * @param compression null for the built-in Deflater
+     * @see DeflateCompression
+     * @see OptimalCompression
+     */
+    public void setCompressionMethod( Compression compression ) {
+    	mCompression = compression;
+    }
+    
     /**
      * Writes the header unless the length or framecount are unknown (as
      * signified by a negative value), in which case the header values are
@@ -127,9 +209,34 @@ public class SWFWriter implements SWFTags, SWFFileSignature
             this.version    = version;
             this.rate       = frameRate;
             this.frameCount = 0;
-                
+            
+            if( mChannel != null && !isCompressed() )
+            {
+                // write a dummy header and patch it at the end
+                mHeaderPosition = mChannel.position();
+                writeHeader( version, 0, frameRate, 0 );
+            }
+            else if( mChannel != null )
+            {
+                // spill the tags to a temp file
+                if( mSpillFile == null )
+                {
+                    mSpillFile = File.createTempFile( "swf", ".tmp" );
+                    
+                    try
+                    {
+                        mOut = new OutStream( new BufferedOutputStream( new FileOutputStream( mSpillFile ), 0x10000 ) );
+                    }
+                    catch( IOException ex )
+                    {
+                        mSpillFile.delete();
+                        mSpillFile = null;
+                        throw ex;
+                    }
+                }
+            }
             // set up a byte array for the output
-            if( mByteout == null )
+            else if( mByteout == null )
             {
                 mByteout = new ByteArrayOutputStream( 20000 );
                 mOut = new OutStream( mByteout );
@@ -150,19 +257,66 @@ public class SWFWriter implements SWFTags, SWFFileSignature
         //System.err.println( "OUT Tag " + tagType + " " + longTag + " " + ( (contents==null) ? 0 : contents.length) );
         //System.err.println();
         
-        int length = (contents != null ) ? contents.length : 0;
+        tag( tagType, longTag, contents, 0, (contents != null ) ? contents.length : 0 );
+    }
+    
+    /**
+     * @see SWFTagSlices#tag(int, boolean, byte[], int, int)
+     */
+    public void tag( int tagType, boolean longTag, 
+                     byte[] buffer, int offset, int length ) throws IOException
+    {
         longTag = ( length > 62 ) || longTag;
         
         int hdr = ( tagType << 6 ) + ( longTag ? 0x3f : length );
-
-        mOut.writeUI16( hdr );
         
-        if( longTag ) mOut.writeUI32( length );        
+        boolean spilling = mSpillFile != null;
+
+        try
+        {
+            mOut.writeUI16( hdr );
+            
+            if( longTag ) mOut.writeUI32( length );        
+            
+            if( length > 0 ) mOut.write( buffer, offset, length );
+            
+            if( tagType == SWFConstants.TAG_SHOWFRAME ) frameCount++;        
+            if( tagType == SWFConstants.TAG_END       ) finish();
+        }
+        catch( IOException | RuntimeException ex )
+        {
+            // the movie cannot be finished - don't leave the spill file behind
+            if( spilling ) abort();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Abandon a movie that will not be finished, e.g. after an error while
+     * reading it - closes the output and deletes any tags spilled to a temp
+     * file.  Errors from closing are ignored.
+     */
+    public void abort()
+    {
+        closeQuietly( mOut );
+        closeQuietly( mOutputstream );
         
-        if( contents != null ) mOut.write( contents );
+        if( mSpillFile != null )
+        {
+            mSpillFile.delete();
+            mSpillFile = null;
+        }
+    }
+    
+    private static void closeQuietly( Closeable closeable )
+    {
+        if( closeable == null ) return;
         
-        if( tagType == SWFConstants.TAG_SHOWFRAME ) frameCount++;        
-        if( tagType == SWFConstants.TAG_END       ) finish();
+        try
+        {
+            closeable.close();
+        }
+        catch( IOException ex ) {}
     }
     
     protected void writeHeader( int version, long length,
@@ -174,7 +328,8 @@ public class SWFWriter implements SWFTags, SWFFileSignature
         
         //may be compressed from this point onwards
         if( mSignature.equals( SWFFileSignature.SIGNATURE_COMPRESSED ) ) {
-        	mOut.writeCompressed();
+        	if( mCompression != null ) mOut.writeCompressed( mCompression );
+        	else                       mOut.writeCompressed( mCompressionLevel, mCompressionThreads );
         }
         
         frameSize.write( mOut );
@@ -187,25 +342,85 @@ public class SWFWriter implements SWFTags, SWFFileSignature
 		mOut.write( mSignature.getBytes( "US-ASCII" ));
     }
     
+    private boolean isCompressed() {
+        return SWFFileSignature.SIGNATURE_COMPRESSED.equals( mSignature );
+    }
+    
     /**
      * Finish writing
      */
     protected void finish() throws IOException
     {
+        // Header written to the channel - patch the length and frame count
+        if( mHeaderPosition >= 0 )
+        {
+            mOut.flush();
+            
+            long end = mChannel.position();
+            
+            patch( mHeaderPosition + 4, OutStream.uintTo4Bytes( (int) ( end - mHeaderPosition )));
+            patch( mHeaderPosition + 10 + frameSize.getLength(), OutStream.uintTo2Bytes( frameCount ));
+            
+            mChannel.position( end );
+        }
+        
+        // Tags spilled to a file - write the header and copy them after it
+        else if( mSpillFile != null )
+        {
+            try
+            {
+                mOut.close();
+                
+                long length = 12L + frameSize.getLength() + mSpillFile.length();
+                
+                mOut = new OutStream( mOutputstream );
+                
+                writeHeader( version, length, rate, frameCount );
+                
+                InputStream in = new FileInputStream( mSpillFile );
+                try
+                {
+                    byte[] buffer = new byte[ 0x10000 ];
+                    int count;
+                    
+                    while(( count = in.read( buffer )) > 0 ) mOut.write( buffer, 0, count );
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            finally
+            {
+                mSpillFile.delete();
+                mSpillFile = null;
+            }
+        }
+        
         // Writing to a byte array - need to recalculate lengths
-        if( mByteout != null )
+        else if( mByteout != null )
         {
-            byte[] bytes = mByteout.toByteArray();
-
-            long length = 12L + frameSize.getLength() + bytes.length;
+            long length = 12L + frameSize.getLength() + mByteout.size();
 
             mOut = new OutStream( mOutputstream );
             
             writeHeader( version, length, rate, frameCount );
             
-            mOut.write( bytes );
+            mByteout.writeTo( mOut );
+            mByteout = null;
         }
 
 		mOut.close();
     }
+    
+    /**
+     * Overwrite bytes at the given position in the channel
+     */
+    protected void patch( long position, byte[] bytes ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        
+        mChannel.position( position );
+        while( buffer.hasRemaining() ) mChannel.write( buffer );
+    }
 }
@@ -34,18 +34,21 @@
 
 package com.anotherbigidea.flash.writers;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
 import com.anotherbigidea.flash.SWFConstants;
 import com.anotherbigidea.flash.interfaces.SWFActions;
 import com.anotherbigidea.flash.interfaces.SWFFileSignature;
+import com.anotherbigidea.flash.interfaces.SWFRawPlacements;
 import com.anotherbigidea.flash.interfaces.SWFShape;
+import com.anotherbigidea.flash.interfaces.SWFTagSlices;
 import com.anotherbigidea.flash.interfaces.SWFTagTypes;
 import com.anotherbigidea.flash.interfaces.SWFTags;
 import com.anotherbigidea.flash.interfaces.SWFText;
@@ -58,30 +61,67 @@ import com.anotherbigidea.flash.structs.Color;
 import com.anotherbigidea.flash.structs.ColorTransform;
 import com.anotherbigidea.flash.structs.FillStyle;
 import com.anotherbigidea.flash.structs.LineStyle;
+import com.anotherbigidea.flash.structs.LosslessRaster;
 import com.anotherbigidea.flash.structs.Matrix;
 import com.anotherbigidea.flash.structs.Rect;
 import com.anotherbigidea.flash.structs.SoundInfo;
 import com.anotherbigidea.flash.structs.Style;
 import com.anotherbigidea.io.OutStream;
+import com.anotherbigidea.io.SliceOutputStream;
+import com.anotherbigidea.io.StringCache;
+import com.anotherbigidea.io.ZlibPool;
 
 
 /**
  * A writer that implements the SWFTagTypes interface and writes
  * to a SWFTags interface
  */
-public class TagWriter implements SWFTagTypes, SWFConstants, SWFFileSignature {
+public class TagWriter implements SWFTagTypes, SWFTagSlices, SWFRawPlacements, SWFConstants, SWFFileSignature {
+    /** Larger tag buffers are not kept for reuse */
+    public static final int MAX_POOLED_BUFFER = 0x100000;
+
     protected SWFTags mTags;
     protected OutStream out;
-    protected ByteArrayOutputStream bytes;
+    protected SliceOutputStream bytes;
+
+    //reused as the out for each tag
+    protected OutStream mOutStream;
+
+    //free tag buffers - shared with the writers for sprites
+    protected List<SliceOutputStream> mBuffers = new ArrayList<SliceOutputStream>();
     protected int tagType;
     protected boolean longTag;
     protected int version;
     protected String mStringEncoding = SWFConstants.STRING_ENCODING_MX;
 
+    //for the action writers
+    protected StringCache mStringCache;
+    protected boolean mAutoLookupTable;
+
     public TagWriter(SWFTags tags) {
         mTags = tags;
     }
 
+    /**
+     * Encode action strings through a cache - usually one that is shared
+     * with the parser at the other end of the pipeline
+     *
+     * @param cache null for none
+     * @see ActionWriter#setStringCache(StringCache)
+     */
+    public void setStringCache(StringCache cache) {
+        mStringCache = cache;
+    }
+
+    /**
+     * Give action arrays a lookup table of their frequently pushed strings
+     *
+     * @see ActionWriter#setAutoLookupTable(boolean)
+     */
+    public void setAutoLookupTable(boolean auto) {
+        mAutoLookupTable = auto;
+    }
+
     protected OutStream getOutStream() {
         return out;
     }
@@ -103,6 +143,26 @@ public class TagWriter implements SWFTagTypes, SWFConstants, SWFFileSignature {
         }
     }
 
+    /**
+     * Take a buffer from the pool or make a new one
+     */
+    protected SliceOutputStream borrowBuffer() {
+        int size = mBuffers.size();
+
+        return (size > 0) ? mBuffers.remove(size - 1) : new SliceOutputStream(10000);
+    }
+
+    /**
+     * Return a buffer to the pool - unless it has grown too large
+     */
+    protected void releaseBuffer(SliceOutputStream buffer) {
+        buffer.reset();
+
+        if (buffer.capacity() <= MAX_POOLED_BUFFER) {
+            mBuffers.add(buffer);
+        }
+    }
+
     /**
      * Start a new tag context
      */
@@ -110,8 +170,15 @@ public class TagWriter implements SWFTagTypes, SWFConstants, SWFFileSignature {
         this.tagType = tagType;
         this.longTag = longTag;
 
-        bytes = new ByteArrayOutputStream(10000);
-        out = new OutStream(bytes);
+        bytes = borrowBuffer();
+
+        if (mOutStream == null) {
+            mOutStream = new OutStream(bytes);
+        } else {
+            mOutStream.reset(bytes);
+        }
+
+        out = mOutStream;
     }
 
     /**
@@ -127,12 +194,26 @@ public class TagWriter implements SWFTagTypes, SWFConstants, SWFFileSignature {
      */
     protected void completeTag() throws IOException {
         out.flush();
-        byte[] contents = bytes.toByteArray();
+        SliceOutputStream contents = bytes;
 
         out = null;
         bytes = null;
 
-        mTags.tag(tagType, longTag, contents);
+        writeTag(tagType, longTag, contents);
+    }
+
+    /**
+     * Write a tag from a buffer - as a slice if possible - and return the
+     * buffer to the pool
+     */
+    protected void writeTag(int tagType, boolean longTag, SliceOutputStream contents) throws IOException {
+        if (mTags instanceof SWFTagSlices) {
+            ((SWFTagSlices) mTags).tag(tagType, longTag, contents.getBuffer(), 0, contents.size());
+        } else {
+            mTags.tag(tagType, longTag, contents.toByteArray());
+        }
+
+        releaseBuffer(contents);
     }
 
     /**
@@ -142,6 +223,17 @@ public class TagWriter implements SWFTagTypes, SWFConstants, SWFFileSignature {
         mTags.tag(tagType, longTag, contents);
     }
 
+    /**
+     * SWFTagSlices interface
+     */
+    public void tag(int tagType, boolean longTag, byte[] buffer, int offset, int length) throws IOException {
+        if (mTags instanceof SWFTagSlices) {
+            ((SWFTagSlices) mTags).tag(tagType, longTag, buffer, offset, length);
+        } else {
+            mTags.tag(tagType, longTag, Arrays.copyOfRange(buffer, offset, offset + length));
+        }
+    }
+
     /**
      * SWFHeader interface.
      * Sets movie length to -1 to force a recalculation since the length
@@ -412,6 +504,21 @@ public class TagWriter implements SWFTagTypes, SWFConstants, SWFFileSignature {
         completeTag();
     }
 
+    /**
+     * SWFRawPlacements interface - the matrix and transform are written
+     * straight away so they may be reused
+     */
+    public void tagPlaceObjectRaw(int charId, int depth, Matrix matrix, AlphaTransform cxform) throws IOException {
+        tagPlaceObject(charId, depth, matrix, cxform);
+    }
+
+    /**
+     * SWFRawPlacements interface
+     */
+    public SWFActions tagPlaceObject2Raw(boolean isMove, int clipDepth, int depth, int charId, Matrix matrix, AlphaTransform cxform, int ratio, String name, int clipActionFlags) throws IOException {
+        return tagPlaceObject2(isMove, clipDepth, depth, charId, matrix, cxform, ratio, name, clipActionFlags);
+    }
+
     /**
      * SWFTagTypes interface
      */
@@ -462,9 +569,9 @@ public class TagWriter implements SWFTagTypes, SWFConstants, SWFFileSignature {
                         tagWriter.out.writeUI16(conditions);
                     }
 
-                    protected void writeBytes(byte[] bytes) throws IOException {
-                        tagWriter.out.writeUI32(bytes.length);
-                        super.writeBytes(bytes);
+                    protected void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+                        tagWriter.out.writeUI32(length);
+                        super.writeBytes(bytes, offset, length);
                     }
 
                     public void done() throws IOException {
@@ -535,6 +642,9 @@ public class TagWriter implements SWFTagTypes, SWFConstants, SWFFileSignature {
 
         TagWriter writer = new TagWriter(new SpriteTags());
         writer.version = version;
+        writer.mBuffers = mBuffers;
+        writer.mStringCache = mStringCache;
+        writer.mAutoLookupTable = mAutoLookupTable;
 
         return writer;
     }
@@ -808,7 +918,7 @@ System.err.println("BUTTON");
         }
 
         // zip up the colors and the bitmap data
-        DeflaterOutputStream deflater = new DeflaterOutputStream(bytes);
+        DeflaterOutputStream deflater = ZlibPool.getShared().deflate(bytes, Deflater.DEFAULT_COMPRESSION);
         OutStream zipOut = new OutStream(deflater);
 
         if ((format == BITMAP_FORMAT_8_BIT) || (format == BITMAP_FORMAT_16_BIT)) {
@@ -822,7 +932,41 @@ System.err.println("BUTTON");
         }
         zipOut.write(imageData);
         zipOut.flush();
-        deflater.finish();
+        deflater.close(); //finishes and releases the Deflater
+
+        completeTag();
+    }
+
+    /**
+     * Write a DefineBitsLossless or DefineBitsLossless2 tag from packed ARGB
+     * pixels - as passed to SWFLosslessRasters.tagDefineBitsLosslessRaster(..)
+     *
+     * BITMAP_FORMAT_16_BIT keeps only the top 5 bits of each component, so
+     * it is lossy for pixels that were not decoded from 16 bit data.
+     *
+     * @param argb premultiplied if hasAlpha
+     * @throws IllegalArgumentException if the pixels do not fit the format
+     * @see LosslessRaster
+     */
+    public void writeBitsLossless(int id, int format, int width, int height, boolean hasAlpha, int[] argb) throws IOException {
+        int[] colorCount = new int[1];
+        byte[] data = LosslessRaster.encode(argb, width, height, format, hasAlpha, colorCount);
+
+        startTag(hasAlpha ? TAG_DEFINEBITSLOSSLESS2 : TAG_DEFINEBITSLOSSLESS, id, true);
+
+        out.writeUI8(format);
+        out.writeUI16(width);
+        out.writeUI16(height);
+
+        if (format == BITMAP_FORMAT_8_BIT) {
+            out.writeUI8(colorCount[0] - 1);
+        } else if (format == BITMAP_FORMAT_16_BIT) {
+            out.writeUI16(colorCount[0] - 1);
+        }
+
+        DeflaterOutputStream deflater = ZlibPool.getShared().deflate(bytes, Deflater.DEFAULT_COMPRESSION);
+        deflater.write(data);
+        deflater.close(); //finishes and releases the Deflater
 
         completeTag();
     }
@@ -901,7 +1045,8 @@ System.err.println("BUTTON");
             offsets.add(new int[] { lastPtr, 0 });
 
             tagout.flush();
-            byte[] contents = tagWriter.bytes.toByteArray();
+            SliceOutputStream buffer = tagWriter.bytes;
+            byte[] contents = buffer.getBuffer();
 
             tagWriter.out = null;
             tagWriter.bytes = null;
@@ -916,7 +1061,7 @@ System.err.println("BUTTON");
                 contents[ptr + 1] = offbytes[1];
             }
 
-            tagWriter.mTags.tag(tagWriter.tagType, true, contents);
+            tagWriter.writeTag(tagWriter.tagType, true, buffer);
         }
     }
 
@@ -1079,11 +1224,14 @@ System.err.println("BUTTON");
         }
     }
 
-    protected class SpriteTags implements SWFTags {
+    protected class SpriteTags implements SWFTagSlices {
         protected int frameCount = 0;
 
         public void tag(int tagType2, boolean longTag2, byte[] contents) throws IOException {
-            int length = (contents != null) ? contents.length : 0;
+            tag(tagType2, longTag2, contents, 0, (contents != null) ? contents.length : 0);
+        }
+
+        public void tag(int tagType2, boolean longTag2, byte[] buffer, int offset, int length) throws IOException {
             longTag2 = (length > 62) || longTag2;
 
             int hdr = (tagType2 << 6) + (longTag2 ? 0x3f : length);
@@ -1094,8 +1242,8 @@ System.err.println("BUTTON");
                 out.writeUI32(length);
             }
 
-            if (contents != null) {
-                out.write(contents);
+            if (length > 0) {
+                out.write(buffer, offset, length);
             }
 
             if (tagType2 == SWFConstants.TAG_SHOWFRAME) {
@@ -1104,16 +1252,16 @@ System.err.println("BUTTON");
 
             if (tagType2 == SWFConstants.TAG_END) {
                 out.flush();
-                contents = bytes.toByteArray();
+                SliceOutputStream contents = bytes;
 
                 out = null;
                 bytes = null;
 
                 byte[] fc = OutStream.uintTo2Bytes(frameCount);
-                contents[2] = fc[0];
-                contents[3] = fc[1];
+                contents.getBuffer()[2] = fc[0];
+                contents.getBuffer()[3] = fc[1];
 
-                mTags.tag(tagType, longTag, contents);
+                writeTag(tagType, longTag, contents);
             }
         }
 
@@ -1143,10 +1291,11 @@ System.err.println("BUTTON");
         protected int fillBits;
         protected int lineBits;
         protected int glyphCount = 0;
-        protected List<byte[]> glyphByteArrays;
+        protected int[] glyphEnds; //end offset of each glyph within bout
+        protected int glyphsDone;
         protected OutStream out;
         protected TagWriter writer;
-        protected ByteArrayOutputStream bout;
+        protected SliceOutputStream bout;
 
         /**
          * For shapes (other than glyphs)
@@ -1164,9 +1313,9 @@ System.err.println("BUTTON");
         public SWFShapeImpl(TagWriter writer, int glyphCount) {
             this(writer, false, false);
             this.glyphCount = glyphCount;
-            bout = new ByteArrayOutputStream();
+            bout = writer.borrowBuffer();
             out = new OutStream(bout);
-            glyphByteArrays = new ArrayList<byte[]>();
+            glyphEnds = new int[Math.max(glyphCount, 0)];
 
             fill1Index = 1;
             lineIndex = 0;
@@ -1182,13 +1331,10 @@ System.err.println("BUTTON");
             out.flushBits();
 
             if ((bout != null) && (glyphCount > 0)) { //capturing bytes internally
-                byte[] glyphBytes = bout.toByteArray();
-                glyphByteArrays.add(glyphBytes);
+                glyphEnds[glyphsDone++] = bout.size();
             }
 
             if (glyphCount > 1) {
-                bout = new ByteArrayOutputStream();
-                out = new OutStream(bout);
                 glyphCount--;
 
                 fill1Index = 1;
@@ -1206,7 +1352,7 @@ System.err.println("BUTTON");
         protected void finishFont() throws IOException {
             out = writer.getOutStream();
 
-            int glyphCount = glyphByteArrays.size();
+            int glyphCount = glyphsDone;
 
             // Write first shape offset
             int offset = glyphCount * 2;
@@ -1214,14 +1360,20 @@ System.err.println("BUTTON");
 
             // Write subsequent shape offsets
             for (int i = 0; i < (glyphCount - 1); i++) {
-                offset += glyphByteArrays.get(i).length;
-                out.writeUI16(offset);
+                out.writeUI16(offset + glyphEnds[i]);
             }
 
             // Write shapes        
-            for (int i = 0; i < glyphCount; i++) {
-                out.write(glyphByteArrays.get(i));
-            }
+            writeGlyphs();
+        }
+
+        /**
+         * Write the captured glyph shapes to the tag and return the buffer
+         */
+        protected void writeGlyphs() throws IOException {
+            out.write(bout.getBuffer(), 0, bout.size());
+            writer.releaseBuffer(bout);
+            bout = null;
         }
 
         public void setFillStyle0(int styleIndex) throws IOException {
@@ -1529,7 +1681,8 @@ System.err.println("BUTTON");
             }
 
             this.out.flush();
-            byte[] bytes = writer.bytes.toByteArray();
+            SliceOutputStream buffer = writer.bytes;
+            byte[] bytes = buffer.getBuffer();
 
             int edgeOffset = edgeOffsetTarget - edgeOffsetBase - 4;
 
@@ -1543,7 +1696,7 @@ System.err.println("BUTTON");
             writer.out = null;
             writer.bytes = null;
 
-            writer.mTags.tag(writer.tagType, writer.longTag, bytes);
+            writer.writeTag(writer.tagType, writer.longTag, buffer);
         }
 
         protected void writeInitialStyles() throws IOException {
@@ -1674,25 +1827,21 @@ System.err.println("BUTTON");
         protected void finishFont() throws IOException {
             this.out = writer.getOutStream();
 
-            int glyphCount = glyphByteArrays.size();
+            int glyphCount = glyphsDone;
 
             boolean is32 = (flags & FONT2_32OFFSETS) != 0;
-            int offset = is32 ? ((glyphCount + 1) * 4) : ((glyphCount + 1) * 2);
+            int base = is32 ? ((glyphCount + 1) * 4) : ((glyphCount + 1) * 2);
             for (int i = 0; i <= glyphCount; i++) {
+                int offset = base + ((i > 0) ? glyphEnds[i - 1] : 0);
+
                 if (is32) {
                     this.out.writeUI32(offset);
                 } else {
                     this.out.writeUI16(offset);
                 }
-
-                if (i < glyphCount) {
-                    offset += glyphByteArrays.get(i).length;
-                }
             }
 
-            for (int i = 0; i < glyphCount; i++) {
-                this.out.write(glyphByteArrays.get(i));
-            }
+            writeGlyphs();
 
             boolean isWide = ((flags & FONT2_WIDECHARS) != 0) || (glyphCount > 256);
             for (int i = 0; i < glyphCount; i++) {
@@ -0,0 +1,265 @@
+package com.anotherbigidea.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+
+/**
+ * Inflates a zlib stream on a background thread, reading ahead of the
+ * consumer, so that decompression overlaps the parsing of the tags.
+ *
+ * The inflated data is passed through a fixed ring of chunks, which bounds
+ * the memory held to chunks * chunkSize.  An error on the background thread
+ * is thrown from the next read.  A stream that is truncated gives the data
+ * that could be inflated and then an EOFException, as InflaterInputStream
+ * does.
+ *
+ * close() stops the thread - it does not close the underlying stream.  A
+ * reader that stops without closing does not leave the thread blocked
+ * forever, since the thread gives up once it has waited IDLE_TIMEOUT (or the
+ * given idle timeout) for space in the ring.  A later read then gets the
+ * data inflated so far and an InterruptedIOException.  The Inflater goes
+ * back to the pool as soon as the thread ends.
+ */
+public class BackgroundInflaterInputStream extends InputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_CHUNKS = 4;
+
+    /** How long the thread waits for the consumer before giving up - millis */
+    public static final long IDLE_TIMEOUT = 60000;
+
+    protected static final Chunk END = new Chunk(0);
+
+    protected InputStream mIn;
+    protected Inflater mInflater = ZlibPool.getShared().getInflater();
+    protected BlockingQueue<Chunk> mFree;
+    protected BlockingQueue<Chunk> mFull;
+    protected Thread mThread;
+    protected volatile boolean mClosed;
+    protected long mIdleTimeout;
+
+    protected Chunk mChunk; //being read
+    protected int mPos;
+    protected IOException mError; //from the thread, once it has been reached
+
+    public BackgroundInflaterInputStream(InputStream in) {
+        this(in, DEFAULT_CHUNKS, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BackgroundInflaterInputStream(InputStream in, int chunks, int chunkSize) {
+        this(in, chunks, chunkSize, IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param idleTimeout how long the thread waits for the consumer - millis
+     */
+    public BackgroundInflaterInputStream(InputStream in, int chunks, int chunkSize, long idleTimeout) {
+        mIn = in;
+        mIdleTimeout = idleTimeout;
+        mFree = new ArrayBlockingQueue<Chunk>(chunks);
+        mFull = new ArrayBlockingQueue<Chunk>(chunks + 1); //room for END or an error
+
+        for (int i = 0; i < chunks; i++) {
+            mFree.add(new Chunk(chunkSize));
+        }
+
+        mThread = new Thread(new Runnable() {
+            public void run() {
+                inflateAll();
+            }
+        }, "BackgroundInflater");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+
+        return mChunk.mData[mPos++] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!nextChunk()) {
+            return -1;
+        }
+
+        int count = Math.min(len, mChunk.mLength - mPos);
+        System.arraycopy(mChunk.mData, mPos, b, off, count);
+        mPos += count;
+
+        return count;
+    }
+
+    public int available() throws IOException {
+        return (mChunk != null) ? mChunk.mLength - mPos : 0;
+    }
+
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+
+        mClosed = true;
+        mThread.interrupt();
+
+        //the thread releases the Inflater as it ends
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Make sure there is something left in the current chunk
+     *
+     * @return false at the end of the data
+     */
+    protected boolean nextChunk() throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (mError != null) {
+            throw mError;
+        }
+
+        while (mChunk == null || mPos >= mChunk.mLength) {
+            if (mChunk == END) {
+                return false;
+            }
+
+            if (mChunk != null) {
+                mFree.add(mChunk);
+            }
+
+            try {
+                mChunk = mFull.take();
+                mPos = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+
+            if (mChunk.mError != null) {
+                mError = mChunk.mError;
+                mChunk = END;
+                throw mError;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Run by the background thread.  Unless the stream has been closed the
+     * thread always ends by queueing END or an error, and it always releases
+     * the Inflater.
+     */
+    protected void inflateAll() {
+        byte[] input = new byte[8192];
+        Chunk chunk = null;
+
+        try {
+            while (!mInflater.finished()) {
+                if (chunk == null) {
+                    chunk = mFree.poll(mIdleTimeout, TimeUnit.MILLISECONDS);
+
+                    if (mClosed) {
+                        return;
+                    }
+
+                    if (chunk == null) {
+                        throw new InterruptedIOException("No read for " + mIdleTimeout + "ms - inflating stopped");
+                    }
+
+                    chunk.mLength = 0;
+                }
+
+                if (mInflater.needsInput()) {
+                    int count = mIn.read(input, 0, input.length);
+
+                    if (count < 0) {
+                        throw new EOFException("Unexpected end of ZLIB input stream");
+                    }
+
+                    mInflater.setInput(input, 0, count);
+                }
+
+                if (mInflater.needsDictionary()) {
+                    throw new IOException("Unsupported ZLIB preset dictionary");
+                }
+
+                chunk.mLength += mInflater.inflate(chunk.mData, chunk.mLength, chunk.mData.length - chunk.mLength);
+
+                if (chunk.mLength == chunk.mData.length) {
+                    mFull.put(chunk);
+                    chunk = null;
+                }
+            }
+
+            if (chunk != null && chunk.mLength > 0) {
+                mFull.put(chunk);
+            }
+
+            mFull.put(END);
+        } catch (InterruptedException e) {
+            //closed
+        } catch (Exception e) {
+            if (mClosed) {
+                return;
+            }
+
+            //pass on what was inflated before the error, then the error -
+            //every chunk may be queued but there is always room for one more
+            Chunk error = new Chunk(0);
+
+            if (e instanceof IOException) {
+                error.mError = (IOException) e;
+            } else if (e instanceof DataFormatException) {
+                error.mError = new ZipException(e.getMessage());
+            } else {
+                error.mError = new IOException(e.getMessage(), e);
+            }
+
+            try {
+                if (chunk != null && chunk.mLength > 0) {
+                    mFull.put(chunk);
+                }
+
+                mFull.put(error);
+            } catch (InterruptedException ie) {
+                //closed
+            }
+        } finally {
+            ZlibPool.getShared().release(mInflater);
+        }
+    }
+
+    /**
+     * A block of inflated data
+     */
+    protected static class Chunk {
+        protected byte[] mData;
+        protected int mLength;
+        protected IOException mError;
+
+        protected Chunk(int size) {
+            mData = new byte[size];
+        }
+    }
+}
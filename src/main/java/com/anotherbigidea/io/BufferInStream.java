@@ -0,0 +1,575 @@
+package com.anotherbigidea.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+
+/**
+ * Input Stream Wrapper backed by a ByteBuffer.
+ *
+ * Primitives are read with absolute indexing into the buffer and bit
+ * fields are read through a 64 bit window, so there is no per-byte call
+ * to an underlying stream.  The buffer may be a heap buffer or a memory
+ * mapped file (see {@link #map(String)}).
+ *
+ * The bytes between the buffer position and limit at construction time
+ * are the readable bytes.  The buffer itself is not modified.
+ */
+public class BufferInStream extends InStream {
+    /** The largest array that the VM is sure to allocate */
+    public static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    protected ByteBuffer buf;
+    protected int start;
+    protected int pos;
+    protected int limit;
+
+    // Bit window - the low bitCount bits of bitWindow are unread
+    protected long bitWindow;
+    protected int bitCount;
+
+    public BufferInStream(ByteBuffer buffer) {
+        setBuffer(buffer);
+    }
+
+    public BufferInStream(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    public BufferInStream(byte[] bytes, int offset, int length) {
+        this(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Map a file into memory and read from it
+     */
+    public static BufferInStream map(String filename) throws IOException {
+        return map(new File(filename));
+    }
+
+    /**
+     * Map a file into memory and read from it
+     */
+    public static BufferInStream map(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return new BufferInStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close(); //the mapping remains valid
+        }
+    }
+
+    /**
+     * Start reading from a different buffer and reset the byte count
+     */
+    public void setBuffer(ByteBuffer buffer) {
+        buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        start = buffer.position();
+        pos = start;
+        limit = buffer.limit();
+        bytesRead = 0L;
+        bitWindow = 0L;
+        bitCount = 0;
+    }
+
+    /**
+     * Start reading from a region of an array and reset the byte count.
+     * The current buffer is reused if it wraps the same array.
+     */
+    public void setBuffer(byte[] bytes, int offset, int length) {
+        if ((buf == null) || !buf.hasArray() || (buf.array() != bytes) || (buf.arrayOffset() != 0)) {
+            buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            buf.limit(buf.capacity());
+        }
+
+        start = offset;
+        pos = offset;
+        limit = offset + length;
+        bytesRead = 0L;
+        bitWindow = 0L;
+        bitCount = 0;
+    }
+
+    /**
+     * @return true if the bytes are held in an accessible array
+     * @see #array()
+     */
+    public boolean hasArray() {
+        return buf.hasArray();
+    }
+
+    /**
+     * @return the array holding the bytes - only if hasArray() is true
+     */
+    public byte[] array() {
+        return buf.array();
+    }
+
+    /**
+     * @return the index in array() of the next byte to be read
+     */
+    public int arrayPosition() {
+        synchBits();
+
+        return buf.arrayOffset() + pos;
+    }
+
+    /**
+     * Start reading compressed data - the remainder of the buffer is
+     * inflated into a heap buffer which is then read from.
+     *
+     * @throws ZipException if the data is corrupt
+     * @throws EOFException if the data ends before the end of the zlib stream
+     */
+    public void readCompressed() throws IOException {
+        synchBits();
+
+        byte[] input;
+        int offset;
+        int length = limit - pos;
+
+        if (buf.hasArray()) {
+            input = buf.array();
+            offset = buf.arrayOffset() + pos;
+        } else {
+            input = new byte[length];
+            offset = 0;
+            buf.position(pos);
+            buf.get(input);
+        }
+
+        Inflater inflater = ZlibPool.getShared().getInflater();
+        inflater.setInput(input, offset, length);
+
+        byte[] output = new byte[(int) Math.min(Math.max(length * 4L, 0x10000), MAX_ARRAY_SIZE)];
+        int size = 0;
+
+        try {
+            while (!inflater.finished()) {
+                if (size == output.length) {
+                    if (size == MAX_ARRAY_SIZE) {
+                        throw new IOException("Compressed data inflates to more than " + MAX_ARRAY_SIZE + " bytes");
+                    }
+
+                    byte[] bigger = new byte[(int) Math.min(output.length * 2L, MAX_ARRAY_SIZE)];
+                    System.arraycopy(output, 0, bigger, 0, size);
+                    output = bigger;
+                }
+
+                int count = inflater.inflate(output, size, output.length - size);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("Compressed data needs a preset dictionary");
+                    }
+
+                    if (inflater.needsInput()) {
+                        throw new EOFException("Unexpected end of ZLIB input stream");
+                    }
+                }
+
+                size += count;
+            }
+        } catch (DataFormatException e) {
+            String message = e.getMessage();
+            throw new ZipException((message != null) ? message : "Invalid ZLIB data format");
+        } finally {
+            ZlibPool.getShared().release(inflater);
+        }
+
+        long read = getBytesRead();
+        setBuffer(ByteBuffer.wrap(output, 0, size));
+        bytesRead = read;
+    }
+
+    /**
+     * @return a stream over the remainder of the buffer - this InStream must
+     *         not be read from once the stream has been used
+     */
+    public InputStream getInputStream() {
+        synchBits();
+
+        if (buf.hasArray()) {
+            return new ByteArrayInputStream(buf.array(), buf.arrayOffset() + pos, limit - pos);
+        }
+
+        final ByteBuffer remainder = buf.duplicate();
+        remainder.limit(limit).position(pos);
+
+        return new InputStream() {
+            public int read() {
+                return remainder.hasRemaining() ? (remainder.get() & 0xff) : -1;
+            }
+
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+
+                if (!remainder.hasRemaining()) {
+                    return -1;
+                }
+
+                len = Math.min(len, remainder.remaining());
+                remainder.get(b, off, len);
+
+                return len;
+            }
+
+            public int available() {
+                return remainder.remaining();
+            }
+        };
+    }
+
+    /**
+     * Transfer the remaining bytes to an output stream
+     *
+     * @param length ignored - all remaining bytes are transferred
+     */
+    public void transfer(OutputStream out, int length) throws IOException {
+        out.write(read());
+    }
+
+    /**
+     * Read a string from the input stream
+     */
+    public byte[] readStringBytes() throws IOException {
+        int end = findTerminator();
+        byte[] string = new byte[end - pos];
+
+        buf.position(pos);
+        buf.get(string);
+        pos = end + 1;
+
+        return string;
+    }
+
+    /**
+     * Read a null terminated string, decoding it in place when the buffer
+     * has an array
+     */
+    public String readString(String encoding) throws IOException {
+        if (!buf.hasArray()) {
+            return super.readString(encoding);
+        }
+
+        int end = findTerminator();
+        String string = getDecoder(encoding).decode(buf.array(), buf.arrayOffset() + pos, end - pos);
+        pos = end + 1;
+
+        return string;
+    }
+
+    /**
+     * Read a string, decoding it in place through a cache
+     *
+     * @param cache may be null
+     */
+    public String readString(String encoding, StringCache cache) throws IOException {
+        if ((cache == null) || !buf.hasArray()) {
+            return super.readString(encoding, cache);
+        }
+
+        int end = findTerminator();
+        String string = cache.decode(buf.array(), buf.arrayOffset() + pos, end - pos, encoding);
+        pos = end + 1;
+
+        return string;
+    }
+
+    /**
+     * Copy a string into mStringBytes - for buffers without an array
+     */
+    protected int scanString() throws IOException {
+        int end = findTerminator();
+        int length = end - pos;
+
+        if ((mStringBytes == null) || (mStringBytes.length < length)) {
+            mStringBytes = new byte[Math.max(length, 256)];
+        }
+
+        buf.position(pos);
+        buf.get(mStringBytes, 0, length);
+        pos = end + 1;
+
+        return length;
+    }
+
+    /**
+     * Find the null at the end of the string at the current position
+     *
+     * @return the position of the null
+     */
+    protected int findTerminator() throws IOException {
+        synchBits();
+
+        if (buf.hasArray()) {
+            byte[] array = buf.array();
+            int base = buf.arrayOffset();
+
+            for (int i = pos; i < limit; i++) {
+                if (array[base + i] == 0) {
+                    return i;
+                }
+            }
+        } else {
+            for (int i = pos; i < limit; i++) {
+                if (buf.get(i) == 0) {
+                    return i;
+                }
+            }
+        }
+
+        pos = limit;
+        throw new IOException("Unterminated string - reached end of input before null char");
+    }
+
+    /**
+     * Read all remaining bytes from the stream
+     */
+    public byte[] read() throws IOException {
+        synchBits();
+
+        return read(limit - pos);
+    }
+
+    /**
+     * Read bytes from the input stream - throw up if all bytes are not available
+     */
+    public byte[] read(int length) throws IOException {
+        byte[] data = new byte[length];
+
+        if (length > 0) {
+            synchBits();
+
+            if (length > limit - pos) {
+                pos = limit;
+                throw new EOFException("Unexpected end of input while reading a specified number of bytes");
+            }
+
+            buf.position(pos);
+            buf.get(data);
+            pos += length;
+        }
+
+        return data;
+    }
+
+    /**
+     * Read bytes into a region of the given array - throw up if all bytes are
+     * not available
+     */
+    public void readFully(byte[] bytes, int offset, int length) throws IOException {
+        if (length > 0) {
+            synchBits();
+
+            if (length > limit - pos) {
+                pos = limit;
+                throw new EOFException("Unexpected end of input while reading a specified number of bytes");
+            }
+
+            buf.position(pos);
+            buf.get(bytes, offset, length);
+            pos += length;
+        }
+    }
+
+    /**
+     * Read as many bytes as possible (up to the limit of the passed-in array)
+     * @return the number of bytes read
+     */
+    public int read(byte[] bytes) throws IOException {
+        synchBits();
+
+        int length = Math.min(bytes.length, limit - pos);
+
+        if (length > 0) {
+            buf.position(pos);
+            buf.get(bytes, 0, length);
+            pos += length;
+        }
+
+        return length;
+    }
+
+    /**
+     * Reset the bit buffer - any whole bytes held in the bit window are
+     * given back to the buffer.
+     */
+    public void synchBits() {
+        pos -= bitCount >>> 3;
+        bitWindow = 0L;
+        bitCount = 0;
+    }
+
+    public long getBytesRead() {
+        return bytesRead + (pos - start) - (bitCount >>> 3);
+    }
+
+    public void setBytesRead(long read) {
+        bytesRead = read - ((pos - start) - (bitCount >>> 3));
+    }
+
+    /**
+     * Skip a number of bytes from the input stream
+     */
+    public void skipBytes(long length) throws IOException {
+        synchBits();
+
+        if (length > limit - pos) {
+            pos = limit;
+            throw new EOFException("Unexpected end of input");
+        }
+
+        pos += (int) length;
+    }
+
+    /**
+     * Fill the bit window with as many whole bytes as will fit
+     */
+    protected void fillBits(int numBits) throws IOException {
+        int count = (64 - bitCount) >>> 3;
+
+        if (limit - pos >= 8) {
+            long word = Long.reverseBytes(buf.getLong(pos));
+
+            if (count == 8) {
+                bitWindow = word;
+            } else {
+                bitWindow = (bitWindow << (count << 3)) | (word >>> (64 - (count << 3)));
+            }
+
+            pos += count;
+            bitCount += count << 3;
+        } else {
+            while (count-- > 0 && pos < limit) {
+                bitWindow = (bitWindow << 8) | (buf.get(pos++) & 0xff);
+                bitCount += 8;
+            }
+        }
+
+        if (bitCount < numBits) {
+            throw new EOFException("Unexpected end of input");
+        }
+    }
+
+    /**
+     * Read an unsigned value from the given number of bits
+     */
+    public long readUBits(int numBits) throws IOException {
+        if (numBits == 0) {
+            return 0;
+        }
+
+        if (bitCount < numBits) {
+            fillBits(numBits);
+        }
+
+        bitCount -= numBits;
+
+        long value = bitWindow >>> bitCount;
+
+        return (numBits == 64) ? value : (value & ((1L << numBits) - 1));
+    }
+
+    /**
+     * Ensure that the given number of bytes are available
+     */
+    protected void require(int length) throws IOException {
+        synchBits();
+
+        if (limit - pos < length) {
+            pos = limit;
+            throw new EOFException("Unexpected end of input");
+        }
+    }
+
+    /**
+     * Read an unsigned 8 bit value
+     */
+    public int readUI8() throws IOException {
+        require(1);
+
+        return buf.get(pos++) & 0xff;
+    }
+
+    /**
+     * Read an unsigned 16 bit value
+     */
+    public int readUI16() throws IOException {
+        require(2);
+
+        int ui16 = buf.getShort(pos) & 0xffff;
+        pos += 2;
+
+        return ui16;
+    }
+
+    /**
+     * Read a signed 16 bit value
+     */
+    public short readSI16() throws IOException {
+        require(2);
+
+        short si16 = buf.getShort(pos);
+        pos += 2;
+
+        return si16;
+    }
+
+    /**
+     * Read an unsigned 32 bit value
+     */
+    public long readUI32() throws IOException {
+        require(4);
+
+        long ui32 = buf.getInt(pos) & 0xffffffffL;
+        pos += 4;
+
+        return ui32;
+    }
+
+    /**
+     * Read a 32 bit signed number
+     */
+    public int readSI32() throws IOException {
+        require(4);
+
+        int si32 = buf.getInt(pos);
+        pos += 4;
+
+        return si32;
+    }
+
+    /**
+     * Read a 64 bit floating point number - stored as two little-endian
+     * 32 bit words with the high word first
+     */
+    public double readDouble() throws IOException {
+        require(8);
+
+        long high = buf.getInt(pos);
+        long low = buf.getInt(pos + 4) & 0xffffffffL;
+        pos += 8;
+
+        return Double.longBitsToDouble((high << 32) | low);
+    }
+
+    /** */
+    public int available() throws IOException {
+        return limit - pos + (bitCount >>> 3);
+    }
+}
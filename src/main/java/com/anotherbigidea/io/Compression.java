@@ -0,0 +1,30 @@
+package com.anotherbigidea.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * Compresses and decompresses the body of a CWS movie - the zlib stream
+ * that follows the first 8 bytes of the file.
+ *
+ * SWFWriter and SWFReader use an implementation that is set on them in
+ * place of the built-in Deflater and Inflater streams.
+ *
+ * @see DeflateCompression
+ * @see OptimalCompression
+ */
+public interface Compression {
+    /**
+     * @return a stream that compresses into out - closing it finishes the
+     *         compressed data and closes out
+     */
+    public OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * @return a stream that decompresses from in - closing it releases any
+     *         resources that it holds but does not close in
+     */
+    public InputStream decompress(InputStream in) throws IOException;
+}
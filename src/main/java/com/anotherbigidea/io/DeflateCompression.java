@@ -0,0 +1,111 @@
+package com.anotherbigidea.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+
+/**
+ * zlib compression with a given level and strategy.
+ *
+ * The Deflaters and Inflaters come from a ZlibPool - the shared pool unless
+ * another is set.  The streams from compress(..) and decompress(..) return
+ * theirs to the pool when they are closed, so a process that writes many
+ * movies does not allocate and release native memory for each one.
+ *
+ * With more than one thread compression goes through a
+ * ParallelDeflaterOutputStream instead.
+ *
+ * An instance may be shared between threads.
+ */
+public class DeflateCompression implements Compression {
+    protected int mLevel;
+    protected int mStrategy;
+    protected int mBufferSize = ZlibPool.DEFAULT_BUFFER_SIZE;
+    protected int mThreads = 1;
+    protected ZlibPool mPool = ZlibPool.getShared();
+
+    /**
+     * Deflater.BEST_COMPRESSION - as SWFWriter
+     */
+    public DeflateCompression() {
+        this(Deflater.BEST_COMPRESSION);
+    }
+
+    /**
+     * @param level a Deflater level
+     */
+    public DeflateCompression(int level) {
+        this(level, Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     * @param level a Deflater level
+     * @param strategy a Deflater strategy
+     */
+    public DeflateCompression(int level, int strategy) {
+        mLevel = level;
+        mStrategy = strategy;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public int getStrategy() {
+        return mStrategy;
+    }
+
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    /**
+     * Set the size of the buffers between the streams and the Deflater or
+     * Inflater - this does not change the compressed data.
+     */
+    public void setBufferSize(int size) {
+        mBufferSize = size;
+    }
+
+    public int getThreads() {
+        return mThreads;
+    }
+
+    /**
+     * @param threads more than one to compress blocks in parallel
+     * @see ParallelDeflaterOutputStream
+     */
+    public void setThreads(int threads) {
+        mThreads = threads;
+    }
+
+    public ZlibPool getPool() {
+        return mPool;
+    }
+
+    public void setPool(ZlibPool pool) {
+        mPool = pool;
+    }
+
+    /** Compression interface */
+    public OutputStream compress(OutputStream out) throws IOException {
+        if (mThreads > 1) {
+            ParallelDeflaterOutputStream parallel = new ParallelDeflaterOutputStream(out, mLevel, mThreads);
+            parallel.setStrategy(mStrategy);
+
+            return parallel;
+        }
+
+        return mPool.deflate(out, mLevel, mStrategy, mBufferSize);
+    }
+
+    /**
+     * Compression interface - the stream must not be read once it has been
+     * closed
+     */
+    public InputStream decompress(InputStream in) throws IOException {
+        return mPool.inflate(in, mBufferSize);
+    }
+}
@@ -41,9 +41,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.zip.InflaterInputStream;
+import java.util.Arrays;
 
 
 /**
@@ -54,9 +52,14 @@ public class InStream {
     protected long bytesRead = 0L;
     private static final int MAX_TRANSFER_BUFFER_SIZE = 10000;
 
-    // Bit buffer..
+    // Bit buffer - the low bitPos bits are unread
     protected int bitBuf;
     protected int bitPos;
+    private byte[] bitBytes = new byte[8];
+
+    // reused by the string readers
+    protected byte[] mStringBytes;
+    private byte[] mSkipBytes;
 
     public InStream(InputStream in) {
         this.in = in;
@@ -68,12 +71,27 @@ public class InStream {
         this(new ByteArrayInputStream(bytes));
     }
 
+    protected InStream() {
+    }
+
     /**
      * Start reading compressed data - all further input is
      * assumed to come from a zip compressed stream.
+     *
+     * The Inflater is pooled - closing getInputStream() afterwards returns
+     * it to the pool without closing the underlying stream.
+     */
+    public void readCompressed() throws IOException {
+        in = ZlibPool.getShared().inflate(in);
+    }
+
+    /**
+     * @return the underlying stream, positioned after the bytes read so far
      */
-    public void readCompressed() {
-        in = new InflaterInputStream(in);
+    public InputStream getInputStream() {
+        synchBits();
+
+        return in;
     }
 
     /**
@@ -97,42 +115,73 @@ public class InStream {
      * Read a string from the input stream
      */
     public byte[] readStringBytes() throws IOException {
+        int length = scanString();
+
+        return Arrays.copyOf(mStringBytes, length);
+    }
+
+    /**
+     * Read a null terminated string into mStringBytes
+     *
+     * @return the length, not including the terminator
+     */
+    protected int scanString() throws IOException {
         synchBits();
 
-        List<Byte> chars = new ArrayList<Byte>();
-        byte[] aChar = new byte[1];
-        int num = 0;
+        if (mStringBytes == null) {
+            mStringBytes = new byte[256];
+        }
+
+        int length = 0;
+        int b;
 
-        while ((num = in.read(aChar)) == 1) {
+        while ((b = in.read()) >= 0) {
             bytesRead++;
 
-            if (aChar[0] == 0) { //end of string
-            
-                byte[] string = new byte[chars.size()];
+            if (b == 0) { //end of string
+                return length;
+            }
 
-                int i = 0;
-                for (Byte b : chars) {
-                    string[i++] = b.byteValue();
-                }
-//System.err.println("push string\n" + StringUtil.getDump(string));
-                return string;
+            if (length == mStringBytes.length) {
+                mStringBytes = Arrays.copyOf(mStringBytes, length * 2);
             }
 
-            chars.add(new Byte(aChar[0]));
+            mStringBytes[length++] = (byte) b;
         }
 
         throw new IOException("Unterminated string - reached end of input before null char");
     }
 
+    /**
+     * Get the decoder for the encoding.  Decoders belong to a thread so one
+     * is not kept here - a stream may be read by more than one thread, as
+     * when a pooled parser is reused.
+     */
+    protected StringDecoder getDecoder(String encoding) throws IOException {
+        return StringDecoder.forEncoding(encoding);
+    }
+
     /**
      * Read a null terminated string using the default character encoding
      */
     public String readString(String encoding) throws IOException {
-        byte[] bytes = readStringBytes();
-//System.err.println("Windows-31J: " + new String(bytes, "Windows-31J"));
-//System.err.println("UTF-8: " + new String(bytes, "UTF-8"));
-//System.err.println(encoding + ": " + new String(bytes, encoding));
-        return new String(bytes, encoding);
+        int length = scanString();
+
+        return getDecoder(encoding).decode(mStringBytes, 0, length);
+    }
+
+    /**
+     * Read a string from the input stream, decoding it through a cache
+     *
+     * @param cache may be null
+     */
+    public String readString(String encoding, StringCache cache) throws IOException {
+        if (cache == null) {
+            return readString(encoding);
+        }
+
+        int length = scanString();
+        return cache.decode(mStringBytes, 0, length, encoding);
     }
 
     /**
@@ -174,6 +223,26 @@ public class InStream {
         return data;
     }
 
+    /**
+     * Read bytes into a region of the given array - throw up if all bytes are
+     * not available
+     */
+    public void readFully(byte[] bytes, int offset, int length) throws IOException {
+        int read = 0;
+
+        while (read < length) {
+            int count = in.read(bytes, offset + read, length - read);
+            if (count < 0) {
+                bytesRead += read;
+                throw new EOFException("Unexpected end of input while reading a specified number of bytes");
+            }
+
+            read += count;
+        }
+
+        bytesRead += read;
+    }
+
     /**
      * Read as many bytes as possible (up to the limit of the passed-in array)
      * @return the number of bytes read
@@ -221,61 +290,77 @@ public class InStream {
      * Skip a number of bytes from the input stream
      */
     public void skipBytes(long length) throws IOException {
+        if (length <= 0) {
+            return;
+        }
+
+        //read in blocks - InputStream.skip(..) may go past the end of a file
+        if (mSkipBytes == null) {
+            mSkipBytes = new byte[4096];
+        }
+
         long skipped = 0;
 
         while (skipped < length) {
-            int val = in.read();
+            int read = in.read(mSkipBytes, 0, (int) Math.min(length - skipped, mSkipBytes.length));
 
-            if (val < 0) {
+            if (read < 0) {
                 throw new EOFException("Unexpected end of input");
             }
 
-            skipped++;
+            skipped += read;
         }
 
         bytesRead += length;
     }
 
     /**
-     * Read an unsigned value from the given number of bits
+     * Read an unsigned value from the given number of bits.  The bytes that
+     * are needed are read together and shifted into a 64 bit accumulator.
      */
     public long readUBits(int numBits) throws IOException {
         if (numBits == 0) {
             return 0;
         }
 
-        int bitsLeft = numBits;
-        long result = 0;
+        if (numBits <= bitPos) { //all bits are in the buffer
+            bitPos -= numBits;
 
-        if (bitPos == 0) //no value in the buffer - read a byte
-         {
-            bitBuf = in.read();
-            bitPos = 8;
+            long result = bitBuf >>> bitPos;
+            bitBuf &= (1 << bitPos) - 1;
 
-            bytesRead++;
+            return result;
         }
 
-        while (true) {
-            int shift = bitsLeft - bitPos;
-            if (shift > 0) {
-                // Consume the entire buffer
-                result |= (bitBuf << shift);
-                bitsLeft -= bitPos;
-
-                // Get the next byte from the input stream
-                bitBuf = in.read();
-                bitPos = 8;
+        if (numBits > 56) { //leave room for the buffered bits
+            long high = readUBits(numBits - 32);
+            return (high << 32) | readUBits(32);
+        }
 
-                bytesRead++;
-            } else {
-                // Consume a portion of the buffer
-                result |= (bitBuf >> -shift);
-                bitPos -= bitsLeft;
-                bitBuf &= (0xff >> (8 - bitPos)); // mask off the consumed bits
+        int count = (numBits - bitPos + 7) >>> 3;
+        int read = 0;
 
-                return result;
+        while (read < count) {
+            int n = in.read(bitBytes, read, count - read);
+            if (n < 0) {
+                bytesRead += read;
+                throw new EOFException("Unexpected end of input");
             }
+
+            read += n;
+        }
+
+        bytesRead += count;
+
+        long bits = bitBuf;
+        for (int i = 0; i < count; i++) {
+            bits = (bits << 8) | (bitBytes[i] & 0xff);
         }
+
+        bitPos += (count << 3) - numBits;
+        bitBuf = (int) (bits & ((1 << bitPos) - 1));
+
+        return bits >>> bitPos;
     }
 
     /**
@@ -0,0 +1,639 @@
+package com.anotherbigidea.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Random access into a zlib stream through inflate checkpoints, after the
+ * zran.c example in the zlib distribution.
+ *
+ * The stream is inflated once by a decoder that can stop between deflate
+ * blocks.  Roughly every span bytes of output a checkpoint is taken at a
+ * block boundary: the input bit position, the output position and the 32K
+ * of output before it (the window).  To read from an offset an Inflater is
+ * primed with the window of the nearest checkpoint before it as its
+ * dictionary and the input is resumed from the checkpoint bit.
+ *
+ * Inflater has no equivalent of inflatePrime() for starting mid-byte, so
+ * empty deflate blocks are put in front of the input instead - enough of
+ * them to keep the rest of the input on its original byte alignment.
+ *
+ * Input buffers are read with absolute indexing from their position, which
+ * must be the start of the zlib header.  They are not modified.
+ */
+public class InflateIndex {
+    public static final int DEFAULT_SPAN = 1 << 20;
+
+    protected static final int WINDOW_SIZE = 32768;
+
+    protected int mSpan;
+
+    // checkpoints - output offset, input bit offset and preceding window
+    protected int mCount;
+    protected long[] mOut = new long[16];
+    protected long[] mBits = new long[16];
+    protected byte[][] mWindows = new byte[16][];
+
+    // decoder state
+    protected ByteBuffer mInput;
+    protected int mStart;
+    protected int mInPos;
+    protected long mBitBuf;
+    protected int mBitCount;
+    protected byte[] mOutput;
+    protected int mOutPos;
+
+    /**
+     * @param span the minimum distance between checkpoints, in bytes of output
+     */
+    public InflateIndex(int span) {
+        mSpan = span;
+    }
+
+    public int getSpan() {
+        return mSpan;
+    }
+
+    /**
+     * @return the number of checkpoints
+     */
+    public int getCheckpointCount() {
+        return mCount;
+    }
+
+    /**
+     * Inflate a whole zlib stream and take checkpoints.  Any previous
+     * checkpoints are discarded.
+     *
+     * @param sizeHint the expected size of the output
+     * @return the output, from position zero to the limit
+     */
+    public ByteBuffer inflate(ByteBuffer input, int sizeHint) throws IOException {
+        mInput = input;
+        mStart = input.position();
+        mInPos = mStart;
+        mBitBuf = 0L;
+        mBitCount = 0;
+        mOutput = new byte[(int) Math.max(0x10000, Math.min(sizeHint, input.remaining() * 16L))];
+        mOutPos = 0;
+        mCount = 0;
+
+        int cmf = byteAt(mInPos++);
+        int flg = byteAt(mInPos++);
+
+        if ((cmf & 0x0f) != 8 || ((cmf << 8) | flg) % 31 != 0 || (flg & 0x20) != 0) {
+            throw new IOException("Not a zlib stream without a preset dictionary");
+        }
+
+        long lastCheckpoint = 0;
+        addCheckpoint(0, bitPosition(), new byte[0]);
+
+        try {
+            boolean last;
+            do {
+                if (mOutPos - lastCheckpoint >= mSpan) {
+                    int from = Math.max(0, mOutPos - WINDOW_SIZE);
+                    addCheckpoint(mOutPos, bitPosition(), Arrays.copyOfRange(mOutput, from, mOutPos));
+                    lastCheckpoint = mOutPos;
+                }
+
+                last = bits(1) != 0;
+
+                switch (bits(2)) {
+                case 0:
+                    stored();
+                    break;
+                case 1:
+                    codes(FIXED_LENGTHS, FIXED_DISTANCES);
+                    break;
+                case 2:
+                    dynamic();
+                    break;
+                default:
+                    throw new IOException("Invalid deflate block type");
+                }
+            } while (!last);
+
+            return ByteBuffer.wrap(mOutput, 0, mOutPos);
+        } finally {
+            mInput = null;
+            mOutput = null;
+        }
+    }
+
+    /**
+     * Read bytes from the output of a zlib stream that has been indexed
+     *
+     * @param input the same stream that was passed to inflate(..)
+     * @param offset the offset in the output
+     */
+    public void read(ByteBuffer input, long offset, byte[] bytes, int start, int length) throws IOException {
+        int i = mCount - 1;
+        while (i > 0 && mOut[i] > offset) {
+            i--;
+        }
+
+        int pos = input.position() + (int) (mBits[i] >>> 3);
+        int shift = (int) (mBits[i] & 7);
+        int limit = input.limit();
+
+        Inflater inflater = ZlibPool.getShared().getInflater(true);
+
+        try {
+            if (mWindows[i].length > 0) {
+                inflater.setDictionary(mWindows[i]);
+            }
+
+            if (shift > 0) {
+                if (pos >= limit) {
+                    throw new EOFException("Unexpected end of compressed input");
+                }
+
+                inflater.setInput(align(shift, input.get(pos++) & 0xff));
+            }
+
+            ByteBuffer source = input.duplicate();
+            byte[] chunk = new byte[0x4000];
+            byte[] skip = new byte[0x4000];
+            long toSkip = offset - mOut[i];
+            int done = 0;
+
+            while (done < length) {
+                if (inflater.needsInput()) {
+                    int count = Math.min(chunk.length, limit - pos);
+                    if (count <= 0) {
+                        throw new EOFException("Unexpected end of compressed input");
+                    }
+
+                    source.limit(pos + count);
+                    source.position(pos);
+                    source.get(chunk, 0, count);
+
+                    pos += count;
+                    inflater.setInput(chunk, 0, count);
+                }
+
+                int count;
+                if (toSkip > 0) {
+                    count = inflater.inflate(skip, 0, (int) Math.min(skip.length, toSkip));
+                    toSkip -= count;
+                } else {
+                    count = inflater.inflate(bytes, start + done, length - done);
+                    done += count;
+                }
+
+                if (count == 0 && inflater.finished()) {
+                    throw new EOFException("Unexpected end of compressed data");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            ZlibPool.getShared().release(inflater);
+        }
+    }
+
+    /**
+     * Make the input for resuming in the middle of a byte: empty blocks
+     * that take up (shift + 8n) bits, followed by the unread bits of the byte.
+     * An empty fixed block is 10 bits and the empty dynamic block below is
+     * 93 bits, so a combination of them fits any shift.
+     */
+    protected static byte[] align(int shift, int partial) {
+        byte[] bytes = new byte[32];
+        int count = 0;
+
+        if ((shift & 1) != 0) {
+            count = putBits(bytes, count, 0, 1); //not final
+            count = putBits(bytes, count, 2, 2); //dynamic
+            count = putBits(bytes, count, 0, 5); //257 length codes
+            count = putBits(bytes, count, 0, 5); //1 distance code
+            count = putBits(bytes, count, 15, 4); //19 code length codes
+
+            //code length code of symbols 1 (code 0) and 18 (code 1)
+            for (int i = 0; i < CODE_LENGTH_ORDER.length; i++) {
+                int symbol = CODE_LENGTH_ORDER[i];
+                count = putBits(bytes, count, (symbol == 1 || symbol == 18) ? 1 : 0, 3);
+            }
+
+            //256 zero lengths, then length 1 for end-of-block and the distance
+            count = putBits(bytes, count, 1, 1);
+            count = putBits(bytes, count, 138 - 11, 7);
+            count = putBits(bytes, count, 1, 1);
+            count = putBits(bytes, count, 118 - 11, 7);
+            count = putBits(bytes, count, 0, 1);
+            count = putBits(bytes, count, 0, 1);
+
+            count = putBits(bytes, count, 0, 1); //end-of-block
+        }
+
+        while (((count - shift) & 7) != 0) {
+            count = putBits(bytes, count, 0, 1); //not final
+            count = putBits(bytes, count, 1, 2); //fixed
+            count = putBits(bytes, count, 0, 7); //end-of-block
+        }
+
+        count = putBits(bytes, count, partial >>> shift, 8 - shift);
+
+        return Arrays.copyOf(bytes, count >>> 3);
+    }
+
+    /**
+     * Write bits least significant first
+     *
+     * @return the new bit count
+     */
+    protected static int putBits(byte[] bytes, int count, int value, int numBits) {
+        for (int i = 0; i < numBits; i++, count++) {
+            if (((value >>> i) & 1) != 0) {
+                bytes[count >>> 3] |= 1 << (count & 7);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Write the checkpoints - windows are compressed
+     */
+    public void save(DataOutput out) throws IOException {
+        out.writeInt(mSpan);
+        out.writeInt(mCount);
+
+        Deflater deflater = ZlibPool.getShared().getDeflater(Deflater.BEST_COMPRESSION);
+        byte[] packed = new byte[WINDOW_SIZE + 1024];
+
+        try {
+            for (int i = 0; i < mCount; i++) {
+                deflater.reset();
+                deflater.setInput(mWindows[i]);
+                deflater.finish();
+                int size = deflater.deflate(packed);
+
+                out.writeLong(mOut[i]);
+                out.writeLong(mBits[i]);
+                out.writeInt(mWindows[i].length);
+                out.writeInt(size);
+                out.write(packed, 0, size);
+            }
+        } finally {
+            ZlibPool.getShared().release(deflater);
+        }
+    }
+
+    /**
+     * Read checkpoints written by save(..)
+     */
+    public static InflateIndex load(DataInput in) throws IOException {
+        InflateIndex index = new InflateIndex(in.readInt());
+        int count = in.readInt();
+
+        Inflater inflater = ZlibPool.getShared().getInflater();
+        byte[] packed = new byte[WINDOW_SIZE + 1024];
+
+        try {
+            for (int i = 0; i < count; i++) {
+                long out = in.readLong();
+                long bits = in.readLong();
+                byte[] window = new byte[in.readInt()];
+                int size = in.readInt();
+
+                if (window.length > WINDOW_SIZE || size > packed.length) {
+                    throw new IOException("Invalid inflate checkpoint");
+                }
+
+                in.readFully(packed, 0, size);
+
+                inflater.reset();
+                inflater.setInput(packed, 0, size);
+                if (inflater.inflate(window) != window.length) {
+                    throw new IOException("Invalid inflate checkpoint");
+                }
+
+                index.addCheckpoint(out, bits, window);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            ZlibPool.getShared().release(inflater);
+        }
+
+        return index;
+    }
+
+    protected void addCheckpoint(long out, long bits, byte[] window) {
+        if (mCount == mOut.length) {
+            mOut = Arrays.copyOf(mOut, mCount * 2);
+            mBits = Arrays.copyOf(mBits, mCount * 2);
+            mWindows = Arrays.copyOf(mWindows, mCount * 2);
+        }
+
+        mOut[mCount] = out;
+        mBits[mCount] = bits;
+        mWindows[mCount] = window;
+        mCount++;
+    }
+
+    //--------------------------------------------------------------------------
+    // Decoder - after puff.c in the zlib distribution
+
+    protected static final int MAX_BITS = 15;
+    protected static final int FAST_BITS = 9;
+
+    protected static final int[] LENGTH_BASE = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+        35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+    protected static final int[] LENGTH_EXTRA = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+        3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+    protected static final int[] DISTANCE_BASE = {
+        1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+        257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+        8193, 12289, 16385, 24577 };
+    protected static final int[] DISTANCE_EXTRA = {
+        0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+        7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+    protected static final int[] CODE_LENGTH_ORDER = {
+        16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+    protected static final Huffman FIXED_LENGTHS;
+    protected static final Huffman FIXED_DISTANCES;
+
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+
+        try {
+            FIXED_LENGTHS = new Huffman(lengths, 288);
+
+            Arrays.fill(lengths, 0, 30, 5);
+            FIXED_DISTANCES = new Huffman(lengths, 30);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Canonical Huffman code - codes up to FAST_BITS long are decoded by
+     * table lookup, longer ones bit by bit
+     */
+    protected static class Huffman {
+        protected short[] count = new short[MAX_BITS + 1];
+        protected short[] symbol;
+        protected int[] fast = new int[1 << FAST_BITS]; //(length << 16) | symbol
+
+        protected Huffman(int[] lengths, int n) throws IOException {
+            symbol = new short[n];
+
+            for (int i = 0; i < n; i++) {
+                count[lengths[i]]++;
+            }
+
+            int left = 1;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                left = (left << 1) - count[len];
+                if (left < 0) {
+                    throw new IOException("Over-subscribed Huffman code");
+                }
+            }
+
+            int[] offsets = new int[MAX_BITS + 1];
+            for (int len = 1; len < MAX_BITS; len++) {
+                offsets[len + 1] = offsets[len] + count[len];
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (lengths[i] != 0) {
+                    symbol[offsets[lengths[i]]++] = (short) i;
+                }
+            }
+
+            //fast table - canonical codes are assigned in symbol order
+            int code = 0;
+            int index = 0;
+            for (int len = 1; len <= FAST_BITS; len++) {
+                for (int k = 0; k < count[len]; k++) {
+                    int reversed = Integer.reverse(code + k) >>> (32 - len);
+                    for (int j = reversed; j < fast.length; j += 1 << len) {
+                        fast[j] = (len << 16) | symbol[index + k];
+                    }
+                }
+
+                index += count[len];
+                code = (code + count[len]) << 1;
+            }
+        }
+    }
+
+    protected int byteAt(int pos) throws IOException {
+        if (pos >= mInput.limit()) {
+            throw new EOFException("Unexpected end of compressed input");
+        }
+
+        return mInput.get(pos) & 0xff;
+    }
+
+    /**
+     * @return the number of input bits consumed since the start
+     */
+    protected long bitPosition() {
+        return ((long) (mInPos - mStart) << 3) - mBitCount;
+    }
+
+    protected int bits(int need) throws IOException {
+        while (mBitCount < need) {
+            mBitBuf |= (long) byteAt(mInPos++) << mBitCount;
+            mBitCount += 8;
+        }
+
+        int value = (int) (mBitBuf & ((1L << need) - 1));
+        mBitBuf >>>= need;
+        mBitCount -= need;
+
+        return value;
+    }
+
+    protected int decode(Huffman h) throws IOException {
+        while (mBitCount < FAST_BITS && mInPos < mInput.limit()) {
+            mBitBuf |= (long) (mInput.get(mInPos++) & 0xff) << mBitCount;
+            mBitCount += 8;
+        }
+
+        int entry = h.fast[(int) (mBitBuf & ((1 << FAST_BITS) - 1))];
+        int len = entry >>> 16;
+
+        if (entry != 0 && len <= mBitCount) {
+            mBitBuf >>>= len;
+            mBitCount -= len;
+            return entry & 0xffff;
+        }
+
+        //slow path - one bit at a time
+        int code = 0;
+        int first = 0;
+        int index = 0;
+        for (len = 1; len <= MAX_BITS; len++) {
+            code |= bits(1);
+            int count = h.count[len];
+            if (code - count < first) {
+                return h.symbol[index + (code - first)];
+            }
+
+            index += count;
+            first += count;
+            first <<= 1;
+            code <<= 1;
+        }
+
+        throw new IOException("Invalid Huffman code");
+    }
+
+    protected void ensureOutput(int length) {
+        if (mOutPos + length > mOutput.length) {
+            mOutput = Arrays.copyOf(mOutput, Math.max(mOutput.length * 2, mOutPos + length));
+        }
+    }
+
+    protected void stored() throws IOException {
+        //discard the rest of the current byte and give back whole bytes
+        mInPos -= mBitCount >>> 3;
+        mBitBuf = 0L;
+        mBitCount = 0;
+
+        int len = byteAt(mInPos) | (byteAt(mInPos + 1) << 8);
+        int nlen = byteAt(mInPos + 2) | (byteAt(mInPos + 3) << 8);
+        mInPos += 4;
+
+        if (len != (~nlen & 0xffff)) {
+            throw new IOException("Invalid stored block length");
+        }
+
+        if (mInPos + len > mInput.limit()) {
+            throw new EOFException("Unexpected end of compressed input");
+        }
+
+        ensureOutput(len);
+
+        ByteBuffer input = mInput.duplicate();
+        input.position(mInPos);
+        input.get(mOutput, mOutPos, len);
+
+        mInPos += len;
+        mOutPos += len;
+    }
+
+    protected void codes(Huffman lengths, Huffman distances) throws IOException {
+        while (true) {
+            int symbol = decode(lengths);
+
+            if (symbol < 256) {
+                ensureOutput(1);
+                mOutput[mOutPos++] = (byte) symbol;
+            } else if (symbol == 256) {
+                return;
+            } else {
+                symbol -= 257;
+                if (symbol >= 29) {
+                    throw new IOException("Invalid length code");
+                }
+
+                int len = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+
+                symbol = decode(distances);
+                if (symbol >= 30) {
+                    throw new IOException("Invalid distance code");
+                }
+
+                int dist = DISTANCE_BASE[symbol] + bits(DISTANCE_EXTRA[symbol]);
+                if (dist > mOutPos) {
+                    throw new IOException("Distance too far back");
+                }
+
+                ensureOutput(len);
+
+                int from = mOutPos - dist;
+                if (dist >= len) {
+                    System.arraycopy(mOutput, from, mOutput, mOutPos, len);
+                    mOutPos += len;
+                } else {
+                    while (len-- > 0) {
+                        mOutput[mOutPos++] = mOutput[from++];
+                    }
+                }
+            }
+        }
+    }
+
+    protected void dynamic() throws IOException {
+        int nlen = bits(5) + 257;
+        int ndist = bits(5) + 1;
+        int ncode = bits(4) + 4;
+
+        if (nlen > 286 || ndist > 30) {
+            throw new IOException("Invalid dynamic block code counts");
+        }
+
+        int[] lengths = new int[320];
+
+        for (int i = 0; i < ncode; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+
+        Huffman lencode = new Huffman(lengths, 19);
+
+        Arrays.fill(lengths, 0, 19, 0);
+
+        int index = 0;
+        while (index < nlen + ndist) {
+            int symbol = decode(lencode);
+
+            if (symbol < 16) {
+                lengths[index++] = symbol;
+            } else {
+                int len = 0;
+                int repeat;
+
+                if (symbol == 16) {
+                    if (index == 0) {
+                        throw new IOException("Repeat with no first length");
+                    }
+
+                    len = lengths[index - 1];
+                    repeat = 3 + bits(2);
+                } else if (symbol == 17) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+
+                if (index + repeat > nlen + ndist) {
+                    throw new IOException("Too many code lengths");
+                }
+
+                while (repeat-- > 0) {
+                    lengths[index++] = len;
+                }
+            }
+        }
+
+        if (lengths[256] == 0) {
+            throw new IOException("No end-of-block code");
+        }
+
+        Huffman lengthCode = new Huffman(lengths, nlen);
+        Huffman distanceCode = new Huffman(Arrays.copyOfRange(lengths, nlen, nlen + ndist), ndist);
+
+        codes(lengthCode, distanceCode);
+    }
+}
@@ -0,0 +1,159 @@
+package com.anotherbigidea.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.Deflater;
+
+
+/**
+ * Compresses each movie with several Compressions and keeps the smallest
+ * result - the first one wins a tie.
+ *
+ * The uncompressed movie is held in memory until the stream is closed.
+ * The candidates then run side by side on a ForkJoinPool.  By default they
+ * are BEST_COMPRESSION with the default, FILTERED and HUFFMAN_ONLY
+ * strategies, and BEST_SPEED - which, like HUFFMAN_ONLY, can win for movies
+ * that are mostly bitmaps or other data that is already compressed.
+ *
+ * Any candidate can decompress the result, so the first one is used for
+ * decompress(..).
+ */
+public class OptimalCompression implements Compression {
+    protected List<Compression> mCandidates;
+    protected ForkJoinPool mPool;
+    protected volatile Compression mLastChoice;
+
+    public OptimalCompression() {
+        this(new DeflateCompression(Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY),
+             new DeflateCompression(Deflater.BEST_COMPRESSION, Deflater.FILTERED),
+             new DeflateCompression(Deflater.BEST_COMPRESSION, Deflater.HUFFMAN_ONLY),
+             new DeflateCompression(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY));
+    }
+
+    public OptimalCompression(Compression... candidates) {
+        this(ForkJoinPool.commonPool(), candidates);
+    }
+
+    public OptimalCompression(ForkJoinPool pool, Compression... candidates) {
+        if (candidates.length == 0) {
+            throw new IllegalArgumentException("No candidates");
+        }
+
+        mPool = pool;
+        mCandidates = new ArrayList<Compression>(Arrays.asList(candidates));
+    }
+
+    public List<Compression> getCandidates() {
+        return mCandidates;
+    }
+
+    /**
+     * @return the candidate that was kept for the last movie - null if none
+     *         has been compressed yet
+     */
+    public Compression getLastChoice() {
+        return mLastChoice;
+    }
+
+    /** Compression interface */
+    public OutputStream compress(final OutputStream out) throws IOException {
+        return new SliceOutputStream(0x10000) {
+            boolean mClosed;
+
+            public void close() throws IOException {
+                if (mClosed) {
+                    return;
+                }
+
+                mClosed = true;
+
+                try {
+                    SliceOutputStream smallest = choose(getBuffer(), size());
+                    out.write(smallest.getBuffer(), 0, smallest.size());
+                } finally {
+                    out.close();
+                }
+            }
+        };
+    }
+
+    /** Compression interface */
+    public InputStream decompress(InputStream in) throws IOException {
+        return mCandidates.get(0).decompress(in);
+    }
+
+    /**
+     * Compress the data with every candidate
+     *
+     * @return the smallest result
+     */
+    protected SliceOutputStream choose(byte[] data, int length) throws IOException {
+        List<CompressTask> tasks = new ArrayList<CompressTask>();
+
+        for (Compression candidate : mCandidates) {
+            tasks.add(new CompressTask(candidate, data, length));
+        }
+
+        try {
+            mPool.invoke(new RecursiveTask<Void>() {
+                protected Void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                    return null;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        CompressTask smallest = tasks.get(0);
+
+        for (CompressTask task : tasks) {
+            if (task.getRawResult().size() < smallest.getRawResult().size()) {
+                smallest = task;
+            }
+        }
+
+        mLastChoice = smallest.mCompression;
+
+        return smallest.getRawResult();
+    }
+
+    /**
+     * Compresses the data with one candidate
+     */
+    protected static class CompressTask extends RecursiveTask<SliceOutputStream> {
+        private static final long serialVersionUID = 1L;
+
+        protected Compression mCompression;
+        protected byte[] mData;
+        protected int mLength;
+
+        protected CompressTask(Compression compression, byte[] data, int length) {
+            mCompression = compression;
+            mData = data;
+            mLength = length;
+        }
+
+        protected SliceOutputStream compute() {
+            SliceOutputStream result = new SliceOutputStream(mLength / 2 + 64);
+
+            try {
+                OutputStream out = mCompression.compress(result);
+                out.write(mData, 0, mLength);
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return result;
+        }
+    }
+}
@@ -38,16 +38,18 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 
 
 /**
  * Output Stream Wrapper
  */
 public class OutStream extends OutputStreamWrapper {
-    // Bit buffer..
-    private int mBitBuf;
-    private int mBitPos;
+    // Bit buffer - the low mBitCount bits are pending, the rest are zero
+    private long mBitBuf;
+    private int mBitCount;
+
+    // whole bytes completed by writeUBits(..)
+    private byte[] mBitBytes = new byte[8];
 
     public OutStream(OutputStream out) {
         super(out);
@@ -59,6 +61,16 @@ public class OutStream extends OutputStreamWrapper {
         super(null);
     }
 
+    /**
+     * Start again on another output stream - the count and any pending
+     * bits are discarded
+     */
+    public void reset(OutputStream out) {
+        setOutputStream(out);
+        mCount = 0;
+        initBits();
+    }
+
     /**
      * Write a signed value to the output stream in the given number of bits.
      * The value must actually fit in that number of bits or it will be garbled
@@ -85,57 +97,81 @@ public class OutStream extends OutputStreamWrapper {
      * Compress all subsequent data
      */
     public void writeCompressed() {
-        setOutputStream(new DeflaterOutputStream(getOutputStream(), new Deflater(Deflater.BEST_COMPRESSION)));
+        writeCompressed(Deflater.BEST_COMPRESSION, 1);
+    }
+
+    /**
+     * Compress all subsequent data
+     *
+     * @param level a Deflater level
+     * @param threads more than one to compress blocks in parallel
+     * @see ParallelDeflaterOutputStream
+     */
+    public void writeCompressed(int level, int threads) {
+        if (threads > 1) {
+            setOutputStream(new ParallelDeflaterOutputStream(getOutputStream(), level, threads));
+        } else {
+            setOutputStream(ZlibPool.getShared().deflate(getOutputStream(), level));
+        }
+    }
+
+    /**
+     * Compress all subsequent data
+     */
+    public void writeCompressed(Compression compression) throws IOException {
+        setOutputStream(compression.compress(getOutputStream()));
     }
 
     /**
      * Flush the bit buffer to the output stream and reset values
      */
     public void flushBits() throws IOException {
-        if (mBitPos == 0) {
+        if (mBitCount == 0) {
             return; //nothing to flush
         }
 
-        super.write(mBitBuf);
-        mBitBuf = 0;
-        mBitPos = 0;
+        super.write((int) (mBitBuf << (8 - mBitCount)) & 0xff);
+        mBitBuf = 0L;
+        mBitCount = 0;
     }
 
     /**
-     * Write an unsigned value to the output stream in the given number of bits
+     * Write an unsigned value to the output stream in the given number of bits.
+     * The bits are added to a 64 bit accumulator and the whole bytes that
+     * are completed are written out together.
      */
     public void writeUBits(int numBits, long value) throws IOException {
         if (numBits == 0) {
             return;
         }
 
-        if (mBitPos == 0) {
-            mBitPos = 8; //bitBuf was empty
+        if (numBits > 56) { //leave room for the pending bits
+            writeUBits(numBits - 32, value >>> 32);
+            numBits = 32;
         }
 
-        int bitNum = numBits;
+        long bits = (mBitBuf << numBits) | (value & ((1L << numBits) - 1));
+        int count = mBitCount + numBits;
 
-        while (bitNum > 0) //write all bits
-         {
-            while ((mBitPos > 0) && (bitNum > 0)) //write into all position of the bit buffer
-             {
-                if (getBit(bitNum, value)) {
-                    mBitBuf = setBit(mBitPos, mBitBuf);
+        if (count >= 8) {
+            int byteCount = count >>> 3;
+            count &= 7;
+
+            if (byteCount == 1) {
+                super.write((int) (bits >>> count) & 0xff);
+            } else {
+                for (int i = 0; i < byteCount; i++) {
+                    mBitBytes[i] = (byte) (bits >>> (count + ((byteCount - 1 - i) << 3)));
                 }
 
-                bitNum--;
-                mBitPos--;
+                super.write(mBitBytes, 0, byteCount);
             }
 
-            if (mBitPos == 0) //bit buffer is full - write it
-             {
-                writeUI8(mBitBuf);
-                mBitBuf = 0;
-                if (bitNum > 0) {
-                    mBitPos = 8; //prepare for more bits
-                }
-            }
+            bits &= (1L << count) - 1;
         }
+
+        mBitBuf = bits;
+        mBitCount = count;
     }
 
     /**
@@ -225,6 +261,20 @@ public class OutStream extends OutputStreamWrapper {
         writeString(s.getBytes(encoding));
     }
 
+    /**
+     * Write a string, encoding it through a cache, and add terminating null
+     *
+     * @param cache may be null
+     */
+    public void writeString(String s, String encoding, StringCache cache) throws IOException {
+        if (cache == null) {
+            writeString(s, encoding);
+            return;
+        }
+
+        writeString(cache.encode((s != null) ? s : "", encoding));
+    }
+
     /**
      * Write a string to the output stream and add terminating null
      */
@@ -265,8 +315,8 @@ public class OutStream extends OutputStreamWrapper {
      * Reset the bit buffer
      */
     private void initBits() {
-        mBitBuf = 0;
-        mBitPos = 0;
+        mBitBuf = 0L;
+        mBitCount = 0;
     }
 
     /**
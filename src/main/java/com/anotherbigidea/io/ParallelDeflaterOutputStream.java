@@ -0,0 +1,263 @@
+package com.anotherbigidea.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+
+/**
+ * Writes a zlib stream, compressing blocks of the input on a ForkJoinPool
+ * in the manner of pigz.
+ *
+ * Each block is deflated on its own, primed with the last 32K of the block
+ * before it as a preset dictionary so that little is lost at the joins.
+ * Every block but the last ends with a sync flush, which leaves the output
+ * on a byte boundary, so the blocks concatenate into a single deflate
+ * stream.  That is wrapped in a zlib header and an Adler-32 trailer - any
+ * zlib reader, including the Flash player, sees one ordinary stream.
+ *
+ * The number of blocks in flight is bounded.  close() writes the last block
+ * and the trailer, and closes the underlying stream.
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    /** The deflate window */
+    protected static final int DICTIONARY_SIZE = 32768;
+
+    protected OutputStream mOut;
+    protected int mLevel;
+    protected int mStrategy = Deflater.DEFAULT_STRATEGY;
+    protected ForkJoinPool mPool;
+    protected boolean mOwnPool;
+    protected int mMaxPending;
+
+    protected byte[] mBlock;
+    protected int mCount;
+    protected byte[] mDictionary; //the end of the last block
+    protected Adler32 mAdler = new Adler32();
+    protected boolean mStarted;
+    protected boolean mFinished;
+
+    // blocks being compressed, in order
+    protected ArrayDeque<BlockTask> mPending = new ArrayDeque<BlockTask>();
+
+    /**
+     * Compress on a pool of its own, which is shut down by close()
+     *
+     * @param level a Deflater level
+     * @param threads the number of compressing threads
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level, int threads) {
+        this(out, level, new ForkJoinPool(Math.max(threads, 1)), DEFAULT_BLOCK_SIZE);
+        mOwnPool = true;
+    }
+
+    /**
+     * @param level a Deflater level
+     * @param pool is not shut down
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level, ForkJoinPool pool, int blockSize) {
+        mOut = out;
+        mLevel = level;
+        mPool = pool;
+        mMaxPending = pool.getParallelism() * 2;
+        mBlock = new byte[Math.max(blockSize, DICTIONARY_SIZE)];
+    }
+
+    /**
+     * @param strategy a Deflater strategy - to be set before anything is
+     *        written
+     */
+    public void setStrategy(int strategy) {
+        mStrategy = strategy;
+    }
+
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (mFinished) {
+            throw new IOException("Stream is finished");
+        }
+
+        mAdler.update(b, off, len);
+
+        while (len > 0) {
+            int count = Math.min(len, mBlock.length - mCount);
+
+            System.arraycopy(b, off, mBlock, mCount, count);
+            mCount += count;
+            off += count;
+            len -= count;
+
+            if (mCount == mBlock.length) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Write out the blocks that have been compressed - the current block is
+     * not cut short
+     */
+    public void flush() throws IOException {
+        while (!mPending.isEmpty() && mPending.peek().isDone()) {
+            writeNext();
+        }
+
+        mOut.flush();
+    }
+
+    /**
+     * Write the last block and the trailer, without closing the underlying
+     * stream
+     */
+    public void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+
+        try {
+            submitBlock(true);
+
+            while (!mPending.isEmpty()) {
+                writeNext();
+            }
+
+            long adler = mAdler.getValue();
+            mOut.write(new byte[] { (byte) (adler >> 24), (byte) (adler >> 16), (byte) (adler >> 8), (byte) adler });
+        } finally {
+            mFinished = true;
+
+            if (mOwnPool) {
+                mPool.shutdown();
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            mOut.close();
+        }
+    }
+
+    protected void submitBlock(boolean last) throws IOException {
+        if (!mStarted) {
+            mOut.write(zlibHeader(mLevel));
+            mStarted = true;
+        }
+
+        byte[] block = mBlock;
+        int count = mCount;
+
+        BlockTask task = new BlockTask(block, count, mDictionary, last);
+
+        if (!last) {
+            mDictionary = Arrays.copyOfRange(block, count - DICTIONARY_SIZE, count);
+            mBlock = new byte[block.length];
+            mCount = 0;
+        }
+
+        while (mPending.size() >= mMaxPending) {
+            writeNext();
+        }
+
+        mPending.add(task);
+        mPool.execute(task);
+    }
+
+    protected void writeNext() throws IOException {
+        SliceOutputStream output = mPending.poll().join();
+
+        mOut.write(output.getBuffer(), 0, output.size());
+    }
+
+    /**
+     * The two byte zlib header that the Deflater would write for the level
+     */
+    protected static byte[] zlibHeader(int level) {
+        int flags;
+
+        if ((level == Deflater.DEFAULT_COMPRESSION) || (level == 6)) {
+            flags = 2;
+        } else if (level < 2) {
+            flags = 0;
+        } else if (level < 6) {
+            flags = 1;
+        } else {
+            flags = 3;
+        }
+
+        int cmf = 0x78; //deflate with a 32K window
+        int flg = flags << 6;
+        flg += 31 - (((cmf << 8) + flg) % 31);
+
+        return new byte[] { (byte) cmf, (byte) flg };
+    }
+
+    /**
+     * Deflates one block - without the zlib wrapper
+     */
+    protected class BlockTask extends RecursiveTask<SliceOutputStream> {
+        private static final long serialVersionUID = 1L;
+
+        protected byte[] mInput;
+        protected int mLength;
+        protected byte[] mPreset;
+        protected boolean mLast;
+
+        protected BlockTask(byte[] input, int length, byte[] preset, boolean last) {
+            mInput = input;
+            mLength = length;
+            mPreset = preset;
+            mLast = last;
+        }
+
+        protected SliceOutputStream compute() {
+            SliceOutputStream output = new SliceOutputStream(mLength / 2 + 64);
+            byte[] buffer = new byte[0x4000];
+            Deflater deflater = ZlibPool.getShared().getDeflater(mLevel, mStrategy, true);
+
+            try {
+                if (mPreset != null) {
+                    deflater.setDictionary(mPreset);
+                }
+
+                deflater.setInput(mInput, 0, mLength);
+
+                if (mLast) {
+                    deflater.finish();
+
+                    while (!deflater.finished()) {
+                        output.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                } else {
+                    int count;
+
+                    //a full buffer means there may be more to come, and
+                    //input is left when the first call only applied a new
+                    //strategy to a pooled Deflater
+                    do {
+                        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        output.write(buffer, 0, count);
+                    } while (count == buffer.length || !deflater.needsInput());
+                }
+            } finally {
+                ZlibPool.getShared().release(deflater);
+                mInput = null;
+                mPreset = null;
+            }
+
+            return output;
+        }
+    }
+}
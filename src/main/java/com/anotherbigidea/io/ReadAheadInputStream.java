@@ -0,0 +1,221 @@
+package com.anotherbigidea.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Reads a channel on a background thread, ahead of the consumer, so that
+ * waiting for the disk or the network overlaps the parsing.
+ *
+ * The thread reads into a fixed ring of direct buffers, which bounds the
+ * memory held to buffers * bufferSize.  An error on the background thread
+ * is thrown from the read that reaches it.
+ *
+ * close() stops the thread and closes the channel.  A reader that stops
+ * without closing does not leave the thread waiting forever, since it gives
+ * up once it has waited IDLE_TIMEOUT (or the given idle timeout) for a free
+ * buffer.  A later read then gets the data read so far and an
+ * InterruptedIOException.
+ */
+public class ReadAheadInputStream extends InputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_BUFFERS = 4;
+
+    /** How long the thread waits for the consumer before giving up - millis */
+    public static final long IDLE_TIMEOUT = 60000;
+
+    protected static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    // how often the thread checks for close() while it waits - millis
+    protected static final long POLL_INTERVAL = 100;
+
+    protected ReadableByteChannel mChannel;
+    protected BlockingQueue<ByteBuffer> mFree;
+    protected BlockingQueue<ByteBuffer> mFull;
+    protected Thread mThread;
+    protected volatile boolean mClosed;
+    protected long mIdleTimeout;
+    protected volatile IOException mError; //set by the thread before END
+
+    protected ByteBuffer mBuffer; //being read
+
+    public ReadAheadInputStream(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFERS, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ReadAheadInputStream(ReadableByteChannel channel, int buffers, int bufferSize) {
+        this(channel, buffers, bufferSize, IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param idleTimeout how long the thread waits for the consumer - millis
+     */
+    public ReadAheadInputStream(ReadableByteChannel channel, int buffers, int bufferSize, long idleTimeout) {
+        mChannel = channel;
+        mIdleTimeout = idleTimeout;
+        mFree = new ArrayBlockingQueue<ByteBuffer>(buffers);
+        mFull = new ArrayBlockingQueue<ByteBuffer>(buffers + 1); //room for END - so put() never waits
+
+        for (int i = 0; i < buffers; i++) {
+            mFree.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+
+        mThread = new Thread(new Runnable() {
+            public void run() {
+                readAll();
+            }
+        }, "ReadAhead");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public int read() throws IOException {
+        if (!nextBuffer()) {
+            return -1;
+        }
+
+        return mBuffer.get() & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!nextBuffer()) {
+            return -1;
+        }
+
+        int count = Math.min(len, mBuffer.remaining());
+        mBuffer.get(b, off, count);
+
+        return count;
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+
+        while (skipped < n && nextBuffer()) {
+            int count = (int) Math.min(n - skipped, mBuffer.remaining());
+            mBuffer.position(mBuffer.position() + count);
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    public int available() throws IOException {
+        return (mBuffer != null) ? mBuffer.remaining() : 0;
+    }
+
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+
+        mClosed = true;
+
+        //not interrupted - that would close the channel under a read
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        mChannel.close();
+    }
+
+    /**
+     * Make sure there is something left in the current buffer
+     *
+     * @return false at the end of the channel
+     */
+    protected boolean nextBuffer() throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (mBuffer == null || !mBuffer.hasRemaining()) {
+            if (mBuffer == END) {
+                if (mError != null) {
+                    throw mError;
+                }
+
+                return false;
+            }
+
+            if (mBuffer != null) {
+                mBuffer.clear();
+                mFree.add(mBuffer);
+            }
+
+            try {
+                mBuffer = mFull.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Run by the background thread.  Unless the stream has been closed the
+     * thread always ends by queueing END, after setting mError if it failed.
+     */
+    protected void readAll() {
+        try {
+            while (true) {
+                ByteBuffer buffer = null;
+
+                for (long waited = 0; buffer == null; waited += POLL_INTERVAL) {
+                    if (mClosed) {
+                        return;
+                    }
+
+                    if (waited >= mIdleTimeout) {
+                        throw new InterruptedIOException("No read for " + mIdleTimeout + "ms - reading ahead stopped");
+                    }
+
+                    buffer = mFree.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+
+                int count;
+                do {
+                    count = mChannel.read(buffer);
+                } while (count == 0 && buffer.hasRemaining());
+
+                buffer.flip();
+
+                if (buffer.hasRemaining()) {
+                    mFull.put(buffer);
+                } else {
+                    mFree.put(buffer);
+                }
+
+                if (count < 0) {
+                    mFull.put(END);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            mError = e;
+        } catch (InterruptedException e) {
+            mError = new InterruptedIOException();
+        }
+
+        try {
+            mFull.put(END);
+        } catch (InterruptedException e) {
+            //never waits
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.anotherbigidea.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+
+/**
+ * A growable byte array that can be reset and reused.  The bytes written
+ * can be read (and patched) in place as the first size() bytes of
+ * getBuffer().  Unlike ByteArrayOutputStream it is not synchronized.
+ */
+public class SliceOutputStream extends OutputStream {
+    protected byte[] mBuffer;
+    protected int mSize;
+
+    public SliceOutputStream() {
+        this(1024);
+    }
+
+    public SliceOutputStream(int capacity) {
+        mBuffer = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * @return the backing array - only valid until the next write or reset
+     */
+    public byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the size of the backing array
+     */
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * Discard the bytes written - the backing array is kept
+     */
+    public void reset() {
+        mSize = 0;
+    }
+
+    /**
+     * Make room for the given number of bytes beyond size()
+     */
+    protected void ensureCapacity(int length) {
+        int needed = mSize + length;
+
+        if (needed > mBuffer.length) {
+            if (needed < 0) {
+                throw new OutOfMemoryError("buffer too large");
+            }
+
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(needed, mBuffer.length * 2));
+        }
+    }
+
+    public void write(int b) {
+        ensureCapacity(1);
+        mBuffer[mSize++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, mBuffer, mSize, len);
+        mSize += len;
+    }
+
+    /**
+     * @return a copy of the bytes written
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(mBuffer, mSize);
+    }
+
+    /**
+     * Write the bytes to another stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(mBuffer, 0, mSize);
+    }
+}
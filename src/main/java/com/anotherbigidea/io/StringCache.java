@@ -0,0 +1,178 @@
+package com.anotherbigidea.io;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * A cache of decoded strings keyed by their bytes, and of encoded bytes
+ * keyed by their strings.  Movies repeat the same identifiers in thousands
+ * of action blocks - sharing one cache between the parser and the writer of
+ * a pipeline decodes and encodes each of them once.
+ *
+ * The two directions are kept apart since a string that cannot be mapped
+ * does not round trip - the results are always what decoding or encoding
+ * without the cache would give.
+ *
+ * The cache is bounded - it is emptied when it holds getMaxEntries()
+ * strings - and is not thread safe, so use one per pipeline.
+ */
+public class StringCache {
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    /** Longer strings are not cached */
+    public static final int MAX_LENGTH = 256;
+
+    protected Entry[] mTable = new Entry[1024];
+    protected Map<String, Entry> mEncoded = new HashMap<String, Entry>();
+    protected int mCount;
+    protected int mMaxEntries;
+
+    protected static class Entry {
+        protected byte[] mBytes;
+        protected String mString;
+        protected String mEncoding;
+        protected int mHash;
+        protected Entry mNext;
+    }
+
+    public StringCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public StringCache(int maxEntries) {
+        mMaxEntries = Math.max(maxEntries, 1);
+    }
+
+    public int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    /**
+     * @return the number of strings held
+     */
+    public int size() {
+        return mCount;
+    }
+
+    public void clear() {
+        if (mCount > 0) {
+            Arrays.fill(mTable, null);
+            mEncoded.clear();
+            mCount = 0;
+        }
+    }
+
+    /**
+     * Decode a region of an array - not including any terminator
+     */
+    public String decode(byte[] bytes, int offset, int length, String encoding) throws UnsupportedEncodingException {
+        if (length > MAX_LENGTH) {
+            return StringDecoder.forEncoding(encoding).decode(bytes, offset, length);
+        }
+
+        int hash = hash(bytes, offset, length);
+
+        for (Entry entry = mTable[hash & (mTable.length - 1)]; entry != null; entry = entry.mNext) {
+            if ((entry.mHash == hash) && matches(entry.mBytes, bytes, offset, length) && entry.mEncoding.equals(encoding)) {
+                return entry.mString;
+            }
+        }
+
+        String string = StringDecoder.forEncoding(encoding).decode(bytes, offset, length);
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, offset, copy, 0, length);
+
+        Entry entry = newEntry(copy, string, encoding);
+        int slot = hash & (mTable.length - 1);
+        entry.mHash = hash;
+        entry.mNext = mTable[slot];
+        mTable[slot] = entry;
+
+        return string;
+    }
+
+    /**
+     * Encode a string, without a terminator.  The returned array may be
+     * shared and must not be modified.
+     */
+    public byte[] encode(String string, String encoding) throws UnsupportedEncodingException {
+        Entry entry = mEncoded.get(string);
+
+        if ((entry != null) && entry.mEncoding.equals(encoding)) {
+            return entry.mBytes;
+        }
+
+        byte[] bytes = string.getBytes(encoding);
+
+        if (bytes.length <= MAX_LENGTH) {
+            mEncoded.put(string, newEntry(bytes, string, encoding));
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Make room for an entry - the caller links it in
+     */
+    protected Entry newEntry(byte[] bytes, String string, String encoding) {
+        if (mCount >= mMaxEntries) {
+            clear();
+        }
+
+        if (mCount >= mTable.length) {
+            rehash(mTable.length * 2);
+        }
+
+        Entry entry = new Entry();
+        entry.mBytes = bytes;
+        entry.mString = string;
+        entry.mEncoding = encoding;
+
+        mCount++;
+        return entry;
+    }
+
+    protected void rehash(int capacity) {
+        Entry[] table = new Entry[capacity];
+
+        for (Entry entry : mTable) {
+            while (entry != null) {
+                Entry next = entry.mNext;
+                int slot = entry.mHash & (capacity - 1);
+
+                entry.mNext = table[slot];
+                table[slot] = entry;
+                entry = next;
+            }
+        }
+
+        mTable = table;
+    }
+
+    protected static int hash(byte[] bytes, int offset, int length) {
+        int hash = 1;
+
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    protected static boolean matches(byte[] entry, byte[] bytes, int offset, int length) {
+        if (entry.length != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (entry[i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
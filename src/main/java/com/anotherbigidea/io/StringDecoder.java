@@ -0,0 +1,120 @@
+package com.anotherbigidea.io;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Decodes strings in one encoding, giving exactly what
+ * new String(bytes, offset, length, encoding) gives.
+ *
+ * The charset is looked up once.  Strings that are all ASCII - most
+ * identifiers, labels and URLs - are copied straight into a String when the
+ * encoding agrees with ASCII.  UTF-8 is left to String, which has its own
+ * fast paths, while other encodings such as Windows-31J go through one
+ * reused CharsetDecoder and char buffer.
+ *
+ * A decoder is not thread safe - forEncoding(..) keeps one per thread.
+ */
+public class StringDecoder {
+    private static final ThreadLocal<Map<String, StringDecoder>> DECODERS = new ThreadLocal<Map<String, StringDecoder>>() {
+        protected Map<String, StringDecoder> initialValue() {
+            return new HashMap<String, StringDecoder>();
+        }
+    };
+
+    protected String mEncoding;
+    protected Charset mCharset;
+    protected boolean mAsciiCompatible;
+    protected CharsetDecoder mDecoder; //null to leave decoding to String
+    protected CharBuffer mChars;
+
+    /**
+     * Get the decoder for the current thread
+     */
+    public static StringDecoder forEncoding(String encoding) throws UnsupportedEncodingException {
+        Map<String, StringDecoder> decoders = DECODERS.get();
+        StringDecoder decoder = decoders.get(encoding);
+
+        if (decoder == null) {
+            decoder = new StringDecoder(encoding);
+            decoders.put(encoding, decoder);
+        }
+
+        return decoder;
+    }
+
+    public StringDecoder(String encoding) throws UnsupportedEncodingException {
+        try {
+            mCharset = Charset.forName(encoding);
+        } catch (IllegalCharsetNameException e) {
+            throw new UnsupportedEncodingException(encoding);
+        } catch (UnsupportedCharsetException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+
+        mEncoding = encoding;
+
+        //does every 7 bit byte decode to the same char ?
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+
+        mAsciiCompatible = new String(ascii, mCharset).equals(new String(ascii, StandardCharsets.ISO_8859_1));
+
+        if (!mCharset.equals(StandardCharsets.UTF_8)) {
+            mDecoder = mCharset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+
+    public String getEncoding() {
+        return mEncoding;
+    }
+
+    public String decode(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return "";
+        }
+
+        if (mAsciiCompatible && isAscii(bytes, offset, length)) {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+
+        if (mDecoder == null) {
+            return new String(bytes, offset, length, mCharset);
+        }
+
+        int capacity = (int) (length * (double) mDecoder.maxCharsPerByte()) + 1;
+
+        if ((mChars == null) || (mChars.capacity() < capacity)) {
+            mChars = CharBuffer.allocate(Math.max(capacity, 256));
+        }
+
+        mChars.clear();
+        mDecoder.reset();
+        mDecoder.decode(ByteBuffer.wrap(bytes, offset, length), mChars, true);
+        mDecoder.flush(mChars);
+
+        return new String(mChars.array(), 0, mChars.position());
+    }
+
+    protected static boolean isAscii(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
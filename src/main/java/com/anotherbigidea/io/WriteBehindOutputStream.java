@@ -0,0 +1,226 @@
+package com.anotherbigidea.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Writes to a channel on a background thread, behind the producer, so that
+ * waiting for the disk or the network overlaps the encoding.
+ *
+ * Writes are gathered into a fixed ring of direct buffers, which bounds the
+ * memory held to buffers * bufferSize - a writer that gets ahead of the
+ * channel waits for a buffer to come free.  An error on the background
+ * thread is thrown from the next write, flush() or close().
+ *
+ * flush() returns once everything written so far is in the channel, so the
+ * channel may then be repositioned.  close() writes the rest, stops the
+ * thread and closes the channel.  The thread also stops after an error.
+ */
+public class WriteBehindOutputStream extends OutputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_BUFFERS = 4;
+
+    protected static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    // how often a waiting writer checks for an error - millis
+    protected static final long POLL_INTERVAL = 100;
+
+    protected WritableByteChannel mChannel;
+    protected int mBufferCount;
+    protected BlockingQueue<ByteBuffer> mFree;
+    protected BlockingQueue<ByteBuffer> mFull;
+    protected Thread mThread;
+    protected boolean mClosed;
+    protected volatile IOException mError; //from the thread
+
+    protected ByteBuffer mBuffer; //being filled
+
+    public WriteBehindOutputStream(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFERS, DEFAULT_BUFFER_SIZE);
+    }
+
+    public WriteBehindOutputStream(WritableByteChannel channel, int buffers, int bufferSize) {
+        mChannel = channel;
+        mBufferCount = buffers;
+        mFree = new ArrayBlockingQueue<ByteBuffer>(buffers);
+        mFull = new ArrayBlockingQueue<ByteBuffer>(buffers + 1); //room for END
+
+        for (int i = 0; i < buffers; i++) {
+            mFree.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+
+        mThread = new Thread(new Runnable() {
+            public void run() {
+                writeAll();
+            }
+        }, "WriteBehind");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public void write(int b) throws IOException {
+        nextBuffer().put((byte) b);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ByteBuffer buffer = nextBuffer();
+            int count = Math.min(len, buffer.remaining());
+
+            buffer.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Wait until everything written so far is in the channel
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        submit();
+
+        //the thread is idle once it has returned every buffer
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(mBufferCount);
+
+        try {
+            while (buffers.size() < mBufferCount) {
+                buffers.add(takeFree());
+            }
+        } finally {
+            mFree.addAll(buffers);
+        }
+    }
+
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+
+        try {
+            submit();
+        } finally {
+            mClosed = true;
+
+            try {
+                if (mThread.isAlive()) {
+                    mFull.put(END);
+                }
+
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            mChannel.close();
+        }
+
+        checkError();
+    }
+
+    /**
+     * @return a buffer with space in it
+     */
+    protected ByteBuffer nextBuffer() throws IOException {
+        checkOpen();
+
+        if (mBuffer != null && !mBuffer.hasRemaining()) {
+            submit();
+        }
+
+        if (mBuffer == null) {
+            mBuffer = takeFree();
+        }
+
+        return mBuffer;
+    }
+
+    /**
+     * Wait for a buffer that the thread has written
+     */
+    protected ByteBuffer takeFree() throws IOException {
+        try {
+            while (true) {
+                checkError();
+
+                ByteBuffer buffer = mFree.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Pass the current buffer to the thread
+     */
+    protected void submit() throws IOException {
+        if (mBuffer == null) {
+            return;
+        }
+
+        ByteBuffer buffer = mBuffer;
+        mBuffer = null;
+
+        if (buffer.position() == 0) {
+            mFree.add(buffer);
+            return;
+        }
+
+        buffer.flip();
+
+        try {
+            mFull.put(buffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    protected void checkOpen() throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    protected void checkError() throws IOException {
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    /**
+     * Run by the background thread
+     */
+    protected void writeAll() {
+        try {
+            ByteBuffer buffer;
+
+            while ((buffer = mFull.take()) != END) {
+                while (buffer.hasRemaining()) {
+                    mChannel.write(buffer);
+                }
+
+                buffer.clear();
+                mFree.put(buffer);
+            }
+        } catch (IOException e) {
+            mError = e;
+        } catch (InterruptedException e) {
+            mError = new InterruptedIOException();
+        }
+    }
+}
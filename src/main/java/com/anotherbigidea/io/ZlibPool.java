@@ -0,0 +1,379 @@
+package com.anotherbigidea.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * A pool of Deflaters and Inflaters, shared by every user of zlib in the
+ * library - lossless bitmaps, compressed movies and inflate indexes.
+ *
+ * A Deflater or Inflater holds native memory that is only freed by end() or,
+ * failing that, by the garbage collector, which does not see the native
+ * memory and may leave it for a long time.  Each one that is released to the
+ * pool is reset() and handed out again, and one that does not fit in the
+ * pool is ended at once.  end() ends everything in the pool.
+ *
+ * Deflaters are pooled by level and nowrap, since the level cannot be
+ * changed without a cost once the stream has started - the strategy is set
+ * as each one is handed out.  Only Deflaters and Inflaters from a pool may
+ * be released to it - any other is simply ended.
+ *
+ * The counters show how often a request was met from the pool and an
+ * estimate of the native memory held by the Deflaters and Inflaters that
+ * the pool has created and not yet ended, both pooled and in use.
+ *
+ * A pool may be shared between threads.
+ */
+public class ZlibPool {
+    /** The most of each kind that are kept */
+    public static final int DEFAULT_MAX_POOLED = 16;
+
+    /** zlib with 15 window bits and memory level 8 - window, hash and pending buffer */
+    public static final long DEFLATER_NATIVE_BYTES = 268 * 1024L;
+
+    /** zlib with 15 window bits - state and window */
+    public static final long INFLATER_NATIVE_BYTES = 44 * 1024L;
+
+    /** As DeflaterOutputStream and InflaterInputStream */
+    public static final int DEFAULT_BUFFER_SIZE = 512;
+
+    private static final ZlibPool SHARED = new ZlibPool();
+
+    protected int mMaxPooled;
+
+    // indexed by level and nowrap - see key(..)
+    protected Queue<PooledDeflater>[] mDeflaters;
+    protected Queue<PooledInflater>[] mInflaters;
+
+    protected AtomicInteger mPooledDeflaters = new AtomicInteger();
+    protected AtomicInteger mPooledInflaters = new AtomicInteger();
+
+    protected AtomicLong mDeflaterHits = new AtomicLong();
+    protected AtomicLong mDeflaterMisses = new AtomicLong();
+    protected AtomicLong mInflaterHits = new AtomicLong();
+    protected AtomicLong mInflaterMisses = new AtomicLong();
+    protected AtomicLong mLiveDeflaters = new AtomicLong();
+    protected AtomicLong mLiveInflaters = new AtomicLong();
+
+    /**
+     * @return the pool used throughout the library
+     */
+    public static ZlibPool getShared() {
+        return SHARED;
+    }
+
+    public ZlibPool() {
+        this(DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * @param maxPooled the most Deflaters, and the most Inflaters, to keep
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ZlibPool(int maxPooled) {
+        mMaxPooled = maxPooled;
+        mDeflaters = new Queue[key(Deflater.BEST_COMPRESSION, true) + 1];
+        mInflaters = new Queue[2];
+
+        for (int i = 0; i < mDeflaters.length; i++) {
+            mDeflaters[i] = new ConcurrentLinkedQueue<PooledDeflater>();
+        }
+
+        for (int i = 0; i < mInflaters.length; i++) {
+            mInflaters[i] = new ConcurrentLinkedQueue<PooledInflater>();
+        }
+    }
+
+    /**
+     * @param level a Deflater level
+     */
+    public Deflater getDeflater(int level) {
+        return getDeflater(level, Deflater.DEFAULT_STRATEGY, false);
+    }
+
+    /**
+     * @param level a Deflater level
+     * @param strategy a Deflater strategy
+     * @param nowrap true for raw deflate data, without the zlib header and checksum
+     */
+    public Deflater getDeflater(int level, int strategy, boolean nowrap) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level: " + level);
+        }
+
+        PooledDeflater deflater = mDeflaters[key(level, nowrap)].poll();
+
+        if (deflater != null) {
+            mPooledDeflaters.decrementAndGet();
+            mDeflaterHits.incrementAndGet();
+        } else {
+            deflater = new PooledDeflater(level, nowrap);
+            mDeflaterMisses.incrementAndGet();
+            mLiveDeflaters.incrementAndGet();
+        }
+
+        if (deflater.mStrategy != strategy) {
+            deflater.setStrategy(strategy);
+            deflater.mStrategy = strategy;
+        }
+
+        return deflater;
+    }
+
+    public Inflater getInflater() {
+        return getInflater(false);
+    }
+
+    /**
+     * @param nowrap true for raw deflate data, without the zlib header and checksum
+     */
+    public Inflater getInflater(boolean nowrap) {
+        PooledInflater inflater = mInflaters[nowrap ? 1 : 0].poll();
+
+        if (inflater != null) {
+            mPooledInflaters.decrementAndGet();
+            mInflaterHits.incrementAndGet();
+        } else {
+            inflater = new PooledInflater(nowrap);
+            mInflaterMisses.incrementAndGet();
+            mLiveInflaters.incrementAndGet();
+        }
+
+        return inflater;
+    }
+
+    /**
+     * Give a Deflater back - it must not be used again by the caller
+     */
+    public void release(Deflater deflater) {
+        if (!(deflater instanceof PooledDeflater) || ((PooledDeflater) deflater).mPool != this) {
+            deflater.end();
+            return;
+        }
+
+        PooledDeflater pooled = (PooledDeflater) deflater;
+
+        if (mPooledDeflaters.incrementAndGet() <= mMaxPooled) {
+            pooled.reset();
+            mDeflaters[key(pooled.mLevel, pooled.mNowrap)].add(pooled);
+        } else {
+            mPooledDeflaters.decrementAndGet();
+            end(pooled);
+        }
+    }
+
+    /**
+     * Give an Inflater back - it must not be used again by the caller
+     */
+    public void release(Inflater inflater) {
+        if (!(inflater instanceof PooledInflater) || ((PooledInflater) inflater).mPool != this) {
+            inflater.end();
+            return;
+        }
+
+        PooledInflater pooled = (PooledInflater) inflater;
+
+        if (mPooledInflaters.incrementAndGet() <= mMaxPooled) {
+            pooled.reset();
+            mInflaters[pooled.mNowrap ? 1 : 0].add(pooled);
+        } else {
+            mPooledInflaters.decrementAndGet();
+            end(pooled);
+        }
+    }
+
+    /**
+     * End all the pooled Deflaters and Inflaters, releasing their native
+     * memory.  Those in use are not affected and the pool may still be used.
+     */
+    public void end() {
+        for (Queue<PooledDeflater> queue : mDeflaters) {
+            PooledDeflater deflater;
+            while ((deflater = queue.poll()) != null) {
+                mPooledDeflaters.decrementAndGet();
+                end(deflater);
+            }
+        }
+
+        for (Queue<PooledInflater> queue : mInflaters) {
+            PooledInflater inflater;
+            while ((inflater = queue.poll()) != null) {
+                mPooledInflaters.decrementAndGet();
+                end(inflater);
+            }
+        }
+    }
+
+    /**
+     * A stream that compresses into out with a pooled Deflater.  Closing it
+     * finishes the data, releases the Deflater and closes out.
+     *
+     * @param level a Deflater level
+     */
+    public DeflaterOutputStream deflate(OutputStream out, int level) {
+        return deflate(out, level, Deflater.DEFAULT_STRATEGY, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * A stream that compresses into out with a pooled Deflater.  Closing it
+     * finishes the data, releases the Deflater and closes out.
+     *
+     * @param level a Deflater level
+     * @param strategy a Deflater strategy
+     * @param bufferSize the size of the output buffer
+     */
+    public DeflaterOutputStream deflate(OutputStream out, int level, int strategy, int bufferSize) {
+        final Deflater deflater = getDeflater(level, strategy, false);
+
+        return new DeflaterOutputStream(out, deflater, bufferSize) {
+            boolean mReleased;
+
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!mReleased) {
+                        mReleased = true;
+                        release(deflater);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * A stream that decompresses from in with a pooled Inflater.  Closing it
+     * releases the Inflater but does not close in - the stream must not be
+     * read once it has been closed.
+     */
+    public InflaterInputStream inflate(InputStream in) {
+        return inflate(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * A stream that decompresses from in with a pooled Inflater.  Closing it
+     * releases the Inflater but does not close in - the stream must not be
+     * read once it has been closed.
+     *
+     * @param bufferSize the size of the input buffer
+     */
+    public InflaterInputStream inflate(InputStream in, int bufferSize) {
+        final Inflater inflater = getInflater(false);
+
+        return new InflaterInputStream(in, inflater, bufferSize) {
+            boolean mReleased;
+
+            public void close() throws IOException {
+                if (!mReleased) {
+                    mReleased = true;
+                    release(inflater);
+                }
+            }
+        };
+    }
+
+    /** @return the Deflater requests that were met from the pool */
+    public long getDeflaterHits() {
+        return mDeflaterHits.get();
+    }
+
+    /** @return the Deflater requests that created a new Deflater */
+    public long getDeflaterMisses() {
+        return mDeflaterMisses.get();
+    }
+
+    /** @return the Inflater requests that were met from the pool */
+    public long getInflaterHits() {
+        return mInflaterHits.get();
+    }
+
+    /** @return the Inflater requests that created a new Inflater */
+    public long getInflaterMisses() {
+        return mInflaterMisses.get();
+    }
+
+    /** @return the Deflaters waiting in the pool */
+    public int getPooledDeflaters() {
+        return mPooledDeflaters.get();
+    }
+
+    /** @return the Inflaters waiting in the pool */
+    public int getPooledInflaters() {
+        return mPooledInflaters.get();
+    }
+
+    /** @return the Deflaters created by the pool and not yet ended - pooled or in use */
+    public long getLiveDeflaters() {
+        return mLiveDeflaters.get();
+    }
+
+    /** @return the Inflaters created by the pool and not yet ended - pooled or in use */
+    public long getLiveInflaters() {
+        return mLiveInflaters.get();
+    }
+
+    /**
+     * @return an estimate of the native memory held by the live Deflaters
+     *         and Inflaters
+     */
+    public long getNativeMemory() {
+        return mLiveDeflaters.get() * DEFLATER_NATIVE_BYTES + mLiveInflaters.get() * INFLATER_NATIVE_BYTES;
+    }
+
+    public String toString() {
+        return "ZlibPool: deflaters " + getDeflaterHits() + " hits " + getDeflaterMisses() + " misses " + getPooledDeflaters() + " pooled " + getLiveDeflaters() + " live, inflaters " + getInflaterHits() + " hits " + getInflaterMisses() + " misses " + getPooledInflaters() + " pooled " + getLiveInflaters() + " live, native memory ~" + (getNativeMemory() / 1024) + "K";
+    }
+
+    protected void end(PooledDeflater deflater) {
+        deflater.end();
+        mLiveDeflaters.decrementAndGet();
+    }
+
+    protected void end(PooledInflater inflater) {
+        inflater.end();
+        mLiveInflaters.decrementAndGet();
+    }
+
+    protected static int key(int level, boolean nowrap) {
+        return (level + 1) * 2 + (nowrap ? 1 : 0);
+    }
+
+    /**
+     * A Deflater that knows its pool and parameters
+     */
+    protected class PooledDeflater extends Deflater {
+        protected ZlibPool mPool = ZlibPool.this;
+        protected int mLevel;
+        protected int mStrategy = DEFAULT_STRATEGY;
+        protected boolean mNowrap;
+
+        protected PooledDeflater(int level, boolean nowrap) {
+            super(level, nowrap);
+            mLevel = level;
+            mNowrap = nowrap;
+        }
+    }
+
+    /**
+     * An Inflater that knows its pool
+     */
+    protected class PooledInflater extends Inflater {
+        protected ZlibPool mPool = ZlibPool.this;
+        protected boolean mNowrap;
+
+        protected PooledInflater(boolean nowrap) {
+            super(nowrap);
+            mNowrap = nowrap;
+        }
+    }
+}
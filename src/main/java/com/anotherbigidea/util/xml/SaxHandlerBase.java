@@ -59,6 +59,16 @@ public abstract class SaxHandlerBase extends DefaultHandler {
     protected List<Object[]> gatherBuffer;
     protected SaxHandlerBase.GatheringElementType gatheringElement;
 
+    // Discard the state of a partly handled document so the handler can be
+    // reused - the element types are kept
+    public void reset() {
+        elemType = null;
+        elems.clear();
+        gatherMode = false;
+        gatherBuffer = null;
+        gatheringElement = null;
+    }
+
     // Start gathering elements/chars for later dispatch
     public void startGatherMode(SaxHandlerBase.GatheringElementType elem) {
         gatheringElement = elem;
@@ -16,20 +16,30 @@ import org.xml.sax.helpers.DefaultHandler;
  */
 public class Xerces {
 
-    static SAXParser parser;
+    static SAXParserFactory factory = SAXParserFactory.newInstance();
 
-    static {
-        try {
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            parser = factory.newSAXParser();
-        } catch (ParserConfigurationException | SAXException e) {
-            throw new IllegalStateException(e);
+    /** SAXParser is not thread safe - one per thread, reset after each use */
+    static ThreadLocal<SAXParser> parser = new ThreadLocal<SAXParser>() {
+        protected SAXParser initialValue() {
+            try {
+                synchronized (factory) {
+                    return factory.newSAXParser();
+                }
+            } catch (ParserConfigurationException | SAXException e) {
+                throw new IllegalStateException(e);
+            }
         }
-    }
+    };
 
     public static void parse(DefaultHandler handler, InputStream in) throws SAXException, IOException {
         InputSource source = new InputSource(in);
-        parser.parse(source, handler);
+        SAXParser saxParser = parser.get();
+
+        try {
+            saxParser.parse(source, handler);
+        } finally {
+            saxParser.reset();
+        }
         in.close();
     }
 }
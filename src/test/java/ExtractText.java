@@ -4,9 +4,11 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.anotherbigidea.flash.SWFConstants;
 import com.anotherbigidea.flash.interfaces.SWFText;
 import com.anotherbigidea.flash.interfaces.SWFVectors;
 import com.anotherbigidea.flash.readers.SWFReader;
+import com.anotherbigidea.flash.readers.TagFilter;
 import com.anotherbigidea.flash.readers.TagParser;
 import com.anotherbigidea.flash.structs.AlphaColor;
 import com.anotherbigidea.flash.structs.Color;
@@ -149,6 +151,15 @@ public class ExtractText extends SWFTagTypesImpl {
         //  SWFReader reads an input file and drives a SWFTags interface
         SWFReader reader = new SWFReader(parser, in);
 
+        // only the text and font tags are needed - the others are skipped
+        // without being read
+        reader.setTagFilter(new TagFilter(SWFConstants.TAG_DEFINEFONT2,
+                                          SWFConstants.TAG_DEFINEFONTINFO,
+                                          SWFConstants.TAG_DEFINEFONTINFO2,
+                                          SWFConstants.TAG_DEFINETEXT,
+                                          SWFConstants.TAG_DEFINETEXT2,
+                                          SWFConstants.TAG_DEFINETEXTFIELD));
+
         // read the input SWF file and pass it through the interface pipeline
         reader.readFile();
         in.close();
@@ -0,0 +1,74 @@
+package com.anotherbigidea.flash;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * A file that fails - with an exception, a stack overflow or running out of
+ * memory - is counted and logged and does not stop the batch.
+ */
+class BatchProcessorTest {
+
+    static BatchProcessor.Step failing(final Throwable error) {
+        return new BatchProcessor.Step() {
+            public byte[] process(File file, byte[] swf) throws IOException {
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                }
+                throw (Error) error;
+            }
+        };
+    }
+
+    @Test
+    void failuresAreCounted() throws Exception {
+        File file = File.createTempFile("BatchProcessorTest", ".swf");
+
+        try {
+            Files.write(file.toPath(), SampleMovies.create(2, false));
+
+            for (Throwable error : new Throwable[] { new IOException("bad tag"), new StackOverflowError(), new OutOfMemoryError() }) {
+                ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+                BatchProcessor processor = new BatchProcessor();
+                processor.setLog(new PrintStream(log, true));
+                processor.addStep(failing(error));
+
+                processor.process(file, file.getName());
+
+                assertEquals(1, processor.mFailures.get());
+                assertEquals(0, processor.mFiles.get());
+                assertTrue(log.toString().startsWith("FAILED " + file + ": " + error), log.toString());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void otherErrorsAreThrown() throws Exception {
+        File file = File.createTempFile("BatchProcessorTest", ".swf");
+
+        try {
+            Files.write(file.toPath(), SampleMovies.create(2, false));
+
+            final BatchProcessor processor = new BatchProcessor();
+            processor.setLog(new PrintStream(new ByteArrayOutputStream(), true));
+            processor.addStep(failing(new AssertionError("bug")));
+
+            assertThrows(AssertionError.class, () -> processor.process(file, file.getName()));
+        } finally {
+            file.delete();
+        }
+    }
+}
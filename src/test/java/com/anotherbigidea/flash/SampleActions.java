@@ -0,0 +1,206 @@
+package com.anotherbigidea.flash;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.anotherbigidea.flash.interfaces.SWFActions;
+import com.anotherbigidea.flash.readers.ActionParser;
+import com.anotherbigidea.flash.writers.ActionWriter;
+import com.anotherbigidea.io.SliceOutputStream;
+
+
+/**
+ * Action arrays for the tests - random programs with nested function and
+ * with blocks, jumps and frame waits, and a record of the calls that an
+ * array is parsed into.
+ */
+public class SampleActions {
+
+    public static final int FLASH_VERSION = 6;
+
+    /** Pushed often enough for the automatic lookup table */
+    static final String[] STRINGS = { "_root", "count", "frame", "ab" };
+
+    /**
+     * Writes its actions, starting with start(..) and ending with end()
+     */
+    public interface Program {
+        void write(SWFActions actions) throws IOException;
+    }
+
+    /**
+     * @return the action array for a program
+     */
+    public static byte[] write(Program program, boolean lookupTable) throws IOException {
+        final SliceOutputStream bytes = new SliceOutputStream();
+
+        ActionWriter writer = new ActionWriter(null, FLASH_VERSION) {
+            protected void writeBytes(byte[] b, int offset, int length) {
+                bytes.write(b, offset, length);
+            }
+        };
+        writer.setAutoLookupTable(lookupTable);
+
+        program.write(writer);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the calls that a program makes
+     */
+    public static List<String> calls(Program program) throws IOException {
+        List<String> calls = new ArrayList<String>();
+        program.write(recorder(calls));
+        return calls;
+    }
+
+    /**
+     * @param streamingLength see ActionParser.setStreamingLength(..)
+     * @return the calls that an action array is parsed into
+     */
+    public static List<String> parse(byte[] bytes, int streamingLength) throws IOException {
+        List<String> calls = new ArrayList<String>();
+
+        ActionParser parser = new ActionParser(recorder(calls), FLASH_VERSION);
+        parser.setStreamingLength(streamingLength);
+        parser.parse(bytes);
+
+        return calls;
+    }
+
+    /**
+     * Record SWFActions calls as strings.  Start and done are left out,
+     * lookups are recorded as the pushes of the strings that they look up
+     * and labels are numbered in order of first use, so that a program and
+     * the parse of its action array give the same calls.
+     */
+    public static SWFActions recorder(final List<String> calls) {
+        InvocationHandler handler = new InvocationHandler() {
+            String[] table = new String[0];
+            Map<String, String> labels = new HashMap<String, String>();
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                Object[] values = (args != null) ? args.clone() : new Object[0];
+
+                if (name.equals("start") || name.equals("done")) {
+                    return null;
+                } else if (name.equals("lookupTable")) {
+                    table = (String[]) values[0];
+                    return null;
+                } else if (name.equals("lookup")) {
+                    name = "push";
+                    values[0] = table[(Integer) values[0]];
+                } else if (name.equals("jumpLabel") || name.equals("jump") || name.equals("ifJump") || name.equals("waitForFrame")) {
+                    for (int i = 0; i < values.length; i++) {
+                        if (values[i] instanceof String) {
+                            String label = labels.get(values[i]);
+                            if (label == null) {
+                                labels.put((String) values[i], label = "label" + labels.size());
+                            }
+                            values[i] = label;
+                        }
+                    }
+                }
+
+                StringBuilder call = new StringBuilder(name).append('(');
+                for (int i = 0; i < values.length; i++) {
+                    Object value = values[i];
+                    call.append((i > 0) ? ", " : "");
+                    call.append((value == null) ? "null" : value.getClass().getSimpleName() + " ");
+                    call.append((value instanceof Object[]) ? Arrays.toString((Object[]) value) : String.valueOf(value));
+                }
+                calls.add(call.append(')').toString());
+
+                return null;
+            }
+        };
+
+        return (SWFActions) Proxy.newProxyInstance(SWFActions.class.getClassLoader(), new Class<?>[] { SWFActions.class }, handler);
+    }
+
+    /**
+     * A random program - the same seed always gives the same program.
+     * Labels are always followed by an action in the same block.
+     */
+    public static Program random(final long seed) {
+        return new Program() {
+            public void write(SWFActions actions) throws IOException {
+                Random random = new Random(seed);
+                int[] labels = { 0 };
+
+                actions.start(0);
+                writeBlock(actions, random, 0, 1 + random.nextInt(12), labels);
+                actions.end();
+            }
+        };
+    }
+
+    static void writeBlock(SWFActions actions, Random random, int depth, int length, int[] labels) throws IOException {
+        List<String> pending = new ArrayList<String>();
+
+        for (int i = 0; i < length; i++) {
+            if (!pending.isEmpty() && random.nextInt(3) == 0) {
+                actions.jumpLabel(pending.remove(random.nextInt(pending.size())));
+            }
+
+            switch (random.nextInt((depth < 3) ? 10 : 8)) {
+            case 0:
+            case 1:
+                actions.push(STRINGS[random.nextInt(STRINGS.length)]);
+                break;
+            case 2:
+                actions.push(random.nextInt(1000));
+                break;
+            case 3:
+                actions.getVariable();
+                break;
+            case 4:
+                actions.callFunction();
+                break;
+            case 5:
+                String label = "jump" + labels[0]++;
+                pending.add(label);
+                if (random.nextBoolean()) {
+                    actions.jump(label);
+                } else {
+                    actions.ifJump(label);
+                }
+                break;
+            case 6:
+                String skip = "wait" + labels[0]++;
+                pending.add(skip);
+                actions.waitForFrame(random.nextInt(10), skip);
+                break;
+            case 7:
+                actions.pop();
+                break;
+            case 8:
+                actions.startFunction("f" + depth, new String[] { "a", "b" });
+                writeBlock(actions, random, depth + 1, random.nextInt(6), labels);
+                actions.endBlock();
+                break;
+            default:
+                actions.push("_root");
+                actions.startWith();
+                writeBlock(actions, random, depth + 1, random.nextInt(6), labels);
+                actions.endBlock();
+                break;
+            }
+        }
+
+        //labels that were not placed go at the end of the block
+        for (String label : pending) {
+            actions.jumpLabel(label);
+            actions.pop();
+        }
+    }
+}
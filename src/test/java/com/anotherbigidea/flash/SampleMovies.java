@@ -0,0 +1,155 @@
+package com.anotherbigidea.flash;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import com.anotherbigidea.flash.movie.Actions;
+import com.anotherbigidea.flash.movie.Frame;
+import com.anotherbigidea.flash.movie.Image;
+import com.anotherbigidea.flash.movie.Instance;
+import com.anotherbigidea.flash.movie.Movie;
+import com.anotherbigidea.flash.movie.MovieClip;
+import com.anotherbigidea.flash.movie.Shape;
+import com.anotherbigidea.flash.movie.Transform;
+import com.anotherbigidea.flash.structs.AlphaColor;
+import com.anotherbigidea.flash.structs.Color;
+
+
+/**
+ * Small movies for the tests - shapes, a movie clip, lossless bitmaps and
+ * frame actions.  The same arguments always give the same bytes.
+ */
+public class SampleMovies {
+
+    /**
+     * @param frames the number of frames
+     * @param compressed true for a CWS movie
+     */
+    public static byte[] create(int frames, boolean compressed) throws IOException {
+        Random random = new Random(frames);
+        Movie movie = new Movie(550, 400, 12, 6, new Color(255, 255, 255));
+
+        Shape shape = createShape(random);
+        MovieClip clip = new MovieClip();
+        Instance instance = clip.appendFrame().placeSymbol(shape, 0, 0);
+        for (int i = 1; i < 5; i++) {
+            clip.appendFrame().alter(instance, new Transform(i * 0.1, 1.0 + i / 10.0, 1.0, i * 20, i * 10), null);
+        }
+
+        Shape bitmap8 = createBitmapShape(createBitmap(random, 33, 17, SWFConstants.BITMAP_FORMAT_8_BIT, false));
+        Shape bitmap32 = createBitmapShape(createBitmap(random, 20, 20, SWFConstants.BITMAP_FORMAT_32_BIT, true));
+
+        for (int i = 0; i < frames; i++) {
+            Frame frame = movie.appendFrame();
+
+            if (i == 0) {
+                frame.placeSymbol(clip, 100, 100);
+                frame.placeSymbol(bitmap8, 200, 100);
+                frame.placeSymbol(bitmap32, 300, 100);
+            }
+
+            frame.placeSymbol(createShape(random), random.nextInt(550), random.nextInt(400));
+            frame.setActions(createActions(i));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        movie.write(out, compressed);
+        return out.toByteArray();
+    }
+
+    static Shape createShape(Random random) {
+        Shape shape = new Shape();
+
+        shape.defineFillStyle(createColor(random));
+        shape.defineFillStyle(new AlphaColor(createColor(random), random.nextInt(256)));
+        shape.defineLineStyle(1 + random.nextInt(5), createColor(random));
+        shape.setRightFillStyle(1 + random.nextInt(2));
+        shape.setLineStyle(1);
+        shape.move(random.nextInt(200) - 100, random.nextInt(200) - 100);
+
+        for (int i = 0; i < 20; i++) {
+            if (random.nextBoolean()) {
+                shape.line(random.nextInt(2000) - 1000, random.nextInt(2000) - 1000);
+            } else {
+                shape.curve(random.nextInt(2000) - 1000, random.nextInt(2000) - 1000,
+                            random.nextInt(2000) - 1000, random.nextInt(2000) - 1000);
+            }
+        }
+
+        return shape;
+    }
+
+    static Image.Lossless createBitmap(Random random, int width, int height, int format, boolean hasAlpha) {
+        int[] colors = new int[32];
+        for (int i = 0; i < colors.length; i++) {
+            int alpha = hasAlpha ? random.nextInt(256) : 0xff;
+            int rgb = random.nextInt(0x1000000);
+
+            //premultiplied
+            int r = ((rgb >> 16) & 0xff) * alpha / 255;
+            int g = ((rgb >> 8) & 0xff) * alpha / 255;
+            int b = (rgb & 0xff) * alpha / 255;
+            colors[i] = (alpha << 24) | (r << 16) | (g << 8) | b;
+        }
+
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = colors[random.nextInt(colors.length)];
+        }
+
+        return new Image.Lossless(argb, width, height, hasAlpha, format);
+    }
+
+    static Shape createBitmapShape(Image.Lossless image) {
+        Shape shape = new Shape();
+        shape.defineFillStyle(image, new Transform(SWFConstants.TWIPS, SWFConstants.TWIPS, 0, 0), false);
+        shape.setRightFillStyle(1);
+        shape.move(0, 0);
+        shape.line(image.getWidth(), 0);
+        shape.line(image.getWidth(), image.getHeight());
+        shape.line(0, image.getHeight());
+        shape.line(0, 0);
+
+        return shape;
+    }
+
+    static Actions createActions(int frame) throws IOException {
+        Actions actions = new Actions(6);
+        actions.lookupTable(new String[] { "_root", "count", "frame" + frame });
+
+        actions.push("_root");
+        actions.getVariable();
+        actions.lookup(1);
+        actions.getMember();
+        actions.push(frame);
+        actions.add();
+        actions.push(0.5);
+        actions.lessThan();
+        actions.ifJump("skip");
+        actions.startFunction("fn", new String[] { "a", "b" });
+        actions.push("a");
+        actions.getVariable();
+        actions.push("b");
+        actions.getVariable();
+        actions.multiply();
+        actions.returnValue();
+        actions.endBlock();
+        actions.jumpLabel("skip");
+        actions.waitForFrame(frame, "wait");
+        actions.play();
+        actions.jumpLabel("wait");
+        actions.push(2);
+        actions.lookup(2);
+        actions.callFunction();
+        actions.pop();
+        actions.stop();
+        actions.end();
+
+        return actions;
+    }
+
+    static Color createColor(Random random) {
+        return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+    }
+}
@@ -0,0 +1,59 @@
+package com.anotherbigidea.flash.readers;
+
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SampleActions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Parsing action arrays in records and streaming mode.
+ */
+class ActionParserTest {
+
+    @Test
+    void parsesWhatWasWritten() throws Exception {
+        for (long seed = 0; seed < 500; seed++) {
+            SampleActions.Program program = SampleActions.random(seed);
+            byte[] bytes = SampleActions.write(program, false);
+
+            assertEquals(SampleActions.calls(program), SampleActions.parse(bytes, Integer.MAX_VALUE), "seed " + seed);
+        }
+    }
+
+    @Test
+    void nestedBlocksEndTogether() throws Exception {
+        //function outer() { function inner() { with (_root) { push 3 } } } stop
+        SampleActions.Program program = actions -> {
+            actions.start(0);
+            actions.startFunction("outer", new String[0]);
+            actions.startFunction("inner", new String[0]);
+            actions.push("_root");
+            actions.startWith();
+            actions.push(3);
+            actions.endBlock();
+            actions.endBlock();
+            actions.endBlock();
+            actions.stop();
+            actions.end();
+        };
+
+        byte[] bytes = SampleActions.write(program, false);
+
+        for (int streamingLength : new int[] { 0, Integer.MAX_VALUE }) {
+            assertEquals(SampleActions.calls(program), SampleActions.parse(bytes, streamingLength));
+        }
+    }
+
+    @Test
+    void streamingAndRecordsAgree() throws Exception {
+        for (long seed = 0; seed < 500; seed++) {
+            for (boolean lookupTable : new boolean[] { false, true }) {
+                byte[] bytes = SampleActions.write(SampleActions.random(seed), lookupTable);
+
+                assertEquals(SampleActions.parse(bytes, Integer.MAX_VALUE), SampleActions.parse(bytes, 0), "seed " + seed);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.SampleMovies;
+import com.anotherbigidea.flash.writers.SWFTagDumper;
+import com.anotherbigidea.flash.writers.SWFTagTypesImpl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Decoding on a pool gives the same calls, in the same order and on the
+ * reader's thread, as a plain TagParser.
+ */
+class ParallelTagParserTest {
+
+    static final int UNKNOWN_TAG = 99;
+
+    static String dump(byte[] swf, ParallelTagParser parallel) throws IOException {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        SWFTagDumper dumper = new SWFTagDumper(out, false, true);
+
+        if (parallel == null) {
+            new SWFReader(new TagParser(dumper), ByteBuffer.wrap(swf)).readFile();
+        } else {
+            parallel.mTagtypes = dumper;
+            parallel.mParser = new TagParser(dumper);
+            new SWFReader(parallel, ByteBuffer.wrap(swf)).readFile();
+        }
+
+        out.flush();
+        return text.toString();
+    }
+
+    /**
+     * Records the unknown tags that it is passed as type:length, and the
+     * threads that they are passed on
+     */
+    static class Calls extends SWFTagTypesImpl {
+        List<String> mCalls = new ArrayList<String>();
+        List<Thread> mThreads = new ArrayList<Thread>();
+
+        Calls() {
+            super(null);
+        }
+
+        public void tag(int tagType, boolean longTag, byte[] contents) {
+            mCalls.add(tagType + ":" + contents.length);
+            mThreads.add(Thread.currentThread());
+        }
+    }
+
+    @Test
+    void sameCallsAsTagParser() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            for (boolean compressed : new boolean[] { false, true }) {
+                //sprites, bitmaps, shapes and frame actions
+                byte[] swf = SampleMovies.create(40, compressed);
+                String expected = dump(swf, null);
+
+                for (int minLength : new int[] { 0, 64, ParallelTagParser.DEFAULT_MIN_LENGTH, Integer.MAX_VALUE }) {
+                    for (int maxPending : new int[] { 1, 3, 64 }) {
+                        ParallelTagParser parser = new ParallelTagParser(null, pool, maxPending);
+                        parser.setMinimumLength(minLength);
+
+                        assertEquals(expected, dump(swf, parser), "minimum length " + minLength + ", max pending " + maxPending);
+                        assertTrue(parser.mPending.isEmpty());
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return a pool whose only worker is held until the latch is released
+     */
+    static ForkJoinPool blockedPool(final CountDownLatch release) {
+        ForkJoinPool pool = new ForkJoinPool(1);
+
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        return pool;
+    }
+
+    @Test
+    void smallTagsAreDecodedInline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ForkJoinPool pool = blockedPool(release);
+
+        try {
+            Calls calls = new Calls();
+            ParallelTagParser parser = new ParallelTagParser(calls, pool, 4);
+            int min = ParallelTagParser.DEFAULT_MIN_LENGTH;
+
+            //nothing waiting - straight through
+            parser.tag(UNKNOWN_TAG, true, new byte[min - 1]);
+            assertEquals(Arrays.asList(UNKNOWN_TAG + ":" + (min - 1)), calls.mCalls);
+            assertTrue(parser.mPending.isEmpty());
+
+            //decoded on the pool
+            parser.tag(UNKNOWN_TAG, true, new byte[min]);
+            assertEquals(1, parser.mPending.size());
+
+            //decoded inline but held back behind the pooled tag
+            parser.tag(UNKNOWN_TAG, false, new byte[1]);
+            assertEquals(2, parser.mPending.size());
+            assertTrue(parser.mPending.peekLast().isDone());
+            assertEquals(1, calls.mCalls.size());
+
+            release.countDown();
+            parser.flush();
+            assertEquals(Arrays.asList(UNKNOWN_TAG + ":" + (min - 1), UNKNOWN_TAG + ":" + min, UNKNOWN_TAG + ":1"), calls.mCalls);
+
+            for (Thread thread : calls.mThreads) {
+                assertSame(Thread.currentThread(), thread);
+            }
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void endFlushes() throws Exception {
+        Calls calls = new Calls();
+        ParallelTagParser parser = new ParallelTagParser(calls);
+        parser.setMinimumLength(0);
+
+        for (int i = 0; i < 20; i++) {
+            parser.tag(UNKNOWN_TAG, true, new byte[i]);
+        }
+        parser.tag(SWFConstants.TAG_END, false, new byte[0]);
+
+        assertTrue(parser.mPending.isEmpty());
+        assertEquals(20, calls.mCalls.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(UNKNOWN_TAG + ":" + i, calls.mCalls.get(i));
+            assertSame(Thread.currentThread(), calls.mThreads.get(i));
+        }
+    }
+
+    @Test
+    void maxPendingBlocksTheReader() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final int[] maxSeen = { 0 };
+
+        //hold the only worker until the reader has to wait for a tag
+        ForkJoinPool pool = blockedPool(release);
+
+        try {
+            Calls calls = new Calls();
+            ParallelTagParser parser = new ParallelTagParser(calls, pool, 5) {
+                protected void deliverNext() throws IOException {
+                    maxSeen[0] = Math.max(maxSeen[0], mPending.size());
+                    release.countDown();
+                    super.deliverNext();
+                }
+            };
+            parser.setMinimumLength(0);
+
+            for (int i = 0; i < 20; i++) {
+                parser.tag(UNKNOWN_TAG, true, new byte[i]);
+                assertTrue(parser.mPending.size() <= 5);
+            }
+            parser.flush();
+
+            assertEquals(5, maxSeen[0]);
+            assertEquals(20, calls.mCalls.size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(UNKNOWN_TAG + ":" + i, calls.mCalls.get(i));
+            }
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void decodeFailureReachesTheReader() throws Exception {
+        Calls calls = new Calls();
+        final ParallelTagParser parser = new ParallelTagParser(calls);
+
+        //a large frame label without its terminating null
+        byte[] label = new byte[4 * ParallelTagParser.DEFAULT_MIN_LENGTH];
+        Arrays.fill(label, (byte) 'a');
+
+        parser.tag(UNKNOWN_TAG, false, new byte[1]);
+        parser.tag(SWFConstants.TAG_FRAMELABEL, true, label);
+
+        //thrown by the next tag if the label has been decoded by then
+        assertThrows(IOException.class, () -> {
+            parser.tag(UNKNOWN_TAG, false, new byte[2]);
+            parser.flush();
+        });
+
+        //the tags ahead of the failure were delivered, those after it dropped
+        assertEquals(Arrays.asList(UNKNOWN_TAG + ":1"), calls.mCalls);
+        assertTrue(parser.mPending.isEmpty());
+    }
+}
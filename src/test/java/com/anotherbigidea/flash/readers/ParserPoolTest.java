@@ -0,0 +1,105 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.SampleMovies;
+import com.anotherbigidea.flash.writers.SWFWriter;
+import com.anotherbigidea.flash.writers.TagWriter;
+import com.anotherbigidea.io.StringCache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+/**
+ * A parser borrowed from the pool again keeps nothing of its last use.
+ */
+class ParserPoolTest {
+
+    static byte[] write(SWFRecorder recorder) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recorder.replay(new TagWriter(new SWFWriter(out)));
+        return out.toByteArray();
+    }
+
+    @Test
+    void borrowedParsersAreClean() throws Exception {
+        ParserPool pool = new ParserPool();
+
+        //a Flash 5 movie
+        byte[] swf5 = SampleMovies.create(5, false);
+        swf5[3] = 5;
+
+        SWFRecorder first = new SWFRecorder();
+        TagParser parser = pool.borrowTagParser(first);
+        parser.setStringCache(new StringCache());
+
+        SWFReader reader = pool.borrowReader();
+        reader.reset(parser, ByteBuffer.wrap(swf5));
+        reader.setTagFilter(new TagFilter(SWFConstants.TAG_SHOWFRAME, SWFConstants.TAG_DEFINESPRITE, SWFConstants.TAG_DOACTION));
+        reader.readFile();
+
+        assertEquals(5, parser.mFlashVersion);
+        assertNotEquals(SWFConstants.STRING_ENCODING_MX, parser.mStringEncoding);
+
+        pool.release(reader);
+        pool.release(parser);
+
+        //the same parser and reader, reset
+        SWFRecorder second = new SWFRecorder();
+        TagParser again = pool.borrowTagParser(second);
+        assertSame(parser, again);
+        assertSame(second, again.mTagtypes);
+        assertNull(again.mFilter);
+        assertNull(again.mStringCache);
+        assertNull(again.mIn);
+        assertEquals(SWFConstants.FLASH_MX_VERSION, again.mFlashVersion);
+        assertEquals(SWFConstants.STRING_ENCODING_MX, again.mStringEncoding);
+        assertNull(again.mSpriteParser.mTagtypes);
+        assertNull(again.mSpriteParser.mFilter);
+        assertNull(again.mSpriteParser.mStringCache);
+        assertNull(again.mActionParser.actions);
+        assertNull(again.mActionParser.mStringCache);
+
+        SWFReader readerAgain = pool.borrowReader();
+        assertSame(reader, readerAgain);
+        assertNull(readerAgain.mConsumer);
+        assertNull(readerAgain.mFilter);
+        assertNull(readerAgain.mIn);
+
+        //the whole movie, as a new parser sees it
+        byte[] swf = SampleMovies.create(5, true);
+        readerAgain.reset(again, ByteBuffer.wrap(swf));
+        readerAgain.readFile();
+
+        SWFRecorder expected = new SWFRecorder();
+        new SWFReader(new TagParser(expected), ByteBuffer.wrap(swf)).readFile();
+        assertArrayEquals(write(expected), write(second));
+
+        pool.release(readerAgain);
+        pool.release(again);
+    }
+
+    @Test
+    void borrowedActionParsersAreClean() throws Exception {
+        ParserPool pool = new ParserPool();
+
+        ActionParser parser = pool.borrowActionParser(null, 5);
+        parser.setStringCache(new StringCache());
+        pool.release(parser);
+
+        ActionParser again = pool.borrowActionParser(null, SWFConstants.FLASH_MX_VERSION);
+        assertSame(parser, again);
+        assertNull(again.actions);
+        assertNull(again.mStringCache);
+        assertEquals(SWFConstants.STRING_ENCODING_MX, again.mStringEncoding);
+    }
+}
@@ -0,0 +1,116 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SampleMovies;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Sidecar files and on-demand reads through inflate checkpoints.
+ */
+class SWFIndexTest {
+
+    File file;
+    File sidecar;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = File.createTempFile("SWFIndexTest", ".swf");
+        sidecar = SWFIndex.getSidecar(file);
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+        sidecar.delete();
+    }
+
+    static void assertSameTags(SWFIndex expected, SWFIndex actual) throws IOException {
+        assertEquals(expected.getTagCount(), actual.getTagCount());
+        assertEquals(expected.getFrameCount(), actual.getFrameCount());
+
+        for (int i = 0; i < expected.getTagCount(); i++) {
+            assertEquals(expected.getTagType(i), actual.getTagType(i));
+            assertEquals(expected.getTagOffset(i), actual.getTagOffset(i));
+            assertArrayEquals(expected.getTagContents(i), actual.getTagContents(i), "tag " + i);
+        }
+    }
+
+    @Test
+    void compressedAndUncompressedAgree() throws Exception {
+        SWFIndex plain = new SWFIndex(ByteBuffer.wrap(SampleMovies.create(30, false)));
+        SWFIndex compressed = new SWFIndex(ByteBuffer.wrap(SampleMovies.create(30, true)));
+
+        assertTrue(compressed.isCompressed());
+        assertSameTags(plain, compressed);
+    }
+
+    @Test
+    void saveAndLoadSidecar() throws Exception {
+        for (boolean compressed : new boolean[] { false, true }) {
+            Files.write(file.toPath(), SampleMovies.create(40, compressed));
+            sidecar.delete();
+
+            SWFIndex opened = SWFIndex.open(file);
+            assertTrue(sidecar.isFile(), "open(..) saves the sidecar");
+
+            SWFIndex loaded = SWFIndex.load(file, sidecar);
+            assertNotNull(loaded);
+            assertEquals(compressed, loaded.isCompressed());
+
+            //the loaded index reads the file on demand, in reverse to jump about
+            SWFIndex fresh = new SWFIndex(file);
+            assertSameTags(fresh, loaded);
+
+            for (int i = loaded.getTagCount() - 1; i >= 0; i--) {
+                assertArrayEquals(opened.getTagContents(i), loaded.getTagContents(i));
+            }
+        }
+    }
+
+    @Test
+    void rejectsStaleSidecar() throws Exception {
+        Files.write(file.toPath(), SampleMovies.create(20, true));
+        SWFIndex.open(file);
+        long modified = file.lastModified();
+
+        //same length and time - caught by the checksum
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length() - 3);
+        int b = raf.read();
+        raf.seek(raf.length() - 3);
+        raf.write(b ^ 0xff);
+        raf.close();
+        file.setLastModified(modified);
+        assertNull(SWFIndex.load(file, sidecar));
+
+        //a new movie
+        Files.write(file.toPath(), SampleMovies.create(25, true));
+        assertNull(SWFIndex.load(file, sidecar));
+
+        //open(..) indexes the file again and replaces the sidecar
+        SWFIndex reopened = SWFIndex.open(file);
+        assertEquals(25, reopened.getFrameCount());
+        assertNotNull(SWFIndex.load(file, sidecar));
+
+        //a truncated sidecar
+        byte[] saved = Files.readAllBytes(sidecar.toPath());
+        Files.write(sidecar.toPath(), Arrays.copyOf(saved, saved.length / 2));
+        assertNull(SWFIndex.load(file, sidecar));
+    }
+}
@@ -0,0 +1,61 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SampleMovies;
+import com.anotherbigidea.flash.writers.SWFWriter;
+import com.anotherbigidea.flash.writers.TagWriter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+
+/**
+ * Reading ahead on background threads gives the same tags as reading in
+ * place.
+ */
+class SWFReaderTest {
+
+    static byte[] copy(SWFReader reader, ByteArrayOutputStream out) throws IOException {
+        reader.readFile();
+        return out.toByteArray();
+    }
+
+    @Test
+    void readAheadGivesTheSameMovie() throws Exception {
+        File file = File.createTempFile("SWFReaderTest", ".swf");
+
+        try {
+            for (boolean compressed : new boolean[] { false, true }) {
+                byte[] swf = SampleMovies.create(30, compressed);
+                Files.write(file.toPath(), swf);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] expected = copy(new SWFReader(new TagParser(new TagWriter(new SWFWriter(out))), ByteBuffer.wrap(swf)), out);
+
+                for (boolean readAhead : new boolean[] { false, true }) {
+                    //a channel read ahead
+                    out = new ByteArrayOutputStream();
+                    SWFReader reader = new SWFReader(new TagParser(new TagWriter(new SWFWriter(out))), FileChannel.open(file.toPath()));
+                    reader.setReadAhead(readAhead);
+                    assertArrayEquals(expected, copy(reader, out));
+
+                    //a stream, inflated ahead
+                    out = new ByteArrayOutputStream();
+                    reader = new SWFReader(new TagParser(new TagWriter(new SWFWriter(out))), new ByteArrayInputStream(swf));
+                    reader.setReadAhead(readAhead);
+                    assertArrayEquals(expected, copy(reader, out));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SampleMovies;
+import com.anotherbigidea.flash.interfaces.SWFTagTypes;
+import com.anotherbigidea.flash.writers.SWFTagDumper;
+import com.anotherbigidea.flash.writers.SWFWriter;
+import com.anotherbigidea.flash.writers.TagWriter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Replaying a recording gives the same calls as parsing the movie.
+ */
+class SWFRecorderTest {
+
+    static void parse(byte[] swf, SWFTagTypes tagtypes) throws IOException {
+        new SWFReader(new TagParser(tagtypes), ByteBuffer.wrap(swf)).readFile();
+    }
+
+    static byte[] write(byte[] swf, SWFRecorder recorder) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TagWriter writer = new TagWriter(new SWFWriter(out));
+
+        if (recorder == null) {
+            parse(swf, writer);
+        } else {
+            recorder.replay(writer);
+        }
+
+        return out.toByteArray();
+    }
+
+    static String dump(byte[] swf, SWFRecorder recorder) throws IOException {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        SWFTagDumper dumper = new SWFTagDumper(out, false, true);
+
+        if (recorder == null) {
+            parse(swf, dumper);
+        } else {
+            recorder.replay(dumper);
+        }
+
+        out.flush();
+        return text.toString();
+    }
+
+    @Test
+    void replayWritesTheSameMovie() throws Exception {
+        for (boolean compressed : new boolean[] { false, true }) {
+            byte[] swf = SampleMovies.create(20, compressed);
+
+            SWFRecorder recorder = new SWFRecorder();
+            parse(swf, recorder);
+            assertFalse(recorder.isEmpty());
+
+            byte[] expected = write(swf, null);
+
+            //a recording may be replayed any number of times
+            assertArrayEquals(expected, write(swf, recorder));
+            assertArrayEquals(expected, write(swf, recorder));
+        }
+    }
+
+    @Test
+    void replayDumpsTheSameCalls() throws Exception {
+        byte[] swf = SampleMovies.create(10, false);
+
+        SWFRecorder recorder = new SWFRecorder();
+        parse(swf, recorder);
+
+        //shapes, sprites and decompiled actions
+        assertEquals(dump(swf, null), dump(swf, recorder));
+    }
+
+    @Test
+    void replayIntoARecorder() throws Exception {
+        byte[] swf = SampleMovies.create(10, false);
+
+        SWFRecorder first = new SWFRecorder();
+        parse(swf, first);
+
+        SWFRecorder second = new SWFRecorder();
+        first.replay(second);
+
+        assertEquals(first.getCodeCount(), second.getCodeCount());
+        assertEquals(first.getPoolCount(), second.getPoolCount());
+        assertArrayEquals(write(swf, first), write(swf, second));
+    }
+
+    @Test
+    void clear() throws Exception {
+        SWFRecorder recorder = new SWFRecorder();
+        parse(SampleMovies.create(5, false), recorder);
+
+        recorder.clear();
+        assertTrue(recorder.isEmpty());
+        assertEquals(0, recorder.getPoolCount());
+
+        byte[] swf = SampleMovies.create(3, false);
+        parse(swf, recorder);
+        assertArrayEquals(write(swf, null), write(swf, recorder));
+    }
+}
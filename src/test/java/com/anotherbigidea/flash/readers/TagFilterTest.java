@@ -0,0 +1,171 @@
+package com.anotherbigidea.flash.readers;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.SampleMovies;
+import com.anotherbigidea.flash.interfaces.SWFTagTypes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * A filtered read passes on the accepted tags, at the top level and inside
+ * sprites, and nothing else.
+ */
+class TagFilterTest {
+
+    /**
+     * Record the names of the SWFTagTypes calls - those for the tags inside
+     * a sprite are prefixed with "sprite "
+     */
+    static SWFTagTypes recorder(final List<String> calls, final String prefix) {
+        InvocationHandler handler = new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                calls.add(prefix + method.getName());
+
+                if (method.getName().equals("tagDefineSprite")) {
+                    return recorder(calls, "sprite ");
+                }
+                return null;
+            }
+        };
+
+        return (SWFTagTypes) Proxy.newProxyInstance(SWFTagTypes.class.getClassLoader(), new Class<?>[] { SWFTagTypes.class }, handler);
+    }
+
+    /**
+     * @param parallel true to parse with a ParallelTagParser
+     * @return the calls for the movie
+     */
+    static List<String> read(byte[] swf, TagFilter filter, boolean parallel) throws IOException {
+        List<String> calls = new ArrayList<String>();
+        SWFTagTypes tagtypes = recorder(calls, "");
+
+        if (parallel) {
+            ParallelTagParser parser = new ParallelTagParser(tagtypes);
+            parser.setMinimumLength(0);
+
+            SWFReader reader = new SWFReader(parser, ByteBuffer.wrap(swf));
+            reader.setTagFilter(filter);
+            assertSame(filter, parser.mFilter);
+            reader.readFile();
+        } else {
+            TagParser parser = new TagParser(tagtypes);
+
+            SWFReader reader = new SWFReader(parser, ByteBuffer.wrap(swf));
+            reader.setTagFilter(filter);
+            assertSame(filter, parser.mFilter);
+            reader.readFile();
+        }
+
+        return calls;
+    }
+
+    /**
+     * @param inSprites true for all the calls inside the sprites
+     * @return the calls with the given names - inside sprites only if
+     *         tagDefineSprite is one of the names
+     */
+    static List<String> select(List<String> calls, boolean inSprites, String... names) {
+        Set<String> wanted = new HashSet<String>(Arrays.asList(names));
+        List<String> selected = new ArrayList<String>();
+
+        for (String call : calls) {
+            boolean inSprite = call.startsWith("sprite ");
+            String name = inSprite ? call.substring(7) : call;
+
+            if (inSprite && !wanted.contains("tagDefineSprite")) {
+                continue;
+            }
+            if (wanted.contains(name) || (inSprite && inSprites)) {
+                selected.add(call);
+            }
+        }
+
+        return selected;
+    }
+
+    @Test
+    void acceptsTheAddedTypes() {
+        TagFilter filter = new TagFilter(SWFConstants.TAG_SHOWFRAME, TagFilter.MAX_TAG_TYPE);
+
+        assertTrue(filter.accepts(SWFConstants.TAG_SHOWFRAME));
+        assertTrue(filter.accepts(TagFilter.MAX_TAG_TYPE));
+        assertFalse(filter.accepts(SWFConstants.TAG_SHOWFRAME + 64));
+        assertFalse(filter.accepts(TagFilter.MAX_TAG_TYPE - 64));
+
+        filter.remove(SWFConstants.TAG_SHOWFRAME);
+        assertFalse(filter.accepts(SWFConstants.TAG_SHOWFRAME));
+        assertTrue(filter.accepts(TagFilter.MAX_TAG_TYPE));
+
+        //the end tag is always passed on
+        assertTrue(new TagFilter().accepts(SWFConstants.TAG_END));
+    }
+
+    @Test
+    void outOfRangeTypes() {
+        TagFilter filter = new TagFilter();
+
+        for (int type : new int[] { -1, TagFilter.MAX_TAG_TYPE + 1, TagFilter.MAX_TAG_TYPE + 1 + SWFConstants.TAG_SHOWFRAME, Integer.MIN_VALUE }) {
+            assertThrows(IllegalArgumentException.class, () -> filter.add(type));
+            assertThrows(IllegalArgumentException.class, () -> filter.remove(type));
+            assertThrows(IllegalArgumentException.class, () -> filter.accepts(type));
+            assertThrows(IllegalArgumentException.class, () -> new TagFilter(type));
+        }
+
+        //nothing was added by an alias
+        assertFalse(filter.accepts(SWFConstants.TAG_SHOWFRAME));
+    }
+
+    @Test
+    void spriteFilter() {
+        TagFilter filter = new TagFilter(SWFConstants.TAG_DEFINESPRITE);
+        assertSame(filter, filter.getSpriteFilter());
+
+        filter.setSpriteFilter(null);
+        assertNull(filter.getSpriteFilter());
+    }
+
+    @Test
+    void readerPassesTheAcceptedTags() throws Exception {
+        byte[] swf = SampleMovies.create(10, true);
+
+        for (boolean parallel : new boolean[] { false, true }) {
+            List<String> all = read(swf, null, parallel);
+
+            //no sprite - it is skipped as a whole
+            TagFilter filter = new TagFilter(SWFConstants.TAG_SHOWFRAME);
+            List<String> calls = read(swf, filter, parallel);
+            assertEquals(select(all, false, "header", "tagShowFrame", "tagEnd"), calls);
+            assertFalse(calls.contains("tagDefineSprite"));
+
+            //the same filter inside the sprite
+            filter.add(SWFConstants.TAG_DEFINESPRITE);
+            calls = read(swf, filter, parallel);
+            assertEquals(select(all, false, "header", "tagShowFrame", "tagEnd", "tagDefineSprite"), calls);
+            assertTrue(calls.contains("sprite tagShowFrame"));
+
+            //everything inside the sprite
+            filter.remove(SWFConstants.TAG_SHOWFRAME);
+            filter.setSpriteFilter(null);
+            assertEquals(select(all, true, "header", "tagEnd", "tagDefineSprite"), read(swf, filter, parallel));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.anotherbigidea.flash.writers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SampleActions;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Writing action arrays with an automatic lookup table.
+ */
+class ActionWriterTest {
+
+    /** Nested blocks that end together at the end of the array */
+    static final SampleActions.Program NESTED = actions -> {
+        actions.start(0);
+        actions.push("count");
+        actions.waitForFrame(1, "loaded");
+        actions.startFunction("outer", new String[0]);
+        actions.startFunction("inner", new String[] { "a" });
+        actions.push("count");
+        actions.startWith();
+        actions.push("count");
+        actions.push("count");
+        actions.getVariable();
+        actions.endBlock();
+        actions.endBlock();
+        actions.endBlock();
+        actions.jumpLabel("loaded");
+        actions.end();
+    };
+
+    static void assertRoundTrip(SampleActions.Program program) throws Exception {
+        List<String> calls = SampleActions.calls(program);
+
+        for (boolean lookupTable : new boolean[] { false, true }) {
+            byte[] bytes = SampleActions.write(program, lookupTable);
+
+            for (int streamingLength : new int[] { 0, Integer.MAX_VALUE }) {
+                assertEquals(calls, SampleActions.parse(bytes, streamingLength));
+            }
+        }
+    }
+
+    @Test
+    void nestedBlocksAtTheEnd() throws Exception {
+        //missing labels are reported on System.err
+        PrintStream err = System.err;
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(messages, true));
+
+        try {
+            assertRoundTrip(NESTED);
+        } finally {
+            System.setErr(err);
+        }
+
+        assertEquals("", messages.toString());
+
+        //the table is used
+        byte[] plain = SampleActions.write(NESTED, false);
+        byte[] table = SampleActions.write(NESTED, true);
+        assertTrue(table.length < plain.length);
+    }
+
+    @Test
+    void randomPrograms() throws Exception {
+        for (long seed = 0; seed < 1000; seed++) {
+            assertRoundTrip(SampleActions.random(seed));
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    static byte[] writeWithOldHook(SampleActions.Program program, boolean lookupTable) throws Exception {
+        final byte[][] written = { null };
+
+        ActionWriter writer = new ActionWriter(null, SampleActions.FLASH_VERSION) {
+            protected void writeBytes(byte[] bytes) {
+                written[0] = bytes;
+            }
+        };
+        writer.setAutoLookupTable(lookupTable);
+
+        program.write(writer);
+        return written[0];
+    }
+
+    @Test
+    void oldWriteBytesHook() throws Exception {
+        for (long seed = 0; seed < 100; seed++) {
+            SampleActions.Program program = SampleActions.random(seed);
+
+            for (boolean lookupTable : new boolean[] { false, true }) {
+                assertArrayEquals(SampleActions.write(program, lookupTable), writeWithOldHook(program, lookupTable));
+            }
+        }
+
+        //blobs reach the new hook
+        final byte[] blob = SampleActions.write(NESTED, false);
+        assertArrayEquals(blob, SampleActions.write(actions -> actions.blob(blob), false));
+    }
+}
@@ -0,0 +1,108 @@
+package com.anotherbigidea.flash.writers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.SampleMovies;
+import com.anotherbigidea.flash.readers.SWFReader;
+import com.anotherbigidea.flash.readers.TagParser;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Writing behind on a background thread gives the same file as writing to
+ * a stream, and the temp file of a compressed movie is not left behind.
+ */
+class SWFWriterTest {
+
+    @Test
+    void writeBehindGivesTheSameFile() throws Exception {
+        File file = File.createTempFile("SWFWriterTest", ".swf");
+
+        try {
+            for (boolean compressed : new boolean[] { false, true }) {
+                byte[] swf = SampleMovies.create(30, compressed);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new SWFReader(new TagParser(new TagWriter(new SWFWriter(out))), ByteBuffer.wrap(swf)).readFile();
+                byte[] expected = out.toByteArray();
+
+                for (boolean writeBehind : new boolean[] { false, true }) {
+                    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    SWFWriter writer = new SWFWriter(channel, writeBehind);
+                    new SWFReader(new TagParser(new TagWriter(writer)), ByteBuffer.wrap(swf)).readFile();
+
+                    assertArrayEquals(expected, Files.readAllBytes(file.toPath()), "write behind " + writeBehind);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void abortDeletesTheSpillFile() throws Exception {
+        File file = File.createTempFile("SWFWriterTest", ".swf");
+
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            SWFWriter writer = spill(channel);
+            File spill = writer.mSpillFile;
+
+            writer.abort();
+
+            assertFalse(spill.exists());
+            assertNull(writer.mSpillFile);
+            assertFalse(channel.isOpen());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void failureDeletesTheSpillFile() throws Exception {
+        File file = File.createTempFile("SWFWriterTest", ".swf");
+
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            final SWFWriter writer = spill(channel);
+            File spill = writer.mSpillFile;
+
+            //the header cannot be written at the end
+            channel.close();
+            assertThrows(IOException.class, () -> writer.tag(SWFConstants.TAG_END, false, null));
+
+            assertFalse(spill.exists());
+            assertNull(writer.mSpillFile);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * @return a writer of a compressed movie of unknown length, with a frame
+     *         spilled to its temp file
+     */
+    static SWFWriter spill(FileChannel channel) throws IOException {
+        SWFWriter writer = new SWFWriter(channel);
+        writer.setCompression(true);
+        writer.header(6, -1, 11000, 8000, 12, -1);
+        writer.tag(SWFConstants.TAG_SHOWFRAME, false, null);
+
+        assertTrue(writer.mSpillFile.exists());
+        return writer;
+    }
+}
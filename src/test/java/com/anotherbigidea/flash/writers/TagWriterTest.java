@@ -0,0 +1,204 @@
+package com.anotherbigidea.flash.writers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.anotherbigidea.flash.SWFConstants;
+import com.anotherbigidea.flash.interfaces.SWFLosslessRasters;
+import com.anotherbigidea.flash.interfaces.SWFTagTypes;
+import com.anotherbigidea.flash.interfaces.SWFTags;
+import com.anotherbigidea.flash.readers.TagParser;
+import com.anotherbigidea.flash.structs.Color;
+import com.anotherbigidea.flash.structs.LosslessRaster;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Lossless bitmaps written from packed ARGB pixels.
+ */
+class TagWriterTest {
+
+    /** format, hasAlpha */
+    static final Object[][] FORMATS = {
+        { SWFConstants.BITMAP_FORMAT_8_BIT, false },
+        { SWFConstants.BITMAP_FORMAT_8_BIT, true },
+        { SWFConstants.BITMAP_FORMAT_16_BIT, false },
+        { SWFConstants.BITMAP_FORMAT_32_BIT, false },
+        { SWFConstants.BITMAP_FORMAT_32_BIT, true },
+    };
+
+    /**
+     * Records the bitmaps that it is given - as pixels or, if not rasters,
+     * as a color table and pixel data
+     */
+    static class Bitmaps extends SWFTagTypesImpl implements SWFLosslessRasters {
+        boolean mRasters;
+        List<Object[]> mBitmaps = new ArrayList<Object[]>();
+
+        Bitmaps(boolean rasters) {
+            super(null);
+            mRasters = rasters;
+        }
+
+        public void tagDefineBitsLosslessRaster(int id, int format, int width, int height, boolean hasAlpha, int[] argb) {
+            assertEquals(true, mRasters);
+            mBitmaps.add(new Object[] { id, format, hasAlpha, argb });
+        }
+
+        public void tagDefineBitsLossless(int id, int format, int width, int height, Color[] colors, byte[] imageData) throws IOException {
+            mBitmaps.add(new Object[] { id, format, false, LosslessRaster.decode(format, width, height, false, colors, imageData) });
+        }
+
+        public void tagDefineBitsLossless2(int id, int format, int width, int height, Color[] colors, byte[] imageData) throws IOException {
+            mBitmaps.add(new Object[] { id, format, true, LosslessRaster.decode(format, width, height, true, colors, imageData) });
+        }
+    }
+
+    /**
+     * Premultiplied pixels from a small palette - 16 bit pixels are
+     * widened from 5 bits a component, as they are decoded
+     */
+    static int[] pixels(int format, boolean hasAlpha, int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] colors = new int[40];
+
+        for (int i = 0; i < colors.length; i++) {
+            int a = hasAlpha ? random.nextInt(256) : 0xff;
+            int r = random.nextInt(256) * a / 255;
+            int g = random.nextInt(256) * a / 255;
+            int b = random.nextInt(256) * a / 255;
+
+            if (format == SWFConstants.BITMAP_FORMAT_16_BIT) {
+                r = widen(r >> 3);
+                g = widen(g >> 3);
+                b = widen(b >> 3);
+            }
+
+            colors[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = colors[random.nextInt(colors.length)];
+        }
+
+        return argb;
+    }
+
+    static int widen(int c) {
+        return (c << 3) | (c >> 2);
+    }
+
+    static void assertBitmap(Object[] bitmap, int id, int format, boolean hasAlpha, int[] argb) {
+        assertEquals(id, bitmap[0]);
+        assertEquals(format, bitmap[1]);
+        assertEquals(hasAlpha, bitmap[2]);
+        assertArrayEquals(argb, (int[]) bitmap[3], "format " + format + " alpha " + hasAlpha);
+    }
+
+    @Test
+    void writesPixels() throws Exception {
+        for (boolean rasters : new boolean[] { false, true }) {
+            Bitmaps bitmaps = new Bitmaps(rasters);
+            TagWriter writer = new TagWriter(rasters ? new TagParser(bitmaps) : new TagParser(new SWFTagTypesImpl(bitmaps)));
+
+            //odd widths so that the rows are padded
+            for (int i = 0; i < FORMATS.length; i++) {
+                int format = (Integer) FORMATS[i][0];
+                boolean hasAlpha = (Boolean) FORMATS[i][1];
+
+                writer.writeBitsLossless(i + 1, format, 13, 7, hasAlpha, pixels(format, hasAlpha, 13, 7, i));
+            }
+
+            assertEquals(FORMATS.length, bitmaps.mBitmaps.size());
+
+            for (int i = 0; i < FORMATS.length; i++) {
+                int format = (Integer) FORMATS[i][0];
+                boolean hasAlpha = (Boolean) FORMATS[i][1];
+
+                assertBitmap(bitmaps.mBitmaps.get(i), i + 1, format, hasAlpha, pixels(format, hasAlpha, 13, 7, i));
+            }
+        }
+    }
+
+    /**
+     * Collects the contents of the tags
+     */
+    static class Tags implements SWFTags {
+        List<byte[]> mContents = new ArrayList<byte[]>();
+
+        public void header(int version, long length, int twipsWidth, int twipsHeight, int frameRate, int frameCount) {
+        }
+
+        public void tag(int tagType, boolean longTag, byte[] contents) {
+            mContents.add(contents.clone());
+        }
+    }
+
+    /**
+     * An 8 bit table in no particular order, with unused entries, and an
+     * unpadded last row
+     */
+    static void writeOddBitmap(SWFTagTypes tagtypes) throws IOException {
+        Color[] colors = { new Color(9, 9, 9), new Color(200, 0, 0), new Color(1, 2, 3), new Color(0, 0, 255) };
+        byte[] rows = { 3, 1, 3, 0, 1, 3, 3 }; //3 x 2, one padding byte
+
+        tagtypes.tagDefineBitsLossless(7, SWFConstants.BITMAP_FORMAT_8_BIT, 3, 2, colors, rows);
+    }
+
+    @Test
+    void copyKeepsTheTagData() throws Exception {
+        Tags original = new Tags();
+        writeOddBitmap(new TagWriter(original));
+
+        //the copying writer is given the color table, not pixels
+        final int[] calls = { 0 };
+        Tags copy = new Tags();
+        TagWriter writer = new TagWriter(copy) {
+            public void tagDefineBitsLossless(int id, int format, int width, int height, Color[] colors, byte[] imageData) throws IOException {
+                calls[0]++;
+                super.tagDefineBitsLossless(id, format, width, height, colors, imageData);
+            }
+        };
+        new TagParser(writer).tag(SWFConstants.TAG_DEFINEBITSLOSSLESS, true, original.mContents.get(0));
+
+        assertEquals(1, calls[0]);
+        assertArrayEquals(original.mContents.get(0), copy.mContents.get(0));
+
+        //and a raster consumer can still decode it
+        Bitmaps bitmaps = new Bitmaps(true);
+        new TagParser(bitmaps).tag(SWFConstants.TAG_DEFINEBITSLOSSLESS, true, original.mContents.get(0));
+        assertBitmap(bitmaps.mBitmaps.get(0), 7, SWFConstants.BITMAP_FORMAT_8_BIT, false,
+                     new int[] { 0xff0000ff, 0xffc80000, 0xff0000ff, 0xffc80000, 0xff0000ff, 0xff0000ff });
+    }
+
+    @Test
+    void emptyBitmaps() throws Exception {
+        for (Object[] f : FORMATS) {
+            int format = (Integer) f[0];
+            boolean hasAlpha = (Boolean) f[1];
+
+            Bitmaps bitmaps = new Bitmaps(true);
+            new TagWriter(new TagParser(bitmaps)).writeBitsLossless(1, format, 0, 0, hasAlpha, new int[0]);
+
+            assertBitmap(bitmaps.mBitmaps.get(0), 1, format, hasAlpha, new int[0]);
+        }
+    }
+
+    @Test
+    void sixteenBitIsLossyWhenNarrowed() throws Exception {
+        Bitmaps bitmaps = new Bitmaps(true);
+        TagWriter writer = new TagWriter(new TagParser(bitmaps));
+
+        writer.writeBitsLossless(1, SWFConstants.BITMAP_FORMAT_16_BIT, 2, 1, false, new int[] { 0xff123456, 0xffffffff });
+
+        //the low 3 bits are lost - decoding widens the top 5 bits
+        assertBitmap(bitmaps.mBitmaps.get(0), 1, SWFConstants.BITMAP_FORMAT_16_BIT, false, new int[] { 0xff103152, 0xffffffff });
+    }
+}
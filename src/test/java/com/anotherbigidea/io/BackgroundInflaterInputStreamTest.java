@@ -0,0 +1,134 @@
+package com.anotherbigidea.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Inflating on a background thread.
+ */
+class BackgroundInflaterInputStreamTest {
+
+    static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Read in pieces of varying size until the end or an exception
+     */
+    static byte[] readAll(InputStream in, ByteArrayOutputStream out) throws IOException {
+        byte[] buffer = new byte[5000];
+        int size = 1;
+
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                break;
+            }
+            out.write(b);
+
+            int count = in.read(buffer, 0, size);
+            if (count < 0) {
+                break;
+            }
+            out.write(buffer, 0, count);
+
+            size = (size * 7) % buffer.length + 1;
+        }
+
+        return out.toByteArray();
+    }
+
+    @Test
+    void inflatesTheStream() throws Exception {
+        for (int size : new int[] { 0, 1, 4096, 100000, 1000000 }) {
+            byte[] data = InflateIndexTest.data(size, size);
+            byte[] zlib = InflateIndexTest.deflate(data, 6, Deflater.DEFAULT_STRATEGY);
+
+            BackgroundInflaterInputStream in = new BackgroundInflaterInputStream(new ByteArrayInputStream(zlib), 3, 4096);
+            assertArrayEquals(data, readAll(in, new ByteArrayOutputStream()), "size " + size);
+            in.close();
+        }
+    }
+
+    @Test
+    void truncatedStream() throws Exception {
+        byte[] data = InflateIndexTest.data(200000, 1);
+        byte[] zlib = InflateIndexTest.deflate(data, 6, Deflater.DEFAULT_STRATEGY);
+
+        BackgroundInflaterInputStream in = new BackgroundInflaterInputStream(new ByteArrayInputStream(Arrays.copyOf(zlib, zlib.length / 2)), 2, 1000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(EOFException.class, () -> readAll(in, out));
+
+        //what could be inflated is passed on first
+        byte[] inflated = out.toByteArray();
+        assertTrue(inflated.length > 0);
+        assertArrayEquals(Arrays.copyOf(data, inflated.length), inflated);
+
+        //and the error stays
+        assertThrows(EOFException.class, () -> in.read());
+        in.close();
+    }
+
+    @Test
+    void corruptStream() throws Exception {
+        byte[] zlib = InflateIndexTest.deflate(InflateIndexTest.data(100000, 2), 6, Deflater.DEFAULT_STRATEGY);
+        for (int i = 100; i < 200; i++) {
+            zlib[i] ^= 0x55;
+        }
+
+        BackgroundInflaterInputStream in = new BackgroundInflaterInputStream(new ByteArrayInputStream(zlib), 2, 1000);
+        assertThrows(ZipException.class, () -> readAll(in, new ByteArrayOutputStream()));
+        in.close();
+    }
+
+    @Test
+    void idleTimeout() throws Exception {
+        byte[] data = InflateIndexTest.data(100000, 3);
+        byte[] zlib = InflateIndexTest.deflate(data, 6, Deflater.DEFAULT_STRATEGY);
+
+        BackgroundInflaterInputStream in = new BackgroundInflaterInputStream(new ByteArrayInputStream(zlib), 2, 1000, 50);
+
+        //the ring fills and the thread gives up
+        in.mThread.join(TIMEOUT.toMillis());
+        assertFalse(in.mThread.isAlive());
+
+        //a late reader gets the data in the ring and then an error - not a hang
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(InterruptedIOException.class, () -> readAll(in, out)));
+
+        byte[] inflated = out.toByteArray();
+        assertTrue(inflated.length > 0);
+        assertArrayEquals(Arrays.copyOf(data, inflated.length), inflated);
+        in.close();
+    }
+
+    @Test
+    void closeStopsTheThread() throws Exception {
+        byte[] zlib = InflateIndexTest.deflate(InflateIndexTest.data(100000, 4), 6, Deflater.DEFAULT_STRATEGY);
+
+        BackgroundInflaterInputStream in = new BackgroundInflaterInputStream(new ByteArrayInputStream(zlib), 2, 1000);
+        in.read();
+
+        assertTimeoutPreemptively(TIMEOUT, () -> in.close());
+        assertFalse(in.mThread.isAlive());
+        assertThrows(IOException.class, () -> in.read());
+
+        in.close();
+    }
+}
@@ -0,0 +1,66 @@
+package com.anotherbigidea.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Skipping reads the bytes in blocks, however few each read returns, and
+ * fails at the end of the input.
+ */
+class InStreamTest {
+
+    static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return a stream that returns at most the given number of bytes from
+     *         each read
+     */
+    static InputStream trickle(byte[] bytes, final int max) {
+        return new ByteArrayInputStream(bytes) {
+            public synchronized int read(byte[] b, int offset, int length) {
+                return super.read(b, offset, Math.min(length, max));
+            }
+        };
+    }
+
+    @Test
+    void skipBytes() throws Exception {
+        for (int max : new int[] { 1, 100, 10000 }) {
+            InStream in = new InStream(trickle(bytes(20000), max));
+
+            in.skipBytes(0);
+            in.skipBytes(-5);
+            assertEquals(0, in.getBytesRead());
+
+            //more than one block
+            in.skipBytes(9999);
+            assertEquals(9999, in.getBytesRead());
+            assertEquals(9999 & 0xff, in.readUI8());
+
+            in.skipBytes(10000);
+            assertEquals(0, in.available());
+            assertEquals(20000, in.getBytesRead());
+        }
+    }
+
+    @Test
+    void skipPastTheEnd() throws Exception {
+        InStream in = new InStream(trickle(bytes(10000), 100));
+        in.skipBytes(5000);
+
+        assertThrows(EOFException.class, () -> in.skipBytes(5001));
+    }
+}
@@ -0,0 +1,162 @@
+package com.anotherbigidea.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Random access reads through inflate checkpoints.
+ */
+class InflateIndexTest {
+
+    /** Text-like data with long matches, runs and stretches of noise */
+    static byte[] data(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        int pos = 0;
+
+        while (pos < size) {
+            int length = Math.min(size - pos, 1 + random.nextInt(2000));
+
+            switch (random.nextInt(3)) {
+            case 0: //noise
+                for (int i = 0; i < length; i++) {
+                    data[pos + i] = (byte) random.nextInt();
+                }
+                break;
+            case 1: //a copy of earlier data, possibly a long way back
+                int from = (pos > 0) ? random.nextInt(pos) : 0;
+                for (int i = 0; i < length; i++) {
+                    data[pos + i] = data[from + i];
+                }
+                break;
+            default: //a run
+                Arrays.fill(data, pos, pos + length, (byte) random.nextInt(4));
+                break;
+            }
+
+            pos += length;
+        }
+
+        return data;
+    }
+
+    static byte[] deflate(byte[] data, int level, int strategy) {
+        Deflater deflater = new Deflater(level);
+        deflater.setStrategy(strategy);
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[0x4000];
+
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    static void readRandomly(InflateIndex index, ByteBuffer input, byte[] expected, long seed) throws IOException {
+        Random random = new Random(seed);
+
+        for (int i = 0; i < 200; i++) {
+            int offset = random.nextInt(expected.length);
+            int length = Math.min(expected.length - offset, 1 + random.nextInt(5000));
+
+            byte[] bytes = new byte[length + 2];
+            index.read(input, offset, bytes, 1, length);
+
+            assertArrayEquals(Arrays.copyOfRange(expected, offset, offset + length), Arrays.copyOfRange(bytes, 1, length + 1), "offset " + offset);
+        }
+    }
+
+    @Test
+    void randomReadsAtEachSpan() throws Exception {
+        byte[] data = data(600000, 1);
+
+        int[][] settings = {
+            { Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY },
+            { Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY },
+            { Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY },
+            { Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY },
+        };
+
+        for (int[] setting : settings) {
+            ByteBuffer input = ByteBuffer.wrap(deflate(data, setting[0], setting[1]));
+
+            for (int span : new int[] { 1024, 16384, 100000, InflateIndex.DEFAULT_SPAN }) {
+                InflateIndex index = new InflateIndex(span);
+                ByteBuffer output = index.inflate(input, data.length);
+
+                byte[] inflated = new byte[output.remaining()];
+                output.get(inflated);
+                assertArrayEquals(data, inflated);
+
+                if (span < data.length) {
+                    assertTrue(index.getCheckpointCount() > 1, "span " + span);
+                }
+
+                readRandomly(index, input, data, span);
+            }
+        }
+    }
+
+    @Test
+    void readsFromAnOffsetBuffer() throws Exception {
+        byte[] data = data(200000, 2);
+        byte[] zlib = deflate(data, 9, Deflater.DEFAULT_STRATEGY);
+
+        //the stream starts at the buffer position, as in a CWS file
+        byte[] file = new byte[zlib.length + 8];
+        System.arraycopy(zlib, 0, file, 8, zlib.length);
+        ByteBuffer input = ByteBuffer.wrap(file);
+        input.position(8);
+
+        InflateIndex index = new InflateIndex(4096);
+        index.inflate(input, 0);
+
+        readRandomly(index, input, data, 3);
+    }
+
+    @Test
+    void saveAndLoad() throws Exception {
+        byte[] data = data(300000, 4);
+        ByteBuffer input = ByteBuffer.wrap(deflate(data, 6, Deflater.DEFAULT_STRATEGY));
+
+        InflateIndex index = new InflateIndex(8192);
+        index.inflate(input, data.length);
+
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        index.save(new DataOutputStream(saved));
+
+        InflateIndex loaded = InflateIndex.load(new DataInputStream(new ByteArrayInputStream(saved.toByteArray())));
+
+        assertEquals(index.getSpan(), loaded.getSpan());
+        assertEquals(index.getCheckpointCount(), loaded.getCheckpointCount());
+
+        readRandomly(loaded, input, data, 5);
+    }
+
+    @Test
+    void rejectsNonZlibInput() {
+        byte[] garbage = { 0x12, 0x34, 0x56, 0x78 };
+
+        assertThrows(IOException.class, () -> new InflateIndex(1024).inflate(ByteBuffer.wrap(garbage), 0));
+    }
+}
@@ -0,0 +1,104 @@
+package com.anotherbigidea.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Blocks compressed in parallel make one ordinary zlib stream.
+ */
+class ParallelDeflaterOutputStreamTest {
+
+    static byte[] inflate(byte[] zlib, int size) throws Exception {
+        Inflater inflater = new Inflater();
+        inflater.setInput(zlib);
+
+        byte[] output = new byte[size + 1];
+        int count = 0;
+
+        while (!inflater.finished()) {
+            int inflated = inflater.inflate(output, count, output.length - count);
+            assertTrue(inflated > 0 || inflater.finished(), "stalled at " + count);
+            count += inflated;
+        }
+
+        //the whole stream is used, trailer and all
+        assertEquals(0, inflater.getRemaining());
+        inflater.end();
+
+        assertEquals(size, count);
+        return Arrays.copyOf(output, count);
+    }
+
+    static byte[] deflate(byte[] data, int level, int strategy, ForkJoinPool pool, int blockSize, int writeSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelDeflaterOutputStream deflater = new ParallelDeflaterOutputStream(out, level, pool, blockSize);
+        deflater.setStrategy(strategy);
+
+        for (int pos = 0; pos < data.length; pos += writeSize) {
+            deflater.write(data, pos, Math.min(writeSize, data.length - pos));
+        }
+
+        deflater.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    void inflatesToTheInput() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            for (int size : new int[] { 0, 1, 32767, 32768, 65536, 65537, 500000 }) {
+                byte[] data = InflateIndexTest.data(size, size);
+
+                for (int level : new int[] { Deflater.DEFAULT_COMPRESSION, 0, 1, 9 }) {
+                    byte[] zlib = deflate(data, level, Deflater.DEFAULT_STRATEGY, pool, 32768, 1000);
+                    assertArrayEquals(data, inflate(zlib, size), "size " + size + " level " + level);
+                }
+
+                byte[] huffman = deflate(data, 6, Deflater.HUFFMAN_ONLY, pool, 65536, 77777);
+                assertArrayEquals(data, inflate(huffman, size), "size " + size);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void ownPool() throws Exception {
+        byte[] data = InflateIndexTest.data(300000, 7);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelDeflaterOutputStream deflater = new ParallelDeflaterOutputStream(out, 9, 3);
+        deflater.write(data, 0, 1000);
+        deflater.flush();
+        deflater.write(data, 1000, data.length - 1000);
+        deflater.close();
+
+        assertTrue(deflater.mPool.isShutdown());
+        assertArrayEquals(data, inflate(out.toByteArray(), data.length));
+    }
+
+    @Test
+    void matchesTheDeflaterHeader() throws Exception {
+        byte[] data = InflateIndexTest.data(1000, 8);
+
+        for (int level = -1; level <= 9; level++) {
+            byte[] expected = InflateIndexTest.deflate(data, level, Deflater.DEFAULT_STRATEGY);
+            byte[] header = ParallelDeflaterOutputStream.zlibHeader(level);
+
+            assertEquals(expected[0], header[0], "level " + level);
+            assertEquals(expected[1], header[1], "level " + level);
+        }
+    }
+}
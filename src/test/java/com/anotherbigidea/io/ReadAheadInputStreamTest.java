@@ -0,0 +1,135 @@
+package com.anotherbigidea.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Reading a channel on a background thread.
+ */
+class ReadAheadInputStreamTest {
+
+    static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Gives a few bytes at a time and then fails
+     */
+    static class FailingChannel implements ReadableByteChannel {
+        int mLeft;
+        boolean mOpen = true;
+
+        FailingChannel(int size) {
+            mLeft = size;
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            if (mLeft == 0) {
+                throw new IOException("failed");
+            }
+
+            int count = Math.min(Math.min(mLeft, dst.remaining()), 100);
+            dst.put(new byte[count]);
+            mLeft -= count;
+            return count;
+        }
+
+        public boolean isOpen() {
+            return mOpen;
+        }
+
+        public void close() {
+            mOpen = false;
+        }
+    }
+
+    static ReadAheadInputStream open(byte[] data, int buffers, int bufferSize) {
+        return new ReadAheadInputStream(Channels.newChannel(new ByteArrayInputStream(data)), buffers, bufferSize);
+    }
+
+    @Test
+    void readsTheChannel() throws Exception {
+        for (int size : new int[] { 0, 1, 999, 1000, 1001, 100000 }) {
+            byte[] data = InflateIndexTest.data(size, size);
+
+            ReadAheadInputStream in = open(data, 3, 1000);
+            byte[] read = BackgroundInflaterInputStreamTest.readAll(in, new ByteArrayOutputStream());
+            assertArrayEquals(data, read, "size " + size);
+            assertEquals(-1, in.read());
+            in.close();
+        }
+    }
+
+    @Test
+    void skip() throws Exception {
+        byte[] data = InflateIndexTest.data(10000, 1);
+
+        ReadAheadInputStream in = open(data, 2, 1000);
+        assertEquals(10, in.read(new byte[10], 0, 10));
+        assertEquals(2500, in.skip(2500));
+        assertEquals(data[2510] & 0xff, in.read());
+        assertEquals(10000 - 2511, in.skip(20000));
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    @Test
+    void channelError() throws Exception {
+        ReadAheadInputStream in = new ReadAheadInputStream(new FailingChannel(5000), 2, 1000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        IOException e = assertThrows(IOException.class, () -> BackgroundInflaterInputStreamTest.readAll(in, out));
+        assertEquals("failed", e.getMessage());
+        assertEquals(5000, out.size());
+        in.close();
+    }
+
+    @Test
+    void idleTimeout() throws Exception {
+        byte[] data = InflateIndexTest.data(100000, 2);
+
+        ReadAheadInputStream in = new ReadAheadInputStream(Channels.newChannel(new ByteArrayInputStream(data)), 2, 1000, 50);
+
+        //the ring fills and the thread gives up
+        in.mThread.join(TIMEOUT.toMillis());
+        assertFalse(in.mThread.isAlive());
+
+        //a late reader gets the data in the ring and then an error - not a hang
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(InterruptedIOException.class, () -> BackgroundInflaterInputStreamTest.readAll(in, out)));
+
+        assertEquals(2000, out.size());
+        assertArrayEquals(Arrays.copyOf(data, 2000), out.toByteArray());
+        in.close();
+    }
+
+    @Test
+    void closeStopsTheThread() throws Exception {
+        FailingChannel channel = new FailingChannel(100000);
+        ReadAheadInputStream in = new ReadAheadInputStream(channel, 2, 1000);
+        in.read();
+
+        assertTimeoutPreemptively(TIMEOUT, () -> in.close());
+        assertFalse(in.mThread.isAlive());
+        assertFalse(channel.isOpen());
+        assertThrows(IOException.class, () -> in.read());
+
+        in.close();
+        assertTrue(channel.mLeft > 0);
+    }
+}
@@ -0,0 +1,112 @@
+package com.anotherbigidea.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+
+/**
+ * Writing to a channel on a background thread.
+ */
+class WriteBehindOutputStreamTest {
+
+    static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Takes a few bytes and then fails
+     */
+    static class FailingChannel implements WritableByteChannel {
+        int mLeft;
+        boolean mOpen = true;
+
+        FailingChannel(int size) {
+            mLeft = size;
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            if (mLeft == 0) {
+                throw new IOException("failed");
+            }
+
+            int count = Math.min(mLeft, src.remaining());
+            src.position(src.position() + count);
+            mLeft -= count;
+            return count;
+        }
+
+        public boolean isOpen() {
+            return mOpen;
+        }
+
+        public void close() {
+            mOpen = false;
+        }
+    }
+
+    @Test
+    void writesTheChannel() throws Exception {
+        for (int size : new int[] { 0, 1, 999, 1000, 1001, 100000 }) {
+            byte[] data = InflateIndexTest.data(size, size);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            WriteBehindOutputStream out = new WriteBehindOutputStream(Channels.newChannel(bytes), 3, 1000);
+
+            //single bytes and pieces of varying size
+            int pos = 0;
+            for (int length = 1; pos < size; length = (length * 7) % 5000 + 1) {
+                out.write(data[pos++]);
+
+                int count = Math.min(length, size - pos);
+                out.write(data, pos, count);
+                pos += count;
+            }
+
+            out.close();
+            assertArrayEquals(data, bytes.toByteArray(), "size " + size);
+        }
+    }
+
+    @Test
+    void flush() throws Exception {
+        byte[] data = InflateIndexTest.data(5000, 1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WriteBehindOutputStream out = new WriteBehindOutputStream(Channels.newChannel(bytes), 2, 1000);
+
+        out.write(data, 0, 2500);
+        out.flush();
+        assertEquals(2500, bytes.size());
+
+        out.write(data, 2500, 2500);
+        out.close();
+        assertArrayEquals(data, bytes.toByteArray());
+    }
+
+    @Test
+    void channelError() throws Exception {
+        FailingChannel channel = new FailingChannel(1500);
+        WriteBehindOutputStream out = new WriteBehindOutputStream(channel, 2, 1000);
+
+        //a writer that gets ahead of the failed channel does not hang
+        byte[] data = new byte[100000];
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            IOException e = assertThrows(IOException.class, () -> out.write(data, 0, data.length));
+            assertEquals("failed", e.getMessage());
+        });
+
+        assertThrows(IOException.class, () -> out.close());
+        assertFalse(out.mThread.isAlive());
+        assertFalse(channel.isOpen());
+    }
+}